@@ -2,8 +2,6 @@
 package org.osmdroid.mtp;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
 
 import org.osmdroid.mtp.adt.OSMTileInfo;
@@ -14,7 +12,7 @@ import org.osmdroid.mtp.util.FolderDeleter;
 import org.osmdroid.mtp.util.FolderFileCounter;
 import org.osmdroid.mtp.util.FolderZipper;
 import org.osmdroid.mtp.util.Util;
-import org.osmdroid.util.GEMFFile;
+import org.osmdroid.util.GEMFWriter;
 
 public class OSMMapTilePackager {
      // ===========================================================
@@ -194,7 +192,7 @@ public class OSMMapTilePackager {
           if (pDestinationFile.endsWith(".zip")) {
                runZipToFile(pTempFolder, pDestinationFile);
           } else if (pDestinationFile.endsWith(".gemf")) {
-               runCreateGEMFFile(pTempFolder, pDestinationFile);
+               runCreateGEMFFile(pTempFolder, pDestinationFile, pThreadCount);
           } else {
                runCreateDb(pTempFolder, pDestinationFile);
           }
@@ -250,13 +248,16 @@ public class OSMMapTilePackager {
      // ===========================================================
      // Methods
      // ===========================================================
-     private static void runCreateGEMFFile(final String pTempFolder, final String pDestinationFile) {
+     private static void runCreateGEMFFile(final String pTempFolder, final String pDestinationFile, final int pThreadCount) {
           try {
                System.out.println("Creating GEMF archive from " + pTempFolder + " to " + pDestinationFile + " ...");
-               final List<File> sourceFolders = new ArrayList<File>();
-               sourceFolders.add(new File(pTempFolder));
-               final GEMFFile file = new GEMFFile(pDestinationFile, sourceFolders);
-               System.out.println(" done.");
+               final GEMFWriter writer = new GEMFWriter(pDestinationFile);
+               try {
+                    writer.addFolder(new File(pTempFolder), pThreadCount);
+               } finally {
+                    writer.close();
+               }
+               System.out.println(" done, " + writer.getTileCount() + " tiles.");
           } catch (final Exception e) {
                e.printStackTrace();
           }
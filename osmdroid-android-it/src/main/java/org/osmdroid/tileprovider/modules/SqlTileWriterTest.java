@@ -0,0 +1,475 @@
+/*
+ * WARNING, All test cases exist in osmdroid-android-it/src/main/java (maven project)
+ *
+ * During build time (with gradle), these tests are copied from osmdroid-android-it to OpenStreetMapViewer/src/androidTest/java
+ * DO NOT Modify files in OpenSteetMapViewer/src/androidTest. You will loose your changes when building!
+ *
+ */
+package org.osmdroid.tileprovider.modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.config.IConfigurationProvider;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.tileprovider.util.Counters;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Unit tests related to {@link SqlTileWriter}, on a real sqlite database
+ * @since 6.0.2
+ */
+public class SqlTileWriterTest extends AndroidTestCase {
+
+	private static final ITileSource TILE_SOURCE = new XYTileSource("SqlTileWriterTest", 0, 20, 256, ".png",
+			new String[]{"http://localhost/"});
+
+	private static final long TILE_1 = MapTileIndex.getTileIndex(10, 100, 200);
+	private static final long TILE_2 = MapTileIndex.getTileIndex(10, 101, 200);
+	private static final long TILE_3 = MapTileIndex.getTileIndex(10, 102, 200);
+
+	private File mTileCache;
+	private short mBatchSize;
+	private long mBatchDelay;
+	private long mMaxBytes;
+	private long mTrimBytes;
+	private boolean mDeduplication;
+	private boolean mMigrated;
+
+	/**
+	 * Gives access to the database, to check what is actually written
+	 */
+	private static class TestSqlTileWriter extends SqlTileWriter {
+
+		private SQLiteDatabase getDatabase() {
+			return db;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final IConfigurationProvider configuration = Configuration.getInstance();
+		mTileCache = configuration.getOsmdroidTileCache();
+		mBatchSize = configuration.getTileFileSystemCacheWriteBatchSize();
+		mBatchDelay = configuration.getTileFileSystemCacheWriteBatchDelay();
+		mMaxBytes = configuration.getTileFileSystemCacheMaxBytes();
+		mTrimBytes = configuration.getTileFileSystemCacheTrimBytes();
+		mDeduplication = configuration.isTileFileSystemCacheDeduplication();
+		mMigrated = SqlTileWriter.hasMigrated;
+		final File tileCache = new File(getContext().getCacheDir(), "SqlTileWriterTest");
+		new File(tileCache, SqlTileWriter.DATABASE_FILENAME).delete();
+		configuration.setOsmdroidTileCache(tileCache);
+		configuration.setTileFileSystemCacheDeduplication(false);
+		SqlTileWriter.setCleanupOnStart(false);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		final IConfigurationProvider configuration = Configuration.getInstance();
+		configuration.setOsmdroidTileCache(mTileCache);
+		configuration.setTileFileSystemCacheWriteBatchSize(mBatchSize);
+		configuration.setTileFileSystemCacheWriteBatchDelay(mBatchDelay);
+		configuration.setTileFileSystemCacheMaxBytes(mMaxBytes);
+		configuration.setTileFileSystemCacheTrimBytes(mTrimBytes);
+		configuration.setTileFileSystemCacheDeduplication(mDeduplication);
+		SqlTileWriter.hasMigrated = mMigrated;
+		SqlTileWriter.setCleanupOnStart(true);
+		super.tearDown();
+	}
+
+	/**
+	 * By default, each tile is written at once
+	 */
+	public void test_write_through() {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		final SqlTileWriter writer = new SqlTileWriter();
+		try {
+			assertTrue(save(writer, TILE_SOURCE, TILE_1));
+			assertEquals(1, writer.getRowCount(TILE_SOURCE.name()));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * Queued tiles are read as if they were written, and are written when the writer is detached
+	 */
+	public void test_write_behind() throws Exception {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 10);
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchDelay(60000);
+		final long expiration = System.currentTimeMillis() + 60000;
+		SqlTileWriter writer = new SqlTileWriter();
+		try {
+			for (final long tile : new long[]{TILE_1, TILE_2, TILE_3}) {
+				assertTrue(writer.saveFile(TILE_SOURCE, tile, new ByteArrayInputStream(getBytes(tile)), expiration));
+			}
+			assertEquals("Nothing written yet", 0, writer.getRowCount(TILE_SOURCE.name()));
+
+			assertTrue(writer.exists(TILE_SOURCE, TILE_1));
+			assertEquals(Long.valueOf(expiration), writer.getExpirationTimestamp(TILE_SOURCE, TILE_1));
+			final MapTileBytes bytes = writer.loadTileBytes(TILE_SOURCE, TILE_2);
+			assertNotNull(bytes);
+			assertFalse(bytes.isExpired());
+			assertTrue(Arrays.equals(getBytes(TILE_2), Arrays.copyOf(bytes.getBytes(), bytes.getLength())));
+			final MapTileList list = new MapTileList();
+			list.put(TILE_1);
+			list.put(TILE_2);
+			list.put(TILE_3);
+			final LongHashMap<MapTileBytes> tiles = writer.loadTiles(TILE_SOURCE, list);
+			assertEquals(3, tiles.size());
+		} finally {
+			writer.onDetach();
+		}
+
+		writer = new SqlTileWriter();
+		try {
+			assertEquals("Written when detached", 3, writer.getRowCount(TILE_SOURCE.name()));
+			assertNotNull(writer.loadTileBytes(TILE_SOURCE, TILE_3));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * The queued tiles are written as soon as there are enough of them for a batch
+	 */
+	public void test_batch_size() throws InterruptedException {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 2);
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchDelay(60000);
+		final SqlTileWriter writer = new SqlTileWriter();
+		try {
+			assertTrue(save(writer, TILE_SOURCE, TILE_1));
+			assertTrue(save(writer, TILE_SOURCE, TILE_2));
+			final long end = System.currentTimeMillis() + 5000;
+			while (writer.getRowCount(TILE_SOURCE.name()) < 2 && System.currentTimeMillis() < end) {
+				Thread.sleep(50);
+			}
+			assertEquals(2, writer.getRowCount(TILE_SOURCE.name()));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * A tile that cannot be written doesn't make the other tiles of its batch lost
+	 */
+	public void test_failed_batch() {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 10);
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchDelay(60000);
+		// no tile source name: cannot be bound to the primary key
+		final ITileSource invalid = new XYTileSource(null, 0, 20, 256, ".png", new String[]{"http://localhost/"});
+		Counters.reset();
+		SqlTileWriter writer = new SqlTileWriter();
+		try {
+			assertTrue(save(writer, TILE_SOURCE, TILE_1));
+			assertTrue(save(writer, invalid, TILE_2));
+			assertTrue(save(writer, TILE_SOURCE, TILE_3));
+		} finally {
+			writer.onDetach();
+		}
+		assertEquals(1, Counters.fileCacheSaveErrors);
+
+		writer = new SqlTileWriter();
+		try {
+			assertEquals(2, writer.getRowCount(null));
+			assertTrue(writer.exists(TILE_SOURCE, TILE_1));
+			assertTrue(writer.exists(TILE_SOURCE, TILE_3));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * The least recently used tiles are evicted first, whatever their write order
+	 */
+	public void test_lru_eviction() {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		final int count = 2 * SqlTileWriter.EVICTION_CHUNK_SIZE;
+		final TestSqlTileWriter writer = new TestSqlTileWriter();
+		try {
+			for (int i = 0 ; i < count ; i ++) {
+				final byte[] bytes = new byte[1000];
+				Arrays.fill(bytes, (byte) i);
+				bytes[0] = (byte) (i >> 8);
+				assertTrue(writer.saveFile(TILE_SOURCE, MapTileIndex.getTileIndex(10, i, 0), new ByteArrayInputStream(bytes), null));
+			}
+			// the tiles written last were used the longest time ago
+			final SQLiteDatabase db = writer.getDatabase();
+			db.execSQL("UPDATE " + DatabaseFileArchive.TABLE + " SET " + SqlTileWriter.COLUMN_LAST_ACCESS + " = 1000 + rowid"
+					+ " WHERE rowid > " + SqlTileWriter.EVICTION_CHUNK_SIZE);
+
+			// just one chunk needs to be evicted
+			Configuration.getInstance().setTileFileSystemCacheMaxBytes(0);
+			Configuration.getInstance().setTileFileSystemCacheTrimBytes(getUsedBytes(db) - db.getPageSize());
+			writer.runCleanupOperation();
+
+			assertEquals(count - SqlTileWriter.EVICTION_CHUNK_SIZE, writer.getRowCount(TILE_SOURCE.name()));
+			for (int i = 0 ; i < count ; i ++) {
+				assertEquals("Tile " + i, i < SqlTileWriter.EVICTION_CHUNK_SIZE,
+						writer.exists(TILE_SOURCE, MapTileIndex.getTileIndex(10, i, 0)));
+			}
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * Reading a tile whose last access is old enough updates its last access
+	 */
+	public void test_last_access_on_read() throws InterruptedException {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchDelay(10);
+		final long start = System.currentTimeMillis();
+		final TestSqlTileWriter writer = new TestSqlTileWriter();
+		try {
+			assertTrue(save(writer, TILE_SOURCE, TILE_1));
+			assertTrue(save(writer, TILE_SOURCE, TILE_2));
+			assertTrue(getLastAccess(writer, TILE_1) >= start);
+			final String where = " WHERE " + DatabaseFileArchive.COLUMN_KEY + " = " + SqlTileWriter.getIndex(TILE_1);
+			writer.getDatabase().execSQL("UPDATE " + DatabaseFileArchive.TABLE
+					+ " SET " + SqlTileWriter.COLUMN_LAST_ACCESS + " = " + (start - SqlTileWriter.LAST_ACCESS_PRECISION) + where);
+			final long recent = getLastAccess(writer, TILE_2);
+
+			assertNotNull(writer.loadTileBytes(TILE_SOURCE, TILE_1));
+			assertNotNull(writer.loadTileBytes(TILE_SOURCE, TILE_2));
+			final long end = System.currentTimeMillis() + 5000;
+			while (getLastAccess(writer, TILE_1) < start && System.currentTimeMillis() < end) {
+				Thread.sleep(50);
+			}
+			assertTrue(getLastAccess(writer, TILE_1) >= start);
+			assertEquals("Recent enough, not written again", recent, getLastAccess(writer, TILE_2));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * Identical tiles share a blob, whose reference count is maintained by the triggers
+	 */
+	public void test_deduplication() throws Exception {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		Configuration.getInstance().setTileFileSystemCacheDeduplication(true);
+		SqlTileWriter.hasMigrated = true;
+		final byte[] shared = getBytes(TILE_1);
+		final TestSqlTileWriter writer = new TestSqlTileWriter();
+		try {
+			final SQLiteDatabase db = writer.getDatabase();
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_1, new ByteArrayInputStream(shared), null));
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_2, new ByteArrayInputStream(shared), null));
+			assertTrue(save(writer, TILE_SOURCE, TILE_3));
+			assertEquals(3, writer.getRowCount(TILE_SOURCE.name()));
+			assertEquals("Data only in the blobs", 0, count(db, DatabaseFileArchive.TABLE, DatabaseFileArchive.COLUMN_TILE + " IS NOT NULL"));
+			assertEquals(2, count(db, SqlTileWriter.TABLE_BLOBS, null));
+			assertEquals(2, getRefs(db, shared));
+			assertTrue(Arrays.equals(shared, writer.loadTileBytes(TILE_SOURCE, TILE_2).getBytes()));
+
+			assertTrue(writer.remove(TILE_SOURCE, TILE_1));
+			assertEquals(1, getRefs(db, shared));
+			assertTrue(Arrays.equals(shared, writer.loadTileBytes(TILE_SOURCE, TILE_2).getBytes()));
+			assertTrue(writer.remove(TILE_SOURCE, TILE_2));
+			assertEquals("Unused blob deleted", 1, count(db, SqlTileWriter.TABLE_BLOBS, null));
+
+			// the replaced tile doesn't use its old blob any more
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_3, new ByteArrayInputStream(shared), null));
+			assertEquals(1, count(db, SqlTileWriter.TABLE_BLOBS, null));
+			assertEquals(1, getRefs(db, shared));
+
+			assertTrue(writer.purgeCache());
+			assertEquals(0, count(db, SqlTileWriter.TABLE_BLOBS, null));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * The blobs of the evicted tiles are deleted with them
+	 */
+	public void test_deduplication_cleanup() {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		Configuration.getInstance().setTileFileSystemCacheDeduplication(true);
+		SqlTileWriter.hasMigrated = true;
+		final TestSqlTileWriter writer = new TestSqlTileWriter();
+		try {
+			assertTrue(save(writer, TILE_SOURCE, TILE_1));
+			assertTrue(save(writer, TILE_SOURCE, TILE_2));
+			assertEquals(2, count(writer.getDatabase(), SqlTileWriter.TABLE_BLOBS, null));
+
+			Configuration.getInstance().setTileFileSystemCacheMaxBytes(0);
+			Configuration.getInstance().setTileFileSystemCacheTrimBytes(0);
+			writer.runCleanupOperation();
+
+			assertEquals(0, writer.getRowCount(null));
+			assertEquals(0, count(writer.getDatabase(), SqlTileWriter.TABLE_BLOBS, null));
+		} finally {
+			writer.onDetach();
+		}
+	}
+
+	/**
+	 * The tiles written without deduplication are moved to the blobs when it's enabled
+	 */
+	public void test_migration() throws Exception {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		final byte[] shared = getBytes(TILE_1);
+		SqlTileWriter writer = new SqlTileWriter();
+		try {
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_1, new ByteArrayInputStream(shared), null));
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_2, new ByteArrayInputStream(shared), null));
+			assertTrue(save(writer, TILE_SOURCE, TILE_3));
+		} finally {
+			writer.onDetach();
+		}
+
+		Configuration.getInstance().setTileFileSystemCacheDeduplication(true);
+		SqlTileWriter.hasMigrated = false;
+		final TestSqlTileWriter migrated = new TestSqlTileWriter();
+		try {
+			final SQLiteDatabase db = migrated.getDatabase();
+			final String notMigrated = DatabaseFileArchive.COLUMN_TILE + " IS NOT NULL";
+			final long end = System.currentTimeMillis() + 5000;
+			while (count(db, DatabaseFileArchive.TABLE, notMigrated) > 0 && System.currentTimeMillis() < end) {
+				Thread.sleep(50);
+			}
+			assertEquals(0, count(db, DatabaseFileArchive.TABLE, notMigrated));
+			assertEquals(2, count(db, SqlTileWriter.TABLE_BLOBS, null));
+			assertEquals(2, getRefs(db, shared));
+			assertTrue(Arrays.equals(shared, migrated.loadTileBytes(TILE_SOURCE, TILE_1).getBytes()));
+			assertTrue(Arrays.equals(getBytes(TILE_3), migrated.loadTileBytes(TILE_SOURCE, TILE_3).getBytes()));
+		} finally {
+			migrated.onDetach();
+		}
+	}
+
+	/**
+	 * A cache written with deduplication can be read as an archive
+	 */
+	public void test_archive_deduplicated() throws Exception {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		Configuration.getInstance().setTileFileSystemCacheDeduplication(true);
+		SqlTileWriter.hasMigrated = true;
+		final byte[] shared = getBytes(TILE_1);
+		final SqlTileWriter writer = new SqlTileWriter();
+		try {
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_1, new ByteArrayInputStream(shared), null));
+			assertTrue(writer.saveFile(TILE_SOURCE, TILE_2, new ByteArrayInputStream(shared), null));
+		} finally {
+			writer.onDetach();
+		}
+
+		final DatabaseFileArchive archive = DatabaseFileArchive.getDatabaseFileArchive(
+				new File(Configuration.getInstance().getOsmdroidTileCache(), SqlTileWriter.DATABASE_FILENAME));
+		try {
+			assertTrue(Arrays.equals(shared, archive.getImage(TILE_SOURCE, TILE_1)));
+			assertNotNull(archive.getInputStream(TILE_SOURCE, TILE_2));
+			assertNull(archive.getImage(TILE_SOURCE, TILE_3));
+			final MapTileList list = new MapTileList();
+			list.put(TILE_1);
+			list.put(TILE_2);
+			list.put(TILE_3);
+			final LongHashMap<byte[]> images = archive.getImages(TILE_SOURCE, list);
+			assertEquals(2, images.size());
+			assertTrue(Arrays.equals(shared, images.get(TILE_2)));
+		} finally {
+			archive.close();
+		}
+	}
+
+	/**
+	 * The coverage of a cache read as an archive is the bounding box of its tiles, per zoom level
+	 */
+	public void test_archive_coverage() throws Exception {
+		Configuration.getInstance().setTileFileSystemCacheWriteBatchSize((short) 1);
+		SqlTileWriter.hasMigrated = true;
+		final long tile4 = MapTileIndex.getTileIndex(10, 101, 190);
+		final long tile5 = MapTileIndex.getTileIndex(12, 400, 800);
+		final SqlTileWriter writer = new SqlTileWriter();
+		try {
+			for (final long tile : new long[]{TILE_1, TILE_3, tile4, tile5}) {
+				assertTrue(writer.saveFile(TILE_SOURCE, tile, new ByteArrayInputStream(getBytes(tile)), null));
+			}
+		} finally {
+			writer.onDetach();
+		}
+
+		final DatabaseFileArchive archive = DatabaseFileArchive.getDatabaseFileArchive(
+				new File(Configuration.getInstance().getOsmdroidTileCache(), SqlTileWriter.DATABASE_FILENAME));
+		try {
+			final ArchiveCoverage coverage = archive.getCoverage(TILE_SOURCE);
+			assertNotNull(coverage);
+			assertTrue(coverage.contains(TILE_2));
+			assertTrue(coverage.contains(MapTileIndex.getTileIndex(10, 102, 190)));
+			assertFalse(coverage.contains(MapTileIndex.getTileIndex(10, 101, 189)));
+			assertFalse(coverage.contains(MapTileIndex.getTileIndex(10, 101, 201)));
+			assertFalse(coverage.contains(MapTileIndex.getTileIndex(10, 103, 200)));
+			assertTrue(coverage.contains(tile5));
+			assertFalse(coverage.contains(MapTileIndex.getTileIndex(12, 400, 801)));
+			assertFalse(coverage.hasZoom(11));
+		} finally {
+			archive.close();
+		}
+	}
+
+	private long count(final SQLiteDatabase pDatabase, final String pTable, final String pWhere) {
+		return DatabaseUtils.queryNumEntries(pDatabase, pTable, pWhere);
+	}
+
+	private long getRefs(final SQLiteDatabase pDatabase, final byte[] pBytes) throws Exception {
+		final Cursor cursor = pDatabase.query(SqlTileWriter.TABLE_BLOBS, new String[]{SqlTileWriter.COLUMN_REFS},
+				SqlTileWriter.COLUMN_HASH + " = x'" + toHex(MessageDigest.getInstance("SHA-1").digest(pBytes)) + "'",
+				null, null, null, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private String toHex(final byte[] pBytes) {
+		final StringBuilder result = new StringBuilder();
+		for (final byte b : pBytes) {
+			result.append(String.format("%02x", b & 0xff));
+		}
+		return result.toString();
+	}
+
+	private long getLastAccess(final TestSqlTileWriter pWriter, final long pMapTileIndex) {
+		final Cursor cursor = pWriter.getTileCursor(
+				SqlTileWriter.getPrimaryKeyParameters(SqlTileWriter.getIndex(pMapTileIndex), TILE_SOURCE),
+				new String[]{SqlTileWriter.COLUMN_LAST_ACCESS});
+		try {
+			assertTrue(cursor.moveToFirst());
+			return cursor.getLong(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private long getUsedBytes(final SQLiteDatabase pDatabase) {
+		final long pageCount = DatabaseUtils.longForQuery(pDatabase, "PRAGMA page_count", null);
+		final long freePageCount = DatabaseUtils.longForQuery(pDatabase, "PRAGMA freelist_count", null);
+		return (pageCount - freePageCount) * pDatabase.getPageSize();
+	}
+
+	private boolean save(final SqlTileWriter pWriter, final ITileSource pTileSource, final long pMapTileIndex) {
+		return pWriter.saveFile(pTileSource, pMapTileIndex, new ByteArrayInputStream(getBytes(pMapTileIndex)), null);
+	}
+
+	/**
+	 * Distinct data for each tile
+	 */
+	private byte[] getBytes(final long pMapTileIndex) {
+		return MapTileIndex.toString(pMapTileIndex).getBytes();
+	}
+}
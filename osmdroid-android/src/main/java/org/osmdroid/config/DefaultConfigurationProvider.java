@@ -40,12 +40,21 @@ public class DefaultConfigurationProvider implements IConfigurationProvider {
     protected String userAgentHttpHeader = "User-Agent";
     private final Map<String, String> mAdditionalHttpRequestProperties = new HashMap<>();
     protected short cacheMapTileCount = 9;
+    protected long cacheMapTileMaxBytes = 0;
     protected short tileDownloadThreads = 2;
     protected short tileFileSystemThreads = 8;
+    protected short tileSharedThreads = 0;
+    protected short tileDownloadMaxConnectionsPerHost = 2;
+    protected long tileDownloadNotFoundDuration = 60 * 60 * 1000;
+    protected short tileFlingPrefetchBorder = 1;
     protected short tileDownloadMaxQueueSize = 40;
     protected short tileFileSystemMaxQueueSize = 40;
     protected long tileFileSystemCacheMaxBytes = 600L * 1024 * 1024;
     protected long tileFileSystemCacheTrimBytes = 500L * 1024 * 1024;
+    protected short tileFileSystemCacheWriteBatchSize = 1;
+    protected long tileFileSystemCacheWriteBatchDelay = 500;
+    protected boolean tileFileSystemCacheWriteAheadLogging = false;
+    protected boolean tileFileSystemCacheDeduplication = false;
     protected SimpleDateFormat httpHeaderDateTimeFormat = new SimpleDateFormat(HTTP_EXPIRES_HEADER_FORMAT, Locale.US);
     protected File osmdroidBasePath;
     protected File osmdroidTileCache;
@@ -150,6 +159,16 @@ public class DefaultConfigurationProvider implements IConfigurationProvider {
         this.cacheMapTileCount = cacheMapTileCount;
     }
 
+    @Override
+    public long getCacheMapTileMaxBytes() {
+        return cacheMapTileMaxBytes;
+    }
+
+    @Override
+    public void setCacheMapTileMaxBytes(long cacheMapTileMaxBytes) {
+        this.cacheMapTileMaxBytes = cacheMapTileMaxBytes;
+    }
+
     @Override
     public short getTileDownloadThreads() {
         return tileDownloadThreads;
@@ -170,6 +189,46 @@ public class DefaultConfigurationProvider implements IConfigurationProvider {
         this.tileFileSystemThreads = tileFileSystemThreads;
     }
 
+    @Override
+    public short getTileSharedThreads() {
+        return tileSharedThreads;
+    }
+
+    @Override
+    public void setTileSharedThreads(short tileSharedThreads) {
+        this.tileSharedThreads = tileSharedThreads;
+    }
+
+    @Override
+    public short getTileDownloadMaxConnectionsPerHost() {
+        return tileDownloadMaxConnectionsPerHost;
+    }
+
+    @Override
+    public void setTileDownloadMaxConnectionsPerHost(short tileDownloadMaxConnectionsPerHost) {
+        this.tileDownloadMaxConnectionsPerHost = tileDownloadMaxConnectionsPerHost;
+    }
+
+    @Override
+    public long getTileDownloadNotFoundDuration() {
+        return tileDownloadNotFoundDuration;
+    }
+
+    @Override
+    public void setTileDownloadNotFoundDuration(long tileDownloadNotFoundDuration) {
+        this.tileDownloadNotFoundDuration = tileDownloadNotFoundDuration;
+    }
+
+    @Override
+    public short getTileFlingPrefetchBorder() {
+        return tileFlingPrefetchBorder;
+    }
+
+    @Override
+    public void setTileFlingPrefetchBorder(short tileFlingPrefetchBorder) {
+        this.tileFlingPrefetchBorder = tileFlingPrefetchBorder;
+    }
+
     @Override
     public short getTileDownloadMaxQueueSize() {
         return tileDownloadMaxQueueSize;
@@ -210,6 +269,46 @@ public class DefaultConfigurationProvider implements IConfigurationProvider {
         this.tileFileSystemCacheTrimBytes = tileFileSystemCacheTrimBytes;
     }
 
+    @Override
+    public short getTileFileSystemCacheWriteBatchSize() {
+        return tileFileSystemCacheWriteBatchSize;
+    }
+
+    @Override
+    public void setTileFileSystemCacheWriteBatchSize(short tileFileSystemCacheWriteBatchSize) {
+        this.tileFileSystemCacheWriteBatchSize = tileFileSystemCacheWriteBatchSize;
+    }
+
+    @Override
+    public long getTileFileSystemCacheWriteBatchDelay() {
+        return tileFileSystemCacheWriteBatchDelay;
+    }
+
+    @Override
+    public void setTileFileSystemCacheWriteBatchDelay(long tileFileSystemCacheWriteBatchDelay) {
+        this.tileFileSystemCacheWriteBatchDelay = tileFileSystemCacheWriteBatchDelay;
+    }
+
+    @Override
+    public boolean isTileFileSystemCacheWriteAheadLogging() {
+        return tileFileSystemCacheWriteAheadLogging;
+    }
+
+    @Override
+    public void setTileFileSystemCacheWriteAheadLogging(boolean tileFileSystemCacheWriteAheadLogging) {
+        this.tileFileSystemCacheWriteAheadLogging = tileFileSystemCacheWriteAheadLogging;
+    }
+
+    @Override
+    public boolean isTileFileSystemCacheDeduplication() {
+        return tileFileSystemCacheDeduplication;
+    }
+
+    @Override
+    public void setTileFileSystemCacheDeduplication(boolean tileFileSystemCacheDeduplication) {
+        this.tileFileSystemCacheDeduplication = tileFileSystemCacheDeduplication;
+    }
+
     @Override
     public SimpleDateFormat getHttpHeaderDateTimeFormat() {
         return httpHeaderDateTimeFormat;
@@ -317,10 +416,19 @@ public class DefaultConfigurationProvider implements IConfigurationProvider {
             setUserAgentValue(prefs.getString("osmdroid.userAgentValue", ctx.getPackageName()));
             load(prefs, mAdditionalHttpRequestProperties, "osmdroid.additionalHttpRequestProperty.");
             setGpsWaitTime(prefs.getLong("osmdroid.gpsWaitTime", gpsWaitTime));
+            setCacheMapTileMaxBytes(prefs.getLong("osmdroid.cacheMapTileMaxBytes", cacheMapTileMaxBytes));
             setTileDownloadThreads((short)(prefs.getInt("osmdroid.tileDownloadThreads", tileDownloadThreads)));
             setTileFileSystemThreads((short)(prefs.getInt("osmdroid.tileFileSystemThreads", tileFileSystemThreads)));
+            setTileSharedThreads((short)(prefs.getInt("osmdroid.tileSharedThreads", tileSharedThreads)));
+            setTileDownloadMaxConnectionsPerHost((short)(prefs.getInt("osmdroid.tileDownloadMaxConnectionsPerHost", tileDownloadMaxConnectionsPerHost)));
+            setTileDownloadNotFoundDuration(prefs.getLong("osmdroid.tileDownloadNotFoundDuration", tileDownloadNotFoundDuration));
+            setTileFlingPrefetchBorder((short)(prefs.getInt("osmdroid.tileFlingPrefetchBorder", tileFlingPrefetchBorder)));
             setTileDownloadMaxQueueSize((short)(prefs.getInt("osmdroid.tileDownloadMaxQueueSize", tileDownloadMaxQueueSize)));
             setTileFileSystemMaxQueueSize((short)(prefs.getInt("osmdroid.tileFileSystemMaxQueueSize", tileFileSystemMaxQueueSize)));
+            setTileFileSystemCacheWriteBatchSize((short)(prefs.getInt("osmdroid.tileFileSystemCacheWriteBatchSize", tileFileSystemCacheWriteBatchSize)));
+            setTileFileSystemCacheWriteBatchDelay(prefs.getLong("osmdroid.tileFileSystemCacheWriteBatchDelay", tileFileSystemCacheWriteBatchDelay));
+            setTileFileSystemCacheWriteAheadLogging(prefs.getBoolean("osmdroid.tileFileSystemCacheWriteAheadLogging", tileFileSystemCacheWriteAheadLogging));
+            setTileFileSystemCacheDeduplication(prefs.getBoolean("osmdroid.tileFileSystemCacheDeduplication", tileFileSystemCacheDeduplication));
             setExpirationExtendedDuration((long)prefs.getLong("osmdroid.ExpirationExtendedDuration", expirationAdder));
             setMapViewRecyclerFriendly((boolean)prefs.getBoolean("osmdroid.mapViewRecycler", mapViewRecycler));
             setAnimationSpeedDefault(prefs.getInt("osmdroid.ZoomSpeedDefault", animationSpeedDefault));
@@ -374,10 +482,19 @@ public class DefaultConfigurationProvider implements IConfigurationProvider {
         save(prefs, edit, mAdditionalHttpRequestProperties, "osmdroid.additionalHttpRequestProperty.");
         edit.putLong("osmdroid.gpsWaitTime",gpsWaitTime);
         edit.putInt("osmdroid.cacheMapTileCount", cacheMapTileCount);
+        edit.putLong("osmdroid.cacheMapTileMaxBytes", cacheMapTileMaxBytes);
         edit.putInt("osmdroid.tileDownloadThreads", tileDownloadThreads);
         edit.putInt("osmdroid.tileFileSystemThreads",tileFileSystemThreads);
+        edit.putInt("osmdroid.tileSharedThreads",tileSharedThreads);
+        edit.putInt("osmdroid.tileDownloadMaxConnectionsPerHost",tileDownloadMaxConnectionsPerHost);
+        edit.putLong("osmdroid.tileDownloadNotFoundDuration",tileDownloadNotFoundDuration);
+        edit.putInt("osmdroid.tileFlingPrefetchBorder",tileFlingPrefetchBorder);
         edit.putInt("osmdroid.tileDownloadMaxQueueSize",tileDownloadMaxQueueSize);
         edit.putInt("osmdroid.tileFileSystemMaxQueueSize",tileFileSystemMaxQueueSize);
+        edit.putInt("osmdroid.tileFileSystemCacheWriteBatchSize",tileFileSystemCacheWriteBatchSize);
+        edit.putLong("osmdroid.tileFileSystemCacheWriteBatchDelay",tileFileSystemCacheWriteBatchDelay);
+        edit.putBoolean("osmdroid.tileFileSystemCacheWriteAheadLogging",tileFileSystemCacheWriteAheadLogging);
+        edit.putBoolean("osmdroid.tileFileSystemCacheDeduplication",tileFileSystemCacheDeduplication);
         edit.putLong("osmdroid.ExpirationExtendedDuration",expirationAdder);
         if (expirationOverride!=null)
             edit.putLong("osmdroid.ExpirationOverride",expirationOverride);
@@ -144,6 +144,23 @@ public interface IConfigurationProvider {
      */
     void setCacheMapTileCount(short cacheMapTileCount);
 
+    /**
+     * Byte budget of the in memory tile cache, computed from the tiles' bitmap byte counts.
+     * If greater than 0, it is used instead of the tile count; default is 0 (tile count).
+     * {@link MapTileCache#getMaximumBytesFromMemoryClass(android.content.Context, float)}
+     * gives a budget based on the device's memory class.
+     *
+     * @since 6.0.2
+     * @see MapTileCache
+     */
+    long getCacheMapTileMaxBytes();
+
+    /**
+     * @since 6.0.2
+     * @see #getCacheMapTileMaxBytes()
+     */
+    void setCacheMapTileMaxBytes(long cacheMapTileMaxBytes);
+
     /**
      * number of tile download threads, conforming to OSM policy:
      * http://wiki.openstreetmap.org/wiki/Tile_usage_policy
@@ -167,6 +184,62 @@ public interface IConfigurationProvider {
      */
     void setTileFileSystemThreads(short tileFileSystemThreads);
 
+    /**
+     * Number of threads of the executor shared by all the tile module providers.
+     * If 0 (the default), each tile module provider has its own thread pool.
+     * Otherwise the tile module providers are stages of the same thread pool, each limited to
+     * its own thread count (e.g. {@link #getTileDownloadThreads()})
+     * @since 6.0.2
+     * @see org.osmdroid.tileprovider.modules.MapTileSharedExecutor
+     */
+    short getTileSharedThreads();
+
+    /**
+     * @since 6.0.2
+     * @see #getTileSharedThreads()
+     */
+    void setTileSharedThreads(short tileSharedThreads);
+
+    /**
+     * Maximum number of tile downloads in progress at the same time on a given host,
+     * whatever the number of download threads. Default is 2.
+     * @since 6.0.2
+     * @see org.osmdroid.tileprovider.modules.HttpUrlConnectionTransport
+     */
+    short getTileDownloadMaxConnectionsPerHost();
+
+    /**
+     * @since 6.0.2
+     * @see #getTileDownloadMaxConnectionsPerHost()
+     */
+    void setTileDownloadMaxConnectionsPerHost(short tileDownloadMaxConnectionsPerHost);
+
+    /**
+     * How long in ms a tile the server answered 404 for is not requested again. Default is 1 hour.
+     * @since 6.0.2
+     */
+    long getTileDownloadNotFoundDuration();
+
+    /**
+     * @since 6.0.2
+     * @see #getTileDownloadNotFoundDuration()
+     */
+    void setTileDownloadNotFoundDuration(long tileDownloadNotFoundDuration);
+
+    /**
+     * When the map is flung, its final viewport is known right away: its tiles are requested
+     * at once, after the displayed tiles, plus that number of rows and columns of tiles around it.
+     * Default is 1; a negative value disables the fling prefetch.
+     * @since 6.0.2
+     */
+    short getTileFlingPrefetchBorder();
+
+    /**
+     * @since 6.0.2
+     * @see #getTileFlingPrefetchBorder()
+     */
+    void setTileFlingPrefetchBorder(short tileFlingPrefetchBorder);
+
     short getTileDownloadMaxQueueSize();
 
     void setTileDownloadMaxQueueSize(short tileDownloadMaxQueueSize);
@@ -191,6 +264,63 @@ public interface IConfigurationProvider {
 
     void setTileFileSystemCacheTrimBytes(long tileFileSystemCacheTrimBytes);
 
+    /**
+     * Tiles saved to the sqlite cache are queued and written in a single transaction
+     * every that number of tiles, or every {@link #getTileFileSystemCacheWriteBatchDelay()} ms.
+     * Default is 1: each tile is written at once, in the calling thread, as before 6.0.2.
+     * A batch that cannot be written is written again tile by tile, so that a bad tile only loses itself;
+     * queued tiles are lost if the process is killed before they are written. 50 is a sensible value.
+     * @since 6.0.2
+     */
+    short getTileFileSystemCacheWriteBatchSize();
+
+    /**
+     * @since 6.0.2
+     * @see #getTileFileSystemCacheWriteBatchSize()
+     */
+    void setTileFileSystemCacheWriteBatchSize(short tileFileSystemCacheWriteBatchSize);
+
+    /**
+     * Maximum time in ms a tile saved to the sqlite cache waits in the queue before being written.
+     * Default is 500 ms.
+     * @since 6.0.2
+     * @see #getTileFileSystemCacheWriteBatchSize()
+     */
+    long getTileFileSystemCacheWriteBatchDelay();
+
+    /**
+     * @since 6.0.2
+     * @see #getTileFileSystemCacheWriteBatchDelay()
+     */
+    void setTileFileSystemCacheWriteBatchDelay(long tileFileSystemCacheWriteBatchDelay);
+
+    /**
+     * If true, the sqlite cache uses write-ahead logging (API 11+), so that reads are not blocked
+     * while tiles are written. Default is false. Only read when the cache database is opened.
+     * @since 6.0.2
+     */
+    boolean isTileFileSystemCacheWriteAheadLogging();
+
+    /**
+     * @since 6.0.2
+     * @see #isTileFileSystemCacheWriteAheadLogging()
+     */
+    void setTileFileSystemCacheWriteAheadLogging(boolean tileFileSystemCacheWriteAheadLogging);
+
+    /**
+     * If true, the sqlite cache stores identical tiles (e.g. sea, blank tiles) only once, indexed by
+     * the hash of their content, and tiles already in the cache are migrated in the background.
+     * Default is false. Only read when the cache database is opened.
+     * @since 6.0.2
+     */
+    boolean isTileFileSystemCacheDeduplication();
+
+    /**
+     * @since 6.0.2
+     * @see #isTileFileSystemCacheDeduplication()
+     */
+    void setTileFileSystemCacheDeduplication(boolean tileFileSystemCacheDeduplication);
+
     SimpleDateFormat getHttpHeaderDateTimeFormat();
 
     void setHttpHeaderDateTimeFormat(SimpleDateFormat httpHeaderDateTimeFormat);
@@ -1,8 +1,10 @@
 package org.osmdroid.tileprovider;
 
-import java.util.LinkedList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -12,14 +14,48 @@ import android.os.Build;
 
 import org.osmdroid.tileprovider.modules.ConfigurablePriorityThreadFactory;
 
+/**
+ * Pool of bitmaps to be reused when decoding or computing tiles.
+ * Since 6.0.2 the bitmaps are stored in buckets keyed by width, height and {@link Bitmap.Config},
+ * so that getting a bitmap of a given size is O(1), and the pool is capped in bytes:
+ * beyond {@link #getMaxBytes()} the oldest bitmaps are recycled (cf. {@link SizeBucketedPool}).
+ */
 public class BitmapPool {
 
-	private final LinkedList<Bitmap> mPool = new LinkedList<>();
-	private final ExecutorService mExecutor = Executors.newFixedThreadPool(1,
-			new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, getClass().getName()));
+	/**
+	 * The pooled bitmaps, by width, height and config
+	 * @since 6.0.2
+	 */
+	private final SizeBucketedPool<Bitmap> mPool = new SizeBucketedPool<Bitmap>(Runtime.getRuntime().maxMemory() / 8) {
+		@Override
+		protected boolean isRecycled(final Bitmap pBitmap) {
+			return pBitmap.isRecycled();
+		}
+
+		@Override
+		protected void recycle(final Bitmap pBitmap) {
+			pBitmap.recycle();
+		}
+	};
+
+	private final Executor mExecutor;
+	/** drawables to be recycled by {@link #mDrainTask} */
+	private final ConcurrentLinkedQueue<Drawable> mRecycleQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
 
 	//singleton: begin
-	private BitmapPool() {}
+	private BitmapPool() {
+		this(Executors.newFixedThreadPool(1,
+				new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, BitmapPool.class.getName())));
+	}
+
+	/**
+	 * @param pExecutor runs the task that drains the recycle queue
+	 * @since 6.0.2
+	 */
+	BitmapPool(final Executor pExecutor) {
+		mExecutor = pExecutor;
+	}
 
 	private static final BitmapPool sInstance = new BitmapPool();
 
@@ -31,9 +67,17 @@ public class BitmapPool {
 	public void returnDrawableToPool(ReusableBitmapDrawable drawable) {
 		Bitmap b = drawable.tryRecycle();
 		if (b != null && b.isMutable())
-			synchronized (mPool) {
-				mPool.addLast(b);
-			}
+			returnBitmapToPool(b);
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	public void returnBitmapToPool(final Bitmap pBitmap) {
+		if (pBitmap == null || pBitmap.isRecycled()) {
+			return;
+		}
+		mPool.put(pBitmap, getKey(pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getConfig()), getByteCount(pBitmap));
 	}
 
 	public void applyReusableOptions(final BitmapFactory.Options aBitmapOptions) {
@@ -44,70 +88,177 @@ public class BitmapPool {
 		}
 	}
 
-	public Bitmap obtainBitmapFromPool() {
-		synchronized (mPool) {
-			if (mPool.isEmpty()) {
-				return null;
-			} else {
-				final Bitmap bitmap = mPool.removeFirst();
-				if (bitmap.isRecycled()) {
-					return obtainBitmapFromPool(); // recurse
-				} else {
-					return bitmap;
-				}
-			}
+	/**
+	 * Same as {@link #applyReusableOptions(BitmapFactory.Options)}, but only reuses a bitmap
+	 * of the expected size, as decoding into a bitmap of another size fails before KitKat
+	 * @since 6.0.2
+	 */
+	public void applyReusableOptions(final BitmapFactory.Options aBitmapOptions,
+									 final int pWidth, final int pHeight) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			aBitmapOptions.inBitmap = obtainSizedBitmapFromPool(pWidth, pHeight);
+			aBitmapOptions.inSampleSize = 1;
+			aBitmapOptions.inMutable = true;
 		}
 	}
 
+	/**
+	 * @return the most recently pooled bitmap, whatever its size
+	 */
+	public Bitmap obtainBitmapFromPool() {
+		return mPool.obtainNewest();
+	}
+
 	public Bitmap obtainSizedBitmapFromPool(final int aWidth, final int aHeight) {
-		synchronized (mPool) {
-			if (mPool.isEmpty()) {
-				return null;
-			} else {
-				for (final Bitmap bitmap : mPool) {
-					if (bitmap.isRecycled()) {
-						mPool.remove(bitmap);
-						return obtainSizedBitmapFromPool(aWidth, aHeight); // recurse to prevent ConcurrentModificationException
-					} else if (bitmap.getWidth() == aWidth && bitmap.getHeight() == aHeight) {
-						mPool.remove(bitmap);
-						return bitmap;
-					}
-				}
-			}
-		}
+		return obtainSizedBitmapFromPool(aWidth, aHeight, Bitmap.Config.ARGB_8888);
+	}
 
-		return null;
+	/**
+	 * @since 6.0.2
+	 */
+	public Bitmap obtainSizedBitmapFromPool(final int pWidth, final int pHeight, final Bitmap.Config pConfig) {
+		return mPool.obtain(getKey(pWidth, pHeight, pConfig));
 	}
 
 	public void clearBitmapPool() {
-		synchronized (sInstance.mPool) {
-			while (!sInstance.mPool.isEmpty()) {
-				Bitmap bitmap = sInstance.mPool.remove();
-				bitmap.recycle();
-			}
+		mPool.clear();
+	}
+
+	/**
+	 * Maximum memory used by the pooled bitmaps; the oldest bitmaps are recycled beyond that.
+	 * Default is 1/8th of the max heap.
+	 * @since 6.0.2
+	 */
+	public void setMaxBytes(final long pMaxBytes) {
+		mPool.setMaxBytes(pMaxBytes);
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	public long getMaxBytes() {
+		return mPool.getMaxBytes();
+	}
+
+	/**
+	 * @return the memory used by the pooled bitmaps
+	 * @since 6.0.2
+	 */
+	public long getBytes() {
+		return mPool.getBytes();
+	}
+
+	/**
+	 * @return the number of pooled bitmaps
+	 * @since 6.0.2
+	 */
+	public int getSize() {
+		return mPool.getSize();
+	}
+
+	/**
+	 * @return the number of requests that were served with a pooled bitmap
+	 * @since 6.0.2
+	 */
+	public long getHitCount() {
+		return mPool.getHitCount();
+	}
+
+	/**
+	 * @return the number of requests that found no matching pooled bitmap
+	 * @since 6.0.2
+	 */
+	public long getMissCount() {
+		return mPool.getMissCount();
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	public void resetCounters() {
+		mPool.resetCounters();
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private static long getKey(final int pWidth, final int pHeight, final Bitmap.Config pConfig) {
+		return (((long) pWidth) << 32) | (((long) pHeight) << 8) | (pConfig == null ? 0xFF : pConfig.ordinal());
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private static int getByteCount(final Bitmap pBitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return pBitmap.getAllocationByteCount();
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+			return pBitmap.getByteCount();
 		}
+		return pBitmap.getRowBytes() * pBitmap.getHeight();
 	}
 
 	/**
 	 * @since 6.0.0
 	 * The same code was duplicated in many places: now there's a unique entry point and it's async
+	 * Since 6.0.2 the drawables are queued without allocating a task for each of them,
+	 * and a single task drains the queue in a batch.
 	 */
 	public void asyncRecycle(final Drawable pDrawable) {
 		if (pDrawable == null) {
 			return;
 		}
-		mExecutor.execute(new Runnable() {
-			@Override
-			public void run() {
-				syncRecycle(pDrawable);
-			}
-		});
+		mRecycleQueue.offer(pDrawable);
+		scheduleDrain();
+	}
+
+	/**
+	 * Recycles synchronously all the drawables queued by {@link #asyncRecycle(Drawable)},
+	 * e.g. when memory is low and the bitmaps are needed right away
+	 * @since 6.0.2
+	 */
+	public void drainRecycleQueue() {
+		Drawable drawable;
+		while ((drawable = mRecycleQueue.poll()) != null) {
+			syncRecycle(drawable);
+		}
 	}
 
 	/**
+	 * @since 6.0.2
+	 */
+	private void scheduleDrain() {
+		if (!mDrainScheduled.compareAndSet(false, true)) {
+			return; // the pending task will take care of this drawable
+		}
+		try {
+			mExecutor.execute(mDrainTask);
+		} catch (final RejectedExecutionException e) {
+			mDrainScheduled.set(false);
+		}
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private final Runnable mDrainTask = new Runnable() {
+		@Override
+		public void run() {
+			drainRecycleQueue();
+			mDrainScheduled.set(false);
+			// a drawable may have been queued between the last poll and the reset of the flag
+			if (!mRecycleQueue.isEmpty()) {
+				scheduleDrain();
+			}
+		}
+	};
+
+	/**
+	 * Public since 6.0.2, for callers that need to recycle synchronously
 	 * @since 6.0.0
 	 */
-	private void syncRecycle(final Drawable pDrawable) {
+	public void syncRecycle(final Drawable pDrawable) {
 		if (pDrawable == null) {
 			return;
 		}
@@ -0,0 +1,175 @@
+package org.osmdroid.tileprovider;
+
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Pool of byte arrays used as download buffers, so that the data of a tile is read once into a
+ * reused array, then both written to the cache and decoded from that same array.
+ * The arrays are stored in buckets of power-of-two sizes, and the pool is capped in bytes.
+ * @since 6.0.2
+ */
+public class ByteArrayPool {
+
+	private static final int MIN_BUCKET = 12; // 4 KB
+	private static final int MAX_BUCKET = 20; // 1 MB
+
+	/** arrays of 2^(MIN_BUCKET + i) bytes, newest last */
+	private final ArrayList<ArrayList<byte[]>> mBuckets = new ArrayList<>();
+	private long mBytes;
+	private long mMaxBytes = 2 * 1024 * 1024;
+	private long mHitCount;
+	private long mMissCount;
+
+	//singleton: begin
+	private static final ByteArrayPool sInstance = new ByteArrayPool();
+
+	public static ByteArrayPool getInstance() {
+		return sInstance;
+	}
+	//singleton: end
+
+	/**
+	 * Public for tests; the shared instance is {@link #getInstance()}
+	 */
+	public ByteArrayPool() {
+		for (int i = MIN_BUCKET ; i <= MAX_BUCKET ; i ++) {
+			mBuckets.add(new ArrayList<byte[]>());
+		}
+	}
+
+	/**
+	 * @return an array of at least that length, pooled or new
+	 */
+	public byte[] obtain(final int pMinLength) {
+		final int bucket = getBucket(pMinLength);
+		if (bucket > MAX_BUCKET) {
+			return new byte[pMinLength];
+		}
+		synchronized (mBuckets) {
+			final ArrayList<byte[]> list = mBuckets.get(bucket - MIN_BUCKET);
+			if (!list.isEmpty()) {
+				final byte[] result = list.remove(list.size() - 1);
+				mBytes -= result.length;
+				mHitCount ++;
+				return result;
+			}
+			mMissCount ++;
+		}
+		return new byte[1 << bucket];
+	}
+
+	/**
+	 * Gives an array back to the pool; it must not be used any more by the caller.
+	 * Arrays that were not obtained from a pool are ignored.
+	 */
+	public void release(final byte[] pArray) {
+		if (pArray == null) {
+			return;
+		}
+		final int bucket = getBucket(pArray.length);
+		if (bucket > MAX_BUCKET || pArray.length != 1 << bucket) {
+			return;
+		}
+		synchronized (mBuckets) {
+			if (mBytes + pArray.length > mMaxBytes) {
+				return;
+			}
+			mBuckets.get(bucket - MIN_BUCKET).add(pArray);
+			mBytes += pArray.length;
+		}
+	}
+
+	/**
+	 * @return an array of at least pMinLength bytes, starting with the first pLength bytes of pArray,
+	 * which is released
+	 */
+	public byte[] grow(final byte[] pArray, final int pLength, final int pMinLength) {
+		final byte[] result = obtain(pMinLength);
+		System.arraycopy(pArray, 0, result, 0, pLength);
+		release(pArray);
+		return result;
+	}
+
+	/**
+	 * Reads a stream to the end into a pooled array
+	 * @param pExpectedLength Expected number of bytes (e.g. from Content-Length), or a negative value if unknown
+	 * @param pLength Returns the number of bytes read, in pLength[0]
+	 * @return the pooled array that contains the data, to be released by the caller
+	 */
+	public byte[] read(final InputStream pInputStream, final int pExpectedLength, final int[] pLength) throws IOException {
+		// one more byte than expected in order to detect the end of the stream without growing
+		byte[] buffer = obtain(pExpectedLength >= 0 ? pExpectedLength + 1 : StreamUtils.IO_BUFFER_SIZE);
+		int length = 0;
+		try {
+			int read;
+			while ((read = pInputStream.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+				if (length == buffer.length) {
+					buffer = grow(buffer, length, 2 * length);
+				}
+			}
+		} catch (final IOException e) {
+			release(buffer);
+			throw e;
+		}
+		pLength[0] = length;
+		return buffer;
+	}
+
+	/**
+	 * Maximum memory used by the pooled arrays; arrays released beyond that are left to the GC.
+	 * Default is 2 MB.
+	 */
+	public void setMaxBytes(final long pMaxBytes) {
+		synchronized (mBuckets) {
+			mMaxBytes = pMaxBytes;
+			for (final ArrayList<byte[]> list : mBuckets) {
+				while (mBytes > mMaxBytes && !list.isEmpty()) {
+					mBytes -= list.remove(list.size() - 1).length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the memory used by the pooled arrays
+	 */
+	public long getBytes() {
+		synchronized (mBuckets) {
+			return mBytes;
+		}
+	}
+
+	/**
+	 * @return the number of requests that were served with a pooled array
+	 */
+	public long getHitCount() {
+		synchronized (mBuckets) {
+			return mHitCount;
+		}
+	}
+
+	/**
+	 * @return the number of requests that needed a new array
+	 */
+	public long getMissCount() {
+		synchronized (mBuckets) {
+			return mMissCount;
+		}
+	}
+
+	/**
+	 * @return the smallest power of two that is at least the length, as an exponent
+	 */
+	private static int getBucket(final int pLength) {
+		int result = MIN_BUCKET;
+		while (result <= MAX_BUCKET && (1 << result) < pLength) {
+			result ++;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,20 @@
+package org.osmdroid.tileprovider;
+
+/**
+ * An {@link IMapTileProviderCallback} that is told when a request is dropped because the tile
+ * is not wanted any more. Optional: the other callbacks get
+ * {@link IMapTileProviderCallback#mapTileRequestFailedExceedsMaxQueueSize(MapTileRequestState)} instead,
+ * as for any other request dropped from the queue.
+ *
+ * @since 6.0.2
+ */
+public interface ICancellableMapTileProviderCallback extends IMapTileProviderCallback {
+
+	/**
+	 * The map tile request has been cancelled, because the tile is not wanted any more.
+	 *
+	 * @param aState
+	 *            a state object
+	 */
+	void mapTileRequestCancelled(MapTileRequestState aState);
+}
@@ -0,0 +1,21 @@
+package org.osmdroid.tileprovider;
+
+/**
+ * An {@link IMapTileProviderCallback} that is told when the server confirmed an expired tile
+ * as still valid. Optional: the other callbacks get
+ * {@link IMapTileProviderCallback#mapTileRequestFailed(MapTileRequestState)} instead,
+ * as no new tile was produced.
+ *
+ * @since 6.0.2
+ */
+public interface IRevalidatingMapTileProviderCallback extends IMapTileProviderCallback {
+
+	/**
+	 * The server confirmed that the expired tile is still valid (HTTP 304):
+	 * the tile already loaded is up to date again, nothing new to decode.
+	 *
+	 * @param aState
+	 *            a state object
+	 */
+	void mapTileRequestNotModified(MapTileRequestState aState);
+}
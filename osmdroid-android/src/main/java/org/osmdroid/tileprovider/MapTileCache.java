@@ -3,13 +3,18 @@ package org.osmdroid.tileprovider;
 
 import org.osmdroid.api.IMapView;
 import org.osmdroid.config.Configuration;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
 import org.osmdroid.util.MapTileList;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.Log;
 
-import java.util.HashMap;
-
 /**
  * In memory cache of tiles
  * @author Nicolas Gramlich
@@ -20,6 +25,18 @@ public class MapTileCache {
 	// Constants
 	// ===========================================================
 
+	/**
+	 * Eviction score of a zoom level of difference with the displayed tiles, in tiles
+	 * @since 6.0.2
+	 */
+	private static final float ZOOM_DISTANCE_WEIGHT = 4;
+
+	/**
+	 * Eviction score of a garbage collection (typically a frame) without access, in tiles
+	 * @since 6.0.2
+	 */
+	private static final float AGE_WEIGHT = 0.1f;
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
@@ -33,7 +50,11 @@ public class MapTileCache {
 	}
 
 	private TileRemovedListener mTileRemovedListener;
-	private final HashMap<Long, Drawable> mCachedTiles = new HashMap<>();
+	/**
+	 * Primitive keys: no boxing of tile indices for each lookup during a frame
+	 * @since 6.0.2
+	 */
+	private final LongHashMap<CachedTile> mCachedTiles = new LongHashMap<>();
 	/**
 	 * Tiles currently displayed
 	 */
@@ -43,18 +64,48 @@ public class MapTileCache {
 	 */
 	private final MapTileList mAdditionalMapTileList = new MapTileList();
 	/**
-	 * Tiles currently in the cache, without the concurrency side effects
+	 * Eviction candidates and their scores, sorted by decreasing score
+	 * @since 6.0.2
+	 */
+	private long[] mCandidates = new long[0];
+	private float[] mCandidateScores = new float[0];
+	private int mCandidateCount;
+
+	/**
+	 * Incremented at each garbage collection, stored in the tiles when they are accessed
+	 * @since 6.0.2
+	 */
+	private int mGeneration;
+
+	/**
+	 * Center of the displayed tiles, in tiles at the zoom level of the displayed tiles
+	 * @since 6.0.2
 	 */
-	private final MapTileList mGC = new MapTileList();
+	private int mCenterZoom = -1;
+	private double mCenterX;
+	private double mCenterY;
 
 	private int mCapacity;
 
+	/**
+	 * Byte budget; if > 0, used instead of the tile count capacity
+	 * @since 6.0.2
+	 */
+	private long mMaximumBytes;
+
+	/**
+	 * Sum of the byte counts of the cached tiles
+	 * @since 6.0.2
+	 */
+	private long mBytes;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
 
 	public MapTileCache() {
 		this(Configuration.getInstance().getCacheMapTileCount());
+		setMaximumBytes(Configuration.getInstance().getCacheMapTileMaxBytes());
 	}
 
 	/**
@@ -76,46 +127,235 @@ public class MapTileCache {
 		}
 	}
 
+	/**
+	 * Caps the cache by bytes instead of by tile count, which makes more sense with mixed tile sizes
+	 * @param pMaximumBytes Byte budget, or 0 to use the tile count capacity
+	 * @since 6.0.2
+	 */
+	public void setMaximumBytes(final long pMaximumBytes) {
+		mMaximumBytes = pMaximumBytes;
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	public long getMaximumBytes() {
+		return mMaximumBytes;
+	}
+
+	/**
+	 * @return the sum of the byte counts of the cached tiles
+	 * @since 6.0.2
+	 */
+	public long getBytes() {
+		synchronized (mCachedTiles) {
+			return mBytes;
+		}
+	}
+
 	public Drawable getMapTile(final long pMapTileIndex) {
 		synchronized (mCachedTiles) {
-			return this.mCachedTiles.get(pMapTileIndex);
+			final CachedTile cachedTile = this.mCachedTiles.get(pMapTileIndex);
+			if (cachedTile == null) {
+				return null;
+			}
+			cachedTile.mGeneration = mGeneration;
+			return cachedTile.mDrawable;
 		}
 	}
 
 	public void putTile(final long pMapTileIndex, final Drawable aDrawable) {
 		if (aDrawable != null) {
+			final int bytes = getByteCount(aDrawable);
 			synchronized (mCachedTiles) {
-				this.mCachedTiles.put(pMapTileIndex, aDrawable);
+				CachedTile cachedTile = this.mCachedTiles.get(pMapTileIndex);
+				if (cachedTile == null) {
+					cachedTile = new CachedTile();
+					this.mCachedTiles.put(pMapTileIndex, cachedTile);
+				} else {
+					mBytes -= cachedTile.mBytes;
+				}
+				cachedTile.mDrawable = aDrawable;
+				cachedTile.mBytes = bytes;
+				cachedTile.mGeneration = mGeneration;
+				mBytes += bytes;
 			}
 		}
 	}
 
 	/**
-	 * Removes from the memory cache all the tiles that should no longer be there
+	 * Removes from the memory cache all the tiles that should no longer be there.
+	 * The displayed tiles and their neighbours are kept; the other tiles are removed
+	 * by decreasing {@link #getEvictionScore(long, int)}, until the cache is within its capacity.
 	 * @since 6.0.0
 	 */
 	public void garbageCollection() {
-		final int size = mCachedTiles.size();
-		int toBeRemoved = size - mCapacity;
-		if (toBeRemoved <= 0) {
+		synchronized (mCachedTiles) {
+			mGeneration ++;
+		}
+		if (!isOverCapacity()) {
 			return;
 		}
 		mAdditionalMapTileList.clear();
 		mAdditionalMapTileList.populateFrom(mMapTileList, -1);
 		mAdditionalMapTileList.populateFrom(mMapTileList, 1);
-		populateSyncCachedTiles(mGC);
-		for (int i = 0; i < mGC.getSize() ; i ++) {
-			final long index = mGC.get(i);
-			if (mMapTileList.contains(index)) {
-				continue;
+		computeCenter();
+		populateSyncCandidates();
+		sortCandidates(0, mCandidateCount - 1);
+		for (int i = 0; i < mCandidateCount ; i ++) {
+			remove(mCandidates[i]);
+			if (!isOverCapacity()) {
+				break;
 			}
-			if (mAdditionalMapTileList.contains(index)) {
+		}
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private boolean isOverCapacity() {
+		if (mMaximumBytes > 0) {
+			return getBytes() > mMaximumBytes;
+		}
+		return getSize() > mCapacity;
+	}
+
+	/**
+	 * The higher the score, the sooner the tile is evicted: tiles far from the displayed zoom level,
+	 * far from the center of the displayed tiles and not accessed for a long time go first.
+	 * @param pMapTileIndex Tile candidate for eviction
+	 * @param pAge Number of garbage collections since the last access to the tile
+	 * @since 6.0.2
+	 */
+	protected float getEvictionScore(final long pMapTileIndex, final int pAge) {
+		float result = pAge * AGE_WEIGHT;
+		if (mCenterZoom < 0) {
+			return result;
+		}
+		final int zoom = MapTileIndex.getZoom(pMapTileIndex);
+		result += Math.abs(zoom - mCenterZoom) * ZOOM_DISTANCE_WEIGHT;
+		// tile center projected on the zoom level of the displayed tiles
+		final double scale = zoom <= mCenterZoom
+				? 1 << (mCenterZoom - zoom)
+				: 1. / (1 << (zoom - mCenterZoom));
+		final double worldSize = 1 << mCenterZoom;
+		final double deltaX = getWrappedDelta((MapTileIndex.getX(pMapTileIndex) + .5) * scale - mCenterX, worldSize);
+		final double deltaY = getWrappedDelta((MapTileIndex.getY(pMapTileIndex) + .5) * scale - mCenterY, worldSize);
+		result += Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+		return result;
+	}
+
+	/**
+	 * Computes the center of the displayed tiles, considering the horizontal and vertical wrap
+	 * @since 6.0.2
+	 */
+	private void computeCenter() {
+		mCenterZoom = -1;
+		if (mMapTileList.getSize() == 0) {
+			return;
+		}
+		final long first = mMapTileList.get(0);
+		final int zoom = MapTileIndex.getZoom(first);
+		final int firstX = MapTileIndex.getX(first);
+		final int firstY = MapTileIndex.getY(first);
+		final double worldSize = 1 << zoom;
+		double sumX = 0;
+		double sumY = 0;
+		int count = 0;
+		for (int i = 0 ; i < mMapTileList.getSize() ; i ++) {
+			final long index = mMapTileList.get(i);
+			if (MapTileIndex.getZoom(index) != zoom) {
 				continue;
 			}
-			remove(index);
-			if (-- toBeRemoved == 0) {
-				break;
-			};
+			sumX += getWrappedDelta(MapTileIndex.getX(index) - firstX, worldSize);
+			sumY += getWrappedDelta(MapTileIndex.getY(index) - firstY, worldSize);
+			count ++;
+		}
+		mCenterZoom = zoom;
+		mCenterX = firstX + .5 + sumX / count;
+		mCenterY = firstY + .5 + sumY / count;
+	}
+
+	/**
+	 * @return the shortest signed distance on a world that wraps around
+	 * @since 6.0.2
+	 */
+	private static double getWrappedDelta(final double pDelta, final double pWorldSize) {
+		double result = pDelta % pWorldSize;
+		if (result > pWorldSize / 2) {
+			result -= pWorldSize;
+		} else if (result < -pWorldSize / 2) {
+			result += pWorldSize;
+		}
+		return result;
+	}
+
+	/**
+	 * Lists the tiles that may be evicted, with their score
+	 * @since 6.0.2
+	 */
+	private void populateSyncCandidates() {
+		synchronized (mCachedTiles) {
+			final int size = mCachedTiles.size();
+			if (mCandidates.length < size) {
+				mCandidates = new long[size];
+				mCandidateScores = new float[size];
+			}
+			mCandidateCount = 0;
+			for (int i = 0 ; i < mCachedTiles.getSlotCount() ; i ++) {
+				final CachedTile cachedTile = mCachedTiles.getValueAt(i);
+				if (cachedTile == null) {
+					continue;
+				}
+				final long index = mCachedTiles.getKeyAt(i);
+				if (mMapTileList.contains(index)) {
+					continue;
+				}
+				if (mAdditionalMapTileList.contains(index)) {
+					continue;
+				}
+				mCandidates[mCandidateCount] = index;
+				mCandidateScores[mCandidateCount] = getEvictionScore(index, mGeneration - cachedTile.mGeneration);
+				mCandidateCount ++;
+			}
+		}
+	}
+
+	/**
+	 * Sorts the candidates by decreasing score, without allocation
+	 * @since 6.0.2
+	 */
+	private void sortCandidates(int pLow, int pHigh) {
+		while (pLow < pHigh) {
+			final float pivot = mCandidateScores[(pLow + pHigh) >>> 1];
+			int i = pLow;
+			int j = pHigh;
+			while (i <= j) {
+				while (mCandidateScores[i] > pivot) {
+					i ++;
+				}
+				while (mCandidateScores[j] < pivot) {
+					j --;
+				}
+				if (i <= j) {
+					final long index = mCandidates[i];
+					mCandidates[i] = mCandidates[j];
+					mCandidates[j] = index;
+					final float score = mCandidateScores[i];
+					mCandidateScores[i] = mCandidateScores[j];
+					mCandidateScores[j] = score;
+					i ++;
+					j --;
+				}
+			}
+			// recurse on the smaller part, loop on the bigger one
+			if (j - pLow < pHigh - i) {
+				sortCandidates(pLow, j);
+				pLow = i;
+			} else {
+				sortCandidates(i, pHigh);
+				pHigh = j;
+			}
 		}
 	}
 
@@ -146,7 +386,7 @@ public class MapTileCache {
 	 */
 	public void clear() {
 		// remove them all individually so that they get recycled
-		final MapTileList list = new MapTileList(mCachedTiles.size());
+		final MapTileList list = new MapTileList(getSize());
 		populateSyncCachedTiles(list);
 		for (int i = 0; i < list.getSize() ; i ++) {
 			final long index = list.get(i);
@@ -154,7 +394,10 @@ public class MapTileCache {
 		}
 
 		// and then clear
-		mCachedTiles.clear();
+		synchronized (mCachedTiles) {
+			mCachedTiles.clear();
+			mBytes = 0;
+		}
 	}
 
 	/**
@@ -162,7 +405,16 @@ public class MapTileCache {
 	 * Was in LRUMapTileCache
 	 */
 	public void remove(final long pMapTileIndex) {
-		final Drawable drawable = mCachedTiles.remove(pMapTileIndex);
+		final Drawable drawable;
+		synchronized (mCachedTiles) {
+			final CachedTile cachedTile = mCachedTiles.remove(pMapTileIndex);
+			if (cachedTile == null) {
+				drawable = null;
+			} else {
+				drawable = cachedTile.mDrawable;
+				mBytes -= cachedTile.mBytes;
+			}
+		}
 		if (getTileRemovedListener() != null)
 			getTileRemovedListener().onTileRemoved(pMapTileIndex);
 		BitmapPool.getInstance().asyncRecycle(drawable);
@@ -190,11 +442,7 @@ public class MapTileCache {
 	 */
 	private void populateSyncCachedTiles(final MapTileList pList) {
 		synchronized (mCachedTiles) {
-			pList.ensureCapacity(mCachedTiles.size());
-			pList.clear();
-			for (final long index : mCachedTiles.keySet()) {
-				pList.put(index);
-			}
+			mCachedTiles.getKeys(pList);
 		}
 	}
 
@@ -202,6 +450,49 @@ public class MapTileCache {
 	 * @since 6.0.0
 	 */
 	public int getSize() {
-		return mCachedTiles.size();
+		synchronized (mCachedTiles) {
+			return mCachedTiles.size();
+		}
+	}
+
+	/**
+	 * Computes the memory used by a tile; the byte count is stored when the tile is put in the cache,
+	 * as the bitmap may be recycled or reused before the tile is removed
+	 * @since 6.0.2
+	 */
+	protected int getByteCount(final Drawable pDrawable) {
+		if (!(pDrawable instanceof BitmapDrawable)) {
+			return 0;
+		}
+		final Bitmap bitmap = ((BitmapDrawable) pDrawable).getBitmap();
+		if (bitmap == null) {
+			return 0;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+			return bitmap.getByteCount();
+		}
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	/**
+	 * Helper for {@link #setMaximumBytes(long)}
+	 * @param pRatio Ratio of the application's memory class to dedicate to the cache, e.g. 0.25
+	 * @return the corresponding byte budget
+	 * @since 6.0.2
+	 */
+	public static long getMaximumBytesFromMemoryClass(final Context pContext, final float pRatio) {
+		final ActivityManager activityManager =
+				(ActivityManager) pContext.getSystemService(Context.ACTIVITY_SERVICE);
+		return (long) (activityManager.getMemoryClass() * 1024L * 1024L * pRatio);
+	}
+
+	/**
+	 * A cached tile, its byte count and its last access, updated in place when the tile is replaced
+	 * @since 6.0.2
+	 */
+	private static class CachedTile {
+		private Drawable mDrawable;
+		private int mBytes;
+		private int mGeneration;
 	}
 }
@@ -15,7 +15,9 @@ import android.util.Log;
 
 import org.osmdroid.api.IMapView;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 /**
  * This top-level tile provider allows a consumer to provide an array of modular asynchronous tile
@@ -38,6 +40,17 @@ public class MapTileProviderArray extends MapTileProviderBase {
 	private final HashSet<Long> mWorking = new HashSet<>();
 	private IRegisterReceiver mRegisterReceiver=null;
 	protected final List<MapTileModuleProviderBase> mTileProviderList;
+	private final MapTileList mPublishedTiles = new MapTileList();
+	private final LongHashMap<Boolean> mWantedTiles = new LongHashMap<>();
+	/**
+	 * @since 6.0.2
+	 */
+	private final LongHashMap<Boolean> mPrefetchTiles = new LongHashMap<>();
+	/**
+	 * Prefetch requests in progress, in sync with {@link #mWorking}
+	 * @since 6.0.2
+	 */
+	private final LongHashMap<MapTileRequestState> mPrefetchStates = new LongHashMap<>();
 
 	/**
 	 * Creates an {@link MapTileProviderArray} with no tile providers.
@@ -78,6 +91,7 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		}
 		synchronized (mWorking) {
 			mWorking.clear();
+			mPrefetchStates.clear();
 		}
 		if (mRegisterReceiver!=null) {
 			mRegisterReceiver.destroy();
@@ -105,6 +119,7 @@ public class MapTileProviderArray extends MapTileProviderBase {
 			}
 		}
 		if (mWorking.contains(pMapTileIndex)) { // already in progress
+			promote(pMapTileIndex);
 			return tile;
 		}
 
@@ -136,7 +151,57 @@ public class MapTileProviderArray extends MapTileProviderBase {
 	 * @since 6.0.0
 	 */
 	private void remove(final long pMapTileIndex) {
-		mWorking.remove(pMapTileIndex);
+		synchronized (mWorking) {
+			mWorking.remove(pMapTileIndex);
+			mPrefetchStates.remove(pMapTileIndex);
+		}
+	}
+
+	/**
+	 * A prefetched tile is now displayed: its request gets the priority of the displayed tiles
+	 * @since 6.0.2
+	 */
+	private void promote(final long pMapTileIndex) {
+		final MapTileRequestState state;
+		synchronized (mWorking) {
+			if (mPrefetchStates.isEmpty()) {
+				return;
+			}
+			state = mPrefetchStates.remove(pMapTileIndex);
+		}
+		if (state == null) {
+			return;
+		}
+		state.setPrefetch(false);
+		final MapTileModuleProviderBase provider = state.getCurrentProvider();
+		if (provider != null) {
+			provider.updatePriority(state);
+		}
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private void prefetch(final long pMapTileIndex) {
+		final Drawable tile = mTileCache.getMapTile(pMapTileIndex);
+		if (tile != null && ExpirableBitmapDrawable.getState(tile) == ExpirableBitmapDrawable.UP_TO_DATE) {
+			return;
+		}
+		final MapTileRequestState state = new MapTileRequestState(pMapTileIndex, mTileProviderList, MapTileProviderArray.this);
+		state.setPrefetch(true);
+		synchronized (mWorking) {
+			if (mWorking.contains(pMapTileIndex)) {
+				return;
+			}
+			mWorking.add(pMapTileIndex);
+			mPrefetchStates.put(pMapTileIndex, state);
+		}
+		final MapTileModuleProviderBase provider = findNextAppropriateProvider(state);
+		if (provider != null) {
+			provider.loadMapTileAsync(state);
+		} else {
+			mapTileRequestFailed(state);
+		}
 	}
 
 	@Override
@@ -147,6 +212,10 @@ public class MapTileProviderArray extends MapTileProviderBase {
 
 	@Override
 	public void mapTileRequestFailed(final MapTileRequestState aState) {
+		if (aState.isCancelled()) {
+			mapTileRequestCancelled(aState);
+			return;
+		}
 		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
 		if (nextProvider != null) {
 			nextProvider.loadMapTileAsync(aState);
@@ -162,12 +231,57 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		super.mapTileRequestFailed(aState);
 	}
 
+	/**
+	 * @since 6.0.2
+	 */
+	@Override
+	public void mapTileRequestCancelled(final MapTileRequestState aState) {
+		remove(aState.getMapTile());
+		super.mapTileRequestCancelled(aState);
+		requestAgainIfWanted(aState.getMapTile());
+	}
+
+	/**
+	 * A cancelled request may end after its tile is wanted again: meanwhile {@link #getMapTile(long)}
+	 * saw it in progress and did not request it, so we request it again now
+	 * @since 6.0.2
+	 */
+	private void requestAgainIfWanted(final long pMapTileIndex) {
+		final boolean displayed;
+		synchronized (mWantedTiles) {
+			if (!mWantedTiles.containsKey(pMapTileIndex)) {
+				return;
+			}
+			displayed = mPublishedTiles.contains(pMapTileIndex);
+		}
+		if (displayed) {
+			getMapTile(pMapTileIndex);
+		} else {
+			prefetch(pMapTileIndex);
+		}
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	@Override
+	public void mapTileRequestNotModified(final MapTileRequestState aState) {
+		remove(aState.getMapTile());
+		super.mapTileRequestNotModified(aState);
+	}
+
 	@Override
 	public void mapTileRequestExpiredTile(MapTileRequestState aState, Drawable aDrawable) {
 		// Call through to the super first so aState.getCurrentProvider() still contains the proper
 		// provider.
 		super.mapTileRequestExpiredTile(aState, aDrawable);
 
+		if (aState.isCancelled()) {
+			remove(aState.getMapTile());
+			requestAgainIfWanted(aState.getMapTile());
+			return;
+		}
+
 		// Continue through the provider chain
 		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
 		if (nextProvider != null) {
@@ -246,6 +360,111 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		return result;
 	}
 
+	/**
+	 * @since 6.0.2
+	 */
+	@Override
+	public void setViewport(final int pZoom, final double pCenterX, final double pCenterY) {
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.setViewport(pZoom, pCenterX, pCenterY);
+			}
+		}
+	}
+
+	/**
+	 * The requests for tiles that are not in the list are cancelled in all the module providers,
+	 * each time the list of wanted tiles changes
+	 * @since 6.0.2
+	 */
+	@Override
+	public void setWantedTiles(final MapTileList pMapTileList) {
+		final int size = pMapTileList.getSize();
+		if (size == 0) { // nothing displayed yet
+			return;
+		}
+		synchronized (mWantedTiles) {
+			if (isSameList(mPublishedTiles, pMapTileList)) {
+				return;
+			}
+			mPublishedTiles.clear();
+			for (int i = 0 ; i < size ; i ++) {
+				mPublishedTiles.put(pMapTileList.get(i));
+			}
+			cancelUnwantedTiles();
+		}
+	}
+
+	/**
+	 * The prefetched tiles that are not in the new list are cancelled, unless they are displayed
+	 * @since 6.0.2
+	 */
+	@Override
+	public void setPrefetchTiles(final MapTileList pMapTileList) {
+		final int size = pMapTileList.getSize();
+		synchronized (mWantedTiles) {
+			if (size == 0 && mPrefetchTiles.isEmpty()) {
+				return;
+			}
+			mPrefetchTiles.clear();
+			for (int i = 0 ; i < size ; i ++) {
+				mPrefetchTiles.put(pMapTileList.get(i), Boolean.TRUE);
+			}
+			if (mPublishedTiles.getSize() > 0) { // otherwise nothing displayed yet
+				cancelUnwantedTiles();
+			}
+		}
+		for (int i = 0 ; i < size ; i ++) {
+			prefetch(pMapTileList.get(i));
+		}
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	@Override
+	public void finishPrefetch() {
+		synchronized (mWantedTiles) {
+			mPrefetchTiles.clear();
+		}
+	}
+
+	/**
+	 * Cancels the requests for tiles that are neither displayed nor prefetched. Must be called in sync.
+	 * @since 6.0.2
+	 */
+	private void cancelUnwantedTiles() {
+		mWantedTiles.clear();
+		for (int i = 0 ; i < mPublishedTiles.getSize() ; i ++) {
+			mWantedTiles.put(mPublishedTiles.get(i), Boolean.TRUE);
+		}
+		for (int i = 0 ; i < mPrefetchTiles.getSlotCount() ; i ++) {
+			if (mPrefetchTiles.getValueAt(i) != null) {
+				mWantedTiles.put(mPrefetchTiles.getKeyAt(i), Boolean.TRUE);
+			}
+		}
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.cancelUnwantedTiles(mWantedTiles);
+			}
+		}
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private boolean isSameList(final MapTileList pList1, final MapTileList pList2) {
+		if (pList1.getSize() != pList2.getSize()) {
+			return false;
+		}
+		for (int i = 0 ; i < pList1.getSize() ; i ++) {
+			if (pList1.get(i) != pList2.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public void setTileSource(final ITileSource aTileSource) {
 		super.setTileSource(aTileSource);
@@ -16,6 +16,7 @@ import org.osmdroid.tileprovider.modules.IFilesystemCache;
 import org.osmdroid.tileprovider.modules.MapTileApproximater;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 import org.osmdroid.util.PointL;
 import org.osmdroid.util.RectL;
 import org.osmdroid.util.TileLooper;
@@ -38,7 +39,7 @@ import java.util.HashMap;
  * @author and many other contributors
  *
  */
-public abstract class MapTileProviderBase implements IMapTileProviderCallback {
+public abstract class MapTileProviderBase implements ICancellableMapTileProviderCallback, IRevalidatingMapTileProviderCallback {
 
 	public static final int MAPTILE_SUCCESS_ID = 0;
 	public static final int MAPTILE_FAIL_ID = MAPTILE_SUCCESS_ID + 1;
@@ -196,6 +197,47 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback {
 		mapTileRequestFailed(pState);
 	}
 
+	/**
+	 * Called by implementation class methods indicating that they have dropped the request
+	 * because the tile is not wanted any more. Nothing is put in the cache and no message is sent.
+	 *
+	 * @param pState
+	 *            the map tile request state object
+	 * @since 6.0.2
+	 */
+	@Override
+	public void mapTileRequestCancelled(final MapTileRequestState pState) {
+		if (Configuration.getInstance().isDebugTileProviders()) {
+			Log.d(IMapView.LOGTAG,"MapTileProviderBase.mapTileRequestCancelled(): " + MapTileIndex.toString(pState.getMapTile()));
+		}
+	}
+
+	/**
+	 * Called by implementation class methods indicating that the expired tile is still valid.
+	 * The tile in the cache, if any, is flagged as up to date without being loaded again,
+	 * and a MAPTILE_SUCCESS_ID message is sent.
+	 *
+	 * @param pState
+	 *            the map tile request state object
+	 * @since 6.0.2
+	 */
+	@Override
+	public void mapTileRequestNotModified(final MapTileRequestState pState) {
+		final Drawable tile = mTileCache.getMapTile(pState.getMapTile());
+		if (tile != null && ExpirableBitmapDrawable.getState(tile) == ExpirableBitmapDrawable.EXPIRED) {
+			ExpirableBitmapDrawable.setState(tile, ExpirableBitmapDrawable.UP_TO_DATE);
+		}
+
+		// tell our caller we've finished and it should update its view
+		if (mTileRequestCompleteHandler != null) {
+			mTileRequestCompleteHandler.sendEmptyMessage(MAPTILE_SUCCESS_ID);
+		}
+
+		if (Configuration.getInstance().isDebugTileProviders()) {
+			Log.d(IMapView.LOGTAG,"MapTileProviderBase.mapTileRequestNotModified(): " + MapTileIndex.toString(pState.getMapTile()));
+		}
+	}
+
 	/**
 	 * Called by implementation class methods indicating that they have produced an expired result
 	 * that can be used but better results may be delivered later. The tile is added to the cache,
@@ -262,6 +304,41 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback {
 		return mTileCache;
 	}
 
+	/**
+	 * Publishes the current viewport, so that the pending tiles closest to the center of the screen
+	 * are loaded first. Does nothing by default.
+	 * @param pZoom      Tile zoom level of the viewport
+	 * @param pCenterX   X of the viewport center, in tiles of that zoom level
+	 * @param pCenterY   Y of the viewport center, in tiles of that zoom level
+	 * @since 6.0.2
+	 */
+	public void setViewport(final int pZoom, final double pCenterX, final double pCenterY) {}
+
+	/**
+	 * Publishes the tiles that are wanted for the current frame, typically the displayed ones,
+	 * so that the requests for the other tiles can be cancelled. Does nothing by default.
+	 * @since 6.0.2
+	 */
+	public void setWantedTiles(final MapTileList pMapTileList) {}
+
+	/**
+	 * Requests in advance tiles that are not displayed yet but will probably be soon
+	 * (e.g. around the end of a fling), after the displayed tiles.
+	 * The prefetched tiles are not cancelled by {@link #setWantedTiles(MapTileList)};
+	 * they are cancelled when they are not in the next prefetch list. An empty list cancels the prefetch.
+	 * Does nothing by default.
+	 * @since 6.0.2
+	 */
+	public void setPrefetchTiles(final MapTileList pMapTileList) {}
+
+	/**
+	 * Forgets the prefetched tiles without cancelling their requests, when what they were prefetched for
+	 * ended normally (e.g. the fling stopped where expected): the next {@link #setWantedTiles(MapTileList)}
+	 * cancels those that are not displayed then. Does nothing by default.
+	 * @since 6.0.2
+	 */
+	public void finishPrefetch() {}
+
 	/**
 	 * purges the cache of all tiles (default is the in memory cache)
 	 */
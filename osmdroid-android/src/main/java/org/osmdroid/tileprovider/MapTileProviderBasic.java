@@ -11,8 +11,10 @@ import org.osmdroid.tileprovider.modules.MapTileDownloader;
 import org.osmdroid.tileprovider.modules.MapTileFileArchiveProvider;
 import org.osmdroid.tileprovider.modules.MapTileFileStorageProviderBase;
 import org.osmdroid.tileprovider.modules.MapTileFilesystemProvider;
+import org.osmdroid.tileprovider.modules.MapTileSegmentCacheProvider;
 import org.osmdroid.tileprovider.modules.MapTileSqlCacheProvider;
 import org.osmdroid.tileprovider.modules.NetworkAvailabliltyCheck;
+import org.osmdroid.tileprovider.modules.SegmentTileWriter;
 import org.osmdroid.tileprovider.modules.SqlTileWriter;
 import org.osmdroid.tileprovider.modules.TileWriter;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -31,6 +33,7 @@ import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
  * @see SqlTileWriter
  * @see MapTileFilesystemProvider
  * @see MapTileSqlCacheProvider
+ * @see SegmentTileWriter
  * @author Marc Kurtz
  *
  */
@@ -85,7 +88,9 @@ public class MapTileProviderBasic extends MapTileProviderArray implements IMapTi
 		mTileProviderList.add(assetsProvider);
 
 		final MapTileFileStorageProviderBase cacheProvider;
-		if (Build.VERSION.SDK_INT < 10) {
+		if (tileWriter instanceof SegmentTileWriter) {
+			cacheProvider = new MapTileSegmentCacheProvider(pRegisterReceiver, pTileSource);
+		} else if (Build.VERSION.SDK_INT < 10) {
 			cacheProvider = new MapTileFilesystemProvider(pRegisterReceiver, pTileSource);
 		} else {
 			cacheProvider = new MapTileSqlCacheProvider(pRegisterReceiver, pTileSource);
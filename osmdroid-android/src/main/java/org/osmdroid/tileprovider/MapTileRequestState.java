@@ -14,6 +14,8 @@ public class MapTileRequestState {
 	private final IMapTileProviderCallback mCallback;
 	private int index;
 	private MapTileModuleProviderBase mCurrentProvider;
+	private volatile boolean mCancelled;
+	private volatile boolean mPrefetch;
 
 	/**
 	 * @deprecated use {@link MapTileRequestState#MapTileRequestState(long, List, IMapTileProviderCallback)}  instead
@@ -62,4 +64,35 @@ public class MapTileRequestState {
 	public MapTileModuleProviderBase getCurrentProvider() {
 		return mCurrentProvider;
 	}
+
+	/**
+	 * Flags the request as no longer needed, e.g. because the tile is not displayed any more
+	 * @since 6.0.2
+	 */
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	/**
+	 * Flags the request as a prefetch, for a tile that is not displayed yet but will probably be soon.
+	 * Prefetch requests are worked on after the requests for the displayed tiles.
+	 * @since 6.0.2
+	 */
+	public void setPrefetch(final boolean pPrefetch) {
+		mPrefetch = pPrefetch;
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	public boolean isPrefetch() {
+		return mPrefetch;
+	}
 }
@@ -35,9 +35,13 @@ public class ReusableBitmapDrawable extends ExpirableBitmapDrawable {
 		}
 	}
 
+	/**
+	 * @return the bitmap if it can be reused, i.e. if not in use and not already recycled
+	 * (since 6.0.2, so that a drawable recycled twice doesn't put its bitmap twice in the pool)
+	 */
 	public Bitmap tryRecycle() {
 		synchronized (this) {
-			if (mUsageRefCount == 0) {
+			if (mUsageRefCount == 0 && !mBitmapRecycled) {
 				mBitmapRecycled = true;
 				return getBitmap();
 			}
@@ -0,0 +1,226 @@
+package org.osmdroid.tileprovider;
+
+import org.osmdroid.util.LongHashMap;
+
+/**
+ * The bookkeeping of {@link BitmapPool}, independent of {@link android.graphics.Bitmap}:
+ * items stored in buckets by key, so that getting an item of a given key is O(1),
+ * and capped in bytes: beyond {@link #getMaxBytes()} the oldest items are recycled.
+ * @since 6.0.2
+ */
+abstract class SizeBucketedPool<T> {
+
+	/**
+	 * A pooled item, linked both in its bucket and in the pool-wide age order
+	 */
+	private static class Entry<T> {
+		private T mItem;
+		private int mBytes;
+		private Bucket<T> mBucket;
+		private Entry<T> mOlder;
+		private Entry<T> mNewer;
+		private Entry<T> mBucketOlder;
+		private Entry<T> mBucketNewer;
+	}
+
+	/**
+	 * Items of the same key, newest last
+	 */
+	private static class Bucket<T> {
+		private Entry<T> mOldest;
+		private Entry<T> mNewest;
+	}
+
+	private final LongHashMap<Bucket<T>> mBuckets = new LongHashMap<>();
+	/** pool-wide age order */
+	private Entry<T> mOldest;
+	private Entry<T> mNewest;
+	/** recycled entries, in order not to allocate one for each returned item */
+	private Entry<T> mFreeEntries;
+	private int mSize;
+	private long mBytes;
+	private long mMaxBytes;
+	private long mHitCount;
+	private long mMissCount;
+
+	SizeBucketedPool(final long pMaxBytes) {
+		mMaxBytes = pMaxBytes;
+	}
+
+	/**
+	 * @return true if the item cannot be reused anymore
+	 */
+	protected abstract boolean isRecycled(T pItem);
+
+	/**
+	 * Called on the items that leave the pool without being reused
+	 */
+	protected abstract void recycle(T pItem);
+
+	/**
+	 * Adds an item, and recycles the oldest items if the pool is beyond its maximum size
+	 */
+	public synchronized void put(final T pItem, final long pKey, final int pBytes) {
+		if (pBytes > mMaxBytes) {
+			recycle(pItem);
+			return;
+		}
+		Bucket<T> bucket = mBuckets.get(pKey);
+		if (bucket == null) {
+			bucket = new Bucket<>();
+			mBuckets.put(pKey, bucket);
+		}
+		final Entry<T> entry = newEntry();
+		entry.mItem = pItem;
+		entry.mBytes = pBytes;
+		entry.mBucket = bucket;
+		entry.mOlder = mNewest;
+		if (mNewest != null) {
+			mNewest.mNewer = entry;
+		} else {
+			mOldest = entry;
+		}
+		mNewest = entry;
+		entry.mBucketOlder = bucket.mNewest;
+		if (bucket.mNewest != null) {
+			bucket.mNewest.mBucketNewer = entry;
+		} else {
+			bucket.mOldest = entry;
+		}
+		bucket.mNewest = entry;
+		mSize ++;
+		mBytes += pBytes;
+		trim();
+	}
+
+	/**
+	 * @return the most recently pooled item of that key, or null
+	 */
+	public synchronized T obtain(final long pKey) {
+		final Bucket<T> bucket = mBuckets.get(pKey);
+		if (bucket != null) {
+			while (bucket.mNewest != null) {
+				final T item = remove(bucket.mNewest);
+				if (!isRecycled(item)) {
+					mHitCount ++;
+					return item;
+				}
+			}
+		}
+		mMissCount ++;
+		return null;
+	}
+
+	/**
+	 * @return the most recently pooled item, whatever its key, or null
+	 */
+	public synchronized T obtainNewest() {
+		while (mNewest != null) {
+			final T item = remove(mNewest);
+			if (!isRecycled(item)) {
+				mHitCount ++;
+				return item;
+			}
+		}
+		mMissCount ++;
+		return null;
+	}
+
+	public synchronized void clear() {
+		while (mOldest != null) {
+			recycle(remove(mOldest));
+		}
+		mBuckets.clear();
+	}
+
+	public synchronized void setMaxBytes(final long pMaxBytes) {
+		mMaxBytes = pMaxBytes;
+		trim();
+	}
+
+	public synchronized long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+	public synchronized long getBytes() {
+		return mBytes;
+	}
+
+	public synchronized int getSize() {
+		return mSize;
+	}
+
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	public synchronized void resetCounters() {
+		mHitCount = 0;
+		mMissCount = 0;
+	}
+
+	/**
+	 * Must be called in sync
+	 */
+	private void trim() {
+		while (mBytes > mMaxBytes) {
+			recycle(remove(mOldest));
+		}
+	}
+
+	/**
+	 * Unlinks an entry from its bucket and from the age order, in O(1). Must be called in sync.
+	 * @return the item of the entry
+	 */
+	private T remove(final Entry<T> pEntry) {
+		final Bucket<T> bucket = pEntry.mBucket;
+		if (pEntry.mBucketOlder != null) {
+			pEntry.mBucketOlder.mBucketNewer = pEntry.mBucketNewer;
+		} else {
+			bucket.mOldest = pEntry.mBucketNewer;
+		}
+		if (pEntry.mBucketNewer != null) {
+			pEntry.mBucketNewer.mBucketOlder = pEntry.mBucketOlder;
+		} else {
+			bucket.mNewest = pEntry.mBucketOlder;
+		}
+		if (pEntry.mOlder != null) {
+			pEntry.mOlder.mNewer = pEntry.mNewer;
+		} else {
+			mOldest = pEntry.mNewer;
+		}
+		if (pEntry.mNewer != null) {
+			pEntry.mNewer.mOlder = pEntry.mOlder;
+		} else {
+			mNewest = pEntry.mOlder;
+		}
+		final T result = pEntry.mItem;
+		mSize --;
+		mBytes -= pEntry.mBytes;
+		pEntry.mItem = null;
+		pEntry.mBucket = null;
+		pEntry.mOlder = null;
+		pEntry.mBucketOlder = null;
+		pEntry.mBucketNewer = null;
+		pEntry.mNewer = mFreeEntries;
+		mFreeEntries = pEntry;
+		return result;
+	}
+
+	/**
+	 * Must be called in sync
+	 */
+	private Entry<T> newEntry() {
+		final Entry<T> result = mFreeEntries;
+		if (result == null) {
+			return new Entry<>();
+		}
+		mFreeEntries = result.mNewer;
+		result.mNewer = null;
+		return result;
+	}
+}
@@ -0,0 +1,76 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.util.MapTileIndex;
+
+/**
+ * The tiles an {@link IArchiveFile} may contain, as rectangles of tiles per zoom level.
+ * It only has to be a superset of the actual tiles: it's there for the tile provider
+ * not to query an archive for tiles it cannot contain.
+ *
+ * @since 6.0.2
+ * @see IRoutableArchiveFile#getCoverage(org.osmdroid.tileprovider.tilesource.ITileSource)
+ * @see MapTileFileArchiveProvider
+ */
+public class ArchiveCoverage {
+
+	// {xMin, xMax, yMin, yMax} * rectangle count, by zoom level
+	private final int[][] mRectangles = new int[MapTileIndex.mMaxZoomLevel + 1][];
+	private final int[] mCounts = new int[MapTileIndex.mMaxZoomLevel + 1];
+
+	public void add(final int pZoom, final int pXMin, final int pXMax, final int pYMin, final int pYMax) {
+		int[] rectangles = mRectangles[pZoom];
+		final int count = mCounts[pZoom];
+		if (rectangles == null) {
+			rectangles = new int[4];
+		} else if (rectangles.length < 4 * (count + 1)) {
+			final int[] newRectangles = new int[rectangles.length * 2];
+			System.arraycopy(rectangles, 0, newRectangles, 0, rectangles.length);
+			rectangles = newRectangles;
+		}
+		rectangles[4 * count] = pXMin;
+		rectangles[4 * count + 1] = pXMax;
+		rectangles[4 * count + 2] = pYMin;
+		rectangles[4 * count + 3] = pYMax;
+		mRectangles[pZoom] = rectangles;
+		mCounts[pZoom] = count + 1;
+	}
+
+	/**
+	 * Adds the whole zoom level
+	 */
+	public void add(final int pZoom) {
+		add(pZoom, 0, (1 << pZoom) - 1, 0, (1 << pZoom) - 1);
+	}
+
+	public boolean hasZoom(final int pZoom) {
+		return pZoom >= 0 && pZoom < mCounts.length && mCounts[pZoom] > 0;
+	}
+
+	public boolean contains(final long pMapTileIndex) {
+		final int zoom = MapTileIndex.getZoom(pMapTileIndex);
+		if (!hasZoom(zoom)) {
+			return false;
+		}
+		final int x = MapTileIndex.getX(pMapTileIndex);
+		final int y = MapTileIndex.getY(pMapTileIndex);
+		final int[] rectangles = mRectangles[zoom];
+		for (int i = 0 ; i < mCounts[zoom] ; i ++) {
+			if (x >= rectangles[4 * i] && x <= rectangles[4 * i + 1]
+					&& y >= rectangles[4 * i + 2] && y <= rectangles[4 * i + 3]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder("ArchiveCoverage [");
+		for (int zoom = 0 ; zoom < mCounts.length ; zoom ++) {
+			if (mCounts[zoom] > 0) {
+				result.append(' ').append(zoom).append(':').append(mCounts[zoom]);
+			}
+		}
+		return result.append(" ]").toString();
+	}
+}
@@ -0,0 +1,225 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.util.Log;
+
+import org.osmdroid.api.IMapView;
+import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routing index of the archives of a {@link MapTileFileArchiveProvider}, in lookup order.
+ * Immutable, so that the tile loaders read it without any lock.
+ * The coverage of each archive is only computed on its first lookup, in a tile loader thread,
+ * and not when the index is built.
+ *
+ * @since 6.0.2
+ */
+class ArchiveRoutingIndex {
+
+	private final ArchiveEntry[] mArchives;
+
+	ArchiveRoutingIndex(final List<IArchiveFile> pArchiveFiles) {
+		final ArrayList<ArchiveEntry> archives = new ArrayList<ArchiveEntry>(pArchiveFiles.size());
+		for (final IArchiveFile archiveFile : pArchiveFiles) {
+			if (archiveFile != null) {
+				archives.add(new ArchiveEntry(archiveFile));
+			}
+		}
+		mArchives = archives.toArray(new ArchiveEntry[archives.size()]);
+	}
+
+	/**
+	 * Only the archives whose coverage contains the tile are queried
+	 */
+	InputStream getInputStream(final long pMapTileIndex, final ITileSource tileSource) {
+		for (final ArchiveEntry archive : mArchives) {
+			if (!archive.contains(pMapTileIndex, tileSource)) {
+				continue;
+			}
+			final InputStream in = archive.getInputStream(tileSource, pMapTileIndex);
+			if (in != null) {
+				if (Configuration.getInstance().isDebugMode()) {
+					Log.d(IMapView.LOGTAG, "Found tile " + MapTileIndex.toString(pMapTileIndex) + " in " + archive.mArchiveFile);
+				}
+				return in;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Looks for the tiles in each archive in turn, with a single query per archive
+	 * for the tiles that are not found yet and that the archive may contain
+	 */
+	LongHashMap<byte[]> getImages(final MapTileList pMapTileList, final ITileSource tileSource) {
+		final LongHashMap<byte[]> result = new LongHashMap<>(pMapTileList.getSize());
+		final MapTileList missing = new MapTileList(pMapTileList.getSize());
+		for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+			missing.put(pMapTileList.get(i));
+		}
+		final MapTileList covered = new MapTileList(missing.getSize());
+		for (final ArchiveEntry archive : mArchives) {
+			covered.clear();
+			for (int i = 0 ; i < missing.getSize() ; i ++) {
+				if (archive.contains(missing.get(i), tileSource)) {
+					covered.put(missing.get(i));
+				}
+			}
+			if (covered.getSize() == 0) {
+				continue;
+			}
+			final LongHashMap<byte[]> images = archive.getImages(tileSource, covered);
+			if (images.isEmpty()) {
+				continue;
+			}
+			if (Configuration.getInstance().isDebugMode()) {
+				Log.d(IMapView.LOGTAG, "Found " + images.size() + " tiles in " + archive.mArchiveFile);
+			}
+			final MapTileList stillMissing = new MapTileList(missing.getSize());
+			for (int i = 0 ; i < missing.getSize() ; i ++) {
+				final long mapTileIndex = missing.get(i);
+				final byte[] image = images.get(mapTileIndex);
+				if (image != null) {
+					result.put(mapTileIndex, image);
+				} else {
+					stillMissing.put(mapTileIndex);
+				}
+			}
+			if (stillMissing.getSize() == 0) {
+				break;
+			}
+			missing.clear();
+			for (int i = 0 ; i < stillMissing.getSize() ; i ++) {
+				missing.put(stillMissing.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * An archive with its lazily computed coverage, and its own lock if it's not thread-safe
+	 */
+	private static class ArchiveEntry {
+
+		private final IArchiveFile mArchiveFile;
+		private final Object mLock; // null if thread-safe
+		private volatile Coverage mCoverage; // null if not computed yet
+
+		private ArchiveEntry(final IArchiveFile pArchiveFile) {
+			mArchiveFile = pArchiveFile;
+			final boolean threadSafe = pArchiveFile instanceof IRoutableArchiveFile
+					&& ((IRoutableArchiveFile) pArchiveFile).isThreadSafe();
+			mLock = threadSafe ? null : new Object();
+		}
+
+		private boolean contains(final long pMapTileIndex, final ITileSource pTileSource) {
+			final ArchiveCoverage coverage = getCoverage(pTileSource);
+			return coverage == null || coverage.contains(pMapTileIndex);
+		}
+
+		/**
+		 * Computed once per tile source, by the first tile loader thread that needs it
+		 */
+		private ArchiveCoverage getCoverage(final ITileSource pTileSource) {
+			Coverage coverage = mCoverage;
+			if (coverage != null && coverage.mTileSource == pTileSource) {
+				return coverage.mCoverage;
+			}
+			synchronized (mLock != null ? mLock : this) {
+				coverage = mCoverage;
+				if (coverage == null || coverage.mTileSource != pTileSource) {
+					coverage = new Coverage(pTileSource, computeCoverage(pTileSource));
+					mCoverage = coverage;
+				}
+			}
+			return coverage.mCoverage;
+		}
+
+		private ArchiveCoverage computeCoverage(final ITileSource pTileSource) {
+			ArchiveCoverage coverage = null;
+			if (mArchiveFile instanceof IRoutableArchiveFile) {
+				try {
+					coverage = ((IRoutableArchiveFile) mArchiveFile).getCoverage(pTileSource);
+				} catch (final Throwable e) {
+					Log.w(IMapView.LOGTAG, "Error getting coverage of " + mArchiveFile, e);
+				}
+			}
+			if (Configuration.getInstance().isDebugMode()) {
+				Log.d(IMapView.LOGTAG, "Archive " + mArchiveFile + ": " + coverage);
+			}
+			return coverage;
+		}
+
+		private InputStream getInputStream(final ITileSource pTileSource, final long pMapTileIndex) {
+			if (mLock == null) {
+				return mArchiveFile.getInputStream(pTileSource, pMapTileIndex);
+			}
+			synchronized (mLock) {
+				return mArchiveFile.getInputStream(pTileSource, pMapTileIndex);
+			}
+		}
+
+		private LongHashMap<byte[]> getImages(final ITileSource pTileSource, final MapTileList pMapTileList) {
+			if (!(mArchiveFile instanceof IBatchArchiveFile)) {
+				return getImagesOneByOne(pTileSource, pMapTileList);
+			}
+			final IBatchArchiveFile archiveFile = (IBatchArchiveFile) mArchiveFile;
+			if (mLock == null) {
+				return archiveFile.getImages(pTileSource, pMapTileList);
+			}
+			synchronized (mLock) {
+				return archiveFile.getImages(pTileSource, pMapTileList);
+			}
+		}
+
+		/**
+		 * For the archives that cannot read several tiles at once
+		 */
+		private LongHashMap<byte[]> getImagesOneByOne(final ITileSource pTileSource, final MapTileList pMapTileList) {
+			final LongHashMap<byte[]> result = new LongHashMap<>(pMapTileList.getSize());
+			for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+				final long mapTileIndex = pMapTileList.get(i);
+				InputStream inputStream = null;
+				try {
+					inputStream = getInputStream(pTileSource, mapTileIndex);
+					if (inputStream != null) {
+						final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+						StreamUtils.copy(inputStream, dataStream);
+						result.put(mapTileIndex, dataStream.toByteArray());
+					}
+				} catch (final Throwable e) {
+					Log.e(IMapView.LOGTAG, "Error loading tile " + MapTileIndex.toString(mapTileIndex) + " from " + mArchiveFile, e);
+				} finally {
+					if (inputStream != null) {
+						StreamUtils.closeStream(inputStream);
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The coverage of an archive, for the tile source it was computed with
+	 */
+	private static class Coverage {
+
+		private final ITileSource mTileSource;
+		private final ArchiveCoverage mCoverage; // null if unknown
+
+		private Coverage(final ITileSource pTileSource, final ArchiveCoverage pCoverage) {
+			mTileSource = pTileSource;
+			mCoverage = pCoverage;
+		}
+	}
+}
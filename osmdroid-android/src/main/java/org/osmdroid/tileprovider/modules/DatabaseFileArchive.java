@@ -7,7 +7,9 @@ import android.util.Log;
 
 import org.osmdroid.api.IMapView;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -22,7 +24,7 @@ import java.util.Set;
  * key = ((z &lt;&lt; z) + x &lt;&lt; z) + y;
  * @see SqlTileWriter
  */
-public class DatabaseFileArchive implements IArchiveFile {
+public class DatabaseFileArchive implements IBatchArchiveFile, IRoutableArchiveFile {
 
 	public static final String TABLE="tiles";
 	public static final String COLUMN_PROVIDER = "provider";
@@ -31,11 +33,20 @@ public class DatabaseFileArchive implements IArchiveFile {
 	static final String[] tile_column = {"tile"};
 	private SQLiteDatabase mDatabase;
 	private boolean mIgnoreTileSource = false;
+	/**
+	 * Where the tile data is read from: a cache written by {@link SqlTileWriter} with deduplication
+	 * has the data of some tiles in {@link SqlTileWriter#TABLE_BLOBS}
+	 * @since 6.0.2
+	 */
+	private String mTables = TABLE;
+	private String[] mTileColumns = {COLUMN_TILE};
+	private String[] mKeyTileColumns = {COLUMN_KEY, COLUMN_TILE};
 
 	public DatabaseFileArchive(){}
 
 	private DatabaseFileArchive(final SQLiteDatabase pDatabase) {
 		mDatabase = pDatabase;
+		initTables();
 	}
 
 	public static DatabaseFileArchive getDatabaseFileArchive(final File pFile) throws SQLiteException {
@@ -68,13 +79,32 @@ public class DatabaseFileArchive implements IArchiveFile {
 	@Override
 	public void init(File pFile) throws Exception {
 		mDatabase=SQLiteDatabase.openDatabase(pFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+		initTables();
+	}
+
+	/**
+	 * Reads the tile data from both tables if the deduplicated one exists
+	 * @since 6.0.2
+	 */
+	private void initTables() {
+		final Cursor cur = mDatabase.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?",
+				new String[]{SqlTileWriter.TABLE_BLOBS});
+		try {
+			if (!cur.moveToFirst()) {
+				return;
+			}
+		} finally {
+			cur.close();
+		}
+		mTables = SqlTileWriter.tileTables;
+		mTileColumns = new String[]{SqlTileWriter.tileColumn};
+		mKeyTileColumns = new String[]{COLUMN_KEY, SqlTileWriter.tileColumn};
 	}
 
 	public byte[] getImage(final ITileSource pTileSource, final long pMapTileIndex) {
 
 		try {
 			byte[] bits=null;
-			final String[] tile = {COLUMN_TILE};
 			final long x = MapTileIndex.getX(pMapTileIndex);
 			final long y = MapTileIndex.getY(pMapTileIndex);
 			final long z = MapTileIndex.getZoom(pMapTileIndex);
@@ -82,10 +112,10 @@ public class DatabaseFileArchive implements IArchiveFile {
 
 			Cursor cur;
 			if(!mIgnoreTileSource) {
-				cur = mDatabase.query(TABLE, tile, COLUMN_KEY+" = " + index + " and "
+				cur = mDatabase.query(mTables, mTileColumns, COLUMN_KEY+" = " + index + " and "
 				+ COLUMN_PROVIDER + " = ?", new String[]{pTileSource.name()}, null, null, null);
 			} else {
-				cur = mDatabase.query(TABLE, tile, COLUMN_KEY+" = " + index, null, null, null, null);
+				cur = mDatabase.query(mTables, mTileColumns, COLUMN_KEY+" = " + index, null, null, null, null);
 			}
 
 			if(cur.getCount() != 0) {
@@ -103,6 +133,43 @@ public class DatabaseFileArchive implements IArchiveFile {
 		return null;
 	}
 
+	/**
+	 * Reads several tiles with one "key in (...)" query per {@link SqlTileWriter#BATCH_MAX_KEYS} tiles
+	 * @since 6.0.2
+	 */
+	@Override
+	public LongHashMap<byte[]> getImages(final ITileSource pTileSource, final MapTileList pMapTileList) {
+		final LongHashMap<byte[]> result = new LongHashMap<>(pMapTileList.getSize());
+		final LongHashMap<Long> keys = new LongHashMap<>(Math.min(pMapTileList.getSize(), SqlTileWriter.BATCH_MAX_KEYS));
+		try {
+			for (int from = 0 ; from < pMapTileList.getSize() ; from += SqlTileWriter.BATCH_MAX_KEYS) {
+				final int to = Math.min(from + SqlTileWriter.BATCH_MAX_KEYS, pMapTileList.getSize());
+				final String keyIn = SqlTileWriter.getKeyInClause(pMapTileList, from, to, keys);
+				final Cursor cur;
+				if(!mIgnoreTileSource) {
+					cur = mDatabase.query(mTables, mKeyTileColumns, keyIn + " and "
+							+ COLUMN_PROVIDER + " = ?", new String[]{pTileSource.name()}, null, null, null);
+				} else {
+					cur = mDatabase.query(mTables, mKeyTileColumns, keyIn, null, null, null, null);
+				}
+				try {
+					while (cur.moveToNext()) {
+						final Long mapTileIndex = keys.get(cur.getLong(0));
+						final byte[] bits = cur.getBlob(1);
+						if (mapTileIndex != null && bits != null) {
+							result.put(mapTileIndex, bits);
+						}
+					}
+				} finally {
+					cur.close();
+				}
+			}
+		} catch(final Throwable e) {
+			Log.w(IMapView.LOGTAG,"Error getting db images: " + pMapTileList.getSize() + " tiles", e);
+		}
+		return result;
+	}
+
 	@Override
 	public InputStream getInputStream(final ITileSource pTileSource, final long pMapTileIndex) {
 		try {
@@ -119,6 +186,50 @@ public class DatabaseFileArchive implements IArchiveFile {
 		return null;
 	}
 
+	/**
+	 * {@link SQLiteDatabase} can be queried by several threads at once
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * The bounding box of each zoom level, whatever the provider. The keys of a zoom level z
+	 * are between z &lt;&lt; 2z and (z + 1) &lt;&lt; 2z, sorted by X then Y: the X range comes from
+	 * the first and last keys, the Y range from their z low bits, with a single scan
+	 * of the primary key index per zoom level.
+	 * @since 6.0.2
+	 */
+	@Override
+	public ArchiveCoverage getCoverage(final ITileSource pTileSource) {
+		final ArchiveCoverage result = new ArchiveCoverage();
+		try {
+			for (int zoom = 0 ; zoom <= MapTileIndex.mMaxZoomLevel ; zoom ++) {
+				final long min = ((long) zoom) << (2 * zoom);
+				final long max = ((long) zoom + 1) << (2 * zoom);
+				final long yMask = (1L << zoom) - 1;
+				final Cursor cur = mDatabase.rawQuery("SELECT MIN(" + COLUMN_KEY + "), MAX(" + COLUMN_KEY + ")"
+						+ ", MIN(" + COLUMN_KEY + " & " + yMask + "), MAX(" + COLUMN_KEY + " & " + yMask + ")"
+						+ " FROM " + TABLE
+						+ " WHERE " + COLUMN_KEY + " >= " + min + " AND " + COLUMN_KEY + " < " + max, null);
+				try {
+					if (cur.moveToFirst() && !cur.isNull(0)) {
+						result.add(zoom, (int) ((cur.getLong(0) - min) >> zoom), (int) ((cur.getLong(1) - min) >> zoom),
+								(int) cur.getLong(2), (int) cur.getLong(3));
+					}
+				} finally {
+					cur.close();
+				}
+			}
+		} catch (final Exception e) {
+			Log.w(IMapView.LOGTAG,"Error getting coverage: ", e);
+			return null;
+		}
+		return result;
+	}
+
 	@Override
 	public void close() {
 		mDatabase.close();
@@ -6,15 +6,18 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.osmdroid.api.IMapView;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.util.GEMFFile;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
-public class GEMFFileArchive implements IArchiveFile {
+public class GEMFFileArchive implements IBatchArchiveFile, IRoutableArchiveFile {
 
 	private GEMFFile mFile;
 
@@ -39,6 +42,48 @@ public class GEMFFileArchive implements IArchiveFile {
 	}
 
 
+	/**
+	 * No batch query for this format: the tiles are copied one by one from the mapped file
+	 * @since 6.0.2
+	 */
+	@Override
+	public LongHashMap<byte[]> getImages(final ITileSource pTileSource, final MapTileList pMapTileList) {
+		final LongHashMap<byte[]> result = new LongHashMap<>(pMapTileList.getSize());
+		for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+			final long mapTileIndex = pMapTileList.get(i);
+			final ByteBuffer buffer = mFile.getByteBuffer(MapTileIndex.getX(mapTileIndex), MapTileIndex.getY(mapTileIndex), MapTileIndex.getZoom(mapTileIndex));
+			if (buffer == null) {
+				continue;
+			}
+			final byte[] data = new byte[buffer.remaining()];
+			buffer.get(data);
+			result.put(mapTileIndex, data);
+		}
+		return result;
+	}
+
+	/**
+	 * {@link GEMFFile} reads are lock-free
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * The GEMF ranges, whatever the source
+	 * @since 6.0.2
+	 */
+	@Override
+	public ArchiveCoverage getCoverage(final ITileSource pTileSource) {
+		final ArchiveCoverage result = new ArchiveCoverage();
+		for (final int[] range : mFile.getRanges()) {
+			result.add(range[0], range[1], range[2], range[3], range[4]);
+		}
+		return result;
+	}
+
 	public Set<String> getTileSources(){
 		Set<String> ret = new HashSet<String>();
 		try {
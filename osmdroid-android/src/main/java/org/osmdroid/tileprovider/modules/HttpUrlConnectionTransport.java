@@ -0,0 +1,190 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.config.Configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The default {@link IHttpTransport}, based on {@link HttpURLConnection}.
+ * The connections are never disconnected after a complete exchange: the response is read to the end
+ * and closed, so that the socket (and its TLS session) goes back to the keep-alive pool of the
+ * platform and is reused by the next request to the same host.
+ * The number of requests in progress per host is limited to
+ * {@link org.osmdroid.config.IConfigurationProvider#getTileDownloadMaxConnectionsPerHost()},
+ * which also limits the number of sockets opened to a tile server.
+ * @since 6.0.2
+ */
+
+public class HttpUrlConnectionTransport implements IHttpTransport {
+
+    private static HttpUrlConnectionTransport sInstance;
+
+    /**
+     * @return the transport shared by all the downloaders, so that the limit per host is global
+     */
+    public static synchronized HttpUrlConnectionTransport getInstance() {
+        if (sInstance == null) {
+            sInstance = new HttpUrlConnectionTransport(
+                    Math.max(1, Configuration.getInstance().getTileDownloadMaxConnectionsPerHost()));
+        }
+        return sInstance;
+    }
+
+    private final int mMaxConnectionsPerHost;
+    private final HashMap<String, Integer> mConnectionsPerHost = new HashMap<>();
+
+    public HttpUrlConnectionTransport(final int pMaxConnectionsPerHost) {
+        mMaxConnectionsPerHost = pMaxConnectionsPerHost;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return mMaxConnectionsPerHost;
+    }
+
+    /**
+     * @param pHost host and port, as in {@link URL#getAuthority()}
+     * @return the number of requests in progress on that host
+     */
+    public int getConnectionCount(final String pHost) {
+        synchronized (mConnectionsPerHost) {
+            final Integer count = mConnectionsPerHost.get(pHost);
+            return count == null ? 0 : count;
+        }
+    }
+
+    @Override
+    public Connection open(final String pUrl) throws IOException {
+        final URL url = new URL(pUrl);
+        final String host = url.getAuthority();
+        acquire(host);
+        boolean opened = false;
+        try {
+            final HttpURLConnection connection;
+            if (Configuration.getInstance().getHttpProxy() != null) {
+                connection = (HttpURLConnection) url.openConnection(Configuration.getInstance().getHttpProxy());
+            } else {
+                connection = (HttpURLConnection) url.openConnection();
+            }
+            connection.setUseCaches(true);
+            connection.setRequestProperty(Configuration.getInstance().getUserAgentHttpHeader(), Configuration.getInstance().getUserAgentValue());
+            for (final Map.Entry<String, String> entry : Configuration.getInstance().getAdditionalHttpRequestProperties().entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+            opened = true;
+            return new UrlConnection(host, connection);
+        } finally {
+            if (!opened) {
+                release(host);
+            }
+        }
+    }
+
+    private void acquire(final String pHost) throws InterruptedIOException {
+        synchronized (mConnectionsPerHost) {
+            Integer count;
+            while ((count = mConnectionsPerHost.get(pHost)) != null && count >= mMaxConnectionsPerHost) {
+                try {
+                    mConnectionsPerHost.wait();
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for " + pHost);
+                }
+            }
+            mConnectionsPerHost.put(pHost, count == null ? 1 : count + 1);
+        }
+    }
+
+    private void release(final String pHost) {
+        synchronized (mConnectionsPerHost) {
+            final Integer count = mConnectionsPerHost.get(pHost);
+            if (count == null || count <= 1) {
+                mConnectionsPerHost.remove(pHost);
+            } else {
+                mConnectionsPerHost.put(pHost, count - 1);
+            }
+            mConnectionsPerHost.notifyAll();
+        }
+    }
+
+    private class UrlConnection implements Connection {
+
+        private final String mHost;
+        private final HttpURLConnection mConnection;
+        private InputStream mInputStream;
+        private boolean mReleased;
+
+        private UrlConnection(final String pHost, final HttpURLConnection pConnection) {
+            mHost = pHost;
+            mConnection = pConnection;
+        }
+
+        @Override
+        public void setRequestProperty(final String pName, final String pValue) {
+            mConnection.setRequestProperty(pName, pValue);
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return mConnection.getResponseCode();
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException {
+            return mConnection.getResponseMessage();
+        }
+
+        @Override
+        public String getHeaderField(final String pName) {
+            return mConnection.getHeaderField(pName);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            mInputStream = mConnection.getInputStream();
+            return mInputStream;
+        }
+
+        @Override
+        public void close() {
+            try {
+                // the connection is only kept alive if the response has been read to the end
+                final InputStream in = mInputStream != null ? mInputStream : mConnection.getErrorStream();
+                if (in != null) {
+                    final byte[] buffer = new byte[1024];
+                    while (in.read(buffer) != -1) {
+                        // skip
+                    }
+                    in.close();
+                }
+            } catch (final IOException e) {
+                mConnection.disconnect();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            try {
+                mConnection.disconnect();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            synchronized (this) {
+                if (mReleased) {
+                    return;
+                }
+                mReleased = true;
+            }
+            HttpUrlConnectionTransport.this.release(mHost);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileList;
+
+/**
+ * An {@link IArchiveFile} that can read several tiles at once, typically with a single query.
+ * Optional: {@link MapTileFileArchiveProvider} reads the tiles of the other archives one by one
+ * with {@link IArchiveFile#getInputStream(ITileSource, long)}.
+ *
+ * @since 6.0.2
+ */
+public interface IBatchArchiveFile extends IArchiveFile {
+
+	/**
+	 * Get the data of several tiles at once, typically with a single query.
+	 *
+	 * @return the data of the tiles found in the archive, indexed by map tile index
+	 */
+	LongHashMap<byte[]> getImages(final ITileSource tileSource, final MapTileList pMapTileList);
+}
@@ -0,0 +1,20 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileList;
+
+/**
+ * An {@link IFilesystemCache} that can read several tiles at once, typically with a single query.
+ *
+ * @since 6.0.2
+ */
+public interface IBatchFilesystemCache extends IFilesystemCache {
+
+	/**
+	 * Reads several tiles at once, typically with a single query, without decoding them
+	 *
+	 * @return the data of the tiles found in the cache, indexed by map tile index
+	 */
+	LongHashMap<MapTileBytes> loadTiles(final ITileSource pTileSource, final MapTileList pMapTileList) throws Exception;
+}
@@ -0,0 +1,55 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The HTTP layer used by {@link MapTileDownloader} to get the tiles.
+ * An implementation typically keeps the connections alive between requests
+ * and limits the number of requests in progress per host.
+ * @see HttpUrlConnectionTransport
+ * @since 6.0.2
+ */
+
+public interface IHttpTransport {
+
+    /**
+     * Prepares a GET request, with the HTTP headers of the configuration.
+     * May block until the host accepts one more request.
+     * The request is sent when the response is first accessed.
+     * @return the connection, to be closed by the caller in any case
+     */
+    Connection open(final String pUrl) throws IOException;
+
+    /**
+     * A single request/response exchange
+     */
+    interface Connection {
+
+        /**
+         * Sets a request header, before the response is accessed
+         */
+        void setRequestProperty(final String pName, final String pValue);
+
+        int getResponseCode() throws IOException;
+
+        String getResponseMessage() throws IOException;
+
+        /**
+         * @return the value of the response header, or null
+         */
+        String getHeaderField(final String pName);
+
+        InputStream getInputStream() throws IOException;
+
+        /**
+         * Ends the exchange and lets the underlying connection be reused for the next request
+         */
+        void close();
+
+        /**
+         * Aborts the exchange, from any thread; the underlying connection is not reused
+         */
+        void disconnect();
+    }
+}
@@ -0,0 +1,49 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.InputStream;
+
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+/**
+ * An {@link IFilesystemCache} that keeps the HTTP validators of the tiles, so that
+ * {@link MapTileDownloader} revalidates expired tiles with conditional requests,
+ * and that saves a tile straight from the buffer it was downloaded into.
+ * Optional: with the other caches the expired tiles are downloaded again.
+ *
+ * @since 6.0.2
+ */
+public interface IRevalidatingFilesystemCache extends IFilesystemCache {
+
+	/**
+	 * Save a tile with the HTTP validators of its download, for later conditional requests
+	 *
+	 * @param pValidators the validators, or null
+	 */
+	boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex,
+					 final InputStream pStream, final Long pExpirationTime, final MapTileValidators pValidators);
+
+	/**
+	 * Save a tile from the buffer it was downloaded into, without copying it when possible
+	 *
+	 * @param pBytes the tile data; the buffer is not kept by the cache
+	 * @param pLength number of meaningful bytes in pBytes
+	 * @param pValidators the validators, or null
+	 */
+	boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex,
+					 final byte[] pBytes, final int pLength, final Long pExpirationTime, final MapTileValidators pValidators);
+
+	/**
+	 * Gets the HTTP validators stored with a tile
+	 *
+	 * @return the validators, or null if not supported or if the tile is not cached
+	 */
+	MapTileValidators getValidators(final ITileSource pTileSource, final long pMapTileIndex);
+
+	/**
+	 * Sets a new expiration for a cached tile that the server confirmed as still valid (HTTP 304),
+	 * without writing the tile again
+	 *
+	 * @return true if the tile was found and updated
+	 */
+	boolean refreshExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex, final Long pExpirationTime);
+}
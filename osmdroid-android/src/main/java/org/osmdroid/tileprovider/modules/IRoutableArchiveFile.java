@@ -0,0 +1,31 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.MapTileList;
+
+/**
+ * An {@link IArchiveFile} that tells {@link MapTileFileArchiveProvider} which tiles it may contain
+ * and whether it can be read concurrently.
+ * Optional: the other archives are queried for every tile, one thread at a time.
+ *
+ * @since 6.0.2
+ */
+public interface IRoutableArchiveFile extends IArchiveFile {
+
+	/**
+	 * Whether {@link #getInputStream(ITileSource, long)} and {@link IBatchArchiveFile#getImages(ITileSource, MapTileList)}
+	 * may be called by several threads at once. If not, the calls are serialized for this archive.
+	 */
+	boolean isThreadSafe();
+
+	/**
+	 * The tiles this archive may contain, so that it is only queried for tiles it can contain.
+	 * Called once, by a tile loader thread on the first lookup in this archive: it may be slow.
+	 * Called again if the tile source of the lookups changes.
+	 *
+	 * @param pTileSource the tile source of the lookups, for the archives whose entry names depend on it,
+	 *                    or null if unknown
+	 * @return the coverage, or null if unknown: the archive is then queried for every tile
+	 */
+	ArchiveCoverage getCoverage(ITileSource pTileSource);
+}
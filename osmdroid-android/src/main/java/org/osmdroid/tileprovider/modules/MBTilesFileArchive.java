@@ -13,7 +13,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.util.Log;
 import org.osmdroid.api.IMapView;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 /**
  * supports raster imagery in the MBTiles 1.1 spec
@@ -21,7 +23,7 @@ import org.osmdroid.util.MapTileIndex;
  https://github.com/mapbox/mbtiles-spec/tree/master/1.1
  @author neilboyd circa 2011
   */
-public class MBTilesFileArchive implements IArchiveFile {
+public class MBTilesFileArchive implements IBatchArchiveFile, IRoutableArchiveFile {
 
 	private SQLiteDatabase mDatabase;
 
@@ -82,6 +84,72 @@ public class MBTilesFileArchive implements IArchiveFile {
 		return null;
 	}
 
+	/**
+	 * @since 6.0.2
+	 */
+	private static final String[] column_row_data = { COL_TILES_TILE_COLUMN, COL_TILES_TILE_ROW, COL_TILES_TILE_DATA };
+
+	/**
+	 * Reads the tiles with one range query per zoom level,
+	 * the bounding box of the requested tiles of that zoom level
+	 * @since 6.0.2
+	 */
+	@Override
+	public LongHashMap<byte[]> getImages(final ITileSource pTileSource, final MapTileList pMapTileList) {
+		final LongHashMap<byte[]> result = new LongHashMap<>(pMapTileList.getSize());
+		final LongHashMap<Boolean> wanted = new LongHashMap<>(pMapTileList.getSize());
+		long zoomLevels = 0;
+		for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+			final long mapTileIndex = pMapTileList.get(i);
+			wanted.put(mapTileIndex, Boolean.TRUE);
+			zoomLevels |= 1L << MapTileIndex.getZoom(mapTileIndex);
+		}
+		try {
+			for (int zoom = 0 ; zoomLevels != 0 ; zoom ++, zoomLevels >>>= 1) {
+				if ((zoomLevels & 1) == 0) {
+					continue;
+				}
+				int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+				int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+				for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+					final long mapTileIndex = pMapTileList.get(i);
+					if (MapTileIndex.getZoom(mapTileIndex) != zoom) {
+						continue;
+					}
+					minX = Math.min(minX, MapTileIndex.getX(mapTileIndex));
+					maxX = Math.max(maxX, MapTileIndex.getX(mapTileIndex));
+					minY = Math.min(minY, MapTileIndex.getY(mapTileIndex));
+					maxY = Math.max(maxY, MapTileIndex.getY(mapTileIndex));
+				}
+				final int maxRow = (1 << zoom) - 1; // Use Google Tiling Spec
+				final String[] parameters = {
+						  Integer.toString(zoom)
+						, Integer.toString(minX)
+						, Integer.toString(maxX)
+						, Integer.toString(maxRow - maxY)
+						, Integer.toString(maxRow - minY)
+				};
+				final Cursor cur = mDatabase.query(TABLE_TILES, column_row_data,
+						"zoom_level=? and tile_column between ? and ? and tile_row between ? and ?",
+						parameters, null, null, null);
+				try {
+					while (cur.moveToNext()) {
+						final long mapTileIndex = MapTileIndex.getTileIndex(zoom, cur.getInt(0), maxRow - cur.getInt(1));
+						final byte[] bits = cur.getBlob(2);
+						if (bits != null && wanted.containsKey(mapTileIndex)) {
+							result.put(mapTileIndex, bits);
+						}
+					}
+				} finally {
+					cur.close();
+				}
+			}
+		} catch(final Throwable e) {
+			Log.w(IMapView.LOGTAG,"Error getting db images: " + pMapTileList.getSize() + " tiles", e);
+		}
+		return result;
+	}
+
 	public Set<String> getTileSources(){
 		//the MBTiles spec doesn't store source information in it, so we can't return anything
 		return Collections.EMPTY_SET;
@@ -92,6 +160,46 @@ public class MBTilesFileArchive implements IArchiveFile {
 
 	}
 
+	/**
+	 * {@link SQLiteDatabase} can be queried by several threads at once
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * The bounding box of each zoom level, with a single scan per zoom level
+	 * of the (zoom_level, tile_column, tile_row) index of the spec.
+	 * The rows are turned into Y as in {@link #getInputStream(ITileSource, long)}.
+	 * @since 6.0.2
+	 */
+	@Override
+	public ArchiveCoverage getCoverage(final ITileSource pTileSource) {
+		final ArchiveCoverage result = new ArchiveCoverage();
+		try {
+			for (int zoom = 0 ; zoom <= MapTileIndex.mMaxZoomLevel ; zoom ++) {
+				final Cursor cur = mDatabase.rawQuery("SELECT MIN(" + COL_TILES_TILE_COLUMN + "), MAX(" + COL_TILES_TILE_COLUMN + ")"
+						+ ", MIN(" + COL_TILES_TILE_ROW + "), MAX(" + COL_TILES_TILE_ROW + ")"
+						+ " FROM " + TABLE_TILES
+						+ " WHERE " + COL_TILES_ZOOM_LEVEL + " = " + zoom, null);
+				try {
+					if (cur.moveToFirst() && !cur.isNull(0)) {
+						final int maxRow = (1 << zoom) - 1; // Use Google Tiling Spec
+						result.add(zoom, cur.getInt(0), cur.getInt(1), maxRow - cur.getInt(3), maxRow - cur.getInt(2));
+					}
+				} finally {
+					cur.close();
+				}
+			}
+		} catch (final Exception e) {
+			Log.w(IMapView.LOGTAG,"Error getting coverage: ", e);
+			return null;
+		}
+		return result;
+	}
+
 	@Override
 	public void close() {
 		mDatabase.close();
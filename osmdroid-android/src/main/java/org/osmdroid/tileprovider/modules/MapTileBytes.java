@@ -0,0 +1,114 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.graphics.drawable.Drawable;
+
+import org.osmdroid.tileprovider.ByteArrayPool;
+import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * The raw data of a tile, read by the I/O stage of a tile loader
+ * and not decoded yet (cf. {@link MapTileDecoder})
+ * @since 6.0.2
+ */
+
+public class MapTileBytes {
+
+    private final ITileSource mTileSource;
+    private byte[] mBytes;
+    private final int mLength;
+    private final boolean mExpired;
+    private final boolean mNotModified;
+    private boolean mPooled;
+
+    /**
+     * @param pTileSource Tile source that will decode the data
+     * @param pBytes Tile data
+     * @param pLength Number of meaningful bytes in pBytes
+     * @param pExpired Whether the tile is to be flagged as expired once decoded
+     */
+    public MapTileBytes(final ITileSource pTileSource, final byte[] pBytes, final int pLength,
+                        final boolean pExpired) {
+        this(pTileSource, pBytes, pLength, pExpired, false);
+    }
+
+    private MapTileBytes(final ITileSource pTileSource, final byte[] pBytes, final int pLength,
+                         final boolean pExpired, final boolean pNotModified) {
+        mTileSource = pTileSource;
+        mBytes = pBytes;
+        mLength = pLength;
+        mExpired = pExpired;
+        mNotModified = pNotModified;
+    }
+
+    /**
+     * @return no data, just the information that the expired tile is still valid
+     * (e.g. HTTP 304 response) and doesn't need to be decoded again
+     */
+    public static MapTileBytes getNotModified(final ITileSource pTileSource) {
+        return new MapTileBytes(pTileSource, null, 0, false, true);
+    }
+
+    public MapTileBytes(final ITileSource pTileSource, final byte[] pBytes, final boolean pExpired) {
+        this(pTileSource, pBytes, pBytes.length, pExpired);
+    }
+
+    /**
+     * @param pBytes Tile data, in an array obtained from {@link ByteArrayPool}
+     *               that will be released by {@link #recycle()}
+     */
+    public static MapTileBytes getPooled(final ITileSource pTileSource, final byte[] pBytes, final int pLength,
+                                         final boolean pExpired) {
+        final MapTileBytes result = new MapTileBytes(pTileSource, pBytes, pLength, pExpired);
+        result.mPooled = true;
+        return result;
+    }
+
+    public byte[] getBytes() {
+        return mBytes;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    public boolean isExpired() {
+        return mExpired;
+    }
+
+    /**
+     * @see #getNotModified(ITileSource)
+     */
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+
+    /**
+     * @return the decoded tile, or null if the data is not a valid image
+     */
+    public Drawable decode() throws LowMemoryException {
+        if (mBytes == null) {
+            return null;
+        }
+        final Drawable result = mTileSource.getDrawable(new ByteArrayInputStream(mBytes, 0, mLength));
+        if (result != null && mExpired) {
+            ExpirableBitmapDrawable.setState(result, ExpirableBitmapDrawable.EXPIRED);
+        }
+        return result;
+    }
+
+    /**
+     * Gives the data array back to its pool, if any, once the tile is decoded or dropped.
+     * The data must not be accessed any more.
+     */
+    public void recycle() {
+        if (mPooled) {
+            mPooled = false;
+            ByteArrayPool.getInstance().release(mBytes);
+            mBytes = null;
+        }
+    }
+}
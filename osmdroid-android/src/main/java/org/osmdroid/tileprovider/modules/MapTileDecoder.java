@@ -0,0 +1,73 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The decode stage of the tile loading pipeline: the tile loaders read the tile bytes
+ * (I/O bound, cf. {@link MapTileBytes}) and hand them over to this small pool,
+ * sized to the number of CPU cores, that decodes them into drawables (CPU bound).
+ * The hand-off queue is bounded: when it's full, the I/O threads wait,
+ * instead of reading tiles faster than they can be decoded.
+ * @since 6.0.2
+ */
+
+public class MapTileDecoder {
+
+    private static MapTileDecoder sInstance;
+
+    public static synchronized MapTileDecoder getInstance() {
+        if (sInstance == null) {
+            final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            sInstance = new MapTileDecoder(threads, 2 * threads);
+        }
+        return sInstance;
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param pThreadCount Number of decode threads
+     * @param pQueueSize Maximum number of tiles waiting to be decoded
+     */
+    public MapTileDecoder(final int pThreadCount, final int pQueueSize) {
+        mExecutor = new ThreadPoolExecutor(pThreadCount, pThreadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(pQueueSize),
+                new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, "decoder"),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(final Runnable pRunnable, final ThreadPoolExecutor pExecutor) {
+                        if (pExecutor.isShutdown()) {
+                            return;
+                        }
+                        try {
+                            pExecutor.getQueue().put(pRunnable); // waiting for room
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            pRunnable.run(); // in the I/O thread then, but not lost
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Runs the decoding task on a decode thread.
+     * Blocks as long as the hand-off queue is full.
+     */
+    public void decode(final Runnable pRunnable) {
+        mExecutor.execute(pRunnable);
+    }
+
+    public int getThreadCount() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    /**
+     * @return the number of tiles waiting to be decoded
+     */
+    public int getQueuedCount() {
+        return mExecutor.getQueue().size();
+    }
+}
@@ -7,28 +7,31 @@ import android.util.Log;
 import org.osmdroid.api.IMapView;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.tileprovider.BitmapPool;
+import org.osmdroid.tileprovider.ByteArrayPool;
 import org.osmdroid.tileprovider.MapTileRequestState;
 import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
-import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
 import org.osmdroid.tileprovider.util.Counters;
-import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -46,6 +49,17 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 	// Constants
 	// ===========================================================
 
+	/**
+	 * @since 6.0.2
+	 */
+	private static final String HTTP_CONTENT_LENGTH_HEADER = "Content-Length";
+
+	/**
+	 * Maximum number of tiles remembered as not found; the oldest are forgotten first
+	 * @since 6.0.2
+	 */
+	private static final int MAX_NOT_FOUND_TILES = 1000;
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
@@ -56,6 +70,48 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 	private final INetworkAvailablityCheck mNetworkAvailablityCheck;
 
+	/**
+	 * Connections in progress, so that they can be aborted when their tile is not wanted any more
+	 * @since 6.0.2
+	 */
+	private final HashMap<Long, IHttpTransport.Connection> mConnections = new HashMap<>();
+
+	/**
+	 * @since 6.0.2
+	 */
+	private volatile IHttpTransport mHttpTransport = HttpUrlConnectionTransport.getInstance();
+
+	/**
+	 * @since 6.0.2
+	 */
+	private final TileServerHealth mServerHealth = TileServerHealth.getInstance();
+
+	/**
+	 * Tiles the server answered 404 for, with the time until which they are not requested again
+	 * @since 6.0.2
+	 */
+	private final LongHashMap<Long> mNotFoundTiles = new LongHashMap<>();
+
+	/**
+	 * Tiles just skipped because their host is backed off, with the time their host can be retried
+	 * @since 6.0.2
+	 */
+	private final LongHashMap<Long> mBackedOffTiles = new LongHashMap<>();
+
+	/**
+	 * Requests of backed off hosts, put back in the queue when their host can be retried,
+	 * instead of failing and leaving blank tiles until the next pan
+	 * @since 6.0.2
+	 */
+	private final HashMap<Long, MapTileRequestState> mDeferred = new HashMap<>();
+	/**
+	 * The time each deferred request can be retried, in sync with {@link #mDeferred}
+	 * @since 6.0.2
+	 */
+	private final LongHashMap<Long> mDeferredRetryTimes = new LongHashMap<>();
+	private Timer mRetryTimer;
+	private long mRetryTime;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -95,6 +151,21 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		return mTileSource.get();
 	}
 
+	/**
+	 * @since 6.0.2
+	 */
+	public IHttpTransport getHttpTransport() {
+		return mHttpTransport;
+	}
+
+	/**
+	 * Replaces the default {@link HttpUrlConnectionTransport}, e.g. with an OkHttp based transport
+	 * @since 6.0.2
+	 */
+	public void setHttpTransport(final IHttpTransport pHttpTransport) {
+		mHttpTransport = pHttpTransport;
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
@@ -122,10 +193,64 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 	@Override
 	public void detach() {
 		super.detach();
+		synchronized (mDeferred) {
+			mDeferred.clear();
+			mDeferredRetryTimes.clear();
+			if (mRetryTimer != null) {
+				mRetryTimer.cancel();
+				mRetryTimer = null;
+			}
+			mRetryTime = 0;
+		}
 		if (this.mFilesystemCache!=null)
 		this.mFilesystemCache.onDetach();
 	}
 
+	/**
+	 * Also cancels the deferred requests of tiles that are not wanted any more
+	 * @since 6.0.2
+	 */
+	@Override
+	public void cancelUnwantedTiles(final LongHashMap<?> pWantedTiles) {
+		super.cancelUnwantedTiles(pWantedTiles);
+		final List<MapTileRequestState> removed = new ArrayList<>();
+		synchronized (mDeferred) {
+			final Iterator<MapTileRequestState> iterator = mDeferred.values().iterator();
+			while (iterator.hasNext()) {
+				final MapTileRequestState state = iterator.next();
+				if (!pWantedTiles.containsKey(state.getMapTile())) {
+					iterator.remove();
+					mDeferredRetryTimes.remove(state.getMapTile());
+					removed.add(state);
+				}
+			}
+		}
+		for (final MapTileRequestState state : removed) {
+			requestCancelled(state);
+		}
+	}
+
+	/**
+	 * Aborts the download in progress, if any
+	 * @since 6.0.2
+	 */
+	@Override
+	protected void onTileCancelled(final long pMapTileIndex) {
+		final IHttpTransport.Connection connection;
+		synchronized (mConnections) {
+			connection = mConnections.remove(pMapTileIndex);
+		}
+		if (connection == null) {
+			return;
+		}
+		if (Configuration.getInstance().isDebugMapTileDownloader()) {
+			Log.d(IMapView.LOGTAG, "Aborting download of MapTile: " + MapTileIndex.toString(pMapTileIndex));
+		}
+		try {
+			connection.disconnect();
+		} catch (Exception ex) {}
+	}
+
 	@Override
 	public int getMinimumZoomLevel() {
 		OnlineTileSourceBase tileSource = mTileSource.get();
@@ -142,11 +267,94 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 	@Override
 	public void setTileSource(final ITileSource tileSource) {
 		// We are only interested in OnlineTileSourceBase tile sources
+		final OnlineTileSourceBase previous;
 		if (tileSource instanceof OnlineTileSourceBase) {
-			mTileSource.set((OnlineTileSourceBase) tileSource);
+			previous = mTileSource.getAndSet((OnlineTileSourceBase) tileSource);
 		} else {
 			// Otherwise shut down the tile downloader
-			mTileSource.set(null);
+			previous = mTileSource.getAndSet(null);
+		}
+		if (previous != tileSource) {
+			synchronized (mNotFoundTiles) {
+				mNotFoundTiles.clear();
+			}
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Keeps the request aside until its host can be retried
+	 * @since 6.0.2
+	 */
+	private void defer(final MapTileRequestState pState, final long pRetryTime) {
+		// in half-open state the retry time is past while the probe is in progress
+		final long retryTime = Math.max(pRetryTime, System.currentTimeMillis() + TileServerHealth.MIN_BACKOFF);
+		synchronized (mDeferred) {
+			mDeferred.put(pState.getMapTile(), pState);
+			mDeferredRetryTimes.put(pState.getMapTile(), retryTime);
+			scheduleRetry(retryTime);
+		}
+	}
+
+	/**
+	 * Makes sure a retry is scheduled no later than that time. Must be called in sync.
+	 * @since 6.0.2
+	 */
+	private void scheduleRetry(final long pRetryTime) {
+		if (mRetryTime != 0 && mRetryTime <= pRetryTime) {
+			return;
+		}
+		if (mRetryTimer == null) {
+			mRetryTimer = new Timer("osmdroid-download-retry", true);
+		}
+		mRetryTime = pRetryTime;
+		mRetryTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				retryDeferred();
+			}
+		}, new Date(pRetryTime));
+	}
+
+	/**
+	 * Puts back in the queue the deferred requests whose host can be retried by now,
+	 * and schedules the next retry for the others
+	 * @since 6.0.2
+	 */
+	private void retryDeferred() {
+		final List<MapTileRequestState> states = new ArrayList<>();
+		synchronized (mDeferred) {
+			final long now = System.currentTimeMillis();
+			if (mRetryTime <= now) {
+				mRetryTime = 0;
+			}
+			long next = 0;
+			final Iterator<MapTileRequestState> iterator = mDeferred.values().iterator();
+			while (iterator.hasNext()) {
+				final MapTileRequestState state = iterator.next();
+				final long retryTime = mDeferredRetryTimes.get(state.getMapTile());
+				if (retryTime <= now) {
+					iterator.remove();
+					mDeferredRetryTimes.remove(state.getMapTile());
+					states.add(state);
+				} else if (next == 0 || next > retryTime) {
+					next = retryTime;
+				}
+			}
+			if (next != 0) {
+				scheduleRetry(next);
+			}
+		}
+		if (Configuration.getInstance().isDebugMapTileDownloader() && states.size() > 0) {
+			Log.d(IMapView.LOGTAG, "Retrying " + states.size() + " deferred tiles");
+		}
+		for (final MapTileRequestState state : states) {
+			if (!state.isCancelled()) {
+				loadMapTileAsync(state);
+			}
 		}
 	}
 
@@ -158,6 +366,23 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 		@Override
 		public Drawable loadTile(final long pMapTileIndex) throws CantContinueException {
+			return loadAndDecodeTile(pMapTileIndex);
+		}
+
+		/**
+		 * @since 6.0.2
+		 */
+		@Override
+		protected boolean isDecodeSeparate() {
+			return true;
+		}
+
+		/**
+		 * Downloads the tile and saves it into the file system cache
+		 * @since 6.0.2
+		 */
+		@Override
+		protected MapTileBytes loadTileBytes(final long pMapTileIndex) throws CantContinueException {
 
 			OnlineTileSourceBase tileSource = mTileSource.get();
 			if (tileSource == null) {
@@ -165,8 +390,9 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 			}
 
 			InputStream in = null;
-			OutputStream out = null;
-			HttpURLConnection c=null;
+			IHttpTransport.Connection c=null;
+			String host = null;
+			boolean reported = false;
 
 			try {
 
@@ -188,22 +414,70 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 					return null;
 				}
 
-				if (Configuration.getInstance().getHttpProxy() != null) {
-					c = (HttpURLConnection) new URL(tileURLString).openConnection(Configuration.getInstance().getHttpProxy());
-				} else {
-					c = (HttpURLConnection) new URL(tileURLString).openConnection();
+				if (isNotFound(pMapTileIndex)) {
+					if (Configuration.getInstance().isDebugMapTileDownloader()) {
+						Log.d(IMapView.LOGTAG, tileURLString + " skipped, recently not found");
+					}
+					return null;
 				}
-				c.setUseCaches(true);
-				c.setRequestProperty(Configuration.getInstance().getUserAgentHttpHeader(),Configuration.getInstance().getUserAgentValue());
-				for (final Map.Entry<String, String> entry : Configuration.getInstance().getAdditionalHttpRequestProperties().entrySet()) {
-					c.setRequestProperty(entry.getKey(), entry.getValue());
+
+				// while the host is unavailable its tiles are deferred, cf. tileLoadedFailed
+				final String tileHost = new URL(tileURLString).getAuthority();
+				if (!mServerHealth.isAvailable(tileHost)) {
+					final long retryTime = mServerHealth.getRetryTime(tileHost);
+					if (Configuration.getInstance().isDebugMapTileDownloader()) {
+						Log.d(IMapView.LOGTAG, tileURLString + " deferred, " + tileHost + " unavailable until " + new Date(retryTime));
+					}
+					synchronized (mBackedOffTiles) {
+						mBackedOffTiles.put(pMapTileIndex, retryTime);
+					}
+					return null;
+				}
+				host = tileHost;
+
+				c = mHttpTransport.open(tileURLString);
+				synchronized (mConnections) {
+					mConnections.put(pMapTileIndex, c);
+				}
+				if (isTileCancelled(pMapTileIndex)) {
+					return null;
+				}
+
+				// revalidation of the expired tile of the cache, if any
+				final MapTileValidators validators = mFilesystemCache instanceof IRevalidatingFilesystemCache
+						? ((IRevalidatingFilesystemCache) mFilesystemCache).getValidators(tileSource, pMapTileIndex) : null;
+				if (validators != null) {
+					if (validators.getETag() != null) {
+						c.setRequestProperty(MapTileValidators.HTTP_IF_NONE_MATCH_HEADER, validators.getETag());
+					}
+					if (validators.getLastModified() != null) {
+						c.setRequestProperty(MapTileValidators.HTTP_IF_MODIFIED_SINCE_HEADER, validators.getLastModified());
+					}
 				}
-				c.connect();
-                                
 
 				// Check to see if we got success
-				
-				if (c.getResponseCode() != 200) {
+
+				final int responseCode = c.getResponseCode();
+				if (responseCode == TileServerHealth.HTTP_TOO_MANY_REQUESTS
+						|| responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+					mServerHealth.onFailure(host,
+							mServerHealth.parseRetryAfter(c.getHeaderField(TileServerHealth.HTTP_RETRY_AFTER_HEADER)));
+				} else {
+					mServerHealth.onSuccess(host);
+				}
+				reported = true;
+				if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+					setNotFound(pMapTileIndex);
+				}
+				if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null) {
+					if (Configuration.getInstance().isDebugMapTileDownloader()) {
+						Log.d(IMapView.LOGTAG, tileURLString + " not modified");
+					}
+					// only the expiration changes, the tile is neither written nor decoded again
+					((IRevalidatingFilesystemCache) mFilesystemCache).refreshExpirationTimestamp(tileSource, pMapTileIndex, getExpirationTime(c));
+					return MapTileBytes.getNotModified(tileSource);
+				}
+				if (responseCode != 200) {
 					Log.w(IMapView.LOGTAG, "Problem downloading MapTile: " + MapTileIndex.toString(pMapTileIndex) + " HTTP response: " + c.getResponseMessage());
 					if (Configuration.getInstance().isDebugMapTileDownloader()) {
 						Log.d(IMapView.LOGTAG, tileURLString);
@@ -217,72 +491,193 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 				
 				in = c.getInputStream();
 
-				final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-				out = new BufferedOutputStream(dataStream, StreamUtils.IO_BUFFER_SIZE);
-				//default is 1 week from now
-				//Date dateExpires;
-				Long override=Configuration.getInstance().getExpirationOverrideDuration();
-				Long expirationTime = null;
-				if (override!=null) {
-					expirationTime = System.currentTimeMillis() + override;
-				} else {
-					expirationTime = System.currentTimeMillis() + OpenStreetMapTileProviderConstants.DEFAULT_MAXIMUM_CACHED_FILE_AGE + Configuration.getInstance().getExpirationExtendedDuration();
-					final String expires = c.getHeaderField(OpenStreetMapTileProviderConstants.HTTP_EXPIRES_HEADER);
-					if (expires != null && expires.length() > 0) {
-						try {
-							final Date dateExpires = Configuration.getInstance().getHttpHeaderDateTimeFormat().parse(expires);
-							expirationTime = dateExpires.getTime() + Configuration.getInstance().getExpirationExtendedDuration();
-						} catch (Exception ex) {
-							if (Configuration.getInstance().isDebugMapTileDownloader())
-								Log.d(IMapView.LOGTAG, "Unable to parse expiration tag for tile, using default, server returned " + expires, ex);
-						}
-					}
-				}
-				StreamUtils.copy(in, out);
-				out.flush();
-				final byte[] data = dataStream.toByteArray();
-				final ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
+				// the data is read once into a pooled buffer, sized from the Content-Length if any,
+				// then both saved and decoded from that buffer
+				final Long expirationTime = getExpirationTime(c);
+				final int[] length = new int[1];
+				final byte[] data = ByteArrayPool.getInstance().read(in, getContentLength(c), length);
 
 				// Save the data to the cache
 				//this is the only point in which we insert tiles to the db or local file system.
 
-				if (mFilesystemCache != null) {
-					mFilesystemCache.saveFile(tileSource, pMapTileIndex, byteStream, expirationTime);
-					byteStream.reset();
+				if (mFilesystemCache instanceof IRevalidatingFilesystemCache) {
+					((IRevalidatingFilesystemCache) mFilesystemCache).saveFile(tileSource, pMapTileIndex, data, length[0], expirationTime,
+							new MapTileValidators(
+									c.getHeaderField(MapTileValidators.HTTP_ETAG_HEADER),
+									c.getHeaderField(MapTileValidators.HTTP_LAST_MODIFIED_HEADER)));
+				} else if (mFilesystemCache != null) {
+					mFilesystemCache.saveFile(tileSource, pMapTileIndex, new ByteArrayInputStream(data, 0, length[0]), expirationTime);
 				}
-				final Drawable result = tileSource.getDrawable(byteStream);
 
-				return result;
+				return MapTileBytes.getPooled(tileSource, data, length[0], false);
 			} catch (final UnknownHostException e) {
-				// no network connection so empty the queue
+				// no network connection: the host is backed off instead of emptying the queue
 				Log.w(IMapView.LOGTAG,"UnknownHostException downloading MapTile: " + MapTileIndex.toString(pMapTileIndex) + " : " + e);
 				Counters.tileDownloadErrors++;
-				throw new CantContinueException(e);
-			} catch (final LowMemoryException e) {
-				// low memory so empty the queue
-				Counters.countOOM++;
-				Log.w(IMapView.LOGTAG,"LowMemoryException downloading MapTile: " + MapTileIndex.toString(pMapTileIndex) + " : " + e);
-				throw new CantContinueException(e);
+				if (host != null && !reported) {
+					mServerHealth.onFailure(host, 0);
+					reported = true;
+				}
 			} catch (final FileNotFoundException e) {
 				Counters.tileDownloadErrors++;
 				Log.w(IMapView.LOGTAG,"Tile not found: " + MapTileIndex.toString(pMapTileIndex) + " : " + e);
 			} catch (final IOException e) {
+				if (isTileCancelled(pMapTileIndex)) {
+					if (Configuration.getInstance().isDebugMapTileDownloader()) {
+						Log.d(IMapView.LOGTAG, "Download aborted: " + MapTileIndex.toString(pMapTileIndex));
+					}
+					return null;
+				}
 				Counters.tileDownloadErrors++;
 				Log.w(IMapView.LOGTAG,"IOException downloading MapTile: " + MapTileIndex.toString(pMapTileIndex) + " : " + e);
+				if (host != null && !reported) {
+					mServerHealth.onFailure(host, 0);
+					reported = true;
+				}
 			} catch (final Throwable e) {
 				Counters.tileDownloadErrors++;
 				Log.e(IMapView.LOGTAG,"Error downloading MapTile: " + MapTileIndex.toString(pMapTileIndex), e);
 			} finally {
-				StreamUtils.closeStream(in);
-				StreamUtils.closeStream(out);
-				try{
-					c.disconnect();
-				} catch (Exception ex){}
+				if (host != null && !reported) {
+					// e.g. aborted download: nothing learnt about the host
+					mServerHealth.onCancelled(host);
+				}
+				synchronized (mConnections) {
+					mConnections.remove(pMapTileIndex);
+				}
+				// closing the connection closes its stream and keeps it alive for the next tile
+				if (c != null) {
+					c.close();
+				}
 			}
 
 			return null;
 		}
 
+		/**
+		 * @return the Content-Length of the response, or -1 if unknown
+		 * @since 6.0.2
+		 */
+		private int getContentLength(final IHttpTransport.Connection pConnection) {
+			final String contentLength = pConnection.getHeaderField(HTTP_CONTENT_LENGTH_HEADER);
+			if (contentLength == null) {
+				return -1;
+			}
+			try {
+				return Integer.parseInt(contentLength.trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * @return true if the server recently answered 404 for that tile
+		 * @since 6.0.2
+		 */
+		private boolean isNotFound(final long pMapTileIndex) {
+			synchronized (mNotFoundTiles) {
+				final Long until = mNotFoundTiles.get(pMapTileIndex);
+				if (until == null) {
+					return false;
+				}
+				if (until > System.currentTimeMillis()) {
+					return true;
+				}
+				mNotFoundTiles.remove(pMapTileIndex);
+				return false;
+			}
+		}
+
+		/**
+		 * @since 6.0.2
+		 */
+		private void setNotFound(final long pMapTileIndex) {
+			final long duration = Configuration.getInstance().getTileDownloadNotFoundDuration();
+			if (duration <= 0) {
+				return;
+			}
+			final long now = System.currentTimeMillis();
+			synchronized (mNotFoundTiles) {
+				if (mNotFoundTiles.size() >= MAX_NOT_FOUND_TILES && !mNotFoundTiles.containsKey(pMapTileIndex)) {
+					trimNotFound(now);
+				}
+				mNotFoundTiles.put(pMapTileIndex, now + duration);
+			}
+		}
+
+		/**
+		 * Forgets the tiles whose not found period is over, or else the oldest one. Must be called in sync.
+		 * @since 6.0.2
+		 */
+		private void trimNotFound(final long pNow) {
+			final MapTileList removed = new MapTileList();
+			long oldest = 0;
+			long oldestUntil = Long.MAX_VALUE;
+			for (int i = 0 ; i < mNotFoundTiles.getSlotCount() ; i ++) {
+				final Long until = mNotFoundTiles.getValueAt(i);
+				if (until == null) {
+					continue;
+				}
+				if (until <= pNow) {
+					removed.put(mNotFoundTiles.getKeyAt(i));
+				} else if (until < oldestUntil) {
+					oldestUntil = until;
+					oldest = mNotFoundTiles.getKeyAt(i);
+				}
+			}
+			if (removed.getSize() == 0) {
+				removed.put(oldest);
+			}
+			for (int i = 0 ; i < removed.getSize() ; i ++) {
+				mNotFoundTiles.remove(removed.get(i));
+			}
+		}
+
+		/**
+		 * @return the expiration of the tile, from the configuration or from the response
+		 * @since 6.0.2
+		 */
+		private Long getExpirationTime(final IHttpTransport.Connection pConnection) {
+			//default is 1 week from now
+			//Date dateExpires;
+			Long override=Configuration.getInstance().getExpirationOverrideDuration();
+			Long expirationTime = null;
+			if (override!=null) {
+				expirationTime = System.currentTimeMillis() + override;
+			} else {
+				expirationTime = System.currentTimeMillis() + OpenStreetMapTileProviderConstants.DEFAULT_MAXIMUM_CACHED_FILE_AGE + Configuration.getInstance().getExpirationExtendedDuration();
+				final String expires = pConnection.getHeaderField(OpenStreetMapTileProviderConstants.HTTP_EXPIRES_HEADER);
+				if (expires != null && expires.length() > 0) {
+					try {
+						final Date dateExpires = Configuration.getInstance().getHttpHeaderDateTimeFormat().parse(expires);
+						expirationTime = dateExpires.getTime() + Configuration.getInstance().getExpirationExtendedDuration();
+					} catch (Exception ex) {
+						if (Configuration.getInstance().isDebugMapTileDownloader())
+							Log.d(IMapView.LOGTAG, "Unable to parse expiration tag for tile, using default, server returned " + expires, ex);
+					}
+				}
+			}
+			return expirationTime;
+		}
+
+		/**
+		 * The tiles skipped because their host is backed off are deferred instead of failing
+		 * @since 6.0.2
+		 */
+		@Override
+		protected void tileLoadedFailed(final MapTileRequestState pState) {
+			final Long retryTime;
+			synchronized (mBackedOffTiles) {
+				retryTime = mBackedOffTiles.remove(pState.getMapTile());
+			}
+			if (retryTime == null || pState.isCancelled()) {
+				super.tileLoadedFailed(pState);
+				return;
+			}
+			removeTileFromQueues(pState.getMapTile());
+			defer(pState, retryTime);
+		}
+
 		@Override
 		protected void tileLoaded(final MapTileRequestState pState, final Drawable pDrawable) {
 			removeTileFromQueues(pState.getMapTile());
@@ -1,6 +1,7 @@
 // Created by plusminus on 21:46:41 - 25.09.2008
 package org.osmdroid.tileprovider.modules;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -16,7 +17,9 @@ import android.graphics.drawable.Drawable;
 import android.util.Log;
 import org.osmdroid.api.IMapView;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 /**
  * A tile provider that can serve tiles from an archive using the supplied tile source. The tile
@@ -39,6 +42,13 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	private final ArrayList<IArchiveFile> mArchiveFiles = new ArrayList<IArchiveFile>();
 
+	/**
+	 * Routing index built from {@link #mArchiveFiles}, replaced as a whole when the archives change,
+	 * so that the tile loaders read it without any lock.
+	 * @since 6.0.2
+	 */
+	private volatile ArchiveRoutingIndex mRoutingIndex = new ArchiveRoutingIndex(new ArrayList<IArchiveFile>());
+
 	private final AtomicReference<ITileSource> mTileSource = new AtomicReference<ITileSource>();
 
 	/** Disable the search of archives if specified in constructor */
@@ -83,6 +93,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 			for (int i = pArchives.length - 1; i >= 0; i--) {
 				mArchiveFiles.add(pArchives[i]);
 			}
+			updateRoutingIndex();
 		}
 
 	}
@@ -158,7 +169,8 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 		super.detach();
 	}
 
-	private void clearArcives(){
+	private synchronized void clearArcives(){
+		mRoutingIndex = new ArchiveRoutingIndex(new ArrayList<IArchiveFile>());
 		while(!mArchiveFiles.isEmpty()) {
 			IArchiveFile t = mArchiveFiles.get(0);
 			if (t!=null)
@@ -171,7 +183,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 	// Methods
 	// ===========================================================
 
-	private void findArchiveFiles() {
+	private synchronized void findArchiveFiles() {
 		clearArcives();
 
 		if (!isSdCardAvailable()) {
@@ -190,23 +202,14 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
                     }
                }
           }
+		updateRoutingIndex();
 	}
 
-	private synchronized InputStream getInputStream(final long pMapTileIndex,
-			final ITileSource tileSource) {
-		for (final IArchiveFile archiveFile : mArchiveFiles) {
-			if (archiveFile!=null) {
-				final InputStream in = archiveFile.getInputStream(tileSource, pMapTileIndex);
-				if (in != null) {
-					if (Configuration.getInstance().isDebugMode()) {
-						Log.d(IMapView.LOGTAG, "Found tile " + MapTileIndex.toString(pMapTileIndex) + " in " + archiveFile);
-					}
-					return in;
-				}
-			}
-		}
-
-		return null;
+	/**
+	 * @since 6.0.2
+	 */
+	private void updateRoutingIndex() {
+		mRoutingIndex = new ArchiveRoutingIndex(mArchiveFiles);
 	}
 
 	// ===========================================================
@@ -215,10 +218,19 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	protected class TileLoader extends MapTileModuleProviderBase.TileLoader {
 
+		/**
+		 * @since 6.0.2
+		 */
 		@Override
-		public Drawable loadTile(final long pMapTileIndex) {
+		protected boolean isDecodeSeparate() {
+			return true;
+		}
 
-			Drawable returnValue=null;
+		/**
+		 * @since 6.0.2
+		 */
+		@Override
+		protected MapTileBytes loadTileBytes(final long pMapTileIndex) {
 			ITileSource tileSource = mTileSource.get();
 			if (tileSource == null) {
 				return null;
@@ -234,17 +246,14 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 			InputStream inputStream = null;
 			try {
-				if (Configuration.getInstance().isDebugMode()) {
-					Log.d(IMapView.LOGTAG,"Archives - Tile doesn't exist: " + MapTileIndex.toString(pMapTileIndex));
-				}
-
-				inputStream = getInputStream(pMapTileIndex, tileSource);
+				inputStream = mRoutingIndex.getInputStream(pMapTileIndex, tileSource);
 				if (inputStream != null) {
 					if (Configuration.getInstance().isDebugMode()) {
 						Log.d(IMapView.LOGTAG,"Use tile from archive: " + MapTileIndex.toString(pMapTileIndex));
 					}
-					final Drawable drawable = tileSource.getDrawable(inputStream);
-					returnValue = drawable;
+					final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+					StreamUtils.copy(inputStream, dataStream);
+					return new MapTileBytes(tileSource, dataStream.toByteArray(), false);
 				}
 			} catch (final Throwable e) {
 				Log.e(IMapView.LOGTAG,"Error loading tile", e);
@@ -253,8 +262,52 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 					StreamUtils.closeStream(inputStream);
 				}
 			}
+			return null;
+		}
+
+		/**
+		 * @since 6.0.2
+		 */
+		@Override
+		protected int getMaxBatchSize() {
+			return MAX_BATCH_SIZE;
+		}
+
+		/**
+		 * @since 6.0.2
+		 */
+		@Override
+		protected LongHashMap<MapTileBytes> loadTileBytes(final MapTileList pMapTileList) {
+			ITileSource tileSource = mTileSource.get();
+			if (tileSource == null) {
+				return null;
+			}
+
+			// if there's no sdcard then don't do anything
+			if (!isSdCardAvailable()) {
+				if (Configuration.getInstance().isDebugMode()) {
+					Log.d(IMapView.LOGTAG,"No sdcard - do nothing for " + pMapTileList.getSize() + " tiles");
+				}
+				return null;
+			}
 
-			return returnValue;
+			final LongHashMap<byte[]> images = mRoutingIndex.getImages(pMapTileList, tileSource);
+			final LongHashMap<MapTileBytes> result = new LongHashMap<>(images.size());
+			for (int i = 0 ; i < images.getSlotCount() ; i ++) {
+				final byte[] image = images.getValueAt(i);
+				if (image != null) {
+					result.put(images.getKeyAt(i), new MapTileBytes(tileSource, image, false));
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Reads and decodes the tile at once: not used by the loader, which decodes the tiles separately
+		 */
+		@Override
+		public Drawable loadTile(final long pMapTileIndex) throws CantContinueException {
+			return loadAndDecodeTile(pMapTileIndex);
 		}
 	}
 }
@@ -1,11 +1,17 @@
 package org.osmdroid.tileprovider.modules;
 
+import org.osmdroid.config.Configuration;
 import org.osmdroid.tileprovider.IRegisterReceiver;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.Counters;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileList;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.drawable.Drawable;
 import android.os.Environment;
 import android.util.Log;
 import org.osmdroid.api.IMapView;
@@ -15,6 +21,12 @@ public abstract class MapTileFileStorageProviderBase extends MapTileModuleProvid
 	/** whether the sdcard is mounted read/write */
 	static private boolean mSdCardAvailable = true;
 
+	/**
+	 * Maximum number of pending tiles read from storage at once
+	 * @since 6.0.2
+	 */
+	protected static final int MAX_BATCH_SIZE = 16;
+
 	private final IRegisterReceiver mRegisterReceiver;
 	private MyBroadcastReceiver mBroadcastReceiver;
 
@@ -54,6 +66,15 @@ public abstract class MapTileFileStorageProviderBase extends MapTileModuleProvid
 		super.detach();
 	}
 
+	/**
+	 * The tiles read from the storage are counted apart from the downloaded ones
+	 * @since 6.0.2
+	 */
+	@Override
+	protected void countLowMemory() {
+		Counters.fileCacheOOM++;
+	}
+
 	protected void onMediaMounted() {
 		// Do nothing by default. Override to handle.
 	}
@@ -62,6 +83,78 @@ public abstract class MapTileFileStorageProviderBase extends MapTileModuleProvid
 		// Do nothing by default. Override to handle.
 	}
 
+	/**
+	 * The loader of the tile cache providers: reads the tiles from an {@link IBatchFilesystemCache},
+	 * several at once, and lets the {@link MapTileDecoder} decode them
+	 * @since 6.0.2
+	 */
+	protected abstract class CacheTileLoader extends TileLoader {
+
+		/**
+		 * @return the cache, or null if it's not available any more (map shutdown?)
+		 */
+		protected abstract IBatchFilesystemCache getCache();
+
+		protected abstract ITileSource getTileSource();
+
+		@Override
+		protected boolean isDecodeSeparate() {
+			return true;
+		}
+
+		@Override
+		protected int getMaxBatchSize() {
+			return MAX_BATCH_SIZE;
+		}
+
+		@Override
+		protected MapTileBytes loadTileBytes(final long pMapTileIndex) {
+			final MapTileList mapTileList = new MapTileList(1);
+			mapTileList.put(pMapTileIndex);
+			final LongHashMap<MapTileBytes> result = loadTileBytes(mapTileList);
+			return result == null ? null : result.get(pMapTileIndex);
+		}
+
+		@Override
+		protected LongHashMap<MapTileBytes> loadTileBytes(final MapTileList pMapTileList) {
+			final ITileSource tileSource = getTileSource();
+			if (tileSource == null) {
+				return null;
+			}
+
+			// if there's no sdcard then don't do anything
+			if (!isSdCardAvailable()) {
+				if (Configuration.getInstance().isDebugMode()) {
+					Log.d(IMapView.LOGTAG,"No sdcard - do nothing for " + pMapTileList.getSize() + " tiles");
+				}
+				Counters.fileCacheMiss += pMapTileList.getSize();
+				return null;
+			}
+			final IBatchFilesystemCache cache = getCache();
+			if (cache == null) {
+				Log.d(IMapView.LOGTAG, "TileLoader failed to load tiles due to the cache being null (map shutdown?)");
+				return null;
+			}
+			try {
+				final LongHashMap<MapTileBytes> result = cache.loadTiles(tileSource, pMapTileList);
+				Counters.fileCacheHit += result.size();
+				Counters.fileCacheMiss += pMapTileList.getSize() - result.size();
+				return result;
+			} catch (final Throwable e) {
+				Log.e(IMapView.LOGTAG, "Error loading tiles", e);
+				return null;
+			}
+		}
+
+		/**
+		 * Reads and decodes the tile at once: not used by the loader, which decodes the tiles separately
+		 */
+		@Override
+		public Drawable loadTile(final long pMapTileIndex) throws CantContinueException {
+			return loadAndDecodeTile(pMapTileIndex);
+		}
+	}
+
 	/**
 	 * This broadcast receiver will recheck the sd card when the mount/unmount messages happen
 	 *
@@ -1,22 +1,29 @@
 package org.osmdroid.tileprovider.modules;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 
 import org.osmdroid.config.Configuration;
 import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
+import org.osmdroid.tileprovider.ICancellableMapTileProviderCallback;
+import org.osmdroid.tileprovider.IMapTileProviderCallback;
+import org.osmdroid.tileprovider.IRevalidatingMapTileProviderCallback;
 import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.Counters;
 
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 import org.osmdroid.api.IMapView;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 /**
  * An abstract base class for modular tile providers
@@ -80,50 +87,48 @@ public abstract class MapTileModuleProviderBase {
 	public abstract void setTileSource(ITileSource tileSource);
 
 	private final ExecutorService mExecutor;
+	/**
+	 * The stage of the shared executor when used instead of a dedicated thread pool, or null
+	 * @since 6.0.2
+	 */
+	private final MapTileSharedExecutor.Stage mStage;
 
 	protected final Object mQueueLockObject = new Object();
 	protected final HashMap<Long, MapTileRequestState> mWorking;
-	protected final LinkedHashMap<Long, MapTileRequestState> mPending;
+	/**
+	 * The pending requests, kept up to date for subclasses that read them.
+	 * @deprecated Since 6.0.2 the pending requests are managed by a {@link MapTileRequestQueue}
+	 * that this map only mirrors: it is no longer access-ordered, and changes made to it are ignored.
+	 */
+	@Deprecated
+	protected final LinkedHashMap<Long, MapTileRequestState> mPending = new LinkedHashMap<>();
+	/**
+	 * The pending requests, with the next tile to work on in O(1)
+	 * @since 6.0.2
+	 */
+	private final MapTileRequestQueue mRequestQueue;
+	private final int mPendingQueueSize;
+	private final int mThreadPoolSize;
+	private final MapTileRequestPriority mRequestPriority = new MapTileRequestPriority();
 
 	public MapTileModuleProviderBase(int pThreadPoolSize, final int pPendingQueueSize) {
 		if (pPendingQueueSize < pThreadPoolSize) {
                Log.w(IMapView.LOGTAG,"The pending queue size is smaller than the thread pool size. Automatically reducing the thread pool size.");
 			pThreadPoolSize = pPendingQueueSize;
 		}
-		mExecutor = Executors.newFixedThreadPool(pThreadPoolSize,
-				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
+		if (Configuration.getInstance().getTileSharedThreads() > 0) {
+			mStage = MapTileSharedExecutor.getInstance().newStage(getThreadGroupName(), pThreadPoolSize);
+			mExecutor = mStage;
+		} else {
+			mStage = null;
+			mExecutor = Executors.newFixedThreadPool(pThreadPoolSize,
+					new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
+		}
 
 		mWorking = new HashMap<>();
-		mPending = new LinkedHashMap<Long, MapTileRequestState>(pPendingQueueSize + 2, 0.1f,
-				true) {
-
-			private static final long serialVersionUID = 6455337315681858866L;
-
-			@Override
-			protected boolean removeEldestEntry(
-					final Map.Entry<Long, MapTileRequestState> pEldest) {
-				if (size() > pPendingQueueSize) {
-					Long result = null;
-
-					// get the oldest tile that isn't in the mWorking queue
-					Iterator<Long> iterator = mPending.keySet().iterator();
-
-					while (result == null && iterator.hasNext()) {
-						final Long mapTileIndex = iterator.next();
-						if (!mWorking.containsKey(mapTileIndex)) {
-							result = mapTileIndex;
-						}
-					}
-
-					if (result != null) {
-						MapTileRequestState state = mPending.get(result);
-						removeTileFromQueues(result);
-						state.getCallback().mapTileRequestFailedExceedsMaxQueueSize(state);
-					}
-				}
-				return false;
-			}
-		};
+		mRequestQueue = new MapTileRequestQueue(pPendingQueueSize + 2, mRequestPriority);
+		mPendingQueueSize = pPendingQueueSize;
+		mThreadPoolSize = pThreadPoolSize;
 	}
 
 	public void loadMapTileAsync(final MapTileRequestState pState) {
@@ -135,7 +140,7 @@ public abstract class MapTileModuleProviderBase {
 			if (Configuration.getInstance().isDebugTileProviders()) {
 				Log.d(IMapView.LOGTAG,"MapTileModuleProviderBase.loadMaptileAsync() on provider: "
 						+ getName() + " for tile: " + MapTileIndex.toString(pState.getMapTile()));
-				if (mPending.containsKey(pState.getMapTile()))
+				if (mRequestQueue.containsKey(pState.getMapTile()))
 					Log.d(IMapView.LOGTAG,"MapTileModuleProviderBase.loadMaptileAsync() tile already exists in request queue for modular provider. Moving to front of queue.");
 				else
 					Log.d(IMapView.LOGTAG,"MapTileModuleProviderBase.loadMaptileAsync() adding tile to request queue for modular provider.");
@@ -143,7 +148,21 @@ public abstract class MapTileModuleProviderBase {
 
 			// this will put the tile in the queue, or move it to the front of
 			// the queue if it's already present
+			mRequestQueue.put(pState.getMapTile(), pState);
 			mPending.put(pState.getMapTile(), pState);
+
+			if (mRequestQueue.size() > mPendingQueueSize) {
+				// remove the oldest tile that isn't in the mWorking queue
+				final MapTileRequestState state = mRequestQueue.removeOldestWaiting();
+				if (state != null) {
+					mPending.remove(state.getMapTile());
+					if (Configuration.getInstance().isDebugTileProviders()) {
+						Log.d(IMapView.LOGTAG,"MapTileModuleProviderBase.loadMaptileAsync() on provider: "
+								+ getName() + " queue full, removing tile: " + MapTileIndex.toString(state.getMapTile()));
+					}
+					state.getCallback().mapTileRequestFailedExceedsMaxQueueSize(state);
+				}
+			}
 		}
 		try {
 			mExecutor.execute(getTileLoader());
@@ -152,8 +171,112 @@ public abstract class MapTileModuleProviderBase {
 		}
 	}
 
+	/**
+	 * Sets the current viewport, so that the pending tiles are loaded
+	 * from the center of the screen, current zoom level first
+	 * @param pZoom      Tile zoom level of the viewport
+	 * @param pCenterX   X of the viewport center, in tiles of that zoom level
+	 * @param pCenterY   Y of the viewport center, in tiles of that zoom level
+	 * @since 6.0.2
+	 */
+	public void setViewport(final int pZoom, final double pCenterX, final double pCenterY) {
+		mRequestPriority.set(pZoom, pCenterX, pCenterY);
+	}
+
+	/**
+	 * Recomputes the priority of a pending request whose flags have changed,
+	 * e.g. a prefetched tile that is now displayed
+	 * @since 6.0.2
+	 */
+	public void updatePriority(final MapTileRequestState pState) {
+		synchronized (mQueueLockObject) {
+			final long index = pState.getMapTile();
+			if (mRequestQueue.get(index) == pState && !mRequestQueue.isWorking(index)) {
+				mRequestQueue.put(index, pState);
+			}
+		}
+	}
+
+	/**
+	 * Cancels the requests for tiles that are not wanted any more: the pending ones are removed
+	 * from the queue, the ones being worked on are flagged and aborted if possible
+	 * (cf. {@link #onTileCancelled(long)})
+	 * @param pWantedTiles the tiles that are still wanted, typically the displayed ones
+	 * @since 6.0.2
+	 */
+	public void cancelUnwantedTiles(final LongHashMap<?> pWantedTiles) {
+		final List<MapTileRequestState> removed = new ArrayList<>();
+		final List<MapTileRequestState> aborted = new ArrayList<>();
+		synchronized (mQueueLockObject) {
+			mRequestQueue.removeUnwanted(pWantedTiles, removed);
+			for (final MapTileRequestState state : removed) {
+				mPending.remove(state.getMapTile());
+			}
+			for (final MapTileRequestState state : mWorking.values()) {
+				if (!state.isCancelled() && !pWantedTiles.containsKey(state.getMapTile())) {
+					state.cancel();
+					aborted.add(state);
+				}
+			}
+		}
+		if (Configuration.getInstance().isDebugTileProviders() && removed.size() + aborted.size() > 0) {
+			Log.d(IMapView.LOGTAG,"MapTileModuleProviderBase.cancelUnwantedTiles() on provider: "
+					+ getName() + " removed: " + removed.size() + ", aborted: " + aborted.size());
+		}
+		for (final MapTileRequestState state : removed) {
+			requestCancelled(state);
+		}
+		for (final MapTileRequestState state : aborted) {
+			onTileCancelled(state.getMapTile());
+		}
+	}
+
+	/**
+	 * Cancels a request that is not queued any more, and tells its callback
+	 * @since 6.0.2
+	 */
+	protected void requestCancelled(final MapTileRequestState pState) {
+		pState.cancel();
+		final IMapTileProviderCallback callback = pState.getCallback();
+		if (callback instanceof ICancellableMapTileProviderCallback) {
+			((ICancellableMapTileProviderCallback) callback).mapTileRequestCancelled(pState);
+		} else {
+			callback.mapTileRequestFailedExceedsMaxQueueSize(pState);
+		}
+	}
+
+	/**
+	 * Called when a tile being worked on is not wanted any more.
+	 * Does nothing by default: the tile is loaded anyway, and if the loading fails
+	 * the request is not passed to the next provider.
+	 * @since 6.0.2
+	 */
+	protected void onTileCancelled(final long pMapTileIndex) {
+		// Do nothing by default
+	}
+
+	/**
+	 * @return true if the tile is being worked on but is not wanted any more
+	 * @since 6.0.2
+	 */
+	protected boolean isTileCancelled(final long pMapTileIndex) {
+		synchronized (mQueueLockObject) {
+			final MapTileRequestState state = mWorking.get(pMapTileIndex);
+			return state != null && state.isCancelled();
+		}
+	}
+
+	/**
+	 * Counts a tile that could not be decoded for lack of memory
+	 * @since 6.0.2
+	 */
+	protected void countLowMemory() {
+		Counters.countOOM++;
+	}
+
 	private void clearQueue() {
 		synchronized (mQueueLockObject) {
+			mRequestQueue.clear();
 			mPending.clear();
 			mWorking.clear();
 		}
@@ -174,6 +297,7 @@ public abstract class MapTileModuleProviderBase {
 				Log.d(IMapView.LOGTAG,"MapTileModuleProviderBase.removeTileFromQueues() on provider: "
 						+ getName() + " for tile: " + MapTileIndex.toString(pMapTileIndex));
 			}
+			mRequestQueue.remove(pMapTileIndex);
 			mPending.remove(pMapTileIndex);
 			mWorking.remove(pMapTileIndex);
 		}
@@ -214,34 +338,41 @@ public abstract class MapTileModuleProviderBase {
 		protected MapTileRequestState nextTile() {
 
 			synchronized (mQueueLockObject) {
-				Long result = null;
-
-				// get the most recently accessed tile
-				// - the last item in the iterator that's not already being
-				// processed
-				Iterator<Long> iterator = mPending.keySet().iterator();
-
-				// TODO this iterates the whole list, make this faster...
-				while (iterator.hasNext()) {
-					final Long mapTileIndex = iterator.next();
-					if (!mWorking.containsKey(mapTileIndex)) {
-						if (Configuration.getInstance().isDebugTileProviders()) {
-							Log.d(IMapView.LOGTAG,"TileLoader.nextTile() on provider: " + getName()
-									+ " found tile in working queue: " + MapTileIndex.toString(mapTileIndex));
-						}
-						result = mapTileIndex;
-					}
-				}
+				// get the tile closest to the viewport center (or else the most recently accessed)
+				// that's not already being processed
+				final MapTileRequestState result = mRequestQueue.startNext();
 
 				if (result != null) {
 					if (Configuration.getInstance().isDebugTileProviders()) {
 						Log.d(IMapView.LOGTAG,"TileLoader.nextTile() on provider: " + getName()
-								+ " adding tile to working queue: " + result);
+								+ " adding tile to working queue: " + MapTileIndex.toString(result.getMapTile()));
 					}
-					mWorking.put(result, mPending.get(result));
+					mWorking.put(result.getMapTile(), result);
 				}
 
-				return (result != null ? mPending.get(result) : null);
+				return result;
+			}
+		}
+
+		/**
+		 * Moves more pending tiles to the working set, so that they are read at once.
+		 * The other threads are left their share of the pending tiles.
+		 *
+		 * @since 6.0.2
+		 * @param pStates the tiles already taken, completed with the next ones
+		 */
+		protected void nextTiles(final List<MapTileRequestState> pStates) {
+			synchronized (mQueueLockObject) {
+				final int count = Math.min(getMaxBatchSize(),
+						Math.max(1, (mRequestQueue.getWaitingSize() + pStates.size()) / mThreadPoolSize));
+				while (pStates.size() < count) {
+					final MapTileRequestState state = mRequestQueue.startNext();
+					if (state == null) {
+						break;
+					}
+					mWorking.put(state.getMapTile(), state);
+					pStates.add(state);
+				}
 			}
 		}
 
@@ -283,6 +414,24 @@ public abstract class MapTileModuleProviderBase {
 		}
 
 
+		/**
+		 * The expired tile is still valid, cf. {@link MapTileBytes#getNotModified(ITileSource)}
+		 * @since 6.0.2
+		 */
+		protected void tileNotModified(final MapTileRequestState pState) {
+			if (Configuration.getInstance().isDebugTileProviders()) {
+				Log.d(IMapView.LOGTAG,"TileLoader.tileNotModified() on provider: " + getName()
+						+ " with tile: " + MapTileIndex.toString(pState.getMapTile()));
+			}
+			removeTileFromQueues(pState.getMapTile());
+			final IMapTileProviderCallback callback = pState.getCallback();
+			if (callback instanceof IRevalidatingMapTileProviderCallback) {
+				((IRevalidatingMapTileProviderCallback) callback).mapTileRequestNotModified(pState);
+			} else {
+				callback.mapTileRequestFailed(pState);
+			}
+		}
+
 		protected void tileLoadedFailed(final MapTileRequestState pState) {
 			if (Configuration.getInstance().isDebugTileProviders()) {
 				Log.d(IMapView.LOGTAG,"TileLoader.tileLoadedFailed() on provider: " + getName()
@@ -292,6 +441,89 @@ public abstract class MapTileModuleProviderBase {
 			pState.getCallback().mapTileRequestFailed(pState);
 		}
 
+		/**
+		 * Reads the data of the requested tile without decoding it; the decoding is then done
+		 * by the {@link MapTileDecoder}, so that the I/O threads don't wait for the CPU.
+		 * Only called if {@link #isDecodeSeparate()} returns true.
+		 *
+		 * @since 6.0.2
+		 * @return the tile data if it was read successfully, or null if failed to
+		 *         read and other tile providers need to be called
+		 * @throws CantContinueException
+		 */
+		protected MapTileBytes loadTileBytes(final long pMapTileIndex)
+				throws CantContinueException {
+			return null;
+		}
+
+		/**
+		 * Reads the data of several requested tiles at once, e.g. with a single query.
+		 * Only called if {@link #isDecodeSeparate()} returns true
+		 * and {@link #getMaxBatchSize()} is greater than 1.
+		 * Calls {@link #loadTileBytes(long)} for each tile by default.
+		 *
+		 * @since 6.0.2
+		 * @return the data of the tiles that were read successfully, indexed by map tile index;
+		 *         the other tiles are passed to the next tile providers
+		 * @throws CantContinueException
+		 */
+		protected LongHashMap<MapTileBytes> loadTileBytes(final MapTileList pMapTileList)
+				throws CantContinueException {
+			final LongHashMap<MapTileBytes> result = new LongHashMap<>(pMapTileList.getSize());
+			for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+				final long mapTileIndex = pMapTileList.get(i);
+				final MapTileBytes bytes = loadTileBytes(mapTileIndex);
+				if (bytes != null) {
+					result.put(mapTileIndex, bytes);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @since 6.0.2
+		 * @return the maximum number of pending tiles read at once by {@link #loadTileBytes(MapTileList)},
+		 * 1 for no batch
+		 */
+		protected int getMaxBatchSize() {
+			return 1;
+		}
+
+		/**
+		 * Reads the tile with {@link #loadTileBytes(long)} and decodes it on the calling thread.
+		 * A {@link #loadTile(long)} for the loaders that decode separately.
+		 *
+		 * @since 6.0.2
+		 * @throws CantContinueException
+		 */
+		protected Drawable loadAndDecodeTile(final long pMapTileIndex)
+				throws CantContinueException {
+			final MapTileBytes bytes = loadTileBytes(pMapTileIndex);
+			if (bytes == null) {
+				return null;
+			}
+			try {
+				return bytes.decode();
+			} catch (final LowMemoryException e) {
+				// low memory so empty the queue
+				Log.w(IMapView.LOGTAG,"LowMemoryException decoding MapTile: " + MapTileIndex.toString(pMapTileIndex) + " : " + e);
+				countLowMemory();
+				throw new CantContinueException(e);
+			} finally {
+				bytes.recycle();
+			}
+		}
+
+		/**
+		 * @since 6.0.2
+		 * @return true if this loader reads the tiles with {@link #loadTileBytes(long)}
+		 * and lets the {@link MapTileDecoder} decode them,
+		 * false if it loads and decodes them in {@link #loadTile(long)}
+		 */
+		protected boolean isDecodeSeparate() {
+			return false;
+		}
+
 		/**
 		 * This is a functor class of type Runnable. The run method is the encapsulated function.
 		 */
@@ -306,13 +538,28 @@ public abstract class MapTileModuleProviderBase {
 				if (Configuration.getInstance().isDebugTileProviders()) {
 					Log.d(IMapView.LOGTAG,"TileLoader.run() processing next tile: "
 							+ MapTileIndex.toString(state.getMapTile())
-							+ ", pending:" + mPending.size()
+							+ ", pending:" + mRequestQueue.size()
 							+ ", working:" + mWorking.size()
 					);
 				}
+				if (mStage != null) {
+					mStage.countTile();
+				}
+				if (isDecodeSeparate() && getMaxBatchSize() > 1) {
+					loadBatch(state);
+					continue;
+				}
 				try {
 					result = null;
-					result = loadTile(state.getMapTile());
+					if (isDecodeSeparate()) {
+						final MapTileBytes bytes = loadTileBytes(state.getMapTile());
+						if (bytes != null) {
+							tileBytesLoaded(state, bytes);
+							continue;
+						}
+					} else {
+						result = loadTile(state.getMapTile());
+					}
 				} catch (final CantContinueException e) {
 					Log.i(IMapView.LOGTAG,"Tile loader can't continue: " + MapTileIndex.toString(state.getMapTile()), e);
 					clearQueue();
@@ -320,18 +567,114 @@ public abstract class MapTileModuleProviderBase {
 					Log.i(IMapView.LOGTAG,"Error downloading tile: " + MapTileIndex.toString(state.getMapTile()), e);
 				}
 
-				if (result == null) {
-					tileLoadedFailed(state);
-				} else if (ExpirableBitmapDrawable.getState(result) == ExpirableBitmapDrawable.EXPIRED) {
-					tileLoadedExpired(state, result);
-				} else if (ExpirableBitmapDrawable.getState(result) == ExpirableBitmapDrawable.SCALED) {
-					tileLoadedScaled(state, result);
+				tileLoadedResult(state, result);
+			}
+
+			onTileLoaderShutdown();
+		}
+
+		/**
+		 * Reads at once the tile and the next pending tiles, then hands the data to the decoder
+		 * @since 6.0.2
+		 */
+		private void loadBatch(final MapTileRequestState pState) {
+			final List<MapTileRequestState> states = new ArrayList<>();
+			states.add(pState);
+			nextTiles(states);
+			final MapTileList mapTileList = new MapTileList(states.size());
+			for (final MapTileRequestState state : states) {
+				mapTileList.put(state.getMapTile());
+			}
+			if (mStage != null) {
+				for (int i = 1 ; i < states.size() ; i ++) {
+					mStage.countTile();
+				}
+			}
+			LongHashMap<MapTileBytes> result = null;
+			try {
+				result = loadTileBytes(mapTileList);
+			} catch (final CantContinueException e) {
+				Log.i(IMapView.LOGTAG,"Tile loader can't continue: batch of " + states.size() + " tiles", e);
+				clearQueue();
+			} catch (final Throwable e) {
+				Log.i(IMapView.LOGTAG,"Error loading batch of " + states.size() + " tiles", e);
+			}
+			for (final MapTileRequestState state : states) {
+				final MapTileBytes bytes = result == null ? null : result.get(state.getMapTile());
+				if (bytes != null) {
+					tileBytesLoaded(state, bytes);
 				} else {
-					tileLoaded(state, result);
+					tileLoadedFailed(state);
 				}
 			}
+		}
 
-			onTileLoaderShutdown();
+		/**
+		 * @since 6.0.2
+		 */
+		private void tileBytesLoaded(final MapTileRequestState pState, final MapTileBytes pBytes) {
+			if (pBytes.isNotModified()) {
+				tileNotModified(pState);
+			} else {
+				MapTileDecoder.getInstance().decode(new DecodeTask(pState, pBytes));
+			}
+		}
+
+		/**
+		 * @since 6.0.2
+		 */
+		private void tileLoadedResult(final MapTileRequestState pState, final Drawable pDrawable) {
+			if (pDrawable == null) {
+				tileLoadedFailed(pState);
+			} else if (ExpirableBitmapDrawable.getState(pDrawable) == ExpirableBitmapDrawable.EXPIRED) {
+				tileLoadedExpired(pState, pDrawable);
+			} else if (ExpirableBitmapDrawable.getState(pDrawable) == ExpirableBitmapDrawable.SCALED) {
+				tileLoadedScaled(pState, pDrawable);
+			} else {
+				tileLoaded(pState, pDrawable);
+			}
+		}
+
+		/**
+		 * Decodes on a {@link MapTileDecoder} thread the data read by the loader,
+		 * unless the tile is not wanted any more.
+		 * @since 6.0.2
+		 */
+		private class DecodeTask implements Runnable {
+
+			private final MapTileRequestState mState;
+			private final MapTileBytes mBytes;
+
+			private DecodeTask(final MapTileRequestState pState, final MapTileBytes pBytes) {
+				mState = pState;
+				mBytes = pBytes;
+			}
+
+			@Override
+			public void run() {
+				if (mState.isCancelled()) {
+					if (Configuration.getInstance().isDebugTileProviders()) {
+						Log.d(IMapView.LOGTAG,"TileLoader.DecodeTask skipping cancelled tile: "
+								+ MapTileIndex.toString(mState.getMapTile()));
+					}
+					mBytes.recycle();
+					tileLoadedFailed(mState);
+					return;
+				}
+				Drawable result = null;
+				try {
+					result = mBytes.decode();
+				} catch (final LowMemoryException e) {
+					Log.w(IMapView.LOGTAG,"LowMemoryException decoding MapTile: " + MapTileIndex.toString(mState.getMapTile()) + " : " + e);
+					countLowMemory();
+					clearQueue();
+				} catch (final Throwable e) {
+					Log.i(IMapView.LOGTAG,"Error decoding tile: " + MapTileIndex.toString(mState.getMapTile()), e);
+				} finally {
+					mBytes.recycle();
+				}
+				tileLoadedResult(mState, result);
+			}
 		}
 	}
 
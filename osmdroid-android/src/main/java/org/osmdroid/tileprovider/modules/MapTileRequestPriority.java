@@ -0,0 +1,77 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.util.MapTileIndex;
+
+/**
+ * Ranks tile requests against the current viewport: tiles of the current zoom level first,
+ * then the tiles closest to the center of the screen.
+ * The viewport is published by the tile overlay at each frame; each change increments a version
+ * so that the queues know when to recompute the priorities of their pending requests.
+ * As long as no viewport is known, all requests have the same priority.
+ * @since 6.0.2
+ */
+
+public class MapTileRequestPriority {
+
+    private int mZoom = -1;
+    private double mCenterX;
+    private double mCenterY;
+    private volatile int mVersion;
+
+    /**
+     * @param pZoom      Tile zoom level of the viewport
+     * @param pCenterX   X of the viewport center, in tiles of that zoom level (may be decimal)
+     * @param pCenterY   Y of the viewport center, in tiles of that zoom level (may be decimal)
+     * @return true if the viewport has changed
+     */
+    public synchronized boolean set(final int pZoom, final double pCenterX, final double pCenterY) {
+        if (pZoom == mZoom && pCenterX == mCenterX && pCenterY == mCenterY) {
+            return false;
+        }
+        mZoom = pZoom;
+        mCenterX = pCenterX;
+        mCenterY = pCenterY;
+        mVersion ++;
+        return true;
+    }
+
+    /**
+     * @return a number that changes each time the viewport changes
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the zoom level distance between the tile and the viewport, 0 if no viewport is known
+     */
+    public synchronized int getZoomDelta(final long pMapTileIndex) {
+        if (mZoom < 0) {
+            return 0;
+        }
+        return Math.abs(MapTileIndex.getZoom(pMapTileIndex) - mZoom);
+    }
+
+    /**
+     * @return the square of the distance between the tile center and the viewport center,
+     * in tiles of the tile's zoom level, 0 if no viewport is known
+     */
+    public synchronized double getDistance(final long pMapTileIndex) {
+        if (mZoom < 0) {
+            return 0;
+        }
+        final int zoom = MapTileIndex.getZoom(pMapTileIndex);
+        final double worldSize = 1 << zoom;
+        final double scale = Math.scalb(1., zoom - mZoom);
+        double centerX = (mCenterX * scale) % worldSize;
+        if (centerX < 0) {
+            centerX += worldSize;
+        }
+        double dx = Math.abs(MapTileIndex.getX(pMapTileIndex) + .5 - centerX);
+        if (dx > worldSize / 2) { // horizontal wrap
+            dx = worldSize - dx;
+        }
+        final double dy = MapTileIndex.getY(pMapTileIndex) + .5 - mCenterY * scale;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,299 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.util.LongHashMap;
+
+import java.util.List;
+
+/**
+ * Queue of the tile requests of a {@link MapTileModuleProviderBase}, pending or being worked on.
+ * The requests that are not worked on yet are kept in a doubly linked list, most recent first,
+ * so that moving a request to the front and removing a request are O(1).
+ * They are also kept in a binary heap ordered by {@link MapTileRequestPriority}
+ * (displayed tiles before prefetched tiles, then current zoom level first,
+ * then closest to the viewport center, then most recent),
+ * so that getting the next request to work on is O(log(n)).
+ * When the queue is full, the prefetch requests are the first to go.
+ * The priorities are recomputed when the viewport has changed.
+ * This class is not thread-safe: it is meant to be used under
+ * {@link MapTileModuleProviderBase#mQueueLockObject}.
+ * @since 6.0.2
+ */
+
+public class MapTileRequestQueue {
+
+    private static class Node {
+        private long mMapTileIndex;
+        private MapTileRequestState mState;
+        private boolean mWorking;
+        private Node mPrevious; // more recent
+        private Node mNext; // older
+        private long mSequence;
+        private boolean mPrefetch;
+        private int mZoomDelta;
+        private double mDistance;
+        private int mHeapIndex;
+    }
+
+    private final LongHashMap<Node> mNodes;
+    private final MapTileRequestPriority mPriority;
+    /** most recent request not worked on yet */
+    private Node mNewest;
+    /** oldest request not worked on yet */
+    private Node mOldest;
+    /** requests not worked on yet, highest priority first */
+    private Node[] mHeap;
+    private int mWaitingSize;
+    private long mSequence;
+    private int mPriorityVersion;
+
+    public MapTileRequestQueue(final int pInitialCapacity) {
+        this(pInitialCapacity, new MapTileRequestPriority());
+    }
+
+    public MapTileRequestQueue(final int pInitialCapacity, final MapTileRequestPriority pPriority) {
+        mNodes = new LongHashMap<>(pInitialCapacity);
+        mHeap = new Node[Math.max(pInitialCapacity, 1)];
+        mPriority = pPriority;
+        mPriorityVersion = pPriority.getVersion();
+    }
+
+    /**
+     * @return the number of requests, pending or being worked on
+     */
+    public int size() {
+        return mNodes.size();
+    }
+
+    /**
+     * @return the number of requests that are not worked on yet
+     */
+    public int getWaitingSize() {
+        return mWaitingSize;
+    }
+
+    public boolean containsKey(final long pMapTileIndex) {
+        return mNodes.containsKey(pMapTileIndex);
+    }
+
+    public boolean isWorking(final long pMapTileIndex) {
+        final Node node = mNodes.get(pMapTileIndex);
+        return node != null && node.mWorking;
+    }
+
+    public MapTileRequestState get(final long pMapTileIndex) {
+        final Node node = mNodes.get(pMapTileIndex);
+        return node == null ? null : node.mState;
+    }
+
+    /**
+     * Adds a request, or moves it to the front of the queue if it's already there
+     * and not worked on yet
+     */
+    public void put(final long pMapTileIndex, final MapTileRequestState pState) {
+        Node node = mNodes.get(pMapTileIndex);
+        if (node == null) {
+            node = new Node();
+            node.mMapTileIndex = pMapTileIndex;
+            mNodes.put(pMapTileIndex, node);
+        } else if (node.mWorking) {
+            node.mState = pState;
+            return;
+        } else {
+            unlink(node);
+        }
+        node.mState = pState;
+        node.mSequence = mSequence ++;
+        computePriority(node);
+        linkFirst(node);
+    }
+
+    /**
+     * @return the request with the highest priority that is not worked on yet,
+     * now flagged as worked on, or null
+     */
+    public MapTileRequestState startNext() {
+        if (mWaitingSize == 0) {
+            return null;
+        }
+        final int version = mPriority.getVersion();
+        if (version != mPriorityVersion) {
+            mPriorityVersion = version;
+            for (int i = 0 ; i < mWaitingSize ; i ++) {
+                computePriority(mHeap[i]);
+            }
+            for (int i = mWaitingSize / 2 - 1 ; i >= 0 ; i --) {
+                siftDown(i);
+            }
+        }
+        final Node node = mHeap[0];
+        unlink(node);
+        node.mWorking = true;
+        return node.mState;
+    }
+
+    /**
+     * @return the oldest prefetch request not worked on yet, or else the oldest request
+     * not worked on yet, now removed from the queue, or null
+     */
+    public MapTileRequestState removeOldestWaiting() {
+        Node node = mOldest;
+        while (node != null && !node.mPrefetch) {
+            node = node.mPrevious;
+        }
+        if (node == null) {
+            node = mOldest;
+        }
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        mNodes.remove(node.mMapTileIndex);
+        return node.mState;
+    }
+
+    /**
+     * @return the removed request, or null
+     */
+    public MapTileRequestState remove(final long pMapTileIndex) {
+        final Node node = mNodes.remove(pMapTileIndex);
+        if (node == null) {
+            return null;
+        }
+        if (!node.mWorking) {
+            unlink(node);
+        }
+        return node.mState;
+    }
+
+    /**
+     * Removes the requests not worked on yet for tiles that are not wanted any more
+     * @param pWanted   the tiles that are still wanted
+     * @param pRemoved  collects the removed requests
+     */
+    public void removeUnwanted(final LongHashMap<?> pWanted, final List<MapTileRequestState> pRemoved) {
+        Node node = mNewest;
+        while (node != null) {
+            final Node next = node.mNext;
+            if (!pWanted.containsKey(node.mMapTileIndex)) {
+                unlink(node);
+                mNodes.remove(node.mMapTileIndex);
+                pRemoved.add(node.mState);
+            }
+            node = next;
+        }
+    }
+
+    public void clear() {
+        mNodes.clear();
+        for (int i = 0 ; i < mWaitingSize ; i ++) {
+            mHeap[i] = null;
+        }
+        mNewest = null;
+        mOldest = null;
+        mWaitingSize = 0;
+    }
+
+    private void computePriority(final Node pNode) {
+        pNode.mPrefetch = pNode.mState != null && pNode.mState.isPrefetch();
+        pNode.mZoomDelta = mPriority.getZoomDelta(pNode.mMapTileIndex);
+        pNode.mDistance = mPriority.getDistance(pNode.mMapTileIndex);
+    }
+
+    /**
+     * @return true if the first node is to be worked on before the second one
+     */
+    private boolean isBefore(final Node pNode1, final Node pNode2) {
+        if (pNode1.mPrefetch != pNode2.mPrefetch) {
+            return pNode2.mPrefetch;
+        }
+        if (pNode1.mZoomDelta != pNode2.mZoomDelta) {
+            return pNode1.mZoomDelta < pNode2.mZoomDelta;
+        }
+        if (pNode1.mDistance != pNode2.mDistance) {
+            return pNode1.mDistance < pNode2.mDistance;
+        }
+        return pNode1.mSequence > pNode2.mSequence;
+    }
+
+    private void linkFirst(final Node pNode) {
+        pNode.mPrevious = null;
+        pNode.mNext = mNewest;
+        if (mNewest != null) {
+            mNewest.mPrevious = pNode;
+        } else {
+            mOldest = pNode;
+        }
+        mNewest = pNode;
+
+        if (mWaitingSize == mHeap.length) {
+            final Node[] heap = new Node[mHeap.length * 2];
+            System.arraycopy(mHeap, 0, heap, 0, mWaitingSize);
+            mHeap = heap;
+        }
+        pNode.mHeapIndex = mWaitingSize ++;
+        mHeap[pNode.mHeapIndex] = pNode;
+        siftUp(pNode.mHeapIndex);
+    }
+
+    private void unlink(final Node pNode) {
+        if (pNode.mPrevious != null) {
+            pNode.mPrevious.mNext = pNode.mNext;
+        } else {
+            mNewest = pNode.mNext;
+        }
+        if (pNode.mNext != null) {
+            pNode.mNext.mPrevious = pNode.mPrevious;
+        } else {
+            mOldest = pNode.mPrevious;
+        }
+        pNode.mPrevious = null;
+        pNode.mNext = null;
+
+        final int index = pNode.mHeapIndex;
+        final Node last = mHeap[-- mWaitingSize];
+        mHeap[mWaitingSize] = null;
+        if (last != pNode) {
+            mHeap[index] = last;
+            last.mHeapIndex = index;
+            siftDown(index);
+            siftUp(last.mHeapIndex);
+        }
+    }
+
+    private void siftUp(int pIndex) {
+        final Node node = mHeap[pIndex];
+        while (pIndex > 0) {
+            final int parent = (pIndex - 1) / 2;
+            if (!isBefore(node, mHeap[parent])) {
+                break;
+            }
+            mHeap[pIndex] = mHeap[parent];
+            mHeap[pIndex].mHeapIndex = pIndex;
+            pIndex = parent;
+        }
+        mHeap[pIndex] = node;
+        node.mHeapIndex = pIndex;
+    }
+
+    private void siftDown(int pIndex) {
+        final Node node = mHeap[pIndex];
+        while (true) {
+            int child = 2 * pIndex + 1;
+            if (child >= mWaitingSize) {
+                break;
+            }
+            if (child + 1 < mWaitingSize && isBefore(mHeap[child + 1], mHeap[child])) {
+                child ++;
+            }
+            if (!isBefore(mHeap[child], node)) {
+                break;
+            }
+            mHeap[pIndex] = mHeap[child];
+            mHeap[pIndex].mHeapIndex = pIndex;
+            pIndex = child;
+        }
+        mHeap[pIndex] = node;
+        node.mHeapIndex = pIndex;
+    }
+}
@@ -0,0 +1,118 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.IRegisterReceiver;
+import org.osmdroid.tileprovider.MapTileProviderBase;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads the tiles of the segment based tile cache
+ *
+ * @since 6.0.2
+ * @see SegmentTileWriter
+ */
+public class MapTileSegmentCacheProvider extends MapTileFileStorageProviderBase {
+
+    private final AtomicReference<ITileSource> mTileSource = new AtomicReference<ITileSource>();
+    private SegmentTileWriter mWriter;
+
+    /**
+     * The tiles may be found on several media. This one works with tiles stored in segment files.
+     * It and its friends are typically created and controlled by {@link MapTileProviderBase}.
+     */
+    public MapTileSegmentCacheProvider(final IRegisterReceiver pRegisterReceiver,
+                                       final ITileSource pTileSource) {
+        super(pRegisterReceiver,
+                Configuration.getInstance().getTileFileSystemThreads(),
+                Configuration.getInstance().getTileFileSystemMaxQueueSize());
+
+        setTileSource(pTileSource);
+        mWriter = new SegmentTileWriter();
+    }
+
+    @Override
+    public boolean getUsesDataConnection() {
+        return false;
+    }
+
+    @Override
+    protected String getName() {
+        return "Segment Cache Provider";
+    }
+
+    @Override
+    protected String getThreadGroupName() {
+        return "segmentcache";
+    }
+
+    @Override
+    public TileLoader getTileLoader() {
+        return new TileLoader();
+    }
+
+    @Override
+    public int getMinimumZoomLevel() {
+        ITileSource tileSource = mTileSource.get();
+        return tileSource != null ? tileSource.getMinimumZoomLevel() : OpenStreetMapTileProviderConstants.MINIMUM_ZOOMLEVEL;
+    }
+
+    @Override
+    public int getMaximumZoomLevel() {
+        ITileSource tileSource = mTileSource.get();
+        return tileSource != null ? tileSource.getMaximumZoomLevel()
+                : microsoft.mappoint.TileSystem.getMaximumZoomLevel();
+    }
+
+    @Override
+    protected void onMediaMounted() {
+
+    }
+
+    @Override
+    protected void onMediaUnmounted() {
+        if (mWriter != null)
+            mWriter.onDetach();
+        mWriter = new SegmentTileWriter();
+    }
+
+    @Override
+    public void setTileSource(final ITileSource pTileSource) {
+        mTileSource.set(pTileSource);
+    }
+
+    @Override
+    public void detach() {
+        if (mWriter != null)
+            mWriter.onDetach();
+        mWriter = null;
+        super.detach();
+    }
+
+    /**
+     * returns true if the given tile for the current map source exists in the cache
+     */
+    public boolean hasTile(final long pMapTileIndex) {
+        ITileSource tileSource = mTileSource.get();
+        if (tileSource == null) {
+            return false;
+        }
+        final SegmentTileWriter writer = mWriter;
+        return writer != null && writer.exists(tileSource, pMapTileIndex);
+    }
+
+    protected class TileLoader extends CacheTileLoader {
+
+        @Override
+        protected IBatchFilesystemCache getCache() {
+            return mWriter;
+        }
+
+        @Override
+        protected ITileSource getTileSource() {
+            return mTileSource.get();
+        }
+    }
+}
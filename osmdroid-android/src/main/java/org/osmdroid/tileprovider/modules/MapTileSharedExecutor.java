@@ -0,0 +1,353 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.util.Log;
+
+import org.osmdroid.api.IMapView;
+import org.osmdroid.config.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool shared by all the tile module providers, instead of one pool per provider.
+ * Each provider gets a {@link Stage}, i.e. a view of the shared pool that never runs more than
+ * a given number of tasks at the same time, so that for instance the downloads still respect
+ * {@link Configuration#getInstance()}.getTileDownloadThreads(), while the threads that
+ * the downloads don't use can work on the file system cache.
+ * Used when {@link org.osmdroid.config.IConfigurationProvider#getTileSharedThreads()} is positive.
+ * NB: not a ForkJoinPool, which is not available before API 21.
+ * @since 6.0.2
+ */
+
+public class MapTileSharedExecutor {
+
+    private static MapTileSharedExecutor sInstance;
+
+    /**
+     * @return the executor shared by all the tile module providers, created with
+     * {@link org.osmdroid.config.IConfigurationProvider#getTileSharedThreads()} threads
+     */
+    public static synchronized MapTileSharedExecutor getInstance() {
+        if (sInstance == null || sInstance.isShutdown()) {
+            sInstance = new MapTileSharedExecutor(
+                    Math.max(1, Configuration.getInstance().getTileSharedThreads()));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Idle threads are stopped after that delay, so that an unused shared pool doesn't keep any thread
+     */
+    private static final long KEEP_ALIVE_MILLISECONDS = 30000;
+
+    private final ThreadPoolExecutor mPool;
+    private final List<Stage> mStages = new ArrayList<>();
+    private final AtomicLong mTileCount = new AtomicLong();
+    private final AtomicLong mTaskCount = new AtomicLong();
+    private long mResetTime = System.nanoTime();
+
+    public MapTileSharedExecutor(final int pThreadCount) {
+        mPool = new ThreadPoolExecutor(pThreadCount, pThreadCount, KEEP_ALIVE_MILLISECONDS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, "tiles"));
+        mPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Shuts down all the stages and the pool: the running tasks are completed, the queued ones are dropped.
+     * {@link #getInstance()} then creates a new executor.
+     */
+    public void shutdown() {
+        final List<Stage> stages;
+        synchronized (mStages) {
+            stages = new ArrayList<>(mStages);
+        }
+        for (final Stage stage : stages) {
+            stage.shutdownNow();
+        }
+        mPool.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return mPool.isShutdown();
+    }
+
+    /**
+     * Waits for the threads of the pool to stop after {@link #shutdown()}
+     */
+    public boolean awaitTermination(final long pTimeout, final TimeUnit pUnit) throws InterruptedException {
+        return mPool.awaitTermination(pTimeout, pUnit);
+    }
+
+    /**
+     * @param pName Name of the stage, for the metrics
+     * @param pMaxConcurrency Maximum number of tasks of this stage running at the same time
+     */
+    public Stage newStage(final String pName, final int pMaxConcurrency) {
+        final Stage stage = new Stage(pName, pMaxConcurrency);
+        synchronized (mStages) {
+            mStages.add(stage);
+        }
+        return stage;
+    }
+
+    /**
+     * @return the number of threads of the pool
+     */
+    public int getThreadCount() {
+        return mPool.getPoolSize();
+    }
+
+    /**
+     * @return the number of threads currently running a task
+     */
+    public int getActiveThreadCount() {
+        return mPool.getActiveCount();
+    }
+
+    /**
+     * @return the number of tiles processed by all the stages since the last reset
+     */
+    public long getTileCount() {
+        return mTileCount.get();
+    }
+
+    /**
+     * @return the number of tasks run by all the stages since the last reset
+     */
+    public long getTaskCount() {
+        return mTaskCount.get();
+    }
+
+    /**
+     * @return the number of tiles processed per second since the last reset
+     */
+    public double getThroughput() {
+        final long duration = System.nanoTime() - mResetTime;
+        return duration <= 0 ? 0 : mTileCount.get() * 1E9 / duration;
+    }
+
+    public void resetCounters() {
+        mTileCount.set(0);
+        mTaskCount.set(0);
+        mResetTime = System.nanoTime();
+        synchronized (mStages) {
+            for (final Stage stage : mStages) {
+                stage.resetCounters();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        result.append("threads: ").append(getThreadCount())
+                .append(", active: ").append(getActiveThreadCount())
+                .append(", tiles: ").append(getTileCount())
+                .append(", tiles/s: ").append((int) getThroughput());
+        synchronized (mStages) {
+            for (final Stage stage : mStages) {
+                result.append("\n").append(stage);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * The part of the shared executor dedicated to a tile module provider
+     */
+    public class Stage extends AbstractExecutorService {
+
+        private final String mName;
+        private final int mMaxConcurrency;
+        private final LinkedList<Runnable> mQueue = new LinkedList<>();
+        private int mRunning;
+        private boolean mShutdown;
+        private final AtomicLong mTileCount = new AtomicLong();
+        private final AtomicLong mTaskCount = new AtomicLong();
+        private final AtomicLong mBusyNanos = new AtomicLong();
+
+        private final Runnable mWorker = new Runnable() {
+            @Override
+            public void run() {
+                Runnable task;
+                while ((task = poll()) != null) {
+                    final long start = System.nanoTime();
+                    try {
+                        task.run();
+                    } catch (final RuntimeException e) {
+                        // the worker must go on, or the stage would lose a thread for good
+                        Log.e(IMapView.LOGTAG, "Error in tile task of " + mName, e);
+                    } finally {
+                        mBusyNanos.addAndGet(System.nanoTime() - start);
+                        mTaskCount.incrementAndGet();
+                        MapTileSharedExecutor.this.mTaskCount.incrementAndGet();
+                    }
+                }
+            }
+        };
+
+        private Stage(final String pName, final int pMaxConcurrency) {
+            mName = pName;
+            mMaxConcurrency = Math.max(1, pMaxConcurrency);
+        }
+
+        @Override
+        public void execute(final Runnable pRunnable) {
+            synchronized (mQueue) {
+                if (mShutdown) {
+                    throw new RejectedExecutionException(mName + " is shut down");
+                }
+                mQueue.add(pRunnable);
+                if (mRunning >= mMaxConcurrency) {
+                    return;
+                }
+                mRunning ++;
+            }
+            try {
+                mPool.execute(mWorker);
+            } catch (final RejectedExecutionException e) {
+                synchronized (mQueue) {
+                    mRunning --;
+                    mQueue.notifyAll();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * @return the next task, or null if there is none and the worker stops
+         */
+        private Runnable poll() {
+            synchronized (mQueue) {
+                final Runnable result = mQueue.poll();
+                if (result == null) {
+                    mRunning --;
+                    mQueue.notifyAll();
+                }
+                return result;
+            }
+        }
+
+        /**
+         * To be called each time a tile has been processed, for the throughput metrics
+         */
+        public void countTile() {
+            mTileCount.incrementAndGet();
+            MapTileSharedExecutor.this.mTileCount.incrementAndGet();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getMaxConcurrency() {
+            return mMaxConcurrency;
+        }
+
+        /**
+         * @return the number of threads of the shared pool currently used by this stage
+         */
+        public int getRunningCount() {
+            synchronized (mQueue) {
+                return mRunning;
+            }
+        }
+
+        public int getQueuedCount() {
+            synchronized (mQueue) {
+                return mQueue.size();
+            }
+        }
+
+        public long getTileCount() {
+            return mTileCount.get();
+        }
+
+        public long getTaskCount() {
+            return mTaskCount.get();
+        }
+
+        /**
+         * @return the cumulated time spent by the threads on the tasks of this stage, in nanoseconds
+         */
+        public long getBusyNanos() {
+            return mBusyNanos.get();
+        }
+
+        private void resetCounters() {
+            mTileCount.set(0);
+            mTaskCount.set(0);
+            mBusyNanos.set(0);
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (mQueue) {
+                mShutdown = true;
+            }
+            synchronized (mStages) {
+                mStages.remove(this);
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            final List<Runnable> result;
+            synchronized (mQueue) {
+                mShutdown = true;
+                result = new ArrayList<>(mQueue);
+                mQueue.clear();
+            }
+            synchronized (mStages) {
+                mStages.remove(this);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (mQueue) {
+                return mShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (mQueue) {
+                return mShutdown && mRunning == 0;
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(final long pTimeout, final TimeUnit pUnit)
+                throws InterruptedException {
+            final long end = System.nanoTime() + pUnit.toNanos(pTimeout);
+            synchronized (mQueue) {
+                while (!(mShutdown && mRunning == 0)) {
+                    final long remaining = end - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(mQueue, remaining);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": running " + getRunningCount() + "/" + mMaxConcurrency
+                    + ", queued: " + getQueuedCount()
+                    + ", tiles: " + getTileCount()
+                    + ", busy: " + getBusyNanos() / 1000000 + "ms";
+        }
+    }
+}
@@ -1,17 +1,10 @@
 package org.osmdroid.tileprovider.modules;
 
-import android.graphics.drawable.Drawable;
-import android.util.Log;
-
-import org.osmdroid.api.IMapView;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.tileprovider.IRegisterReceiver;
 import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
-import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
-import org.osmdroid.tileprovider.util.Counters;
-import org.osmdroid.util.MapTileIndex;
 
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -148,46 +141,22 @@ public class MapTileSqlCacheProvider  extends MapTileFileStorageProviderBase{
     // ===========================================================
 
 
-    protected class TileLoader extends MapTileModuleProviderBase.TileLoader {
+    protected class TileLoader extends CacheTileLoader {
+
+        /**
+         * @since 6.0.2
+         */
+        @Override
+        protected IBatchFilesystemCache getCache() {
+            return mWriter;
+        }
 
+        /**
+         * @since 6.0.2
+         */
         @Override
-        public Drawable loadTile(final long pMapTileIndex) throws CantContinueException{
-
-            ITileSource tileSource = mTileSource.get();
-            if (tileSource == null) {
-                return null;
-            }
-
-            // if there's no sdcard then don't do anything
-            if (!isSdCardAvailable()) {
-                if (Configuration.getInstance().isDebugMode()) {
-                    Log.d(IMapView.LOGTAG,"No sdcard - do nothing for tile: " + MapTileIndex.toString(pMapTileIndex));
-                }
-                Counters.fileCacheMiss++;
-                return null;
-            }
-            if (mWriter!=null) {
-                try {
-                    final Drawable result = mWriter.loadTile(tileSource, pMapTileIndex);
-                    if (result == null) {
-                        Counters.fileCacheMiss++;
-                    } else {
-                        Counters.fileCacheHit++;
-                    }
-                    return result;
-                } catch (final BitmapTileSourceBase.LowMemoryException e) {
-                    // low memory so empty the queue
-                    Log.w(IMapView.LOGTAG, "LowMemoryException downloading MapTile: " + MapTileIndex.toString(pMapTileIndex) + " : " + e);
-                    Counters.fileCacheOOM++;
-                    throw new MapTileModuleProviderBase.CantContinueException(e);
-                } catch (final Throwable e) {
-                    Log.e(IMapView.LOGTAG, "Error loading tile", e);
-                    return null;
-                }
-            } else {
-                Log.d(IMapView.LOGTAG, "TileLoader failed to load tile due to mWriter being null (map shutdown?)");
-            }
-            return null;
+        protected ITileSource getTileSource() {
+            return mTileSource.get();
         }
     }
 }
@@ -0,0 +1,47 @@
+package org.osmdroid.tileprovider.modules;
+
+/**
+ * The HTTP validators of a downloaded tile (ETag and Last-Modified headers), stored with the tile
+ * so that it can be revalidated with a conditional request once expired
+ * (If-None-Match and If-Modified-Since headers) instead of being downloaded again
+ * @since 6.0.2
+ */
+
+public class MapTileValidators {
+
+    public static final String HTTP_ETAG_HEADER = "ETag";
+    public static final String HTTP_LAST_MODIFIED_HEADER = "Last-Modified";
+    public static final String HTTP_IF_NONE_MATCH_HEADER = "If-None-Match";
+    public static final String HTTP_IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+
+    private final String mETag;
+    private final String mLastModified;
+
+    /**
+     * @param pETag         Value of the ETag header, or null
+     * @param pLastModified Value of the Last-Modified header, or null
+     */
+    public MapTileValidators(final String pETag, final String pLastModified) {
+        mETag = pETag;
+        mLastModified = pLastModified;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return true if there's nothing to send a conditional request with
+     */
+    public boolean isEmpty() {
+        return isEmpty(mETag) && isEmpty(mLastModified);
+    }
+
+    private static boolean isEmpty(final String pString) {
+        return pString == null || pString.length() == 0;
+    }
+}
@@ -0,0 +1,893 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.util.Log;
+
+import org.osmdroid.api.IMapView;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured tile storage: the tiles are appended to segment files, and found through an
+ * in-memory index keyed by tile source name and map tile index.
+ * <ul>
+ * <li>writes are sequential appends to the last segment; a new segment is started when it's full</li>
+ * <li>reads are positional reads on the {@link FileChannel} of the segment, without any lock</li>
+ * <li>removals and expiration updates are appended as small records</li>
+ * <li>the index is checkpointed to disk; at startup the checkpoint is loaded and only the records
+ * appended after it are replayed</li>
+ * <li>the least recently used segments are evicted as a whole, and the segments that are mostly
+ * made of overwritten or removed tiles are compacted</li>
+ * </ul>
+ * @since 6.0.2
+ * @see SegmentTileWriter
+ */
+
+public class SegmentTileStore {
+
+    public static final String SEGMENT_EXTENSION = ".seg";
+    public static final String CHECKPOINT_FILENAME = "index.ckp";
+    /**
+     * Default maximum size of a segment file
+     */
+    public static final long SEGMENT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final byte TYPE_TILE = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_EXPIRES = 3;
+
+    private static final HashMap<String, SegmentTileStore> sStores = new HashMap<>();
+
+    /**
+     * @return the store of that directory, shared by all its users and opened if needed;
+     * to be released with {@link #release()}
+     */
+    public static SegmentTileStore acquire(final File pDirectory) throws IOException {
+        synchronized (sStores) {
+            final String key = pDirectory.getAbsolutePath();
+            SegmentTileStore store = sStores.get(key);
+            if (store == null) {
+                store = new SegmentTileStore(pDirectory, SEGMENT_MAX_BYTES);
+                store.open();
+                sStores.put(key, store);
+            }
+            store.mUsers++;
+            return store;
+        }
+    }
+
+    private final File mDirectory;
+    private final long mSegmentMaxBytes;
+    /** segments by id; the last one is the one written to */
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<>();
+    private final HashMap<String, LongHashMap<Entry>> mIndex = new HashMap<>();
+    /** one checkpoint written at a time; taken before the store lock */
+    private final Object mCheckpointLock = new Object();
+    private Segment mActive;
+    private long mSize;
+    private int mChangesSinceCheckpoint;
+    private int mUsers;
+
+    /**
+     * Public for tests; the shared instances are given by {@link #acquire(File)}
+     */
+    public SegmentTileStore(final File pDirectory, final long pSegmentMaxBytes) {
+        mDirectory = pDirectory;
+        mSegmentMaxBytes = pSegmentMaxBytes;
+    }
+
+    /**
+     * Opens the segments, loads the checkpoint and replays the records written after it
+     */
+    public synchronized void open() throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+        final long start = System.currentTimeMillis();
+        final TreeMap<Integer, File> files = new TreeMap<>();
+        final File[] list = mDirectory.listFiles();
+        if (list != null) {
+            for (final File file : list) {
+                final String name = file.getName();
+                if (!name.endsWith(SEGMENT_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    files.put(Integer.parseInt(name.substring(0, name.length() - SEGMENT_EXTENSION.length())), file);
+                } catch (NumberFormatException e) {
+                    //
+                }
+            }
+        }
+        final HashMap<Integer, Long> checkpointed = loadCheckpoint(files);
+        final int lastCheckpointed = checkpointed.isEmpty() ? -1 : Collections.max(checkpointed.keySet());
+        for (final Map.Entry<Integer, File> file : files.entrySet()) {
+            final int id = file.getKey();
+            final Long replayFrom = checkpointed.get(id);
+            if (replayFrom == null && id < lastCheckpointed) {
+                // evicted or compacted after the checkpoint was written
+                file.getValue().delete();
+                continue;
+            }
+            final Segment segment = mSegments.containsKey(id) ? mSegments.get(id) : openSegment(id);
+            replay(segment, replayFrom == null ? 0 : replayFrom);
+        }
+        for (final Segment segment : mSegments.values()) {
+            mSize += segment.mSize;
+        }
+        mActive = mSegments.isEmpty() ? openSegment(0) : mSegments.lastEntry().getValue();
+        Log.i(IMapView.LOGTAG, "Opened tile segments in " + mDirectory + " in " + (System.currentTimeMillis() - start)
+                + "ms: " + mSegments.size() + " segments, " + mSize + " bytes");
+    }
+
+    /**
+     * Checkpoints the index and closes the files
+     */
+    public void close() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            Log.w(IMapView.LOGTAG, "Unable to checkpoint the tile segments", e);
+        }
+        synchronized (this) {
+            for (final Segment segment : mSegments.values()) {
+                segment.close();
+            }
+            mSegments.clear();
+            mIndex.clear();
+            mActive = null;
+        }
+    }
+
+    /**
+     * Closes the store if nobody uses it any more, cf. {@link #acquire(File)}
+     */
+    public void release() {
+        synchronized (sStores) {
+            if (--mUsers > 0) {
+                return;
+            }
+            sStores.remove(mDirectory.getAbsolutePath());
+        }
+        close();
+    }
+
+    public synchronized void put(final String pTileSource, final long pMapTileIndex, final byte[] pBytes, final int pLength,
+                                 final long pExpires, final MapTileValidators pValidators) throws IOException {
+        final String eTag = pValidators == null ? null : pValidators.getETag();
+        final String lastModified = pValidators == null ? null : pValidators.getLastModified();
+        final Entry entry = append(TYPE_TILE, pTileSource, pMapTileIndex, pExpires, eTag, lastModified, pBytes, pLength);
+        index(pTileSource, pMapTileIndex, entry);
+    }
+
+    /**
+     * @param pExpires Returns the expiration of the tile in pExpires[0]
+     * @return the tile data, or null if the tile is not in the store
+     */
+    public byte[] read(final String pTileSource, final long pMapTileIndex, final long[] pExpires) {
+        final Entry entry;
+        synchronized (this) {
+            entry = getEntry(pTileSource, pMapTileIndex);
+            if (entry == null) {
+                return null;
+            }
+            entry.mSegment.mLastAccess = System.currentTimeMillis();
+            pExpires[0] = entry.mExpires;
+        }
+        final byte[] result = new byte[entry.mLength];
+        try {
+            try {
+                readFully(entry.mSegment.mChannel, result, entry.mDataOffset);
+            } catch (ClosedChannelException e) {
+                // an interrupted reader closes the channel for everybody; if it's this thread,
+                // it would close it again: the interrupt is put aside during the retry
+                final boolean interrupted = Thread.interrupted();
+                try {
+                    if (!reopen(entry.mSegment)) {
+                        return null;
+                    }
+                    readFully(entry.mSegment.mChannel, result, entry.mDataOffset);
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            // typically the segment was evicted meanwhile
+            Log.d(IMapView.LOGTAG, "Unable to read tile " + pMapTileIndex + " from " + entry.mSegment.mFile, e);
+            return null;
+        }
+    }
+
+    public synchronized boolean contains(final String pTileSource, final long pMapTileIndex) {
+        return getEntry(pTileSource, pMapTileIndex) != null;
+    }
+
+    /**
+     * @return the expiration of the tile, or null if the tile is not in the store
+     */
+    public synchronized Long getExpires(final String pTileSource, final long pMapTileIndex) {
+        final Entry entry = getEntry(pTileSource, pMapTileIndex);
+        return entry == null ? null : entry.mExpires;
+    }
+
+    public synchronized boolean setExpires(final String pTileSource, final long pMapTileIndex, final long pExpires) throws IOException {
+        final Entry entry = getEntry(pTileSource, pMapTileIndex);
+        if (entry == null) {
+            return false;
+        }
+        append(TYPE_EXPIRES, pTileSource, pMapTileIndex, pExpires, null, null, null, 0);
+        entry.mExpires = pExpires;
+        return true;
+    }
+
+    public synchronized boolean remove(final String pTileSource, final long pMapTileIndex) throws IOException {
+        if (getEntry(pTileSource, pMapTileIndex) == null) {
+            return false;
+        }
+        append(TYPE_REMOVE, pTileSource, pMapTileIndex, 0, null, null, null, 0);
+        index(pTileSource, pMapTileIndex, null);
+        return true;
+    }
+
+    /**
+     * The validators are not kept in memory: they are read from the record header
+     * @return the validators, or null if there are none or if the tile is not in the store
+     */
+    public MapTileValidators getValidators(final String pTileSource, final long pMapTileIndex) {
+        final Entry entry;
+        synchronized (this) {
+            entry = getEntry(pTileSource, pMapTileIndex);
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            final Record record = readRecord(entry.mSegment, entry.mOffset, false);
+            if (record == null) {
+                return null;
+            }
+            final MapTileValidators validators = new MapTileValidators(record.mETag, record.mLastModified);
+            return validators.isEmpty() ? null : validators;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the total size of the segment files
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized int getSegmentCount() {
+        return mSegments.size();
+    }
+
+    public synchronized int getTileCount() {
+        int result = 0;
+        for (final LongHashMap<Entry> entries : mIndex.values()) {
+            result += entries.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of removals and writes since the last checkpoint
+     */
+    public synchronized int getChangesSinceCheckpoint() {
+        return mChangesSinceCheckpoint;
+    }
+
+    /**
+     * Deletes the least recently used segments, except the one being written, until the size is below pTrimBytes
+     * @return the number of deleted segments
+     */
+    public int trim(final long pTrimBytes) {
+        int result = 0;
+        synchronized (this) {
+            while (mSize > pTrimBytes && mSegments.size() > 1) {
+                Segment oldest = null;
+                for (final Segment segment : mSegments.values()) {
+                    if (segment != mActive && (oldest == null || segment.mLastAccess < oldest.mLastAccess)) {
+                        oldest = segment;
+                    }
+                }
+                deleteSegment(oldest);
+                result ++;
+            }
+        }
+        if (result > 0) {
+            // otherwise a replay could miss the removals that were in the deleted segments
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                Log.w(IMapView.LOGTAG, "Unable to checkpoint the tile segments", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the tiles still in use out of the segments whose live data is less than pRatio of their size,
+     * then deletes those segments. The store is only locked to pick a segment and to update the index,
+     * not while the tiles are copied.
+     * @return the number of compacted segments
+     */
+    public int compact(final double pRatio) throws IOException {
+        int result = 0;
+        while (true) {
+            Segment candidate = null;
+            final List<String> tileSources = new ArrayList<>();
+            final MapTileList keys = new MapTileList();
+            final List<Entry> entries = new ArrayList<>();
+            synchronized (this) {
+                for (final Segment segment : mSegments.values()) {
+                    if (segment != mActive && segment.mLiveBytes < pRatio * segment.mSize) {
+                        candidate = segment;
+                        break;
+                    }
+                }
+                if (candidate == null) {
+                    return result;
+                }
+                for (final Map.Entry<String, LongHashMap<Entry>> tileSource : mIndex.entrySet()) {
+                    final LongHashMap<Entry> index = tileSource.getValue();
+                    for (int i = 0 ; i < index.getSlotCount() ; i ++) {
+                        final Entry entry = index.getValueAt(i);
+                        if (entry != null && entry.mSegment == candidate) {
+                            tileSources.add(tileSource.getKey());
+                            keys.put(index.getKeyAt(i));
+                            entries.add(entry);
+                        }
+                    }
+                }
+            }
+            if (compact(candidate, tileSources, keys, entries)) {
+                result ++;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Writes the index to disk, so that the next {@link #open()} doesn't need to replay the whole log.
+     * The index is copied with the store lock, then written without it.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (mCheckpointLock) {
+            final Checkpoint checkpoint;
+            synchronized (this) {
+                if (mActive == null) {
+                    return;
+                }
+                checkpoint = new Checkpoint();
+            }
+            final File temp = new File(mDirectory, CHECKPOINT_FILENAME + ".tmp");
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+            try {
+                checkpoint.write(out);
+            } finally {
+                out.close();
+            }
+            final File file = new File(mDirectory, CHECKPOINT_FILENAME);
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + temp);
+                }
+            }
+            synchronized (this) {
+                // the changes made while writing are for the next checkpoint
+                mChangesSinceCheckpoint -= checkpoint.mChanges;
+            }
+        }
+    }
+
+    /**
+     * @param pFiles segment files found on disk
+     * @return the length already indexed for each segment of the checkpoint, empty if there's no valid checkpoint
+     */
+    private HashMap<Integer, Long> loadCheckpoint(final TreeMap<Integer, File> pFiles) {
+        final HashMap<Integer, Long> result = new HashMap<>();
+        final File file = new File(mDirectory, CHECKPOINT_FILENAME);
+        if (!file.exists()) {
+            return result;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            if (in.readInt() != CHECKPOINT_VERSION) {
+                return result;
+            }
+            final int segmentCount = in.readInt();
+            for (int i = 0 ; i < segmentCount ; i ++) {
+                final int id = in.readInt();
+                final long size = in.readLong();
+                final long lastAccess = in.readLong();
+                if (!pFiles.containsKey(id)) {
+                    continue;
+                }
+                final Segment segment = openSegment(id);
+                segment.mLastAccess = lastAccess;
+                result.put(id, size);
+            }
+            final int tileSourceCount = in.readInt();
+            for (int i = 0 ; i < tileSourceCount ; i ++) {
+                final String tileSource = in.readUTF();
+                final int entryCount = in.readInt();
+                for (int j = 0 ; j < entryCount ; j ++) {
+                    final long mapTileIndex = in.readLong();
+                    final Segment segment = mSegments.get(in.readInt());
+                    final long offset = in.readLong();
+                    final int recordLength = in.readInt();
+                    final int dataOffset = in.readInt();
+                    final int length = in.readInt();
+                    final long expires = in.readLong();
+                    if (segment != null && offset + recordLength <= segment.mSize) {
+                        index(tileSource, mapTileIndex, new Entry(segment, offset, recordLength, dataOffset, length, expires));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(IMapView.LOGTAG, "Invalid tile segment checkpoint, the whole log is replayed", e);
+            for (final Segment segment : mSegments.values()) {
+                segment.close();
+            }
+            mSegments.clear();
+            mIndex.clear();
+            result.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Indexes the records of a segment from a position, and truncates a record that was not fully written
+     */
+    private void replay(final Segment pSegment, final long pFrom) throws IOException {
+        long offset = pFrom;
+        int count = 0;
+        while (offset < pSegment.mSize) {
+            final Record record = readRecord(pSegment, offset, true);
+            if (record == null) {
+                Log.w(IMapView.LOGTAG, "Truncating " + pSegment.mFile + " from " + pSegment.mSize + " to " + offset);
+                pSegment.mChannel.truncate(offset);
+                pSegment.mSize = offset;
+                break;
+            }
+            switch (record.mType) {
+                case TYPE_TILE:
+                    index(record.mTileSource, record.mMapTileIndex, new Entry(pSegment, offset, record.mRecordLength,
+                            record.mDataOffset, record.mLength, record.mExpires));
+                    break;
+                case TYPE_REMOVE:
+                    index(record.mTileSource, record.mMapTileIndex, null);
+                    break;
+                case TYPE_EXPIRES:
+                    final Entry entry = getEntry(record.mTileSource, record.mMapTileIndex);
+                    if (entry != null) {
+                        entry.mExpires = record.mExpires;
+                    }
+                    break;
+            }
+            offset += record.mRecordLength;
+            count ++;
+        }
+        if (count > 0) {
+            mChangesSinceCheckpoint += count;
+        }
+    }
+
+    private Entry getEntry(final String pTileSource, final long pMapTileIndex) {
+        final LongHashMap<Entry> entries = mIndex.get(pTileSource);
+        return entries == null ? null : entries.get(pMapTileIndex);
+    }
+
+    /**
+     * Sets or removes the entry of a tile, and maintains the live bytes of the segments
+     */
+    private void index(final String pTileSource, final long pMapTileIndex, final Entry pEntry) {
+        LongHashMap<Entry> entries = mIndex.get(pTileSource);
+        if (entries == null) {
+            if (pEntry == null) {
+                return;
+            }
+            entries = new LongHashMap<>();
+            mIndex.put(pTileSource, entries);
+        }
+        final Entry previous = pEntry == null ? entries.remove(pMapTileIndex) : entries.put(pMapTileIndex, pEntry);
+        if (previous != null) {
+            previous.mSegment.mLiveBytes -= previous.mRecordLength;
+        }
+        if (pEntry != null) {
+            pEntry.mSegment.mLiveBytes += pEntry.mRecordLength;
+        }
+    }
+
+    /**
+     * Record layout: length of the rest of the record (int), type (byte), tile source (UTF),
+     * map tile index (long), expiration (long), ETag and Last-Modified (UTF, or a -1 length if null),
+     * data length (int), data, CRC32 of everything after the record length (int)
+     * @return the entry of the appended record
+     */
+    private Entry append(final byte pType, final String pTileSource, final long pMapTileIndex, final long pExpires,
+                         final String pETag, final String pLastModified, final byte[] pBytes, final int pLength) throws IOException {
+        if (mActive == null) {
+            throw new IOException("Tile segments closed");
+        }
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(pLength + 128);
+        final DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0); // length, set below
+        out.writeByte(pType);
+        out.writeUTF(pTileSource);
+        out.writeLong(pMapTileIndex);
+        out.writeLong(pExpires);
+        writeNullableUTF(out, pETag);
+        writeNullableUTF(out, pLastModified);
+        out.writeInt(pLength);
+        final int dataOffset = out.size();
+        if (pLength > 0) {
+            out.write(pBytes, 0, pLength);
+        }
+        out.writeInt(0); // CRC, set below
+        out.flush();
+        final byte[] record = buffer.toByteArray();
+        final ByteBuffer wrapper = ByteBuffer.wrap(record);
+        wrapper.putInt(0, record.length - 4);
+        final CRC32 crc = new CRC32();
+        crc.update(record, 4, record.length - 8);
+        wrapper.putInt(record.length - 4, (int) crc.getValue());
+
+        if (mActive.mSize > 0 && mActive.mSize + record.length > mSegmentMaxBytes) {
+            mActive = openSegment(mActive.mId + 1);
+        } else if (!mActive.mChannel.isOpen()) {
+            reopen(mActive);
+        }
+        final long offset = mActive.mSize;
+        while (wrapper.hasRemaining()) {
+            mActive.mChannel.write(wrapper, offset + wrapper.position());
+        }
+        mActive.mSize += record.length;
+        mActive.mLastAccess = System.currentTimeMillis();
+        mSize += record.length;
+        mChangesSinceCheckpoint ++;
+        return new Entry(mActive, offset, record.length, dataOffset, pLength, pExpires);
+    }
+
+    /**
+     * @param pWithData true to read the data and check the CRC, false to only read the header
+     * @return the record, or null if it's incomplete or corrupted
+     */
+    private Record readRecord(final Segment pSegment, final long pOffset, final boolean pWithData) throws IOException {
+        if (pOffset + 4 > pSegment.mSize) {
+            return null;
+        }
+        final byte[] lengthBytes = new byte[4];
+        readFully(pSegment.mChannel, lengthBytes, pOffset);
+        final int length = ByteBuffer.wrap(lengthBytes).getInt();
+        if (length < 8 || pOffset + 4 + length > pSegment.mSize) {
+            return null;
+        }
+        final byte[] bytes = new byte[pWithData ? length : Math.min(length, 4096)];
+        readFully(pSegment.mChannel, bytes, pOffset + 4);
+        if (pWithData) {
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length - 4);
+            if ((int) crc.getValue() != ByteBuffer.wrap(bytes, length - 4, 4).getInt()) {
+                return null;
+            }
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        final Record result = new Record();
+        result.mRecordLength = 4 + length;
+        result.mType = in.readByte();
+        result.mTileSource = in.readUTF();
+        result.mMapTileIndex = in.readLong();
+        result.mExpires = in.readLong();
+        result.mETag = readNullableUTF(in);
+        result.mLastModified = readNullableUTF(in);
+        result.mLength = in.readInt();
+        result.mDataOffset = 4 + (bytes.length - in.available());
+        if (pWithData) {
+            result.mBytes = Arrays.copyOfRange(bytes, result.mDataOffset - 4, result.mDataOffset - 4 + result.mLength);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the tiles of a segment to the active segment, then deletes the segment.
+     * The tiles are read without the lock; each index entry is swapped with the lock,
+     * unless the tile was overwritten or removed meanwhile.
+     * @param pEntries the entries of the segment when it was picked, with their tile sources and keys
+     * @return false if the segment was deleted meanwhile
+     */
+    private boolean compact(final Segment pSegment, final List<String> pTileSources, final MapTileList pKeys,
+                            final List<Entry> pEntries) throws IOException {
+        for (int i = 0 ; i < pKeys.getSize() ; i ++) {
+            final Entry entry = pEntries.get(i);
+            Record record;
+            try {
+                record = readRecord(pSegment, entry.mOffset, true);
+            } catch (ClosedChannelException e) {
+                // closed by an interrupted reader, maybe this thread, or deleted meanwhile
+                final boolean interrupted = Thread.interrupted();
+                try {
+                    if (!reopen(pSegment)) {
+                        return false;
+                    }
+                    record = readRecord(pSegment, entry.mOffset, true);
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            synchronized (this) {
+                if (getEntry(pTileSources.get(i), pKeys.get(i)) != entry) {
+                    continue;
+                }
+                index(pTileSources.get(i), pKeys.get(i), record == null ? null : append(TYPE_TILE,
+                        record.mTileSource, record.mMapTileIndex, entry.mExpires, record.mETag, record.mLastModified,
+                        record.mBytes, record.mLength));
+            }
+        }
+        synchronized (this) {
+            if (mSegments.get(pSegment.mId) != pSegment) {
+                return false;
+            }
+        }
+        // the records written in the segment are now in the checkpoint: the segment can't be replayed any more
+        checkpoint();
+        synchronized (this) {
+            if (mSegments.get(pSegment.mId) != pSegment) {
+                return false;
+            }
+            deleteSegment(pSegment);
+        }
+        return true;
+    }
+
+    private void deleteSegment(final Segment pSegment) {
+        mSegments.remove(pSegment.mId);
+        mSize -= pSegment.mSize;
+        if (pSegment.mLiveBytes > 0) { // a compacted segment has no entry left
+            final MapTileList keys = new MapTileList();
+            for (final LongHashMap<Entry> entries : mIndex.values()) {
+                keys.clear();
+                for (int i = 0 ; i < entries.getSlotCount() ; i ++) {
+                    final Entry entry = entries.getValueAt(i);
+                    if (entry != null && entry.mSegment == pSegment) {
+                        keys.put(entries.getKeyAt(i));
+                    }
+                }
+                for (int i = 0 ; i < keys.getSize() ; i ++) {
+                    entries.remove(keys.get(i));
+                }
+            }
+        }
+        pSegment.close();
+        if (!pSegment.mFile.delete()) {
+            Log.w(IMapView.LOGTAG, "Unable to delete " + pSegment.mFile);
+        }
+    }
+
+    /**
+     * Reopens the channel of a segment that was closed by an interrupted thread
+     * @return false if the segment was deleted meanwhile
+     */
+    private synchronized boolean reopen(final Segment pSegment) throws IOException {
+        if (mSegments.get(pSegment.mId) != pSegment) {
+            return false;
+        }
+        if (!pSegment.mChannel.isOpen()) {
+            pSegment.open();
+        }
+        return true;
+    }
+
+    private Segment openSegment(final int pId) throws IOException {
+        final Segment segment = new Segment(pId, new File(mDirectory, String.format("%08d", pId) + SEGMENT_EXTENSION));
+        mSegments.put(pId, segment);
+        return segment;
+    }
+
+    private static void readFully(final FileChannel pChannel, final byte[] pBytes, final long pPosition) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(pBytes);
+        while (buffer.hasRemaining()) {
+            if (pChannel.read(buffer, pPosition + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+
+    private static void writeNullableUTF(final DataOutputStream pOut, final String pString) throws IOException {
+        pOut.writeBoolean(pString != null);
+        if (pString != null) {
+            pOut.writeUTF(pString);
+        }
+    }
+
+    private static String readNullableUTF(final DataInputStream pIn) throws IOException {
+        return pIn.readBoolean() ? pIn.readUTF() : null;
+    }
+
+    private static class Segment {
+        private final int mId;
+        private final File mFile;
+        private RandomAccessFile mRandomAccessFile;
+        private volatile FileChannel mChannel;
+        private long mSize;
+        private long mLiveBytes;
+        private long mLastAccess;
+
+        private Segment(final int pId, final File pFile) throws IOException {
+            mId = pId;
+            mFile = pFile;
+            open();
+            mSize = mChannel.size();
+            mLastAccess = pFile.lastModified();
+        }
+
+        private void open() throws IOException {
+            mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+            mChannel = mRandomAccessFile.getChannel();
+        }
+
+        private void close() {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                //
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Segment mSegment;
+        private final long mOffset;
+        private final int mRecordLength;
+        /** absolute position of the data in the segment */
+        private final long mDataOffset;
+        private final int mLength;
+        private long mExpires;
+
+        private Entry(final Segment pSegment, final long pOffset, final int pRecordLength, final int pDataOffset,
+                      final int pLength, final long pExpires) {
+            mSegment = pSegment;
+            mOffset = pOffset;
+            mRecordLength = pRecordLength;
+            mDataOffset = pOffset + pDataOffset;
+            mLength = pLength;
+            mExpires = pExpires;
+        }
+    }
+
+    /**
+     * A copy of the index, to be written without the store lock
+     */
+    private class Checkpoint {
+        private final int mChanges;
+        private final int[] mSegmentIds;
+        private final long[] mSegmentSizes;
+        private final long[] mSegmentLastAccesses;
+        private final String[] mTileSources;
+        private final long[][] mKeys;
+        private final Entry[][] mEntries;
+        /** the expirations are copied because they can change */
+        private final long[][] mExpires;
+
+        /**
+         * Must be called in sync
+         */
+        private Checkpoint() {
+            mChanges = mChangesSinceCheckpoint;
+            mSegmentIds = new int[mSegments.size()];
+            mSegmentSizes = new long[mSegments.size()];
+            mSegmentLastAccesses = new long[mSegments.size()];
+            int i = 0;
+            for (final Segment segment : mSegments.values()) {
+                mSegmentIds[i] = segment.mId;
+                mSegmentSizes[i] = segment.mSize;
+                mSegmentLastAccesses[i] = segment.mLastAccess;
+                i ++;
+            }
+            mTileSources = new String[mIndex.size()];
+            mKeys = new long[mIndex.size()][];
+            mEntries = new Entry[mIndex.size()][];
+            mExpires = new long[mIndex.size()][];
+            i = 0;
+            for (final Map.Entry<String, LongHashMap<Entry>> tileSource : mIndex.entrySet()) {
+                final LongHashMap<Entry> entries = tileSource.getValue();
+                mTileSources[i] = tileSource.getKey();
+                mKeys[i] = new long[entries.size()];
+                mEntries[i] = new Entry[entries.size()];
+                mExpires[i] = new long[entries.size()];
+                int j = 0;
+                for (int slot = 0 ; slot < entries.getSlotCount() ; slot ++) {
+                    final Entry entry = entries.getValueAt(slot);
+                    if (entry == null) {
+                        continue;
+                    }
+                    mKeys[i][j] = entries.getKeyAt(slot);
+                    mEntries[i][j] = entry;
+                    mExpires[i][j] = entry.mExpires;
+                    j ++;
+                }
+                i ++;
+            }
+        }
+
+        private void write(final DataOutputStream pOut) throws IOException {
+            pOut.writeInt(CHECKPOINT_VERSION);
+            pOut.writeInt(mSegmentIds.length);
+            for (int i = 0 ; i < mSegmentIds.length ; i ++) {
+                pOut.writeInt(mSegmentIds[i]);
+                pOut.writeLong(mSegmentSizes[i]);
+                pOut.writeLong(mSegmentLastAccesses[i]);
+            }
+            pOut.writeInt(mTileSources.length);
+            for (int i = 0 ; i < mTileSources.length ; i ++) {
+                pOut.writeUTF(mTileSources[i]);
+                pOut.writeInt(mKeys[i].length);
+                for (int j = 0 ; j < mKeys[i].length ; j ++) {
+                    final Entry entry = mEntries[i][j];
+                    pOut.writeLong(mKeys[i][j]);
+                    pOut.writeInt(entry.mSegment.mId);
+                    pOut.writeLong(entry.mOffset);
+                    pOut.writeInt(entry.mRecordLength);
+                    pOut.writeInt((int) (entry.mDataOffset - entry.mOffset));
+                    pOut.writeInt(entry.mLength);
+                    pOut.writeLong(mExpires[i][j]);
+                }
+            }
+        }
+    }
+
+    private static class Record {
+        private int mRecordLength;
+        private byte mType;
+        private String mTileSource;
+        private long mMapTileIndex;
+        private long mExpires;
+        private String mETag;
+        private String mLastModified;
+        /** position of the data from the beginning of the record */
+        private int mDataOffset;
+        private int mLength;
+        private byte[] mBytes;
+    }
+}
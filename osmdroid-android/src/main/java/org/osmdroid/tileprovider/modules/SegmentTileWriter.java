@@ -0,0 +1,271 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+
+import org.osmdroid.api.IMapView;
+import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.ByteArrayPool;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.Counters;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tile cache in a few large append-only files, cf. {@link SegmentTileStore}.
+ * Compared to {@link SqlTileWriter}, a write is a single sequential append and a read is a single
+ * positional read, without any query parsing nor transaction.
+ * The size of the cache is kept under {@link Configuration#getTileFileSystemCacheMaxBytes()}
+ * by deleting the least recently used segments.
+ * @since 6.0.2
+ * @see MapTileSegmentCacheProvider
+ */
+
+public class SegmentTileWriter implements IBatchFilesystemCache, IRevalidatingFilesystemCache {
+
+    public static final String DIRECTORY_NAME = "segments";
+    /**
+     * A segment is compacted when less than that ratio of its size is still used
+     */
+    public static final double COMPACTION_RATIO = 0.5;
+    /**
+     * The index is checkpointed every that number of changes, at least
+     */
+    public static final int CHECKPOINT_INTERVAL = 1000;
+    /**
+     * With a bigger index, it's checkpointed when the number of changes reaches that ratio of its tiles,
+     * so that the cost of the checkpoints per change doesn't grow with the index
+     */
+    public static final double CHECKPOINT_RATIO = 0.1;
+
+    private SegmentTileStore mStore;
+    private final AtomicBoolean mMaintenanceRunning = new AtomicBoolean();
+
+    public SegmentTileWriter() {
+        final File directory = new File(Configuration.getInstance().getOsmdroidTileCache(), DIRECTORY_NAME);
+        try {
+            mStore = SegmentTileStore.acquire(directory);
+        } catch (Throwable ex) {
+            Log.e(IMapView.LOGTAG, "Unable to start the segment tile writer. Check external storage availability.", ex);
+        }
+        startMaintenance();
+    }
+
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final InputStream pStream, final Long pExpirationTime) {
+        return saveFile(pTileSourceInfo, pMapTileIndex, pStream, pExpirationTime, null);
+    }
+
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final InputStream pStream, final Long pExpirationTime,
+                            final MapTileValidators pValidators) {
+        final ByteArrayPool pool = ByteArrayPool.getInstance();
+        final int[] length = new int[1];
+        byte[] bytes = null;
+        try {
+            bytes = pool.read(pStream, -1, length);
+            return saveFile(pTileSourceInfo, pMapTileIndex, bytes, length[0], pExpirationTime, pValidators);
+        } catch (IOException ex) {
+            Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+            Counters.fileCacheSaveErrors++;
+            return false;
+        } finally {
+            if (bytes != null) {
+                pool.release(bytes);
+            }
+        }
+    }
+
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final byte[] pBytes, final int pLength,
+                            final Long pExpirationTime, final MapTileValidators pValidators) {
+        final SegmentTileStore store = mStore;
+        if (store == null) {
+            Log.d(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex) + ", segments not available.");
+            Counters.fileCacheSaveErrors++;
+            return false;
+        }
+        try {
+            store.put(pTileSourceInfo.name(), pMapTileIndex, pBytes, pLength,
+                    pExpirationTime == null ? 0 : pExpirationTime, pValidators);
+        } catch (IOException ex) {
+            Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+            Counters.fileCacheSaveErrors++;
+            startMaintenance();
+            return false;
+        }
+        if (Configuration.getInstance().isDebugMode()) {
+            Log.d(IMapView.LOGTAG, "tile inserted " + pTileSourceInfo.name() + MapTileIndex.toString(pMapTileIndex));
+        }
+        if (store.getSize() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()
+                || isCheckpointDue(store)) {
+            startMaintenance();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean exists(final ITileSource pTileSourceInfo, final long pMapTileIndex) {
+        final SegmentTileStore store = mStore;
+        return store != null && store.contains(pTileSourceInfo.name(), pMapTileIndex);
+    }
+
+    @Override
+    public void onDetach() {
+        final SegmentTileStore store = mStore;
+        mStore = null;
+        if (store != null) {
+            store.release();
+        }
+    }
+
+    @Override
+    public boolean remove(final ITileSource pTileSourceInfo, final long pMapTileIndex) {
+        final SegmentTileStore store = mStore;
+        if (store == null) {
+            return false;
+        }
+        try {
+            return store.remove(pTileSourceInfo.name(), pMapTileIndex);
+        } catch (IOException ex) {
+            Log.e(IMapView.LOGTAG, "Unable to delete cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+            return false;
+        }
+    }
+
+    @Override
+    public Long getExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex) {
+        final SegmentTileStore store = mStore;
+        return store == null ? null : store.getExpires(pTileSource.name(), pMapTileIndex);
+    }
+
+    @Override
+    public Drawable loadTile(final ITileSource pTileSource, final long pMapTileIndex) throws Exception {
+        final MapTileBytes bytes = loadTileBytes(pTileSource, pMapTileIndex);
+        if (bytes == null) {
+            return null;
+        }
+        return bytes.decode();
+    }
+
+    /**
+     * Reads the tile data without decoding it, cf. {@link MapTileDecoder}
+     * @return the tile data, flagged as expired if needed, or null if the tile is not in the cache
+     */
+    public MapTileBytes loadTileBytes(final ITileSource pTileSource, final long pMapTileIndex) {
+        final SegmentTileStore store = mStore;
+        if (store == null) {
+            return null;
+        }
+        final long[] expires = new long[1];
+        final byte[] bytes = store.read(pTileSource.name(), pMapTileIndex, expires);
+        if (bytes == null) {
+            if (Configuration.getInstance().isDebugMode()) {
+                Log.d(IMapView.LOGTAG, "SegmentCache - Tile doesn't exist: " + pTileSource.name() + MapTileIndex.toString(pMapTileIndex));
+            }
+            return null;
+        }
+        final boolean fileExpired = expires[0] < System.currentTimeMillis();
+        if (fileExpired && Configuration.getInstance().isDebugMode()) {
+            Log.d(IMapView.LOGTAG, "Tile expired: " + pTileSource.name() + MapTileIndex.toString(pMapTileIndex));
+        }
+        return new MapTileBytes(pTileSource, bytes, bytes.length, fileExpired);
+    }
+
+    /**
+     * There's no query to share here: the tiles are read one by one, each with a single positional read
+     */
+    @Override
+    public LongHashMap<MapTileBytes> loadTiles(final ITileSource pTileSource, final MapTileList pMapTileList) {
+        final LongHashMap<MapTileBytes> result = new LongHashMap<>(pMapTileList.getSize());
+        for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+            final long mapTileIndex = pMapTileList.get(i);
+            final MapTileBytes bytes = loadTileBytes(pTileSource, mapTileIndex);
+            if (bytes != null) {
+                result.put(mapTileIndex, bytes);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public MapTileValidators getValidators(final ITileSource pTileSource, final long pMapTileIndex) {
+        final SegmentTileStore store = mStore;
+        return store == null ? null : store.getValidators(pTileSource.name(), pMapTileIndex);
+    }
+
+    @Override
+    public boolean refreshExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex, final Long pExpirationTime) {
+        final SegmentTileStore store = mStore;
+        if (store == null) {
+            return false;
+        }
+        try {
+            return store.setExpires(pTileSource.name(), pMapTileIndex, pExpirationTime == null ? 0 : pExpirationTime);
+        } catch (IOException ex) {
+            Log.e(IMapView.LOGTAG, "Unable to refresh the expiration of tile " + pTileSource.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+            return false;
+        }
+    }
+
+    /**
+     * @return the total size of the segments, or 0 if they are not available
+     */
+    public long getSize() {
+        final SegmentTileStore store = mStore;
+        return store == null ? 0 : store.getSize();
+    }
+
+    /**
+     * Evicts, compacts and checkpoints in a background thread, unless it's already running
+     */
+    private void startMaintenance() {
+        final SegmentTileStore store = mStore;
+        if (store == null || !mMaintenanceRunning.compareAndSet(false, true)) {
+            return;
+        }
+        final Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    runMaintenance(store);
+                } finally {
+                    mMaintenanceRunning.set(false);
+                }
+            }
+        };
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private static boolean isCheckpointDue(final SegmentTileStore pStore) {
+        final int changes = pStore.getChangesSinceCheckpoint();
+        return changes >= CHECKPOINT_INTERVAL && changes >= CHECKPOINT_RATIO * pStore.getTileCount();
+    }
+
+    private void runMaintenance(final SegmentTileStore pStore) {
+        try {
+            if (pStore.getSize() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
+                final int evicted = pStore.trim(Configuration.getInstance().getTileFileSystemCacheTrimBytes());
+                if (Configuration.getInstance().isDebugMode()) {
+                    Log.d(IMapView.LOGTAG, "Evicted " + evicted + " tile segments");
+                }
+            }
+            final int compacted = pStore.compact(COMPACTION_RATIO);
+            if (Configuration.getInstance().isDebugMode()) {
+                Log.d(IMapView.LOGTAG, "Compacted " + compacted + " tile segments");
+            }
+            if (isCheckpointDue(pStore)) {
+                pStore.checkpoint();
+            }
+        } catch (Throwable ex) {
+            Log.e(IMapView.LOGTAG, "Tile segment maintenance failed", ex);
+        }
+    }
+}
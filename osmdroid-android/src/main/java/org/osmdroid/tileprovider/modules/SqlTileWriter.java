@@ -4,26 +4,32 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteFullException;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.Log;
 
 import org.osmdroid.api.IMapView;
 import org.osmdroid.config.Configuration;
-import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.util.Counters;
-import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.osmdroid.tileprovider.modules.DatabaseFileArchive.COLUMN_PROVIDER;
 import static org.osmdroid.tileprovider.modules.DatabaseFileArchive.COLUMN_KEY;
@@ -34,16 +40,69 @@ import static org.osmdroid.tileprovider.modules.DatabaseFileArchive.TABLE;
  * It supports expiration timestamps if provided by the server from which the tile was downloaded. Trimming
  * of expired
  * <p>
- * If the database exceeds {@link Configuration#getInstance()#getTileFileSystemCacheTrimBytes()}
- * cache exceeds 600 Mb then it will be trimmed to 500 Mb by deleting files that expire first.
+ * If the database exceeds {@link Configuration#getInstance()#getTileFileSystemCacheMaxBytes()}
+ * (default 600 Mb) then it will be trimmed to {@link Configuration#getInstance()#getTileFileSystemCacheTrimBytes()}
+ * (default 500 Mb) by deleting the least recently used tiles first.
+ * <p>
+ * Since 6.0.2, saved tiles can be queued and written by a background thread in batches, one transaction per batch,
+ * cf. {@link Configuration#getInstance()#getTileFileSystemCacheWriteBatchSize()} (off by default).
+ * Queued tiles are served by the read methods as if they were already in the database.
+ * <p>
+ * Since 6.0.2, identical tiles can be stored only once,
+ * cf. {@link Configuration#getInstance()#isTileFileSystemCacheDeduplication()}: the tile column is then null,
+ * and the hash column refers to a row of the {@link #TABLE_BLOBS} table. Triggers maintain the reference
+ * counts of the blobs, and delete them when they are not used any more.
  * @see DatabaseFileArchive
  * @see SqliteArchiveTileWriter
  * @author Alex O'Ree
  * @since 5.1
  */
-public class SqlTileWriter implements IFilesystemCache {
+public class SqlTileWriter implements IBatchFilesystemCache, IRevalidatingFilesystemCache {
     public static final String DATABASE_FILENAME = "cache.db";
     public static final String COLUMN_EXPIRES ="expires";
+    /**
+     * @since 6.0.2
+     */
+    public static final String COLUMN_ETAG = "etag";
+    /**
+     * @since 6.0.2
+     */
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+    /**
+     * Last time the tile was written or read, with a precision of {@link #LAST_ACCESS_PRECISION} ms
+     * @since 6.0.2
+     */
+    public static final String COLUMN_LAST_ACCESS = "last_access";
+    /**
+     * Reading a tile updates its last access only if it's older than that, in order to keep reads cheap
+     * @since 6.0.2
+     */
+    public static final long LAST_ACCESS_PRECISION = 60 * 60 * 1000;
+    /**
+     * Number of tiles deleted at once when the cache is trimmed; the write lock is released between chunks
+     * @since 6.0.2
+     */
+    public static final int EVICTION_CHUNK_SIZE = 200;
+    /**
+     * Deduplicated tile data, cf. {@link Configuration#getInstance()#isTileFileSystemCacheDeduplication()}
+     * @since 6.0.2
+     */
+    public static final String TABLE_BLOBS = "tile_blobs";
+    /**
+     * SHA-1 of the tile data, both in the tiles table and in the {@link #TABLE_BLOBS} table
+     * @since 6.0.2
+     */
+    public static final String COLUMN_HASH = "hash";
+    /**
+     * Number of rows of the tiles table that use a blob
+     * @since 6.0.2
+     */
+    public static final String COLUMN_REFS = "refs";
+    /**
+     * Number of tiles moved at once to the {@link #TABLE_BLOBS} table when the deduplication is enabled
+     * @since 6.0.2
+     */
+    public static final int MIGRATION_CHUNK_SIZE = 100;
 
     private static boolean cleanOnStartup=true;
     /*
@@ -62,11 +121,72 @@ public class SqlTileWriter implements IFilesystemCache {
     protected long lastSizeCheck=0;
 
     /**
-     * mean tile size computed on first use.
-     * Sizes are quite variable and a significant underestimate will result in too many tiles being purged.
+     * Maximum number of queued tiles, in batches: beyond that, saving a tile waits for the writer thread
+     * @since 6.0.2
+     */
+    private static final int MAX_PENDING_BATCHES = 4;
+
+    /**
+     * @since 6.0.2
+     */
+    private static final String insertTile = "INSERT INTO " + TABLE + " (" + COLUMN_KEY + ", " + COLUMN_PROVIDER + ", "
+            + DatabaseFileArchive.COLUMN_TILE + ", " + COLUMN_EXPIRES + ", " + COLUMN_ETAG + ", " + COLUMN_LAST_MODIFIED + ", "
+            + COLUMN_LAST_ACCESS + ", " + COLUMN_HASH + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Not "INSERT OR REPLACE": the replaced row would be deleted without firing the delete trigger
+     * @since 6.0.2
+     */
+    private static final String deleteTile = "DELETE FROM " + TABLE + " WHERE " + COLUMN_KEY + "=? AND " + COLUMN_PROVIDER + "=?";
+
+    /**
+     * The reference count is incremented by the insert trigger of the tiles table
+     * @since 6.0.2
+     */
+    private static final String insertBlob = "INSERT OR IGNORE INTO " + TABLE_BLOBS + " (" + COLUMN_HASH + ", "
+            + DatabaseFileArchive.COLUMN_TILE + ", " + COLUMN_REFS + ") VALUES (?, ?, 0)";
+
+    /**
+     * @since 6.0.2
+     */
+    private static final String updateLastAccess = "UPDATE " + TABLE + " SET " + COLUMN_LAST_ACCESS + "=? WHERE " + COLUMN_KEY + "=? AND " + COLUMN_PROVIDER + "=?";
+
+    /**
+     * Serializes the writes, and guards the statements and {@link #mDigest}
+     * @since 6.0.2
+     */
+    private final Object mWriteLock = new Object();
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mDeleteStatement;
+    private SQLiteStatement mBlobStatement;
+    private SQLiteStatement mLastAccessStatement;
+    private MessageDigest mDigest;
+    private boolean mDeduplication;
+
+    /**
+     * Tiles saved but not written yet, per tile source name and db key; also the lock of the queue fields
+     * @since 6.0.2
+     */
+    private final HashMap<String, LongHashMap<PendingTile>> mPendingTiles = new HashMap<>();
+    private int mPendingCount;
+    private long mFirstPendingTime;
+    private Thread mWriteBehindThread;
+    /**
+     * Last accesses read but not written yet, per tile source name and db key; guarded by {@link #mPendingTiles}
+     * @since 6.0.2
+     */
+    private final HashMap<String, LongHashMap<Long>> mPendingAccesses = new HashMap<>();
+    private int mPendingAccessCount;
+
+    /**
+     * @since 6.0.2
      */
-    long tileSize=0l;
+    private final AtomicBoolean mCleanupRunning = new AtomicBoolean();
     static boolean hasInited=false;
+    /**
+     * @since 6.0.2
+     */
+    static boolean hasMigrated=false;
 
     public SqlTileWriter() {
 
@@ -76,7 +196,30 @@ public class SqlTileWriter implements IFilesystemCache {
 
         try {
             db = SQLiteDatabase.openOrCreateDatabase(db_file, null);
-            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (" + DatabaseFileArchive.COLUMN_KEY + " INTEGER , " + DatabaseFileArchive.COLUMN_PROVIDER + " TEXT, " + DatabaseFileArchive.COLUMN_TILE + " BLOB, " + COLUMN_EXPIRES +" INTEGER, PRIMARY KEY (" + DatabaseFileArchive.COLUMN_KEY + ", " + DatabaseFileArchive.COLUMN_PROVIDER + "));");
+            if (Configuration.getInstance().isTileFileSystemCacheWriteAheadLogging()
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                db.enableWriteAheadLogging();
+            }
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (" + DatabaseFileArchive.COLUMN_KEY + " INTEGER , " + DatabaseFileArchive.COLUMN_PROVIDER + " TEXT, " + DatabaseFileArchive.COLUMN_TILE + " BLOB, " + COLUMN_EXPIRES +" INTEGER, " + COLUMN_ETAG + " TEXT, " + COLUMN_LAST_MODIFIED + " TEXT, " + COLUMN_LAST_ACCESS + " INTEGER, PRIMARY KEY (" + DatabaseFileArchive.COLUMN_KEY + ", " + DatabaseFileArchive.COLUMN_PROVIDER + "));");
+            // databases created before 6.0.2
+            addColumnIfMissing(COLUMN_ETAG, "TEXT");
+            addColumnIfMissing(COLUMN_LAST_MODIFIED, "TEXT");
+            // tiles without last access are the first ones to be evicted, until they are read
+            addColumnIfMissing(COLUMN_LAST_ACCESS, "INTEGER");
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_" + COLUMN_LAST_ACCESS + " ON " + TABLE + " (" + COLUMN_LAST_ACCESS + ");");
+            // the deduplication schema is always there, so that the cache can be read whatever the setting
+            addColumnIfMissing(COLUMN_HASH, "BLOB");
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_BLOBS + " (" + COLUMN_HASH + " BLOB PRIMARY KEY, " + DatabaseFileArchive.COLUMN_TILE + " BLOB, " + COLUMN_REFS + " INTEGER);");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLE + "_" + COLUMN_HASH + "_insert AFTER INSERT ON " + TABLE
+                    + " WHEN new." + COLUMN_HASH + " IS NOT NULL BEGIN"
+                    + " UPDATE " + TABLE_BLOBS + " SET " + COLUMN_REFS + " = " + COLUMN_REFS + " + 1 WHERE " + COLUMN_HASH + " = new." + COLUMN_HASH + ";"
+                    + " END;");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLE + "_" + COLUMN_HASH + "_delete AFTER DELETE ON " + TABLE
+                    + " WHEN old." + COLUMN_HASH + " IS NOT NULL BEGIN"
+                    + " UPDATE " + TABLE_BLOBS + " SET " + COLUMN_REFS + " = " + COLUMN_REFS + " - 1 WHERE " + COLUMN_HASH + " = old." + COLUMN_HASH + ";"
+                    + " DELETE FROM " + TABLE_BLOBS + " WHERE " + COLUMN_HASH + " = old." + COLUMN_HASH + " AND " + COLUMN_REFS + " <= 0;"
+                    + " END;");
+            mDeduplication = Configuration.getInstance().isTileFileSystemCacheDeduplication();
         } catch (Throwable ex) {
             Log.e(IMapView.LOGTAG, "Unable to start the sqlite tile writer. Check external storage availability.", ex);
         }
@@ -84,19 +227,127 @@ public class SqlTileWriter implements IFilesystemCache {
             hasInited = true;
 
             if (cleanOnStartup) {
-                // do this in the background because it takes a long time
-                final Thread t = new Thread() {
-                    @Override
-                    public void run() {
-                        runCleanupOperation();
+                startCleanupOperation();
+            }
+        }
+        if (mDeduplication && !hasMigrated) {
+            hasMigrated = true;
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    migrateToDeduplication();
+                }
+            };
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+        }
+    }
+
+    /**
+     * Moves the data of the tiles stored without deduplication to the {@link #TABLE_BLOBS} table,
+     * in small transactions so that the writes are not blocked for long
+     * @since 6.0.2
+     */
+    private void migrateToDeduplication() {
+        final String[] columns = {"rowid", DatabaseFileArchive.COLUMN_TILE};
+        final String where = "rowid > ? AND " + DatabaseFileArchive.COLUMN_TILE + " IS NOT NULL";
+        final String updateTile = "UPDATE " + TABLE + " SET " + DatabaseFileArchive.COLUMN_TILE + " = NULL, " + COLUMN_HASH + " = ? WHERE rowid = ?";
+        final String updateRefs = "UPDATE " + TABLE_BLOBS + " SET " + COLUMN_REFS + " = " + COLUMN_REFS + " + 1 WHERE " + COLUMN_HASH + " = ?";
+        final long now = System.currentTimeMillis();
+        long lastRowId = 0;
+        int migrated = 0;
+        try {
+            while (true) {
+                synchronized (mWriteLock) {
+                    if (db == null || !db.isOpen()) {
+                        break;
+                    }
+                    final List<Long> rowIds = new ArrayList<>();
+                    final List<byte[]> tiles = new ArrayList<>();
+                    final Cursor cur = db.query(TABLE, columns, where, new String[]{String.valueOf(lastRowId)},
+                            null, null, "rowid", String.valueOf(MIGRATION_CHUNK_SIZE));
+                    try {
+                        while (cur.moveToNext()) {
+                            rowIds.add(cur.getLong(0));
+                            tiles.add(cur.getBlob(1));
+                        }
+                    } finally {
+                        cur.close();
+                    }
+                    if (rowIds.isEmpty()) {
+                        break;
                     }
-                };
-                t.setPriority(Thread.MIN_PRIORITY);
-                t.start();
+                    db.beginTransaction();
+                    try {
+                        for (int i = 0 ; i < rowIds.size() ; i ++) {
+                            final byte[] hash = getDigest().digest(tiles.get(i));
+                            db.execSQL(insertBlob, new Object[]{hash, tiles.get(i)});
+                            db.execSQL(updateTile, new Object[]{hash, rowIds.get(i)});
+                            db.execSQL(updateRefs, new Object[]{hash});
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    migrated += rowIds.size();
+                    lastRowId = rowIds.get(rowIds.size() - 1);
+                }
+                Thread.yield();
             }
+        } catch (Throwable ex) {
+            Log.e(IMapView.LOGTAG, "Unable to move the tiles of the cache to the deduplicated table", ex);
+        }
+        if (migrated > 0) {
+            Log.i(IMapView.LOGTAG, "Moved " + migrated + " tiles to the deduplicated table in " + (System.currentTimeMillis() - now) + "ms");
         }
     }
 
+    /**
+     * To be called with {@link #mWriteLock}
+     * @since 6.0.2
+     */
+    private MessageDigest getDigest() throws Exception {
+        if (mDigest == null) {
+            mDigest = MessageDigest.getInstance("SHA-1");
+        }
+        return mDigest;
+    }
+
+    /**
+     * Runs the cleanup in the background, because it takes a long time
+     * @since 6.0.2
+     */
+    private void startCleanupOperation() {
+        final Thread t = new Thread() {
+            @Override
+            public void run() {
+                runCleanupOperation();
+            }
+        };
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /**
+     * Adds a column to the tiles table of an existing database
+     * @since 6.0.2
+     */
+    private void addColumnIfMissing(final String pColumn, final String pType) {
+        final Cursor cur = db.rawQuery("PRAGMA table_info(" + TABLE + ")", null);
+        try {
+            final int nameIndex = cur.getColumnIndex("name");
+            while (cur.moveToNext()) {
+                if (pColumn.equals(cur.getString(nameIndex))) {
+                    return;
+                }
+            }
+        } finally {
+            cur.close();
+        }
+        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + pColumn + " " + pType);
+        Log.i(IMapView.LOGTAG, "Added column " + pColumn + " to the tile cache");
+    }
+
     /**
      * this could be a long running operation, don't run on the UI thread unless necessary.
      * This function prunes the database for old or expired tiles.
@@ -111,42 +362,41 @@ public class SqlTileWriter implements IFilesystemCache {
             return;
         }
 
+        if (!mCleanupRunning.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            if (db_file.length() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
-                //run the reaper (remove all old expired tiles)
-                //keep if now is < expiration date
-                //delete if now is > expiration date
+            long usedBytes = getUsedBytes();
+            if (usedBytes > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
+                // least recently used tiles first, in small chunks so that the writes are not blocked for long.
+                // the file doesn't shrink, but the freed pages are reused by the next tiles
                 long now = System.currentTimeMillis();
-                //this part will nuke all expired tiles, not super useful if you're offline
-                //int rows = db.delete(TABLE, "expires < ?", new String[]{System.currentTimeMillis() + ""});
-                //Log.d(IMapView.LOGTAG, "Local storage cache purged " + rows + " expired tiles in " + (System.currentTimeMillis() - now) + "ms, cache size is " + db_file.length() + "bytes");
-
-                //attempt to trim the database
-                //note, i considered adding a looping mechanism here but sqlite can behave differently
-                //i.e. there's no guarantee that the database file size shrinks immediately.
-                Log.i(IMapView.LOGTAG, "Local cache is now " + db_file.length() + " max size is " + Configuration.getInstance().getTileFileSystemCacheMaxBytes());
-                long diff = db_file.length() - Configuration.getInstance().getTileFileSystemCacheTrimBytes();
-                if (tileSize == 0l) {
-                    long count = getRowCount(null);
-                    tileSize = count > 0l ? db_file.length() / count : 4000;
-                    if (Configuration.getInstance().isDebugMode()) {
-                        Log.d(IMapView.LOGTAG, "Number of cached tiles is " + count + ", mean size is " + tileSize);
+                Log.i(IMapView.LOGTAG, "Local cache is now " + usedBytes + " max size is " + Configuration.getInstance().getTileFileSystemCacheMaxBytes());
+                final String where = "rowid in (SELECT rowid FROM " + TABLE + " ORDER BY " + COLUMN_LAST_ACCESS + " ASC LIMIT " + EVICTION_CHUNK_SIZE + ")";
+                int deleted = 0;
+                while (usedBytes > Configuration.getInstance().getTileFileSystemCacheTrimBytes()) {
+                    final int chunk;
+                    synchronized (mWriteLock) {
+                        if (db == null || !db.isOpen()) {
+                            break;
+                        }
+                        chunk = db.delete(TABLE, where, null);
                     }
-                }
-                long tilesToKill = diff / tileSize;
-                Log.d(IMapView.LOGTAG, "Local cache purging " + tilesToKill + " tiles.");
-                if (tilesToKill > 0)
-                    try {
-                        db.execSQL("DELETE FROM " + TABLE + " WHERE " + COLUMN_KEY + " in (SELECT " + COLUMN_KEY + " FROM " + TABLE + " ORDER BY " + COLUMN_EXPIRES + " ASC LIMIT " + tilesToKill + ")");
-                    } catch (Throwable t) {
-                        Log.e(IMapView.LOGTAG, "error purging tiles from the tile cache", t);
+                    if (chunk == 0) {
+                        break;
                     }
-                Log.d(IMapView.LOGTAG, "purge completed in " + (System.currentTimeMillis() - now) + "ms, cache size is " + db_file.length() + " bytes");
+                    deleted += chunk;
+                    usedBytes = getUsedBytes();
+                    Thread.yield();
+                }
+                Log.d(IMapView.LOGTAG, "purge of " + deleted + " tiles completed in " + (System.currentTimeMillis() - now) + "ms, cache size is " + usedBytes + " bytes");
             }
         } catch (Exception ex) {
             if (Configuration.getInstance().isDebugMode()) {
                 Log.d(IMapView.LOGTAG, "SqliteTileWriter init thread crash, db is probably not available", ex);
             }
+        } finally {
+            mCleanupRunning.set(false);
         }
 
         if (Configuration.getInstance().isDebugMode()) {
@@ -154,8 +404,37 @@ public class SqlTileWriter implements IFilesystemCache {
         }
     }
 
+    /**
+     * @return the size of the pages of the database that are in use, i.e. the file size minus the free pages
+     * @since 6.0.2
+     */
+    private long getUsedBytes() {
+        return (getPragma("page_count") - getPragma("freelist_count")) * db.getPageSize();
+    }
+
+    /**
+     * @since 6.0.2
+     */
+    private long getPragma(final String pPragma) {
+        final Cursor cur = db.rawQuery("PRAGMA " + pPragma, null);
+        try {
+            return cur.moveToFirst() ? cur.getLong(0) : 0;
+        } finally {
+            cur.close();
+        }
+    }
+
     @Override
     public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final InputStream pStream, final Long pExpirationTime) {
+        return saveFile(pTileSourceInfo, pMapTileIndex, pStream, pExpirationTime, null);
+    }
+
+    /**
+     * @since 6.0.2
+     */
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final InputStream pStream, final Long pExpirationTime,
+                            final MapTileValidators pValidators) {
         if (db == null || !db.isOpen()) {
             Log.d(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex) + ", database not available.");
             Counters.fileCacheSaveErrors++;
@@ -163,48 +442,306 @@ public class SqlTileWriter implements IFilesystemCache {
         }
         ByteArrayOutputStream bos = null;
         try {
-            ContentValues cv = new ContentValues();
-            final long index = getIndex(pMapTileIndex);
-            cv.put(DatabaseFileArchive.COLUMN_PROVIDER, pTileSourceInfo.name());
-
             byte[] buffer = new byte[512];
             int l;
             bos = new ByteArrayOutputStream();
             while( (l = pStream.read(buffer)) != -1 )
                 bos.write(buffer, 0, l);
             byte[] bits = bos.toByteArray(); // if a variable is required at all
+            return saveFile(pTileSourceInfo, pMapTileIndex, bits, bits.length, pExpirationTime, pValidators);
+        } catch (IOException ex) {
+            Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+            Counters.fileCacheSaveErrors++;
+        } finally {
+            try {
+                bos.close();
+            } catch (IOException e) {
+
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The data is copied, as the buffer may be reused by the caller while the tile is queued
+     * @since 6.0.2
+     */
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final byte[] pBytes, final int pLength,
+                            final Long pExpirationTime, final MapTileValidators pValidators) {
+        if (db == null || !db.isOpen()) {
+            Log.d(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex) + ", database not available.");
+            Counters.fileCacheSaveErrors++;
+            return false;
+        }
+        final PendingTile tile = new PendingTile(pTileSourceInfo.name(), getIndex(pMapTileIndex),
+                Arrays.copyOf(pBytes, pLength), pExpirationTime, pValidators);
+        final int batchSize = Configuration.getInstance().getTileFileSystemCacheWriteBatchSize();
+        if (batchSize <= 1) {
+            synchronized (mWriteLock) {
+                return write(Collections.singletonList(tile), null);
+            }
+        }
+        queue(tile, batchSize);
+        return true;
+    }
+
+    /**
+     * Adds a tile to the write-behind queue, and starts the writer thread if needed
+     * @since 6.0.2
+     */
+    private void queue(final PendingTile pTile, final int pBatchSize) {
+        synchronized (mPendingTiles) {
+            // the writer thread is late: we'd rather slow down the downloads than run out of memory
+            while (mPendingCount >= MAX_PENDING_BATCHES * pBatchSize && mWriteBehindThread != null) {
+                try {
+                    mPendingTiles.wait(Configuration.getInstance().getTileFileSystemCacheWriteBatchDelay());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            LongHashMap<PendingTile> tiles = mPendingTiles.get(pTile.mTileSource);
+            if (tiles == null) {
+                tiles = new LongHashMap<>();
+                mPendingTiles.put(pTile.mTileSource, tiles);
+            }
+            if (tiles.put(pTile.mIndex, pTile) == null) {
+                if (mPendingCount++ + mPendingAccessCount == 0) {
+                    mFirstPendingTime = System.currentTimeMillis();
+                }
+            }
+            startWriteBehindThread();
+            if (mPendingCount + mPendingAccessCount == 1 || mPendingCount >= pBatchSize) {
+                mPendingTiles.notifyAll();
+            }
+        }
+    }
 
-            cv.put(DatabaseFileArchive.COLUMN_KEY, index);
-            cv.put(DatabaseFileArchive.COLUMN_TILE, bits);
-            if (pExpirationTime != null)
-                cv.put(COLUMN_EXPIRES, pExpirationTime);
-            db.delete(TABLE, primaryKey, getPrimaryKeyParameters(index, pTileSourceInfo));
-            db.insert(TABLE, null, cv);
-            if (Configuration.getInstance().isDebugMode())
-                Log.d(IMapView.LOGTAG, "tile inserted " + pTileSourceInfo.name() + MapTileIndex.toString(pMapTileIndex));
-            if (System.currentTimeMillis() > lastSizeCheck + 300000){
-                lastSizeCheck = System.currentTimeMillis();
-                if (db_file!=null && db_file.length() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
-                    runCleanupOperation();
+    /**
+     * Queues the last access of a tile that was just read, if the db value is too old
+     * @param pLastAccess last access currently in the db
+     * @since 6.0.2
+     */
+    private void queueLastAccess(final String pTileSource, final long pIndex, final long pLastAccess, final long pNow) {
+        if (pNow - pLastAccess < LAST_ACCESS_PRECISION) {
+            return;
+        }
+        synchronized (mPendingTiles) {
+            LongHashMap<Long> accesses = mPendingAccesses.get(pTileSource);
+            if (accesses == null) {
+                accesses = new LongHashMap<>();
+                mPendingAccesses.put(pTileSource, accesses);
+            }
+            if (accesses.put(pIndex, pNow) == null) {
+                if (mPendingCount + mPendingAccessCount++ == 0) {
+                    mFirstPendingTime = pNow;
+                    mPendingTiles.notifyAll();
+                }
+            }
+            startWriteBehindThread();
+        }
+    }
+
+    /**
+     * To be called with {@link #mPendingTiles}
+     * @since 6.0.2
+     */
+    private void startWriteBehindThread() {
+        if (mWriteBehindThread == null && db != null) {
+            mWriteBehindThread = new WriteBehindThread();
+            mWriteBehindThread.start();
+        }
+    }
+
+    /**
+     * @return the tile that is queued but not written yet, or null
+     * @since 6.0.2
+     */
+    private PendingTile getPendingTile(final String pTileSource, final long pIndex) {
+        synchronized (mPendingTiles) {
+            final LongHashMap<PendingTile> tiles = mPendingTiles.get(pTileSource);
+            return tiles == null ? null : tiles.get(pIndex);
+        }
+    }
+
+    /**
+     * Writes all the queued tiles in a single transaction
+     * @since 6.0.2
+     */
+    private void writePendingTiles() {
+        synchronized (mWriteLock) {
+            final List<PendingTile> written = new ArrayList<>();
+            final HashMap<String, LongHashMap<Long>> accesses = new HashMap<>();
+            synchronized (mPendingTiles) {
+                for (final LongHashMap<PendingTile> tiles : mPendingTiles.values()) {
+                    for (int i = 0 ; i < tiles.getSlotCount() ; i ++) {
+                        final PendingTile tile = tiles.getValueAt(i);
+                        if (tile != null) {
+                            written.add(tile);
+                        }
+                    }
+                }
+                accesses.putAll(mPendingAccesses);
+                mPendingAccesses.clear();
+                mPendingAccessCount = 0;
+            }
+            if (written.isEmpty() && accesses.isEmpty()) {
+                return;
+            }
+            write(written, accesses);
+            synchronized (mPendingTiles) {
+                for (final PendingTile tile : written) {
+                    final LongHashMap<PendingTile> tiles = mPendingTiles.get(tile.mTileSource);
+                    // unless saved again in the meantime
+                    if (tiles != null && tiles.get(tile.mIndex) == tile) {
+                        tiles.remove(tile.mIndex);
+                        mPendingCount--;
+                    }
                 }
+                mFirstPendingTime = System.currentTimeMillis();
+                mPendingTiles.notifyAll();
             }
+        }
+    }
+
+    /**
+     * Writes tiles and last accesses in a single transaction, to be called with {@link #mWriteLock}.
+     * If that transaction fails, the tiles are written again one by one, so that a single bad tile
+     * doesn't make the whole batch lost
+     * @param pAccesses last accesses per tile source name and db key, or null
+     * @return true if all the tiles were written
+     * @since 6.0.2
+     */
+    private boolean write(final List<PendingTile> pTiles, final HashMap<String, LongHashMap<Long>> pAccesses) {
+        if (db == null || !db.isOpen()) {
+            Log.d(IMapView.LOGTAG, "Unable to store " + pTiles.size() + " cached tiles, database not available.");
+            Counters.fileCacheSaveErrors += pTiles.size();
+            return false;
+        }
+        try {
+            writeTransaction(pTiles, pAccesses);
+            return true;
         } catch (SQLiteFullException ex) {
             //the drive is full! trigger the clean up operation
             //may want to consider reducing the trim size automagically
-            runCleanupOperation();
+            startCleanupOperation();
+            return false;
         } catch (Throwable ex) {
-            //note, although we check for db null state at the beginning of this method, it's possible for the
-            //db to be closed during the execution of this method
-            Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex) + " db is " + (db == null ? "null" : "not null"), ex);
-            Counters.fileCacheSaveErrors++;
-        } finally {
+            if (pTiles.size() <= 1 && pAccesses == null) {
+                //note, although we check for db null state at the beginning of this method, it's possible for the
+                //db to be closed during the execution of this method
+                Log.e(IMapView.LOGTAG, "Unable to store cached tile, db is " + (db == null ? "null" : "not null"), ex);
+                Counters.fileCacheSaveErrors += pTiles.size();
+                return false;
+            }
+            Log.w(IMapView.LOGTAG, "Unable to store " + pTiles.size() + " cached tiles at once, retrying one by one", ex);
+        }
+        int failed = 0;
+        for (final PendingTile tile : pTiles) {
             try {
-                bos.close();
-            } catch (IOException e) {
+                writeTransaction(Collections.singletonList(tile), null);
+            } catch (SQLiteFullException ex) {
+                startCleanupOperation();
+                failed ++;
+            } catch (Throwable ex) {
+                Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + tile.mTileSource + ", db is " + (db == null ? "null" : "not null"), ex);
+                Counters.fileCacheSaveErrors++;
+                failed ++;
+            }
+        }
+        if (pAccesses != null) {
+            try {
+                writeTransaction(Collections.<PendingTile>emptyList(), pAccesses);
+            } catch (Throwable ex) {
+                // only a hint for the eviction order
+                Log.w(IMapView.LOGTAG, "Unable to store the last accesses of cached tiles", ex);
+            }
+        }
+        return failed == 0;
+    }
 
+    /**
+     * @since 6.0.2
+     * @see #write(List, HashMap)
+     */
+    private void writeTransaction(final List<PendingTile> pTiles, final HashMap<String, LongHashMap<Long>> pAccesses) throws Exception {
+        if (mInsertStatement == null) {
+            mInsertStatement = db.compileStatement(insertTile);
+            mDeleteStatement = db.compileStatement(deleteTile);
+            mBlobStatement = db.compileStatement(insertBlob);
+        }
+        final long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (final PendingTile tile : pTiles) {
+                mDeleteStatement.bindLong(1, tile.mIndex);
+                mDeleteStatement.bindString(2, tile.mTileSource);
+                mDeleteStatement.execute();
+                mInsertStatement.clearBindings();
+                mInsertStatement.bindLong(1, tile.mIndex);
+                mInsertStatement.bindString(2, tile.mTileSource);
+                if (mDeduplication) {
+                    final byte[] hash = getDigest().digest(tile.mBytes);
+                    mBlobStatement.bindBlob(1, hash);
+                    mBlobStatement.bindBlob(2, tile.mBytes);
+                    mBlobStatement.executeInsert();
+                    mInsertStatement.bindBlob(8, hash);
+                } else {
+                    mInsertStatement.bindBlob(3, tile.mBytes);
+                }
+                if (tile.mExpirationTime != null) {
+                    mInsertStatement.bindLong(4, tile.mExpirationTime);
+                }
+                if (tile.mValidators != null) {
+                    if (tile.mValidators.getETag() != null) {
+                        mInsertStatement.bindString(5, tile.mValidators.getETag());
+                    }
+                    if (tile.mValidators.getLastModified() != null) {
+                        mInsertStatement.bindString(6, tile.mValidators.getLastModified());
+                    }
+                }
+                mInsertStatement.bindLong(7, now);
+                mInsertStatement.executeInsert();
+            }
+            if (pAccesses != null) {
+                writeLastAccesses(pAccesses);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (Configuration.getInstance().isDebugMode())
+            Log.d(IMapView.LOGTAG, pTiles.size() + " tiles inserted");
+        if (System.currentTimeMillis() > lastSizeCheck + 300000){
+            lastSizeCheck = System.currentTimeMillis();
+            if (getUsedBytes() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
+                startCleanupOperation();
+            }
+        }
+    }
+
+    /**
+     * To be called within the transaction of {@link #writeTransaction(List, HashMap)}
+     * @since 6.0.2
+     */
+    private void writeLastAccesses(final HashMap<String, LongHashMap<Long>> pAccesses) {
+        if (mLastAccessStatement == null) {
+            mLastAccessStatement = db.compileStatement(updateLastAccess);
+        }
+        for (final String tileSource : pAccesses.keySet()) {
+            final LongHashMap<Long> accesses = pAccesses.get(tileSource);
+            for (int i = 0 ; i < accesses.getSlotCount() ; i ++) {
+                final Long lastAccess = accesses.getValueAt(i);
+                if (lastAccess == null) {
+                    continue;
+                }
+                mLastAccessStatement.bindLong(1, lastAccess);
+                mLastAccessStatement.bindLong(2, accesses.getKeyAt(i));
+                mLastAccessStatement.bindString(3, tileSource);
+                mLastAccessStatement.execute();
             }
         }
-        return false;
     }
 
     /**
@@ -221,6 +758,9 @@ public class SqlTileWriter implements IFilesystemCache {
         Cursor cur=null;
         try {
             final long index = getIndex(pMapTileIndex);
+            if (getPendingTile(pTileSource, index) != null) {
+                return true;
+            }
             cur = getTileCursor(getPrimaryKeyParameters(index, pTileSource), expireQueryColumn);
 
             returnValue =(cur.moveToNext());
@@ -251,16 +791,35 @@ public class SqlTileWriter implements IFilesystemCache {
 
     @Override
     public void onDetach() {
-        if (db != null && db.isOpen()) {
-            try {
-                db.close();
-                Log.i(IMapView.LOGTAG, "Database detached");
-            } catch (Exception ex) {
-                Log.e(IMapView.LOGTAG, "Database detach failed",ex);
+        synchronized (mPendingTiles) {
+            mWriteBehindThread = null;
+            mPendingTiles.notifyAll();
+        }
+        writePendingTiles();
+        synchronized (mWriteLock) {
+            if (mInsertStatement != null) {
+                mInsertStatement.close();
+                mInsertStatement = null;
+                mDeleteStatement.close();
+                mDeleteStatement = null;
+                mBlobStatement.close();
+                mBlobStatement = null;
+            }
+            if (mLastAccessStatement != null) {
+                mLastAccessStatement.close();
+                mLastAccessStatement = null;
             }
+            if (db != null && db.isOpen()) {
+                try {
+                    db.close();
+                    Log.i(IMapView.LOGTAG, "Database detached");
+                } catch (Exception ex) {
+                    Log.e(IMapView.LOGTAG, "Database detach failed",ex);
+                }
+            }
+            db = null;
+            db_file = null;
         }
-        db = null;
-        db_file = null;
     }
 
     /**
@@ -272,7 +831,10 @@ public class SqlTileWriter implements IFilesystemCache {
     public boolean purgeCache() {
         if (db != null && db.isOpen()) {
             try {
-                db.delete(TABLE, null, null);
+                synchronized (mWriteLock) {
+                    clearPendingTiles(null);
+                    db.delete(TABLE, null, null);
+                }
                 return true;
             } catch (final Throwable e) {
                 Log.w(IMapView.LOGTAG, "Error purging the db", e);
@@ -290,7 +852,10 @@ public class SqlTileWriter implements IFilesystemCache {
     public boolean purgeCache(String mTileSourceName) {
         if (db != null && db.isOpen()) {
             try {
-                db.delete(TABLE, COLUMN_PROVIDER + " = ?", new String[]{mTileSourceName});
+                synchronized (mWriteLock) {
+                    clearPendingTiles(mTileSourceName);
+                    db.delete(TABLE, COLUMN_PROVIDER + " = ?", new String[]{mTileSourceName});
+                }
                 return true;
             } catch (final Throwable e) {
                 Log.w(IMapView.LOGTAG, "Error purging the db", e);
@@ -299,6 +864,26 @@ public class SqlTileWriter implements IFilesystemCache {
         return false;
     }
 
+    /**
+     * Forgets the queued tiles
+     * @param pTileSourceName only the tiles of that tile source, or all tiles if null
+     * @since 6.0.2
+     */
+    private void clearPendingTiles(final String pTileSourceName) {
+        synchronized (mPendingTiles) {
+            if (pTileSourceName == null) {
+                mPendingTiles.clear();
+                mPendingCount = 0;
+            } else {
+                final LongHashMap<PendingTile> tiles = mPendingTiles.remove(pTileSourceName);
+                if (tiles != null) {
+                    mPendingCount -= tiles.size();
+                }
+            }
+            mPendingTiles.notifyAll();
+        }
+    }
+
     /**
      * a helper method to import file system stored map tiles into the sql tile cache
      * on successful import, the tiles are removed from the file system.
@@ -445,7 +1030,15 @@ public class SqlTileWriter implements IFilesystemCache {
         }
         try {
             final long index = getIndex(pMapTileIndex);
-            db.delete(DatabaseFileArchive.TABLE, primaryKey, getPrimaryKeyParameters(index, pTileSourceInfo));
+            synchronized (mWriteLock) {
+                synchronized (mPendingTiles) {
+                    final LongHashMap<PendingTile> tiles = mPendingTiles.get(pTileSourceInfo.name());
+                    if (tiles != null && tiles.remove(index) != null) {
+                        mPendingCount--;
+                    }
+                }
+                db.delete(DatabaseFileArchive.TABLE, primaryKey, getPrimaryKeyParameters(index, pTileSourceInfo));
+            }
             return true;
         } catch (Throwable ex) {
             //note, although we check for db null state at the beginning of this method, it's possible for the
@@ -528,6 +1121,10 @@ public class SqlTileWriter implements IFilesystemCache {
 
     @Override
     public Long getExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex) {
+        final PendingTile pending = getPendingTile(pTileSource.name(), getIndex(pMapTileIndex));
+        if (pending != null) {
+            return pending.mExpirationTime == null ? 0 : pending.mExpirationTime;
+        }
         Cursor cursor = null;
         try {
             cursor = getTileCursor(getPrimaryKeyParameters(getIndex(pMapTileIndex), pTileSource), expireQueryColumn);
@@ -575,6 +1172,37 @@ public class SqlTileWriter implements IFilesystemCache {
         return new String[]{String.valueOf(pIndex), pTileSourceInfo};
     }
 
+    /**
+     * Maximum number of keys in a single "key in (...)" batch query
+     * @since 6.0.2
+     */
+    public static final int BATCH_MAX_KEYS = 100;
+
+    /**
+     * Builds a "key in (...)" clause for a part of a list of tiles
+     * @since 6.0.2
+     * @param pMapTileList the tiles
+     * @param pFrom first position in the list (included)
+     * @param pTo last position in the list (excluded)
+     * @param pKeys filled with the db keys of the tiles, mapped to the map tile indices
+     * @return the clause, with the keys inline as they are computed numbers
+     */
+    public static String getKeyInClause(final MapTileList pMapTileList, final int pFrom, final int pTo,
+                                        final LongHashMap<Long> pKeys) {
+        pKeys.clear();
+        final StringBuilder result = new StringBuilder(DatabaseFileArchive.COLUMN_KEY).append(" in (");
+        for (int i = pFrom ; i < pTo ; i ++) {
+            final long mapTileIndex = pMapTileList.get(i);
+            final long index = getIndex(mapTileIndex);
+            if (i > pFrom) {
+                result.append(',');
+            }
+            result.append(index);
+            pKeys.put(index, mapTileIndex);
+        }
+        return result.append(')').toString();
+    }
+
     /**
      *
      * @since 5.6.5
@@ -587,10 +1215,33 @@ public class SqlTileWriter implements IFilesystemCache {
     }
 
     /**
-     * For optimization reasons
-     * @since 5.6.5
+     * The tile data, either in the tiles table or in the deduplicated table, cf. {@link #tileTables}
+     * @since 6.0.2
+     */
+    static final String tileColumn = "coalesce(" + TABLE + "." + DatabaseFileArchive.COLUMN_TILE + ", "
+            + TABLE_BLOBS + "." + DatabaseFileArchive.COLUMN_TILE + ")";
+
+    /**
+     * Both tables, so that {@link #tileColumn} can be read; also used by {@link DatabaseFileArchive}
+     * @since 6.0.2
+     */
+    static final String tileTables = TABLE + " LEFT JOIN " + TABLE_BLOBS + " ON "
+            + TABLE + "." + COLUMN_HASH + " = " + TABLE_BLOBS + "." + COLUMN_HASH;
+
+    /**
+     * @since 6.0.2
+     */
+    private static final String[] tileQueryColumns = {tileColumn, SqlTileWriter.COLUMN_EXPIRES, COLUMN_LAST_ACCESS};
+
+    /**
+     * @since 6.0.2
      */
-    private static final String[] queryColumns = {DatabaseFileArchive.COLUMN_TILE, SqlTileWriter.COLUMN_EXPIRES};
+    private static final String[] batchQueryColumns = {DatabaseFileArchive.COLUMN_KEY, tileColumn, SqlTileWriter.COLUMN_EXPIRES, COLUMN_LAST_ACCESS};
+
+    /**
+     * @since 6.0.2
+     */
+    private static final String[] validatorsQueryColumns = {COLUMN_ETAG, COLUMN_LAST_MODIFIED};
 
     /**
      * For optimization reasons
@@ -598,42 +1249,218 @@ public class SqlTileWriter implements IFilesystemCache {
      */
     private static final String[] expireQueryColumn = {SqlTileWriter.COLUMN_EXPIRES};
 
+    /**
+     * @since 6.0.2
+     */
     @Override
-    public Drawable loadTile(final ITileSource pTileSource, final long pMapTileIndex) throws Exception{
-        InputStream inputStream = null;
+    public MapTileValidators getValidators(final ITileSource pTileSource, final long pMapTileIndex) {
+        if (db == null || !db.isOpen()) {
+            return null;
+        }
+        final PendingTile pending = getPendingTile(pTileSource.name(), getIndex(pMapTileIndex));
+        if (pending != null) {
+            return pending.mValidators == null || pending.mValidators.isEmpty() ? null : pending.mValidators;
+        }
+        Cursor cursor = null;
         try {
-            final long index = getIndex(pMapTileIndex);
-            final Cursor cur = getTileCursor(getPrimaryKeyParameters(index, pTileSource), queryColumns);
-            byte[] bits=null;
-            long expirationTimestamp=0;
+            cursor = getTileCursor(getPrimaryKeyParameters(getIndex(pMapTileIndex), pTileSource), validatorsQueryColumns);
+            if (cursor.moveToNext()) {
+                final MapTileValidators validators = new MapTileValidators(cursor.getString(0), cursor.getString(1));
+                return validators.isEmpty() ? null : validators;
+            }
+        } catch (Throwable ex) {
+            Log.e(IMapView.LOGTAG, "error getting validators for tile " + MapTileIndex.toString(pMapTileIndex), ex);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Only updates the expires column: the tile itself is not written again
+     * @since 6.0.2
+     */
+    @Override
+    public boolean refreshExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex, final Long pExpirationTime) {
+        if (db == null || !db.isOpen()) {
+            return false;
+        }
+        synchronized (mPendingTiles) {
+            final LongHashMap<PendingTile> tiles = mPendingTiles.get(pTileSource.name());
+            final PendingTile pending = tiles == null ? null : tiles.get(getIndex(pMapTileIndex));
+            if (pending != null) {
+                // the tile is not written yet: it will be written with the new expiration
+                tiles.put(pending.mIndex, new PendingTile(pending.mTileSource, pending.mIndex, pending.mBytes,
+                        pExpirationTime, pending.mValidators));
+                return true;
+            }
+        }
+        try {
+            final ContentValues cv = new ContentValues();
+            cv.put(COLUMN_EXPIRES, pExpirationTime);
+            return db.update(TABLE, cv, primaryKey, getPrimaryKeyParameters(getIndex(pMapTileIndex), pTileSource)) > 0;
+        } catch (Throwable ex) {
+            Log.e(IMapView.LOGTAG, "Unable to refresh the expiration of tile " + pTileSource.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+            return false;
+        }
+    }
+
+    @Override
+    public Drawable loadTile(final ITileSource pTileSource, final long pMapTileIndex) throws Exception{
+        final MapTileBytes bytes = loadTileBytes(pTileSource, pMapTileIndex);
+        if (bytes == null) {
+            return null;
+        }
+        return bytes.decode();
+    }
+
+    /**
+     * Reads the tile data without decoding it, cf. {@link MapTileDecoder}
+     * @return the tile data, flagged as expired if needed, or null if the tile is not in the db
+     * @since 6.0.2
+     */
+    public MapTileBytes loadTileBytes(final ITileSource pTileSource, final long pMapTileIndex) {
+        final long index = getIndex(pMapTileIndex);
+        byte[] bits=null;
+        long expirationTimestamp=0;
 
-            if (cur.moveToFirst()){
-                bits = cur.getBlob(cur.getColumnIndex(DatabaseFileArchive.COLUMN_TILE));
-                expirationTimestamp = cur.getLong(cur.getColumnIndex(SqlTileWriter.COLUMN_EXPIRES));
+        final PendingTile pending = getPendingTile(pTileSource.name(), index);
+        if (pending != null) {
+            bits = pending.mBytes;
+            expirationTimestamp = pending.mExpirationTime == null ? 0 : pending.mExpirationTime;
+        } else {
+            final Cursor cur = db.query(tileTables, tileQueryColumns, primaryKey, getPrimaryKeyParameters(index, pTileSource), null, null, null);
+            if (cur.moveToFirst()) {
+                bits = cur.getBlob(0);
+                expirationTimestamp = cur.getLong(1);
+                queueLastAccess(pTileSource.name(), index, cur.getLong(2), System.currentTimeMillis());
             }
             cur.close();
-            if (bits==null) {
-                if (Configuration.getInstance().isDebugMode()) {
-                    Log.d(IMapView.LOGTAG,"SqlCache - Tile doesn't exist: " +pTileSource.name() + MapTileIndex.toString(pMapTileIndex));
-                }
-                return null;
+        }
+        if (bits==null) {
+            if (Configuration.getInstance().isDebugMode()) {
+                Log.d(IMapView.LOGTAG,"SqlCache - Tile doesn't exist: " +pTileSource.name() + MapTileIndex.toString(pMapTileIndex));
             }
-            inputStream = new ByteArrayInputStream(bits);
-            final Drawable drawable = pTileSource.getDrawable(inputStream);
-            // Check to see if file has expired
-            final long now = System.currentTimeMillis();
-            final boolean fileExpired = expirationTimestamp < now;
+            return null;
+        }
+        // Check to see if file has expired
+        final long now = System.currentTimeMillis();
+        final boolean fileExpired = expirationTimestamp < now;
+        if (fileExpired && Configuration.getInstance().isDebugMode()) {
+            Log.d(IMapView.LOGTAG,"Tile expired: " + pTileSource.name() + MapTileIndex.toString(pMapTileIndex));
+        }
+        return new MapTileBytes(pTileSource, bits, fileExpired);
+    }
 
-            if (fileExpired && drawable != null) {
-                if (Configuration.getInstance().isDebugMode()) {
-                    Log.d(IMapView.LOGTAG,"Tile expired: " + pTileSource.name() + MapTileIndex.toString(pMapTileIndex));
+    /**
+     * Reads several tiles with one "key in (...)" query per {@link #BATCH_MAX_KEYS} tiles
+     * @since 6.0.2
+     */
+    @Override
+    public LongHashMap<MapTileBytes> loadTiles(final ITileSource pTileSource, final MapTileList pMapTileList) {
+        final LongHashMap<MapTileBytes> result = new LongHashMap<>(pMapTileList.getSize());
+        final LongHashMap<Long> keys = new LongHashMap<>(Math.min(pMapTileList.getSize(), BATCH_MAX_KEYS));
+        final String[] parameters = {pTileSource.name()};
+        final long now = System.currentTimeMillis();
+        for (int from = 0 ; from < pMapTileList.getSize() ; from += BATCH_MAX_KEYS) {
+            final int to = Math.min(from + BATCH_MAX_KEYS, pMapTileList.getSize());
+            final String where = DatabaseFileArchive.COLUMN_PROVIDER + "=? and "
+                    + getKeyInClause(pMapTileList, from, to, keys);
+            final Cursor cur = db.query(tileTables, batchQueryColumns, where, parameters, null, null, null);
+            try {
+                while (cur.moveToNext()) {
+                    final Long mapTileIndex = keys.get(cur.getLong(0));
+                    final byte[] bits = cur.getBlob(1);
+                    if (mapTileIndex == null || bits == null) {
+                        continue;
+                    }
+                    final boolean fileExpired = cur.getLong(2) < now;
+                    result.put(mapTileIndex, new MapTileBytes(pTileSource, bits, fileExpired));
+                    queueLastAccess(pTileSource.name(), cur.getLong(0), cur.getLong(3), now);
                 }
-                ExpirableBitmapDrawable.setState(drawable, ExpirableBitmapDrawable.EXPIRED);
+            } finally {
+                cur.close();
             }
-            return drawable;
-        } finally {
-            if (inputStream != null) {
-                StreamUtils.closeStream(inputStream);
+        }
+        synchronized (mPendingTiles) {
+            final LongHashMap<PendingTile> tiles = mPendingTiles.get(pTileSource.name());
+            if (tiles != null && !tiles.isEmpty()) {
+                for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+                    final long mapTileIndex = pMapTileList.get(i);
+                    final PendingTile pending = tiles.get(getIndex(mapTileIndex));
+                    if (pending != null) {
+                        final boolean fileExpired = pending.mExpirationTime == null || pending.mExpirationTime < now;
+                        result.put(mapTileIndex, new MapTileBytes(pTileSource, pending.mBytes, fileExpired));
+                    }
+                }
+            }
+        }
+        if (Configuration.getInstance().isDebugMode()) {
+            Log.d(IMapView.LOGTAG,"SqlCache - batch of " + pMapTileList.getSize() + " tiles, found: " + result.size());
+        }
+        return result;
+    }
+
+    /**
+     * A tile waiting to be written
+     * @since 6.0.2
+     */
+    private static class PendingTile {
+        private final String mTileSource;
+        private final long mIndex;
+        private final byte[] mBytes;
+        private final Long mExpirationTime;
+        private final MapTileValidators mValidators;
+
+        private PendingTile(final String pTileSource, final long pIndex, final byte[] pBytes,
+                            final Long pExpirationTime, final MapTileValidators pValidators) {
+            mTileSource = pTileSource;
+            mIndex = pIndex;
+            mBytes = pBytes;
+            mExpirationTime = pExpirationTime;
+            mValidators = pValidators;
+        }
+    }
+
+    /**
+     * Writes the queued tiles every {@link Configuration#getInstance()#getTileFileSystemCacheWriteBatchSize()} tiles
+     * or {@link Configuration#getInstance()#getTileFileSystemCacheWriteBatchDelay()} ms, until {@link #onDetach()}
+     * @since 6.0.2
+     */
+    private class WriteBehindThread extends Thread {
+
+        private WriteBehindThread() {
+            super("SqlTileWriter");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (mPendingTiles) {
+                    try {
+                        while (mWriteBehindThread == this) {
+                            if (mPendingCount + mPendingAccessCount == 0) {
+                                mPendingTiles.wait();
+                                continue;
+                            }
+                            final long delay = mFirstPendingTime + Configuration.getInstance().getTileFileSystemCacheWriteBatchDelay()
+                                    - System.currentTimeMillis();
+                            if (delay <= 0 || mPendingCount >= Configuration.getInstance().getTileFileSystemCacheWriteBatchSize()) {
+                                break;
+                            }
+                            mPendingTiles.wait(delay);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (mWriteBehindThread != this) {
+                        return;
+                    }
+                }
+                writePendingTiles();
             }
         }
     }
@@ -10,7 +10,9 @@ import org.osmdroid.api.IMapView;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
@@ -19,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -32,7 +35,7 @@ import java.util.List;
  * @author Alex O'Ree
  * @since 5.2 7/8/16.
  */
-public class SqliteArchiveTileWriter implements IFilesystemCache {
+public class SqliteArchiveTileWriter implements IBatchFilesystemCache, IRevalidatingFilesystemCache {
     final File db_file;
     final SQLiteDatabase db;
     final int questimate = 8000;
@@ -60,22 +63,13 @@ public class SqliteArchiveTileWriter implements IFilesystemCache {
     public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final InputStream pStream, final Long pExpirationTime) {
         ByteArrayOutputStream bos = null;
         try {
-            ContentValues cv = new ContentValues();
-            final long index = SqlTileWriter.getIndex(pMapTileIndex);
-            cv.put(DatabaseFileArchive.COLUMN_PROVIDER, pTileSourceInfo.name());
-
             byte[] buffer = new byte[512];
             int l;
             bos = new ByteArrayOutputStream();
             while( (l = pStream.read(buffer)) != -1 )
                 bos.write(buffer, 0, l);
             byte[] bits = bos.toByteArray(); // if a variable is required at all
-
-            cv.put(DatabaseFileArchive.COLUMN_KEY, index);
-            cv.put(DatabaseFileArchive.COLUMN_TILE, bits);
-            db.insert(DatabaseFileArchive.TABLE, null, cv);
-            if (Configuration.getInstance().isDebugMode())
-                Log.d(IMapView.LOGTAG, "tile inserted " + pTileSourceInfo.name() + MapTileIndex.toString(pMapTileIndex));
+            return saveFile(pTileSourceInfo, pMapTileIndex, bits, bits.length, pExpirationTime, null);
         } catch (Throwable ex) {
             Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
         }  finally {
@@ -88,6 +82,29 @@ public class SqliteArchiveTileWriter implements IFilesystemCache {
         return false;
     }
 
+    /**
+     * @since 6.0.2
+     */
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final byte[] pBytes, final int pLength,
+                            final Long pExpirationTime, final MapTileValidators pValidators) {
+        try {
+            ContentValues cv = new ContentValues();
+            final long index = SqlTileWriter.getIndex(pMapTileIndex);
+            cv.put(DatabaseFileArchive.COLUMN_PROVIDER, pTileSourceInfo.name());
+            // the database only takes whole arrays
+            final byte[] bits = pLength == pBytes.length ? pBytes : Arrays.copyOf(pBytes, pLength);
+            cv.put(DatabaseFileArchive.COLUMN_KEY, index);
+            cv.put(DatabaseFileArchive.COLUMN_TILE, bits);
+            db.insert(DatabaseFileArchive.TABLE, null, cv);
+            if (Configuration.getInstance().isDebugMode())
+                Log.d(IMapView.LOGTAG, "tile inserted " + pTileSourceInfo.name() + MapTileIndex.toString(pMapTileIndex));
+        } catch (Throwable ex) {
+            Log.e(IMapView.LOGTAG, "Unable to store cached tile from " + pTileSourceInfo.name() + " " + MapTileIndex.toString(pMapTileIndex), ex);
+        }
+        return false;
+    }
+
 
     @Override
     public boolean exists(ITileSource pTileSource, final long pMapTileIndex) {
@@ -121,12 +138,43 @@ public class SqliteArchiveTileWriter implements IFilesystemCache {
         return null;
     }
 
+    /**
+     * No expiration, hence no validators
+     * @since 6.0.2
+     */
+    @Override
+    public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex, final InputStream pStream, final Long pExpirationTime,
+                            final MapTileValidators pValidators) {
+        return saveFile(pTileSourceInfo, pMapTileIndex, pStream, pExpirationTime);
+    }
+
+    /**
+     * @since 6.0.2
+     */
+    @Override
+    public MapTileValidators getValidators(final ITileSource pTileSource, final long pMapTileIndex) {
+        return null;
+    }
+
+    /**
+     * @since 6.0.2
+     */
+    @Override
+    public boolean refreshExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex, final Long pExpirationTime) {
+        return false;
+    }
+
     /**
      * For optimization reasons
      * @since 5.6.5
      */
     private static final String[] queryColumns = {DatabaseFileArchive.COLUMN_TILE};
 
+    /**
+     * @since 6.0.2
+     */
+    private static final String[] batchQueryColumns = {DatabaseFileArchive.COLUMN_KEY, DatabaseFileArchive.COLUMN_TILE};
+
     /**
      *
      * @since 5.6.5
@@ -167,4 +215,32 @@ public class SqliteArchiveTileWriter implements IFilesystemCache {
             }
         }
     }
+
+    /**
+     * @since 6.0.2
+     */
+    @Override
+    public LongHashMap<MapTileBytes> loadTiles(final ITileSource pTileSource, final MapTileList pMapTileList) {
+        final LongHashMap<MapTileBytes> result = new LongHashMap<>(pMapTileList.getSize());
+        final LongHashMap<Long> keys = new LongHashMap<>(Math.min(pMapTileList.getSize(), SqlTileWriter.BATCH_MAX_KEYS));
+        final String[] parameters = {pTileSource.name()};
+        for (int from = 0 ; from < pMapTileList.getSize() ; from += SqlTileWriter.BATCH_MAX_KEYS) {
+            final int to = Math.min(from + SqlTileWriter.BATCH_MAX_KEYS, pMapTileList.getSize());
+            final String where = DatabaseFileArchive.COLUMN_PROVIDER + "=? and "
+                    + SqlTileWriter.getKeyInClause(pMapTileList, from, to, keys);
+            final Cursor cur = db.query(DatabaseFileArchive.TABLE, batchQueryColumns, where, parameters, null, null, null);
+            try {
+                while (cur.moveToNext()) {
+                    final Long mapTileIndex = keys.get(cur.getLong(0));
+                    final byte[] bits = cur.getBlob(1);
+                    if (mapTileIndex != null && bits != null) {
+                        result.put(mapTileIndex, new MapTileBytes(pTileSource, bits, false));
+                    }
+                }
+            } finally {
+                cur.close();
+            }
+        }
+        return result;
+    }
 }
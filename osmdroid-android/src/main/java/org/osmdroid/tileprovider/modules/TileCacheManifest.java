@@ -0,0 +1,668 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.util.Log;
+
+import org.osmdroid.api.IMapView;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Persistent list of the files of the {@link TileWriter} cache, with their size and last access,
+ * so that neither the cache size computation nor the trimming need to walk the whole directory tree.
+ * <ul>
+ * <li>a snapshot file holds the whole list; each change is appended to a journal file, replayed
+ * on top of the snapshot at loading time</li>
+ * <li>the journal is merged into a new snapshot when it gets as long as the list itself</li>
+ * <li>the directory tree is only scanned when the snapshot is missing, corrupted, or older than
+ * {@link #RECONCILE_INTERVAL}, e.g. to catch the files deleted behind our back</li>
+ * </ul>
+ * The tiles stored as "prefix/zoom/x/y.extension" (the usual layout) are indexed by map tile index,
+ * which is much lighter than a path.
+ * @since 6.0.2
+ * @see TileWriter
+ */
+
+public class TileCacheManifest {
+
+    public static final String SNAPSHOT_FILENAME = "tiles.manifest";
+    public static final String JOURNAL_FILENAME = "tiles.journal";
+    /**
+     * Maximum age of the last full scan of the directory tree
+     */
+    public static final long RECONCILE_INTERVAL = 30L * 24 * 60 * 60 * 1000;
+    /**
+     * Reads are recorded in the journal only if the last recorded access is older than that
+     */
+    public static final long ACCESS_PRECISION = 60 * 60 * 1000;
+
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte JOURNAL_WRITE = 1;
+    private static final byte JOURNAL_DELETE = 2;
+    private static final byte JOURNAL_ACCESS = 3;
+    /** separates the path prefix from the extension in the keys of the tile groups */
+    private static final char GROUP_SEPARATOR = '\0';
+
+    private final File mDirectory;
+    private final String mDirectoryPath;
+    private Content mContent = new Content();
+    private OutputStream mJournal;
+    private int mJournalCount;
+    private long mReconcileTime;
+    /** false until the snapshot is loaded or the tree scanned: there's nothing to save before */
+    private boolean mLoaded;
+    /** changes made during a scan, to be applied on the scan result */
+    private List<Change> mChangesDuringScan;
+
+    public TileCacheManifest(final File pDirectory) {
+        mDirectory = pDirectory;
+        mDirectoryPath = pDirectory.getAbsolutePath() + File.separator;
+    }
+
+    /**
+     * Loads the snapshot and replays the journal; the changes recorded meanwhile are kept
+     * @return false if the directory tree needs to be scanned with {@link #reconcile()}
+     */
+    public boolean load() {
+        final Content content = new Content();
+        final long reconcileTime;
+        final File snapshot = new File(mDirectory, SNAPSHOT_FILENAME);
+        if (!snapshot.exists()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 65536));
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            reconcileTime = in.readLong();
+            final int groupCount = in.readInt();
+            for (int i = 0 ; i < groupCount ; i ++) {
+                final String group = in.readUTF();
+                final int count = in.readInt();
+                final LongHashMap<Entry> entries = new LongHashMap<>(count);
+                content.mGroups.put(group, entries);
+                for (int j = 0 ; j < count ; j ++) {
+                    final long index = in.readLong();
+                    final Entry entry = new Entry(in.readLong(), in.readLong());
+                    entries.put(index, entry);
+                    content.mSize += entry.mLength;
+                }
+            }
+            final int otherCount = in.readInt();
+            for (int i = 0 ; i < otherCount ; i ++) {
+                final String path = in.readUTF();
+                final Entry entry = new Entry(in.readLong(), in.readLong());
+                content.mOthers.put(path, entry);
+                content.mSize += entry.mLength;
+            }
+        } catch (IOException e) {
+            Log.w(IMapView.LOGTAG, "Invalid tile cache manifest " + snapshot, e);
+            return false;
+        } finally {
+            close(in);
+        }
+        synchronized (this) {
+            // under the lock, so that the changes made since the creation are in the journal
+            final int replayed = replayJournal(content);
+            mContent = content;
+            mReconcileTime = reconcileTime;
+            mJournalCount = replayed;
+            mLoaded = true;
+            if (replayed > content.getCount()) {
+                save();
+            }
+        }
+        return reconcileTime > System.currentTimeMillis() - RECONCILE_INTERVAL;
+    }
+
+    /**
+     * Scans the directory tree and saves a new snapshot. The changes made during the scan are kept.
+     */
+    public void reconcile() {
+        final long start = System.currentTimeMillis();
+        synchronized (this) {
+            mChangesDuringScan = new ArrayList<>();
+        }
+        final Content content = new Content();
+        scan(mDirectory, content);
+        synchronized (this) {
+            for (final Change change : mChangesDuringScan) {
+                apply(content, change.mType, change.mPath, change.mLength, change.mTime);
+            }
+            mChangesDuringScan = null;
+            mContent = content;
+            mReconcileTime = start;
+            mLoaded = true;
+            save();
+        }
+        Log.i(IMapView.LOGTAG, "Scanned the tile cache in " + (System.currentTimeMillis() - start) + "ms: "
+                + content.getCount() + " files, " + content.mSize + " bytes");
+    }
+
+    public synchronized void onWrite(final File pFile, final long pLength) {
+        record(JOURNAL_WRITE, getRelativePath(pFile), pLength, System.currentTimeMillis());
+    }
+
+    public synchronized void onDelete(final File pFile) {
+        record(JOURNAL_DELETE, getRelativePath(pFile), 0, 0);
+    }
+
+    /**
+     * Records a read or any other use of a file, if the last recorded one is not recent
+     */
+    public synchronized void onAccess(final File pFile) {
+        final String path = getRelativePath(pFile);
+        final Entry entry = mContent.get(path);
+        final long now = System.currentTimeMillis();
+        if (entry != null && entry.mTime < now - ACCESS_PRECISION) {
+            record(JOURNAL_ACCESS, path, 0, now);
+        }
+    }
+
+    /**
+     * @return the total size of the files
+     */
+    public synchronized long getSize() {
+        return mContent.mSize;
+    }
+
+    public synchronized int getCount() {
+        return mContent.getCount();
+    }
+
+    /**
+     * Deletes the least recently used files until the total size is below pTrimBytes.
+     * The validators of a tile, cf. {@link TileWriter#VALIDATORS_EXTENSION}, are deleted with it.
+     * @return the number of deleted files
+     */
+    public int trim(final long pTrimBytes) {
+        // the most recently used victim on top: it's dropped as soon as the others free enough
+        final PriorityQueue<Candidate> victims = new PriorityQueue<>(64, new Comparator<Candidate>() {
+            @Override
+            public int compare(final Candidate pCandidate1, final Candidate pCandidate2) {
+                return Long.valueOf(pCandidate2.mTime).compareTo(pCandidate1.mTime);
+            }
+        });
+        synchronized (this) {
+            if (mContent.mSize <= pTrimBytes) {
+                return 0;
+            }
+            final long bytesToFree = mContent.mSize - pTrimBytes;
+            long bytes = 0;
+            for (final Map.Entry<String, LongHashMap<Entry>> group : mContent.mGroups.entrySet()) {
+                final LongHashMap<Entry> entries = group.getValue();
+                final LongHashMap<Entry> tiles = getTiles(group.getKey());
+                for (int i = 0 ; i < entries.getSlotCount() ; i ++) {
+                    final Entry entry = entries.getValueAt(i);
+                    if (entry == null) {
+                        continue;
+                    }
+                    if (bytes >= bytesToFree && entry.mTime >= victims.peek().mTime) {
+                        continue;
+                    }
+                    if (tiles != null && tiles.containsKey(entries.getKeyAt(i))) {
+                        continue; // deleted with its tile
+                    }
+                    bytes = offer(victims, new Candidate(group.getKey(), entries.getKeyAt(i), null, entry), bytes, bytesToFree);
+                }
+            }
+            for (final Map.Entry<String, Entry> other : mContent.mOthers.entrySet()) {
+                final Entry entry = other.getValue();
+                if (bytes >= bytesToFree && entry.mTime >= victims.peek().mTime) {
+                    continue;
+                }
+                if (isValidators(other.getKey()) && mContent.get(getTilePath(other.getKey())) != null) {
+                    continue; // deleted with its tile
+                }
+                bytes = offer(victims, new Candidate(null, 0, other.getKey(), entry), bytes, bytesToFree);
+            }
+        }
+        final Candidate[] candidates = new Candidate[victims.size()];
+        for (int i = candidates.length - 1 ; i >= 0 ; i --) {
+            candidates[i] = victims.poll();
+        }
+        int result = 0;
+        for (final Candidate candidate : candidates) {
+            synchronized (this) {
+                if (mContent.mSize <= pTrimBytes) {
+                    break;
+                }
+                final String path = candidate.getPath();
+                final Entry entry = mContent.get(path);
+                if (entry != candidate.mEntry || entry.mTime != candidate.mTime) {
+                    continue; // used since
+                }
+                if (delete(path)) {
+                    result ++;
+                    final String validatorsPath = path + TileWriter.VALIDATORS_EXTENSION;
+                    if (mContent.get(validatorsPath) != null && delete(validatorsPath)) {
+                        result ++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a new snapshot and empties the journal
+     */
+    public synchronized void save() {
+        if (!mLoaded) {
+            return;
+        }
+        final File temp = new File(mDirectory, SNAPSHOT_FILENAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(mReconcileTime);
+            out.writeInt(mContent.mGroups.size());
+            for (final Map.Entry<String, LongHashMap<Entry>> group : mContent.mGroups.entrySet()) {
+                final LongHashMap<Entry> entries = group.getValue();
+                out.writeUTF(group.getKey());
+                out.writeInt(entries.size());
+                for (int i = 0 ; i < entries.getSlotCount() ; i ++) {
+                    final Entry entry = entries.getValueAt(i);
+                    if (entry != null) {
+                        out.writeLong(entries.getKeyAt(i));
+                        out.writeLong(entry.mLength);
+                        out.writeLong(entry.mTime);
+                    }
+                }
+            }
+            out.writeInt(mContent.mOthers.size());
+            for (final Map.Entry<String, Entry> other : mContent.mOthers.entrySet()) {
+                out.writeUTF(other.getKey());
+                out.writeLong(other.getValue().mLength);
+                out.writeLong(other.getValue().mTime);
+            }
+            out.close();
+            out = null;
+            final File snapshot = new File(mDirectory, SNAPSHOT_FILENAME);
+            if (!temp.renameTo(snapshot)) {
+                snapshot.delete();
+                if (!temp.renameTo(snapshot)) {
+                    throw new IOException("Unable to rename " + temp);
+                }
+            }
+            // the journal is now in the snapshot; replaying it again would be harmless anyway
+            close(mJournal);
+            mJournal = new FileOutputStream(new File(mDirectory, JOURNAL_FILENAME), false);
+            mJournalCount = 0;
+        } catch (IOException e) {
+            Log.w(IMapView.LOGTAG, "Unable to save the tile cache manifest", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Saves a snapshot if the journal is not empty, and closes the journal
+     */
+    public synchronized void close() {
+        if (mJournalCount > 0 && mLoaded && mChangesDuringScan == null) {
+            save();
+        }
+        close(mJournal);
+        mJournal = null;
+    }
+
+    /**
+     * Adds a victim, then drops the most recently used victims that are not needed to free pBytesToFree
+     * @param pBytes the size of the victims
+     * @return the new size of the victims
+     */
+    private static long offer(final PriorityQueue<Candidate> pVictims, final Candidate pCandidate,
+                              final long pBytes, final long pBytesToFree) {
+        pVictims.add(pCandidate);
+        long result = pBytes + pCandidate.mEntry.mLength;
+        while (result - pVictims.peek().mEntry.mLength >= pBytesToFree) {
+            result -= pVictims.poll().mEntry.mLength;
+        }
+        return result;
+    }
+
+    /**
+     * @return the tiles of a group of validators, or null if it's not a group of validators
+     */
+    private LongHashMap<Entry> getTiles(final String pGroup) {
+        return isValidators(pGroup) ? mContent.mGroups.get(getTilePath(pGroup)) : null;
+    }
+
+    private static boolean isValidators(final String pPath) {
+        return pPath.endsWith(TileWriter.VALIDATORS_EXTENSION);
+    }
+
+    /**
+     * @return the path of the tile, or the group of the tiles, of a validators path or group
+     */
+    private static String getTilePath(final String pValidatorsPath) {
+        return pValidatorsPath.substring(0, pValidatorsPath.length() - TileWriter.VALIDATORS_EXTENSION.length());
+    }
+
+    /**
+     * Deletes a file and records it. Must be called in sync.
+     * @return true if the file is not there any more
+     */
+    private boolean delete(final String pPath) {
+        final File file = new File(mDirectory, pPath);
+        if (file.delete() || !file.exists()) {
+            record(JOURNAL_DELETE, pPath, 0, 0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Applies a change in memory, and appends it to the journal
+     */
+    private void record(final byte pType, final String pPath, final long pLength, final long pTime) {
+        apply(mContent, pType, pPath, pLength, pTime);
+        if (mChangesDuringScan != null) {
+            mChangesDuringScan.add(new Change(pType, pPath, pLength, pTime));
+        }
+        try {
+            if (mJournal == null) {
+                mJournal = new FileOutputStream(new File(mDirectory, JOURNAL_FILENAME), true);
+            }
+            // a single write per record, so that a killed process leaves at most one torn record
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+            final DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(pType);
+            out.writeUTF(pPath);
+            out.writeLong(pLength);
+            out.writeLong(pTime);
+            out.flush();
+            mJournal.write(buffer.toByteArray());
+            mJournalCount ++;
+        } catch (IOException e) {
+            Log.w(IMapView.LOGTAG, "Unable to write the tile cache journal", e);
+        }
+        if (mJournalCount > mContent.getCount() + 1000 && mLoaded && mChangesDuringScan == null) {
+            save();
+        }
+    }
+
+    /**
+     * @return the number of replayed changes
+     */
+    private int replayJournal(final Content pContent) {
+        final File journal = new File(mDirectory, JOURNAL_FILENAME);
+        if (!journal.exists()) {
+            return 0;
+        }
+        int result = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), 65536));
+            while (true) {
+                final byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(pContent, type, in.readUTF(), in.readLong(), in.readLong());
+                result ++;
+            }
+        } catch (IOException e) {
+            // torn last record
+            Log.w(IMapView.LOGTAG, "Tile cache journal truncated after " + result + " changes", e);
+        } finally {
+            close(in);
+        }
+        return result;
+    }
+
+    private void apply(final Content pContent, final byte pType, final String pPath, final long pLength, final long pTime) {
+        switch (pType) {
+            case JOURNAL_WRITE:
+                pContent.put(pPath, new Entry(pLength, pTime));
+                break;
+            case JOURNAL_DELETE:
+                pContent.put(pPath, null);
+                break;
+            case JOURNAL_ACCESS:
+                final Entry entry = pContent.get(pPath);
+                if (entry != null) {
+                    entry.mTime = pTime;
+                }
+                break;
+        }
+    }
+
+    private void scan(final File pDirectory, final Content pContent) {
+        final File[] files = pDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.isFile()) {
+                if (pDirectory == mDirectory && file.getName().startsWith(SNAPSHOT_FILENAME)
+                        || pDirectory == mDirectory && file.getName().equals(JOURNAL_FILENAME)) {
+                    continue;
+                }
+                pContent.put(getRelativePath(file), new Entry(file.length(), file.lastModified()));
+            } else if (file.isDirectory() && !isSymbolicDirectoryLink(pDirectory, file)) {
+                scan(file, pContent);
+            }
+        }
+    }
+
+    private String getRelativePath(final File pFile) {
+        final String path = pFile.getAbsolutePath();
+        return path.startsWith(mDirectoryPath) ? path.substring(mDirectoryPath.length()) : path;
+    }
+
+    /**
+     * Checks to see if it appears that a directory is a symbolic link. It does this by comparing
+     * the canonical path of the parent directory and the parent directory of the directory's
+     * canonical path. If they are equal, then they come from the same true parent. If not, then
+     * pDirectory is a symbolic link. If we get an exception, we err on the side of caution and
+     * return "true" expecting the scan to now skip further processing since
+     * something went goofy.
+     */
+    private static boolean isSymbolicDirectoryLink(final File pParentDirectory, final File pDirectory) {
+        try {
+            final String canonicalParentPath1 = pParentDirectory.getCanonicalPath();
+            final String canonicalParentPath2 = pDirectory.getCanonicalFile().getParent();
+            return !canonicalParentPath1.equals(canonicalParentPath2);
+        } catch (final IOException e) {
+            return true;
+        } catch (final NoSuchElementException e) {
+            // See: http://code.google.com/p/android/issues/detail?id=4961
+            // See: http://code.google.com/p/android/issues/detail?id=5807
+            return true;
+        }
+    }
+
+    /**
+     * @return the path of the tile of that group and map tile index
+     */
+    private static String getPath(final String pGroup, final long pMapTileIndex) {
+        final int separator = pGroup.indexOf(GROUP_SEPARATOR);
+        return pGroup.substring(0, separator) + MapTileIndex.toString(pMapTileIndex) + pGroup.substring(separator + 1);
+    }
+
+    private static void close(final Closeable pCloseable) {
+        if (pCloseable != null) {
+            try {
+                pCloseable.close();
+            } catch (IOException e) {
+                //
+            }
+        }
+    }
+
+    /**
+     * The files of the cache, either as tiles in groups or by path
+     */
+    private static class Content {
+        /** tiles by "prefix" + {@link #GROUP_SEPARATOR} + "extension" then by map tile index */
+        private final HashMap<String, LongHashMap<Entry>> mGroups = new HashMap<>();
+        /** the files that are not stored as "prefix/zoom/x/y.extension" */
+        private final HashMap<String, Entry> mOthers = new HashMap<>();
+        private long mSize;
+        /** tile parsed by the last call to {@link #parse(String)} */
+        private String mParsedGroup;
+        private long mParsedIndex;
+
+        private int getCount() {
+            int result = mOthers.size();
+            for (final LongHashMap<Entry> entries : mGroups.values()) {
+                result += entries.size();
+            }
+            return result;
+        }
+
+        private Entry get(final String pPath) {
+            if (parse(pPath)) {
+                final LongHashMap<Entry> entries = mGroups.get(mParsedGroup);
+                return entries == null ? null : entries.get(mParsedIndex);
+            }
+            return mOthers.get(pPath);
+        }
+
+        /**
+         * @param pEntry the entry, or null to remove it
+         */
+        private void put(final String pPath, final Entry pEntry) {
+            final Entry previous;
+            if (parse(pPath)) {
+                LongHashMap<Entry> entries = mGroups.get(mParsedGroup);
+                if (entries == null) {
+                    if (pEntry == null) {
+                        return;
+                    }
+                    entries = new LongHashMap<>();
+                    mGroups.put(mParsedGroup, entries);
+                }
+                previous = pEntry == null ? entries.remove(mParsedIndex) : entries.put(mParsedIndex, pEntry);
+            } else {
+                previous = pEntry == null ? mOthers.remove(pPath) : mOthers.put(pPath, pEntry);
+            }
+            if (previous != null) {
+                mSize -= previous.mLength;
+            }
+            if (pEntry != null) {
+                mSize += pEntry.mLength;
+            }
+        }
+
+        /**
+         * Parses "prefix/zoom/x/y.extension"
+         * @return true if the path is a tile path, with mParsedGroup and mParsedIndex set
+         */
+        private boolean parse(final String pPath) {
+            final int ySlash = pPath.lastIndexOf('/');
+            final int xSlash = ySlash <= 0 ? -1 : pPath.lastIndexOf('/', ySlash - 1);
+            final int zoomSlash = xSlash <= 0 ? -1 : pPath.lastIndexOf('/', xSlash - 1);
+            if (zoomSlash < 0) {
+                return false;
+            }
+            int yEnd = ySlash + 1;
+            while (yEnd < pPath.length() && Character.isDigit(pPath.charAt(yEnd))) {
+                yEnd ++;
+            }
+            final int zoom = parseInt(pPath, zoomSlash + 1, xSlash);
+            final int x = parseInt(pPath, xSlash + 1, ySlash);
+            final int y = parseInt(pPath, ySlash + 1, yEnd);
+            if (zoom < 0 || zoom > MapTileIndex.mMaxZoomLevel || x < 0 || x >= 1 << zoom || y < 0 || y >= 1 << zoom) {
+                return false;
+            }
+            mParsedGroup = pPath.substring(0, zoomSlash) + GROUP_SEPARATOR + pPath.substring(yEnd);
+            mParsedIndex = MapTileIndex.getTileIndex(zoom, x, y);
+            // only if the path can be built back exactly, e.g. no leading zero
+            return pPath.equals(getPath(mParsedGroup, mParsedIndex));
+        }
+
+        /**
+         * @return the positive int, or -1 if it's not a small positive int
+         */
+        private static int parseInt(final String pString, final int pStart, final int pEnd) {
+            if (pStart >= pEnd || pEnd - pStart > 9) {
+                return -1;
+            }
+            int result = 0;
+            for (int i = pStart ; i < pEnd ; i ++) {
+                final char c = pString.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                result = result * 10 + c - '0';
+            }
+            return result;
+        }
+    }
+
+    private static class Entry {
+        private final long mLength;
+        private long mTime;
+
+        private Entry(final long pLength, final long pTime) {
+            mLength = pLength;
+            mTime = pTime;
+        }
+    }
+
+    /**
+     * A file that may be deleted; the path of a tile is only built if it's actually deleted
+     */
+    private static class Candidate {
+        /** the group of the tile, or null if it's not a tile */
+        private final String mGroup;
+        private final long mMapTileIndex;
+        /** the path of the file if it's not a tile */
+        private final String mPath;
+        private final Entry mEntry;
+        private final long mTime;
+
+        private Candidate(final String pGroup, final long pMapTileIndex, final String pPath, final Entry pEntry) {
+            mGroup = pGroup;
+            mMapTileIndex = pMapTileIndex;
+            mPath = pPath;
+            mEntry = pEntry;
+            mTime = pEntry.mTime;
+        }
+
+        private String getPath() {
+            return mGroup != null ? TileCacheManifest.getPath(mGroup, mMapTileIndex) : mPath;
+        }
+    }
+
+    private static class Change {
+        private final byte mType;
+        private final String mPath;
+        private final long mLength;
+        private final long mTime;
+
+        private Change(final byte pType, final String pPath, final long pLength, final long pTime) {
+            mType = pType;
+            mPath = pPath;
+            mLength = pLength;
+            mTime = pTime;
+        }
+    }
+}
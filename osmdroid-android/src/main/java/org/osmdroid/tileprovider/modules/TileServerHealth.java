@@ -0,0 +1,191 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.config.Configuration;
+
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Health of the tile servers, as a circuit breaker per host.
+ * <ul>
+ * <li>closed: requests go through, consecutive failures are counted</li>
+ * <li>open: after {@link #FAILURE_THRESHOLD} consecutive failures, or when the server asked us to
+ * retry later (HTTP 429 and 503 with a Retry-After header), requests are refused until the backoff delay
+ * has elapsed. The backoff delay doubles each time the circuit opens again, up to {@link #MAX_BACKOFF}</li>
+ * <li>half-open: once the backoff delay has elapsed, a single request is let through as a probe;
+ * the circuit closes if it succeeds and opens again if it fails</li>
+ * </ul>
+ * @since 6.0.2
+ */
+
+public class TileServerHealth {
+
+    public static final String HTTP_RETRY_AFTER_HEADER = "Retry-After";
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    public static final int FAILURE_THRESHOLD = 3;
+    public static final long MIN_BACKOFF = 1000;
+    public static final long MAX_BACKOFF = 5 * 60 * 1000;
+    /**
+     * Upper limit of the delay a server can ask for in a Retry-After header
+     */
+    public static final long MAX_RETRY_AFTER = 60 * 60 * 1000;
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private static TileServerHealth sInstance;
+
+    /**
+     * @return the health shared by all the downloaders, as several tile sources may use the same host
+     */
+    public static synchronized TileServerHealth getInstance() {
+        if (sInstance == null) {
+            sInstance = new TileServerHealth();
+        }
+        return sInstance;
+    }
+
+    private final HashMap<String, Host> mHosts = new HashMap<>();
+
+    /**
+     * @param pHost host and port, as in {@link java.net.URL#getAuthority()}
+     * @return true if a request can be sent to that host now;
+     * in that case the caller must report the outcome with {@link #onSuccess(String)},
+     * {@link #onFailure(String, long)} or {@link #onCancelled(String)}
+     */
+    public boolean isAvailable(final String pHost) {
+        synchronized (mHosts) {
+            final Host host = mHosts.get(pHost);
+            if (host == null) {
+                return true;
+            }
+            switch (host.mState) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now() < host.mRetryTime) {
+                        return false;
+                    }
+                    host.mState = State.HALF_OPEN;
+                    host.mProbing = true;
+                    return true;
+                case HALF_OPEN:
+                default:
+                    if (host.mProbing) {
+                        return false;
+                    }
+                    host.mProbing = true;
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * The server answered, even with a client error like 404
+     */
+    public void onSuccess(final String pHost) {
+        synchronized (mHosts) {
+            mHosts.remove(pHost);
+        }
+    }
+
+    /**
+     * The request failed (network error, server error, rate limiting)
+     * @param pRetryAfter delay in ms the server asked to wait for, or 0 if unknown
+     */
+    public void onFailure(final String pHost, final long pRetryAfter) {
+        synchronized (mHosts) {
+            Host host = mHosts.get(pHost);
+            if (host == null) {
+                host = new Host();
+                mHosts.put(pHost, host);
+            }
+            host.mFailures++;
+            if (pRetryAfter > 0) {
+                open(host, Math.min(pRetryAfter, MAX_RETRY_AFTER));
+            } else if (host.mState == State.HALF_OPEN
+                    || (host.mState == State.CLOSED && host.mFailures >= FAILURE_THRESHOLD)) {
+                // failures of requests sent before the circuit opened don't extend the backoff
+                open(host, host.mBackoff);
+            }
+        }
+    }
+
+    /**
+     * The request was aborted before it could tell anything about the host
+     */
+    public void onCancelled(final String pHost) {
+        synchronized (mHosts) {
+            final Host host = mHosts.get(pHost);
+            if (host != null) {
+                host.mProbing = false;
+            }
+        }
+    }
+
+    public State getState(final String pHost) {
+        synchronized (mHosts) {
+            final Host host = mHosts.get(pHost);
+            return host == null ? State.CLOSED : host.mState;
+        }
+    }
+
+    /**
+     * @return the time in ms from which the host can be probed again, or 0 if its circuit is closed
+     */
+    public long getRetryTime(final String pHost) {
+        synchronized (mHosts) {
+            final Host host = mHosts.get(pHost);
+            return host == null || host.mState == State.CLOSED ? 0 : host.mRetryTime;
+        }
+    }
+
+    /**
+     * Forgets everything, e.g. when the network connectivity changes
+     */
+    public void reset() {
+        synchronized (mHosts) {
+            mHosts.clear();
+        }
+    }
+
+    /**
+     * @param pRetryAfter value of the Retry-After header, either a number of seconds or an HTTP date
+     * @return the delay in ms, or 0 if there's no such header or it can't be parsed
+     */
+    public long parseRetryAfter(final String pRetryAfter) {
+        if (pRetryAfter == null || pRetryAfter.length() == 0) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(pRetryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            //
+        }
+        try {
+            final Date date = Configuration.getInstance().getHttpHeaderDateTimeFormat().parse(pRetryAfter);
+            return Math.max(0, date.getTime() - now());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void open(final Host pHost, final long pDelay) {
+        pHost.mState = State.OPEN;
+        pHost.mProbing = false;
+        pHost.mRetryTime = now() + pDelay;
+        pHost.mBackoff = Math.min(MAX_BACKOFF, pHost.mBackoff * 2);
+    }
+
+    private static class Host {
+        private State mState = State.CLOSED;
+        private int mFailures;
+        private long mBackoff = MIN_BACKOFF;
+        private long mRetryTime;
+        private boolean mProbing;
+    }
+}
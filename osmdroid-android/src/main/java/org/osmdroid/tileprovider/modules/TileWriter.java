@@ -3,15 +3,17 @@ package org.osmdroid.tileprovider.modules;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
-import java.util.NoSuchElementException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import org.osmdroid.api.IMapView;
 
@@ -21,7 +23,9 @@ import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.util.Counters;
 import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
 /**
  * An implementation of {@link IFilesystemCache}. It writes tiles to the file system cache. If the
@@ -31,19 +35,27 @@ import org.osmdroid.util.MapTileIndex;
  * @see OpenStreetMapTileProviderConstants
  *
  */
-public class TileWriter implements IFilesystemCache {
+public class TileWriter implements IBatchFilesystemCache, IRevalidatingFilesystemCache {
 
 	// ===========================================================
 	// Constants
 	// ===========================================================
 
+	/**
+	 * Extension of the files holding the HTTP validators of the tile files, cf. {@link MapTileValidators}
+	 * @since 6.0.2
+	 */
+	public static final String VALIDATORS_EXTENSION = ".validators";
 
 	// ===========================================================
 	// Fields
 	// ===========================================================
 
-	/** amount of disk space used by tile cache **/
-	private static long mUsedCacheSpace;
+	/**
+	 * files of the tile cache, with their size and last access
+	 * @since 6.0.2
+	 */
+	private static TileCacheManifest mManifest;
 	static boolean hasInited=false;
 	Thread initThread=null;
 	private long mMaximumCachedFileAge;
@@ -56,15 +68,17 @@ public class TileWriter implements IFilesystemCache {
 
 		if (!hasInited) {
 			hasInited = true;
-			// do this in the background because it takes a long time
+			mManifest = new TileCacheManifest(Configuration.getInstance().getOsmdroidTileCache());
+			// do this in the background because it may take a long time
 			initThread = new Thread() {
 				@Override
 				public void run() {
-					mUsedCacheSpace = 0; // because it's static
-
-					calculateDirectorySize(Configuration.getInstance().getOsmdroidTileCache());
+					// the whole tree is only scanned without an up-to-date manifest
+					if (!mManifest.load()) {
+						mManifest.reconcile();
+					}
 
-					if (mUsedCacheSpace > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
+					if (mManifest.getSize() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
 						cutCurrentCache();
 					}
 					if (Configuration.getInstance().isDebugMode()) {
@@ -88,7 +102,7 @@ public class TileWriter implements IFilesystemCache {
 	 * @return size in bytes
 	 */
 	public static long getUsedCacheSpace() {
-		return mUsedCacheSpace;
+		return mManifest == null ? 0 : mManifest.getSize();
 	}
 
 	public void setMaximumCachedFileAge(long mMaximumCachedFileAge) {
@@ -102,6 +116,35 @@ public class TileWriter implements IFilesystemCache {
 	@Override
 	public boolean saveFile(final ITileSource pTileSource, final long pMapTileIndex,
 			final InputStream pStream, final Long pExpirationTime) {
+		return saveFile(pTileSource, pMapTileIndex, pStream, pExpirationTime, null);
+	}
+
+	/**
+	 * The validators are saved next to the tile file, in a small text file
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean saveFile(final ITileSource pTileSource, final long pMapTileIndex,
+			final InputStream pStream, final Long pExpirationTime, final MapTileValidators pValidators) {
+		return saveFile(pTileSource, pMapTileIndex, pStream, null, 0, pValidators);
+	}
+
+	/**
+	 * The buffer is written as is to the tile file
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean saveFile(final ITileSource pTileSource, final long pMapTileIndex,
+			final byte[] pBytes, final int pLength, final Long pExpirationTime, final MapTileValidators pValidators) {
+		return saveFile(pTileSource, pMapTileIndex, null, pBytes, pLength, pValidators);
+	}
+
+	/**
+	 * Writes either the stream or the buffer
+	 * @since 6.0.2
+	 */
+	private boolean saveFile(final ITileSource pTileSource, final long pMapTileIndex,
+			final InputStream pStream, final byte[] pBytes, final int pLength, final MapTileValidators pValidators) {
 
 		final File file = getFile(pTileSource, pMapTileIndex);
 
@@ -113,14 +156,21 @@ public class TileWriter implements IFilesystemCache {
 			return false;
 		}
 
-		BufferedOutputStream outputStream = null;
+		OutputStream outputStream = null;
 		try {
-			outputStream = new BufferedOutputStream(new FileOutputStream(file.getPath()),
-					StreamUtils.IO_BUFFER_SIZE);
-			final long length = StreamUtils.copy(pStream, outputStream);
+			final long length;
+			if (pStream != null) {
+				outputStream = new BufferedOutputStream(new FileOutputStream(file.getPath()),
+						StreamUtils.IO_BUFFER_SIZE);
+				length = StreamUtils.copy(pStream, outputStream);
+			} else {
+				outputStream = new FileOutputStream(file.getPath());
+				outputStream.write(pBytes, 0, pLength);
+				length = pLength;
+			}
 
-			mUsedCacheSpace += length;
-			if (mUsedCacheSpace > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
+			mManifest.onWrite(file, length);
+			if (mManifest.getSize() > Configuration.getInstance().getTileFileSystemCacheMaxBytes()) {
 				cutCurrentCache(); // TODO perhaps we should do this in the background
 			}
 		} catch (final IOException e) {
@@ -131,6 +181,7 @@ public class TileWriter implements IFilesystemCache {
 				StreamUtils.closeStream(outputStream);
 			}
 		}
+		saveValidators(getValidatorsFile(file), pValidators);
 		return true;
 	}
 
@@ -150,7 +201,15 @@ public class TileWriter implements IFilesystemCache {
 
 		if (file.exists()) {
 			try {
-				return file.delete();
+				final File validatorsFile = getValidatorsFile(file);
+				if (validatorsFile.delete()) {
+					mManifest.onDelete(validatorsFile);
+				}
+				final boolean result = file.delete();
+				if (result) {
+					mManifest.onDelete(file);
+				}
+				return result;
 			}catch (Exception ex){
 				//potential io exception
 				Log.i(IMapView.LOGTAG, "Unable to delete cached tile from " + pTileSource.name() + " " + MapTileIndex.toString(pMapTileIndex) , ex);
@@ -168,6 +227,74 @@ public class TileWriter implements IFilesystemCache {
 				+ OpenStreetMapTileProviderConstants.TILE_PATH_EXTENSION);
 	}
 
+	/**
+	 * @since 6.0.2
+	 */
+	private File getValidatorsFile(final File pTileFile) {
+		return new File(pTileFile.getPath() + VALIDATORS_EXTENSION);
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	private void saveValidators(final File pFile, final MapTileValidators pValidators) {
+		if (pValidators == null || pValidators.isEmpty()) {
+			if (pFile.exists() && pFile.delete()) {
+				mManifest.onDelete(pFile);
+			}
+			return;
+		}
+		Writer writer = null;
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+			writer.write((pValidators.getETag() == null ? "" : pValidators.getETag()) + "\n"
+					+ (pValidators.getLastModified() == null ? "" : pValidators.getLastModified()) + "\n");
+		} catch (final IOException e) {
+			Log.i(IMapView.LOGTAG, "Unable to save the validators of " + pFile, e);
+		} finally {
+			StreamUtils.closeStream(writer);
+		}
+		mManifest.onWrite(pFile, pFile.length());
+	}
+
+	/**
+	 * @since 6.0.2
+	 */
+	@Override
+	public MapTileValidators getValidators(final ITileSource pTileSource, final long pMapTileIndex) {
+		final File file = getFile(pTileSource, pMapTileIndex);
+		final File validatorsFile = getValidatorsFile(file);
+		if (!file.exists() || !validatorsFile.exists()) {
+			return null;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(validatorsFile), "UTF-8"));
+			final MapTileValidators validators = new MapTileValidators(reader.readLine(), reader.readLine());
+			return validators.isEmpty() ? null : validators;
+		} catch (final IOException e) {
+			Log.i(IMapView.LOGTAG, "Unable to read the validators of " + validatorsFile, e);
+			return null;
+		} finally {
+			StreamUtils.closeStream(reader);
+		}
+	}
+
+	/**
+	 * The expiration of a file is computed from its last modification date,
+	 * which is set to now whatever the expiration given by the server
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean refreshExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex, final Long pExpirationTime) {
+		final File file = getFile(pTileSource, pMapTileIndex);
+		if (!file.exists() || !file.setLastModified(System.currentTimeMillis())) {
+			return false;
+		}
+		mManifest.onAccess(file);
+		return true;
+	}
+
 	@Override
 	public boolean exists(final ITileSource pTileSource, final long pMapTileIndex) {
 		return getFile(pTileSource, pMapTileIndex).exists();
@@ -204,61 +331,6 @@ public class TileWriter implements IFilesystemCache {
 		}
 	}
 
-	private void calculateDirectorySize(final File pDirectory) {
-		final File[] z = pDirectory.listFiles();
-		if (z != null) {
-			for (final File file : z) {
-				if (file.isFile()) {
-					mUsedCacheSpace += file.length();
-				}
-				if (file.isDirectory() && !isSymbolicDirectoryLink(pDirectory, file)) {
-					calculateDirectorySize(file); // *** recurse ***
-				}
-			}
-		}
-	}
-
-	/**
-	 * Checks to see if it appears that a directory is a symbolic link. It does this by comparing
-	 * the canonical path of the parent directory and the parent directory of the directory's
-	 * canonical path. If they are equal, then they come from the same true parent. If not, then
-	 * pDirectory is a symbolic link. If we get an exception, we err on the side of caution and
-	 * return "true" expecting the calculateDirectorySize to now skip further processing since
-	 * something went goofy.
-	 */
-	private boolean isSymbolicDirectoryLink(final File pParentDirectory, final File pDirectory) {
-		try {
-			final String canonicalParentPath1 = pParentDirectory.getCanonicalPath();
-			final String canonicalParentPath2 = pDirectory.getCanonicalFile().getParent();
-			return !canonicalParentPath1.equals(canonicalParentPath2);
-		} catch (final IOException e) {
-			return true;
-		} catch (final NoSuchElementException e) {
-			// See: http://code.google.com/p/android/issues/detail?id=4961
-			// See: http://code.google.com/p/android/issues/detail?id=5807
-			return true;
-		}
-
-	}
-
-	private List<File> getDirectoryFileList(final File aDirectory) {
-		final List<File> files = new ArrayList<File>();
-
-		final File[] z = aDirectory.listFiles();
-		if (z != null) {
-			for (final File file : z) {
-				if (file.isFile()) {
-					files.add(file);
-				}
-				if (file.isDirectory()) {
-					files.addAll(getDirectoryFileList(file));
-				}
-			}
-		}
-
-		return files;
-	}
-
 	/**
 	 * If the cache size is greater than the max then trim it down to the trim level. This method is
 	 * synchronized so that only one thread can run it at a time.
@@ -268,34 +340,15 @@ public class TileWriter implements IFilesystemCache {
 		final File lock=Configuration.getInstance().getOsmdroidTileCache();
 		synchronized (lock) {
 
-			if (mUsedCacheSpace > Configuration.getInstance().getTileFileSystemCacheTrimBytes()) {
+			if (mManifest.getSize() > Configuration.getInstance().getTileFileSystemCacheTrimBytes()) {
 
-				Log.d(IMapView.LOGTAG,"Trimming tile cache from " + mUsedCacheSpace + " to "
+				Log.d(IMapView.LOGTAG,"Trimming tile cache from " + mManifest.getSize() + " to "
 						+ Configuration.getInstance().getTileFileSystemCacheTrimBytes());
 
-				final List<File> z = getDirectoryFileList(Configuration.getInstance().getOsmdroidTileCache());
-
-				// order list by files day created from old to new
-				final File[] files = z.toArray(new File[0]);
-				Arrays.sort(files, new Comparator<File>() {
-					@Override
-					public int compare(final File f1, final File f2) {
-						return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
-					}
-				});
-
-				for (final File file : files) {
-					if (mUsedCacheSpace <= Configuration.getInstance().getTileFileSystemCacheTrimBytes()) {
-						break;
-					}
-
-					final long length = file.length();
-					if (file.delete()) {
-						if (Configuration.getInstance().isDebugTileProviders()){
-							Log.d(IMapView.LOGTAG,"Cache trim deleting " + file.getAbsolutePath());
-						}
-						mUsedCacheSpace -= length;
-					}
+				// least recently used files first, from the manifest: no directory walk
+				final int deleted = mManifest.trim(Configuration.getInstance().getTileFileSystemCacheTrimBytes());
+				if (Configuration.getInstance().isDebugTileProviders()){
+					Log.d(IMapView.LOGTAG,"Cache trim deleted " + deleted + " files");
 				}
 
 				Log.d(IMapView.LOGTAG,"Finished trimming tile cache");
@@ -318,6 +371,7 @@ public class TileWriter implements IFilesystemCache {
 		}
 
 		final Drawable drawable = pTileSource.getDrawable(file.getPath());
+		mManifest.onAccess(file);
 
 		// Check to see if file has expired
 		final long now = System.currentTimeMillis();
@@ -333,4 +387,32 @@ public class TileWriter implements IFilesystemCache {
 
 		return drawable;
 	}
+
+	/**
+	 * No batch query for a file system: the files are read one by one
+	 * @since 6.0.2
+	 */
+	@Override
+	public LongHashMap<MapTileBytes> loadTiles(final ITileSource pTileSource, final MapTileList pMapTileList) throws Exception {
+		final LongHashMap<MapTileBytes> result = new LongHashMap<>(pMapTileList.getSize());
+		final long now = System.currentTimeMillis();
+		for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+			final long mapTileIndex = pMapTileList.get(i);
+			final File file = getFile(pTileSource, mapTileIndex);
+			if (!file.exists()) {
+				continue;
+			}
+			final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			final InputStream in = new FileInputStream(file);
+			try {
+				StreamUtils.copy(in, out);
+			} finally {
+				StreamUtils.closeStream(in);
+			}
+			mManifest.onAccess(file);
+			final boolean fileExpired = file.lastModified() < now - mMaximumCachedFileAge;
+			result.put(mapTileIndex, new MapTileBytes(pTileSource, out.toByteArray(), fileExpired));
+		}
+		return result;
+	}
 }
@@ -1,9 +1,11 @@
 package org.osmdroid.tileprovider.modules;
 
 import android.util.Log;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
@@ -13,9 +15,12 @@ import java.util.zip.ZipFile;
 import org.osmdroid.api.IMapView;
 
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
 
-public class ZipFileArchive implements IArchiveFile {
+public class ZipFileArchive implements IBatchArchiveFile, IRoutableArchiveFile {
 
 	protected ZipFile mZipFile;
     private boolean mIgnoreTileSource = false;
@@ -73,6 +78,32 @@ public class ZipFileArchive implements IArchiveFile {
         return null;
     }
 
+	/**
+	 * No batch query for this format: the tiles are read one by one
+	 * @since 6.0.2
+	 */
+	@Override
+	public LongHashMap<byte[]> getImages(final ITileSource pTileSource, final MapTileList pMapTileList) {
+		final LongHashMap<byte[]> result = new LongHashMap<>(pMapTileList.getSize());
+		for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+			final long mapTileIndex = pMapTileList.get(i);
+			final InputStream in = getInputStream(pTileSource, mapTileIndex);
+			if (in == null) {
+				continue;
+			}
+			try {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				StreamUtils.copy(in, out);
+				result.put(mapTileIndex, out.toByteArray());
+			} catch (final IOException e) {
+				Log.w(IMapView.LOGTAG,"Error reading tile: " + MapTileIndex.toString(mapTileIndex), e);
+			} finally {
+				StreamUtils.closeStream(in);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * @since 6.0
 	 * Creating paths for ZIP scanning
@@ -90,6 +121,78 @@ public class ZipFileArchive implements IArchiveFile {
 		return sb.toString();
 	}
 
+	/**
+	 * {@link ZipFile} can be read by several threads at once
+	 * @since 6.0.2
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * The bounding box of the entries of each zoom level, from the paths "source/z/x/y.ext".
+	 * Each entry must be the very name {@link #getInputStream(ITileSource, long)} looks for
+	 * when asked for the parsed tile, e.g. not a TMS or custom layout of the tile source.
+	 * @since 6.0.2
+	 * @return null if a file entry doesn't match that layout
+	 */
+	@Override
+	public ArchiveCoverage getCoverage(final ITileSource pTileSource) {
+		final int levels = MapTileIndex.mMaxZoomLevel + 1;
+		final int[] xMin = new int[levels];
+		final int[] xMax = new int[levels];
+		final int[] yMin = new int[levels];
+		final int[] yMax = new int[levels];
+		Arrays.fill(xMin, Integer.MAX_VALUE);
+		Arrays.fill(xMax, -1);
+		Arrays.fill(yMin, Integer.MAX_VALUE);
+		Arrays.fill(yMax, -1);
+		try {
+			final Enumeration<? extends ZipEntry> entries = mZipFile.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory()) {
+					continue;
+				}
+				final String name = entry.getName();
+				final String[] path = name.split("/");
+				if (path.length < 3) {
+					return null;
+				}
+				final String yName = path[path.length - 1];
+				final int dot = yName.indexOf('.');
+				final int zoom = Integer.parseInt(path[path.length - 3]);
+				final int x = Integer.parseInt(path[path.length - 2]);
+				final int y = Integer.parseInt(dot < 0 ? yName : yName.substring(0, dot));
+				if (zoom < 0 || zoom >= levels) {
+					return null;
+				}
+				final long mapTileIndex = MapTileIndex.getTileIndex(zoom, x, y);
+				final String expected = mIgnoreTileSource || pTileSource == null
+						? getTileRelativeFilenameString(mapTileIndex, path[0])
+						: pTileSource.getTileRelativeFilenameString(mapTileIndex);
+				if (!name.equals(expected)) {
+					return null;
+				}
+				xMin[zoom] = Math.min(xMin[zoom], x);
+				xMax[zoom] = Math.max(xMax[zoom], x);
+				yMin[zoom] = Math.min(yMin[zoom], y);
+				yMax[zoom] = Math.max(yMax[zoom], y);
+			}
+		} catch (final Exception e) {
+			// not the usual layout, or a custom tile source
+			return null;
+		}
+		final ArchiveCoverage result = new ArchiveCoverage();
+		for (int zoom = 0 ; zoom < levels ; zoom ++) {
+			if (xMax[zoom] >= 0) {
+				result.add(zoom, xMin[zoom], xMax[zoom], yMin[zoom], yMax[zoom]);
+			}
+		}
+		return result;
+	}
+
 	public Set<String> getTileSources(){
 		Set<String> ret = new HashSet<String>();
 		try {
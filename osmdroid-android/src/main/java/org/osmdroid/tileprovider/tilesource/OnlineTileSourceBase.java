@@ -1,8 +1,14 @@
 package org.osmdroid.tileprovider.tilesource;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public abstract class OnlineTileSourceBase extends BitmapTileSourceBase {
 
 	private final String mBaseUrls[];
+	/**
+	 * @since 6.0.2
+	 */
+	private final AtomicInteger mBaseUrlCounter = new AtomicInteger();
 
 	/**
 	 * Constructor
@@ -44,9 +50,12 @@ public abstract class OnlineTileSourceBase extends BitmapTileSourceBase {
 	public abstract String getTileURLString(final long pMapTileIndex);
 
 	/**
-	 * Get the base url, which will be a random one if there are more than one.
+	 * Get the base url, in turn if there are more than one.
+	 * Since 6.0.2 round-robin instead of random, so that the requests are evenly spread
+	 * over the servers and over their kept-alive connections
 	 */
 	public String getBaseUrl() {
-		return mBaseUrls[random.nextInt(mBaseUrls.length)];
+		final int counter = mBaseUrlCounter.getAndIncrement() & Integer.MAX_VALUE;
+		return mBaseUrls[counter % mBaseUrls.length];
 	}
 }
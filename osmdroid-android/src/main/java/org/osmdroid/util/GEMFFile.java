@@ -1,15 +1,14 @@
 package org.osmdroid.util;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
@@ -33,15 +32,18 @@ public class GEMFFile {
 	// Constants
 	// ===========================================================
 
-	private static final long FILE_SIZE_LIMIT = 1 * 1024 * 1024 * 1024; // 1GB
-	private static final int FILE_COPY_BUFFER_SIZE = 1024;
-
 	private static final int VERSION = 4;
 	private static final int TILE_SIZE = 256;
 
 	private static final int U32_SIZE = 4;
 	private static final int U64_SIZE = 8;
 
+	/**
+	 * Maximum size of a memory mapping, as a {@link ByteBuffer} is indexed by an int
+	 * @since 6.0.2
+	 */
+	private static final int MAP_CHUNK_SIZE = 1 << 30;
+
 
 	// ===========================================================
 	// Fields
@@ -51,21 +53,20 @@ public class GEMFFile {
 	private final String mLocation;
 
 	// All GEMF file parts for this archive
-	private final List<RandomAccessFile> mFiles = new ArrayList<RandomAccessFile>();
-	private final List<String> mFileNames = new ArrayList<String>();
+	private final List<GEMFPart> mFiles = new ArrayList<GEMFPart>();
 
 	// Tile ranges represented within this archive
 	private final List<GEMFRange> mRangeData = new ArrayList<GEMFRange>();
 
-	// File sizes for offset calculation
-	private final List<Long> mFileSizes = new ArrayList<Long>();
+	// Tile ranges by zoom and X, cf. getColumnKey
+	private final HashMap<Long, GEMFRange[]> mRangesByColumn = new HashMap<Long, GEMFRange[]>();
 
 	// List of tile sources within this archive
 	private final LinkedHashMap<Integer, String> mSources = new LinkedHashMap<Integer, String>();
 
 	// Fields to restrict to a single source for reading
-	private boolean mSourceLimited = false;
-	private int mCurrentSource = 0;
+	private volatile boolean mSourceLimited = false;
+	private volatile int mCurrentSource = 0;
 
 
 	// ===========================================================
@@ -107,302 +108,21 @@ public class GEMFFile {
 	 * @param pSourceFolders
 	 * 		Each specified folder will be imported into the GEMF archive as a seperate
 	 * 		source. The name of the folder will be the name of the source in the archive.
+	 * @see GEMFWriter
 	 */
 	public GEMFFile (final String pLocation, final List<File> pSourceFolders)
 		throws FileNotFoundException, IOException {
-		/*
-		 * 1. For each source folder
-		 *   1. Create array of zoom levels, X rows, Y rows
-		 * 2. Build index data structure index[source][zoom][range]
-		 *   1. For each S-Z-X find list of Ys values
-		 *   2. For each S-Z-X-Ys set, find complete X ranges
-		 *   3. For each S-Z-Xr-Ys set, find complete Y ranges, create Range record
-		 * 3. Write out index
-		 *   1. Header
-		 *   2. Sources
-		 *   3. For each Range
-		 *     1. Write Range record
-		 * 4. For each Range record
-		 *   1. For each Range entry
-		 *     1. If over file size limit, start new data file
-		 *     2. Write tile data
-		 */
-
 		this.mLocation = pLocation;
 
-		// Create in-memory array of sources, X and Y values.
-		final LinkedHashMap<String, LinkedHashMap<Integer, LinkedHashMap<Integer, LinkedHashMap<Integer, File>>>> dirIndex =
-			new LinkedHashMap<String, LinkedHashMap<Integer, LinkedHashMap<Integer, LinkedHashMap<Integer, File>>>>();
-
-		for (final File sourceDir: pSourceFolders) {
-
-			final LinkedHashMap<Integer, LinkedHashMap<Integer, LinkedHashMap<Integer, File>>> zList =
-				new LinkedHashMap<Integer, LinkedHashMap<Integer, LinkedHashMap<Integer, File>>>();
-
-			for (final File zDir: sourceDir.listFiles()) {
-				// Make sure the directory name is just a number
-				try {
-					Integer.parseInt(zDir.getName());
-				} catch (final NumberFormatException e) {
-					continue;
-				}
-
-				final LinkedHashMap<Integer, LinkedHashMap<Integer, File>> xList =
-					new LinkedHashMap<Integer, LinkedHashMap<Integer, File>>();
-
-				for (final File xDir: zDir.listFiles()) {
-
-					// Make sure the directory name is just a number
-					try {
-						Integer.parseInt(xDir.getName());
-					} catch (final NumberFormatException e) {
-						continue;
-					}
-
-					final LinkedHashMap<Integer, File> yList = new LinkedHashMap<Integer, File>();
-					for (final File yFile: xDir.listFiles()) {
-
-						try {
-							Integer.parseInt(yFile.getName().substring(
-									0, yFile.getName().indexOf('.')));
-						} catch (final NumberFormatException e) {
-							continue;
-						}
-
-						yList.put(Integer.parseInt(yFile.getName().substring(
-								0, yFile.getName().indexOf('.'))), yFile);
-					}
-
-					xList.put(new Integer(xDir.getName()), yList);
-				}
-
-				zList.put(Integer.parseInt(zDir.getName()), xList);
-			}
-
-			dirIndex.put(sourceDir.getName(), zList);
-		}
-
-		// Create a source index list
-		final LinkedHashMap<String, Integer> sourceIndex = new LinkedHashMap<String, Integer>();
-		final LinkedHashMap<Integer, String> indexSource = new LinkedHashMap<Integer, String>();
-		int si = 0;
-		for (final String source: dirIndex.keySet()) {
-			sourceIndex.put(source, new Integer(si));
-			indexSource.put(new Integer(si), source);
-			++si;
-		}
-
-		// Create the range objects
-		final List<GEMFRange> ranges = new ArrayList<GEMFRange>();
-
-		for (final String source: dirIndex.keySet()) {
-			for (final Integer zoom: dirIndex.get(source).keySet()) {
-
-				// Get non-contiguous Y sets for each Z/X
-				final LinkedHashMap<List<Integer>, List<Integer>> ySets =
-					new LinkedHashMap<List<Integer>, List<Integer>>();
-
-				for (final Integer x: new TreeSet<Integer>(dirIndex.get(source).get(zoom).keySet())) {
-
-					final List<Integer> ySet = new ArrayList<Integer>();
-					for (final Integer y: dirIndex.get(source).get(zoom).get(x).keySet()) {
-						ySet.add(y);
-					}
-
-					if (ySet.size() == 0) {
-						continue;
-					}
-
-					Collections.sort(ySet);
-
-					if (! ySets.containsKey(ySet)) {
-						ySets.put(ySet, new ArrayList<Integer>());
-					}
-
-					ySets.get(ySet).add(x);
-				}
-
-				// For each Y set find contiguous X sets
-				final LinkedHashMap<List<Integer>, List<Integer>> xSets =
-					new LinkedHashMap<List<Integer>, List<Integer>>();
-
-				for (final List<Integer> ySet: ySets.keySet()) {
-
-					final TreeSet<Integer> xList = new TreeSet<Integer>(ySets.get(ySet));
-
-					List<Integer> xSet = new ArrayList<Integer>();
-					for(int i = xList.first(); i < xList.last() + 1; ++i) {
-						if (xList.contains(new Integer(i))) {
-							xSet.add(new Integer(i));
-						} else {
-							if (xSet.size() > 0) {
-								xSets.put(ySet, xSet);
-								xSet = new ArrayList<Integer>();
-							}
-						}
-					}
-
-					if (xSet.size() > 0) {
-						xSets.put(ySet, xSet);
-					}
-				}
-
-				// For each contiguous X set, find contiguous Y sets and create GEMFRange object
-				for (final List<Integer> xSet: xSets.keySet()) {
-
-					final TreeSet<Integer> yList = new TreeSet<Integer>(xSet);
-					final TreeSet<Integer> xList = new TreeSet<Integer>(ySets.get(xSet));
-
-					GEMFRange range = new GEMFFile.GEMFRange();
-					range.zoom = zoom;
-					range.sourceIndex = sourceIndex.get(source);
-					range.xMin = xList.first();
-					range.xMax = xList.last();
-
-					for(int i = yList.first(); i < yList.last() + 1; ++i) {
-						if (yList.contains(new Integer(i))) {
-							if (range.yMin == null) {
-								range.yMin = i;
-							}
-							range.yMax = i;
-						} else {
-
-							if (range.yMin != null) {
-								ranges.add(range);
-
-								range = new GEMFFile.GEMFRange();
-								range.zoom = zoom;
-								range.sourceIndex = sourceIndex.get(source);
-								range.xMin = xList.first();
-								range.xMax = xList.last();
-							}
-						}
-					}
-
-					if (range.yMin != null) {
-						ranges.add(range);
-					}
-				}
-			}
-		}
-
-
-		// Calculate size of header for computation of data offsets
-		int source_list_size = 0;
-		for (final String source: sourceIndex.keySet()) {
-			source_list_size += (U32_SIZE + U32_SIZE + source.length());
-		}
-
-		long offset =
-			U32_SIZE + // GEMF Version
-			U32_SIZE + // Tile size
-			U32_SIZE + // Number of sources
-			source_list_size +
-			ranges.size() * ((U32_SIZE * 6) + U64_SIZE) +
-			U32_SIZE; // Number of ranges
-
-		// Calculate offset for each range in the data set
-		for (final GEMFRange range: ranges) {
-			range.offset = offset;
-
-			for (int x = range.xMin; x < range.xMax + 1; ++x) {
-				for (int y = range.yMin; y < range.yMax + 1; ++y) {
-					offset += (U32_SIZE + U64_SIZE);
-				}
-			}
-		}
-
-		final long headerSize = offset;
-
-		RandomAccessFile gemfFile = new RandomAccessFile(pLocation, "rw");
-
-		// Write version header
-		gemfFile.writeInt(VERSION);
-
-		// Write file size header
-		gemfFile.writeInt(TILE_SIZE);
-
-		// Write number of sources
-		gemfFile.writeInt(sourceIndex.size());
-
-		// Write source list
-		for (final String source: sourceIndex.keySet()) {
-			gemfFile.writeInt(sourceIndex.get(source));
-			gemfFile.writeInt(source.length());
-			gemfFile.write(source.getBytes());
-		}
-
-		// Write number of ranges
-		gemfFile.writeInt(ranges.size());
-
-		// Write range objects
-		for (final GEMFRange range: ranges) {
-			gemfFile.writeInt(range.zoom);
-			gemfFile.writeInt(range.xMin);
-			gemfFile.writeInt(range.xMax);
-			gemfFile.writeInt(range.yMin);
-			gemfFile.writeInt(range.yMax);
-			gemfFile.writeInt(range.sourceIndex);
-			gemfFile.writeLong(range.offset);
-		}
-
-		// Write file offset list
-		for (final GEMFRange range: ranges) {
-			for (int x = range.xMin; x < range.xMax + 1; ++x) {
-				for (int y = range.yMin; y < range.yMax + 1; ++y) {
-					gemfFile.writeLong(offset);
-					final long fileSize = dirIndex.get(
-							indexSource.get(
-									range.sourceIndex)).get(range.zoom).get(x).get(y).length();
-					gemfFile.writeInt((int)fileSize);
-					offset += fileSize;
-				}
-			}
-		}
-
-		//
-		// Write tiles
-		//
-
-		final byte[] buf = new byte[FILE_COPY_BUFFER_SIZE];
-
-		long currentOffset = headerSize;
-		int fileIndex = 0;
-
-		for (final GEMFRange range: ranges) {
-			for (int x = range.xMin; x < range.xMax + 1; ++x) {
-				for (int y = range.yMin; y < range.yMax + 1; ++y) {
-
-					final long fileSize = dirIndex.get(
-							indexSource.get(range.sourceIndex)).get(range.zoom).get(x).get(y).length();
-
-					if (currentOffset + fileSize > FILE_SIZE_LIMIT) {
-						gemfFile.close();
-						++fileIndex;
-						gemfFile = new RandomAccessFile(pLocation + "-" + fileIndex, "rw");
-						currentOffset = 0;
-					} else {
-						currentOffset += fileSize;
-					}
-
-					final FileInputStream tile = new FileInputStream(
-							dirIndex.get(
-									indexSource.get(
-											range.sourceIndex)).get(range.zoom).get(x).get(y));
-
-					int read = tile.read(buf, 0, FILE_COPY_BUFFER_SIZE);
-					while (read != -1) {
-						gemfFile.write(buf, 0, read);
-						read = tile.read(buf, 0, FILE_COPY_BUFFER_SIZE);
-					}
-
-					tile.close();
-				}
+		final GEMFWriter writer = new GEMFWriter(pLocation);
+		try {
+			for (final File sourceDir: pSourceFolders) {
+				writer.addFolder(sourceDir, Runtime.getRuntime().availableProcessors());
 			}
+		} finally {
+			writer.close();
 		}
 
-		gemfFile.close();
-
 		// Complete construction of GEMFFile object
 		openFiles();
 		readHeader();
@@ -418,7 +138,7 @@ public class GEMFFile {
 	 * Close open GEMF file handles.
 	 */
 	public void close() throws IOException {
-		for (final RandomAccessFile file: mFiles) {
+		for (final GEMFPart file: mFiles) {
 			file.close();
 		}
 	}
@@ -428,20 +148,18 @@ public class GEMFFile {
 	 * Find all files composing this GEMF archive, open them as RandomAccessFile
 	 * and add to the mFiles list.
 	 */
-	private void openFiles() throws FileNotFoundException {
+	private void openFiles() throws IOException {
 		// Populate the mFiles array
 
 		final File base = new File(mLocation);
-		mFiles.add(new RandomAccessFile(base, "r"));
-		mFileNames.add(base.getPath());
+		mFiles.add(new GEMFPart(base));
 
 		int i = 0;
 		for(;;) {
 			i = i + 1;
 			final File nextFile = new File(mLocation + "-" + i);
 			if (nextFile.exists()) {
-				mFiles.add(new RandomAccessFile(nextFile, "r"));
-				mFileNames.add(nextFile.getPath());
+				mFiles.add(new GEMFPart(nextFile));
 			} else {
 				break;
 			}
@@ -453,12 +171,8 @@ public class GEMFFile {
 	 * Read header of archive, cache Ranges.
 	 */
 	private void readHeader() throws IOException {
-		final RandomAccessFile baseFile = mFiles.get(0);
-
-		// Get file sizes
-		for (final RandomAccessFile file : mFiles) {
-			mFileSizes.add(file.length());
-		}
+		final RandomAccessFile baseFile = mFiles.get(0).mFile;
+		baseFile.seek(0);
 
 		// Version
 		final int version = baseFile.readInt();
@@ -497,9 +211,33 @@ public class GEMFFile {
 			rs.sourceIndex = baseFile.readInt();
 			rs.offset = baseFile.readLong();
 			mRangeData.add(rs);
+			index(rs);
 		}
 	}
 
+	/*
+	 * Adds a range to the columns it covers. The ranges of a column keep the file order,
+	 * so that the first matching range is still the one used.
+	 */
+	private void index(final GEMFRange pRange) {
+		for (int x = pRange.xMin; x <= pRange.xMax; x++) {
+			final long key = getColumnKey(pRange.zoom, x);
+			final GEMFRange[] ranges = mRangesByColumn.get(key);
+			if (ranges == null) {
+				mRangesByColumn.put(key, new GEMFRange[] {pRange});
+			} else {
+				final GEMFRange[] extended = new GEMFRange[ranges.length + 1];
+				System.arraycopy(ranges, 0, extended, 0, ranges.length);
+				extended[ranges.length] = pRange;
+				mRangesByColumn.put(key, extended);
+			}
+		}
+	}
+
+	private static long getColumnKey(final int pZ, final int pX) {
+		return (((long) pZ) << 32) | (pX & 0xFFFFFFFFL);
+	}
+
 
 	// ===========================================================
 	// Public Methods
@@ -551,111 +289,95 @@ public class GEMFFile {
 		return zoomLevels;
 	}
 
+	/*
+	 * Return the tile ranges contained within this archive, as {zoom, xMin, xMax, yMin, yMax, source} arrays.
+	 *
+	 * @since 6.0.2
+	 */
+	public List<int[]> getRanges() {
+		final List<int[]> ranges = new ArrayList<int[]>(mRangeData.size());
+
+		for (final GEMFRange rs: mRangeData) {
+			ranges.add(new int[] {rs.zoom, rs.xMin, rs.xMax, rs.yMin, rs.yMax, rs.sourceIndex});
+		}
+
+		return ranges;
+	}
+
 	/*
 	 * Get an InputStream for the tile data specified by the Z/X/Y coordinates.
+	 * The stream reads the data from the memory mapped file, without any copy.
 	 *
 	 * @return InputStream of tile data, or null if not found.
 	 */
 	public InputStream getInputStream(final int pX, final int pY, final int pZ) {
-		GEMFRange range = null;
-
-		for (final GEMFRange rs: mRangeData)
-		{
-			if ((pZ == rs.zoom)
-					&& (pX >= rs.xMin)
-					&& (pX <= rs.xMax)
-					&& (pY >= rs.yMin)
-					&& (pY <= rs.yMax)
-					&& (( ! mSourceLimited) || (rs.sourceIndex == mCurrentSource))) {
-				range = rs;
-				break;
-			}
-		}
+		final ByteBuffer buffer = getByteBuffer(pX, pY, pZ);
+		return buffer == null ? null : new ByteBufferInputStream(buffer);
+	}
 
-		if (range == null)	{
+	/*
+	 * Get the tile data specified by the Z/X/Y coordinates, as a read-only slice of the memory
+	 * mapped file. Safe to call from several threads at once: each call gets its own buffer.
+	 *
+	 * @return the tile data between position and limit, or null if not found.
+	 * @since 6.0.2
+	 */
+	public ByteBuffer getByteBuffer(final int pX, final int pY, final int pZ) {
+		final GEMFRange range = findRange(pX, pY, pZ);
+		if (range == null) {
 			return null;
 		}
 
-		long dataOffset;
-		int dataLength;
-		InputStream returnValue=null;
-		GEMFInputStream stream=null;
-		ByteArrayOutputStream byteBuffer=null;
-		try	{
-
+		try {
 			// Determine offset to requested tile record in the header
 			final int numY = range.yMax + 1 - range.yMin;
 			final int xIndex = pX - range.xMin;
 			final int yIndex = pY - range.yMin;
-			long offset = (xIndex * numY) + yIndex;
+			long offset = (((long) xIndex) * numY) + yIndex;
 			offset *= (U32_SIZE + U64_SIZE);
 			offset += range.offset;
 
-
 			// Read tile record from header, get offset and size of data record
-			final RandomAccessFile baseFile = mFiles.get(0);
-			baseFile.seek(offset);
-			dataOffset = baseFile.readLong();
-			dataLength = baseFile.readInt();
-
-			// Seek to correct data file and offset.
-			RandomAccessFile pDataFile = mFiles.get(0);
-			int index = 0;
-			if (dataOffset > mFileSizes.get(0))	{
-				final int fileListCount = mFileSizes.size();
-
-				while ((index < (fileListCount - 1)) &&
-						(dataOffset > mFileSizes.get(index))) {
-
-					dataOffset -= mFileSizes.get(index);
-					index += 1;
-				}
-
-				pDataFile = mFiles.get(index);
+			final ByteBuffer record = mFiles.get(0).read(offset, U64_SIZE + U32_SIZE);
+			long dataOffset = record.getLong(record.position());
+			final int dataLength = record.getInt(record.position() + U64_SIZE);
+			if (dataLength == 0) {
+				// Hole in the range, as some writers use for missing tiles
+				return null;
 			}
 
-			// Read data block into a byte array
-			pDataFile.seek(dataOffset);
-
-			stream= new GEMFInputStream(mFileNames.get(index), dataOffset, dataLength);
-			// this dynamically extends to take the bytes you read
-			byteBuffer = new ByteArrayOutputStream();
-
-			// this is storage overwritten on each iteration with bytes
-			int bufferSize = 1024;
-			byte[] buffer = new byte[bufferSize];
-
-			// we need to know how may bytes were read to write them to the byteBuffer
-			int len = 0;
-			while (stream.available()>0)
-			{
-				len = stream.read(buffer);
-				if (len>0)
-					byteBuffer.write(buffer, 0, len);
+			// Find the data file of that offset
+			int index = 0;
+			while (index < mFiles.size() - 1 && dataOffset >= mFiles.get(index).mSize) {
+				dataOffset -= mFiles.get(index).mSize;
+				index++;
 			}
 
-			// and then we can return your byte array.
-			byte[] bits = byteBuffer.toByteArray();
-			returnValue= new ByteArrayInputStream(bits);
-
-		} catch (final java.io.IOException e) {
+			return mFiles.get(index).read(dataOffset, dataLength);
+		} catch (final IOException e) {
 			e.printStackTrace();
-		} finally {
-			if (byteBuffer!=null)
-				try {
-					byteBuffer.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			if (stream!=null)
-				try {
-					stream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			return null;
+		}
+	}
 
+	/*
+	 * @return the first range containing that tile, in the selected source if any
+	 */
+	private GEMFRange findRange(final int pX, final int pY, final int pZ) {
+		final GEMFRange[] ranges = mRangesByColumn.get(getColumnKey(pZ, pX));
+		if (ranges == null) {
+			return null;
 		}
-		return returnValue;
+		final boolean sourceLimited = mSourceLimited;
+		final int currentSource = mCurrentSource;
+		for (final GEMFRange rs : ranges) {
+			if ((pY >= rs.yMin)
+					&& (pY <= rs.yMax)
+					&& (( ! sourceLimited) || (rs.sourceIndex == currentSource))) {
+				return rs;
+			}
+		}
+		return null;
 	}
 
 
@@ -681,57 +403,105 @@ public class GEMFFile {
 		}
 	}
 
-	// InputStream class to hand to the tile loader system. It wants an InputStream, and it is more
-	// efficient to create a new open file handle pointed to the right place, than to buffer the file
-	// in memory.
-	class GEMFInputStream extends InputStream {
+	/*
+	 * A file of the archive, memory mapped by chunks of MAP_CHUNK_SIZE bytes.
+	 * If the mapping fails, e.g. for lack of address space, the file is read under a lock.
+	 */
+	private static class GEMFPart {
 
-		RandomAccessFile raf;
-		int remainingBytes;
+		final RandomAccessFile mFile;
+		final long mSize;
+		final ByteBuffer[] mChunks;
 
-		GEMFInputStream(final String filePath, final long offset, final int length) throws IOException {
-			this.raf = new RandomAccessFile(filePath, "r");
-			raf.seek(offset);
+		GEMFPart(final File pFile) throws IOException {
+			mFile = new RandomAccessFile(pFile, "r");
+			mSize = mFile.length();
+			mChunks = map(mFile.getChannel(), mSize);
+		}
 
-			this.remainingBytes = length;
+		private static ByteBuffer[] map(final FileChannel pChannel, final long pSize) {
+			final ByteBuffer[] result = new ByteBuffer[(int) ((pSize + MAP_CHUNK_SIZE - 1) / MAP_CHUNK_SIZE)];
+			try {
+				for (int i = 0; i < result.length; i++) {
+					final long position = ((long) i) * MAP_CHUNK_SIZE;
+					result[i] = pChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK_SIZE, pSize - position));
+				}
+				return result;
+			} catch (final IOException e) {
+				return null;
+			} catch (final OutOfMemoryError e) {
+				return null;
+			}
 		}
 
-		@Override
-		public int available() {
-			return remainingBytes;
+		/*
+		 * @return a read-only buffer of pLength bytes from pOffset, between position and limit
+		 */
+		ByteBuffer read(final long pOffset, final int pLength) throws IOException {
+			if (pOffset < 0 || pLength < 0 || pOffset + pLength > mSize) {
+				throw new IOException("Invalid data record: " + pOffset + "+" + pLength + " in " + mSize + " bytes");
+			}
+			if (mChunks != null) {
+				final int chunk = (int) (pOffset / MAP_CHUNK_SIZE);
+				final int position = (int) (pOffset % MAP_CHUNK_SIZE);
+				if (position + pLength <= mChunks[chunk].capacity()) {
+					// duplicate: the position and limit are not shared with the other threads
+					final ByteBuffer result = mChunks[chunk].duplicate();
+					result.limit(position + pLength);
+					result.position(position);
+					return result.slice().asReadOnlyBuffer();
+				}
+			}
+			// not mapped, or on two chunks
+			final byte[] data = new byte[pLength];
+			synchronized (mFile) {
+				mFile.seek(pOffset);
+				mFile.readFully(data);
+			}
+			return ByteBuffer.wrap(data).asReadOnlyBuffer();
 		}
 
-		@Override
-		public void close() throws IOException {
-			raf.close();
+		void close() throws IOException {
+			mFile.close();
+		}
+	}
+
+	/*
+	 * InputStream over the tile data, for the tile loader system
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer mBuffer;
+
+		ByteBufferInputStream(final ByteBuffer pBuffer) {
+			mBuffer = pBuffer;
 		}
 
 		@Override
-		public boolean markSupported() {
-			return false;
+		public int available() {
+			return mBuffer.remaining();
 		}
 
 		@Override
-		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
-			final int read = raf.read(buffer, offset, length > remainingBytes ? remainingBytes : length);
-
-			remainingBytes -= read;
-			return read;
+		public int read() {
+			return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
 		}
 
 		@Override
-		public int read() throws IOException {
-			if (remainingBytes > 0) {
-				remainingBytes--;
-				return raf.read();
-			} else {
-				throw new IOException("End of stream");
+		public int read(final byte[] pBuffer, final int pOffset, final int pLength) {
+			if (!mBuffer.hasRemaining()) {
+				return -1;
 			}
+			final int length = Math.min(pLength, mBuffer.remaining());
+			mBuffer.get(pBuffer, pOffset, length);
+			return length;
 		}
 
 		@Override
-		public long skip(final long byteCount) {
-			return 0;
+		public long skip(final long pByteCount) {
+			final int skipped = (int) Math.max(0, Math.min(pByteCount, mBuffer.remaining()));
+			mBuffer.position(mBuffer.position() + skipped);
+			return skipped;
 		}
 	}
 }
@@ -0,0 +1,524 @@
+package org.osmdroid.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming GEMF archive writer: the tiles are given one by one, in any order and from any thread
+ * (a folder, a database, a download...), and appended as they come. Only the ranges are kept in memory,
+ * as runs of Y per (source, zoom, X) column; the offset table is written by {@link #close()}.
+ *
+ * The first file of the archive only holds the header and the offset table, which size is only known
+ * at the end; the tile data goes to the additional files (&lt;basename&gt;-1, &lt;basename&gt;-2, ...).
+ *
+ * Do not reference any android specific code in this class, it is reused in the JRE
+ * Tile Packager
+ *
+ * @since 6.0.2
+ * @see GEMFFile
+ */
+public class GEMFWriter {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final long FILE_SIZE_LIMIT = 1 * 1024 * 1024 * 1024; // 1GB
+
+	private static final int VERSION = 4;
+	private static final int TILE_SIZE = 256;
+
+	private static final int U32_SIZE = 4;
+	private static final int U64_SIZE = 8;
+	private static final int RANGE_SIZE = U32_SIZE * 6 + U64_SIZE;
+	private static final int TABLE_ENTRY_SIZE = U64_SIZE + U32_SIZE;
+	// Memory mappings of the offset table, in whole table entries
+	private static final int TABLE_CHUNK_SIZE = TABLE_ENTRY_SIZE * (1 << 26);
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	// Path to first GEMF file (additional files as <basename>-1, <basename>-2, ...
+	private final String mLocation;
+
+	// Sources, by name, with their index
+	private final LinkedHashMap<String, Integer> mSources = new LinkedHashMap<String, Integer>();
+
+	// Runs of Y, by source, zoom and X, cf. getColumnKey
+	private final HashMap<Long, Column> mColumns = new HashMap<Long, Column>();
+
+	// Tile records (source, zoom, x, y, data position, length), read back by close()
+	private final File mIndexFile;
+	private final DataOutputStream mIndex;
+
+	// Current data file
+	private OutputStream mData;
+	private int mDataFileIndex;
+	private long mDataFileSize;
+	// Position in the concatenation of the data files
+	private long mDataPosition;
+
+	private int mTileCount;
+	private boolean mClosed;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pLocation
+	 * 		Path to first GEMF archive file. The existing archive files are replaced.
+	 */
+	public GEMFWriter(final String pLocation) throws IOException {
+		mLocation = pLocation;
+		mIndexFile = new File(pLocation + ".index");
+		mIndex = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mIndexFile), BUFFER_SIZE));
+	}
+
+	// ===========================================================
+	// Public Methods
+	// ===========================================================
+
+	/**
+	 * Appends a tile. Can be called from several threads: the tiles are written one at a time.
+	 * A tile given twice is stored twice, and the last one is used.
+	 */
+	public synchronized void addTile(final String pSource, final int pZoom, final int pX, final int pY,
+									 final byte[] pData, final int pLength) throws IOException {
+		if (mClosed) {
+			throw new IOException("GEMF archive already closed: " + mLocation);
+		}
+		if (pZoom < 0 || pZoom > 30 || pX < 0 || pX >= 1 << pZoom || pY < 0 || pY >= 1 << pZoom) {
+			throw new IllegalArgumentException("Invalid tile " + pZoom + "/" + pX + "/" + pY);
+		}
+		Integer source = mSources.get(pSource);
+		if (source == null) {
+			source = mSources.size();
+			mSources.put(pSource, source);
+		}
+
+		if (mData == null || (mDataFileSize > 0 && mDataFileSize + pLength > FILE_SIZE_LIMIT)) {
+			if (mData != null) {
+				mData.close();
+			}
+			++mDataFileIndex;
+			mData = new BufferedOutputStream(new FileOutputStream(mLocation + "-" + mDataFileIndex), BUFFER_SIZE);
+			mDataFileSize = 0;
+		}
+		mData.write(pData, 0, pLength);
+
+		mIndex.writeInt(source);
+		mIndex.writeInt(pZoom);
+		mIndex.writeInt(pX);
+		mIndex.writeInt(pY);
+		mIndex.writeLong(mDataPosition);
+		mIndex.writeInt(pLength);
+
+		final long key = getColumnKey(source, pZoom, pX);
+		Column column = mColumns.get(key);
+		if (column == null) {
+			column = new Column();
+			mColumns.put(key, column);
+		}
+		column.add(pY);
+
+		mDataFileSize += pLength;
+		mDataPosition += pLength;
+		mTileCount++;
+	}
+
+	public void addTile(final String pSource, final int pZoom, final int pX, final int pY, final byte[] pData) throws IOException {
+		addTile(pSource, pZoom, pX, pY, pData, pData.length);
+	}
+
+	/**
+	 * Adds the tiles of a folder laid out as zoom/x/y.extension, the name of the folder being
+	 * the name of the source. The tile files are read by pThreadCount threads, and the folders are
+	 * listed one at a time, never as a whole tree.
+	 */
+	public void addFolder(final File pFolder, final int pThreadCount) throws IOException {
+		final String source = pFolder.getName();
+		final AtomicReference<IOException> error = new AtomicReference<IOException>();
+		// the caller reads the files itself when the queue is full, instead of listing more of them
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(pThreadCount, pThreadCount, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(pThreadCount * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			for (final File zDir : listFiles(pFolder)) {
+				final int zoom = parseInt(zDir.getName());
+				if (zoom < 0 || !zDir.isDirectory()) {
+					continue;
+				}
+				for (final File xDir : listFiles(zDir)) {
+					final int x = parseInt(xDir.getName());
+					if (x < 0 || !xDir.isDirectory()) {
+						continue;
+					}
+					for (final File yFile : listFiles(xDir)) {
+						final String name = yFile.getName();
+						final int dot = name.indexOf('.');
+						final int y = parseInt(dot < 0 ? name : name.substring(0, dot));
+						if (y < 0) {
+							continue;
+						}
+						if (error.get() != null) {
+							throw error.get();
+						}
+						executor.execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									addTile(source, zoom, x, y, readFile(yFile));
+								} catch (final IOException e) {
+									error.compareAndSet(null, e);
+								}
+							}
+						});
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (error.get() != null) {
+			throw error.get();
+		}
+	}
+
+	public synchronized int getTileCount() {
+		return mTileCount;
+	}
+
+	/**
+	 * Computes the ranges, writes the header and the offset table, and deletes the temporary files
+	 */
+	public synchronized void close() throws IOException {
+		if (mClosed) {
+			return;
+		}
+		mClosed = true;
+		mIndex.close();
+		if (mData != null) {
+			mData.close();
+		}
+		deleteStaleDataFiles();
+
+		final List<Range> ranges = computeRanges();
+
+		// Header size, for computation of data offsets
+		final byte[][] sourceNames = new byte[mSources.size()][];
+		long tableOffset = U32_SIZE * 3; // Version, tile size, number of sources
+		for (final Map.Entry<String, Integer> source : mSources.entrySet()) {
+			sourceNames[source.getValue()] = source.getKey().getBytes("UTF-8");
+			tableOffset += U32_SIZE + U32_SIZE + sourceNames[source.getValue()].length;
+		}
+		tableOffset += U32_SIZE + ((long) ranges.size()) * RANGE_SIZE;
+		long headerSize = tableOffset;
+		for (final Range range : ranges) {
+			range.mOffset = headerSize;
+			headerSize += ((long) range.getTileCount()) * TABLE_ENTRY_SIZE;
+		}
+
+		final RandomAccessFile file = new RandomAccessFile(mLocation, "rw");
+		try {
+			file.setLength(0);
+			final DataOutputStream header = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file.getFD()), BUFFER_SIZE));
+			header.writeInt(VERSION);
+			header.writeInt(TILE_SIZE);
+			header.writeInt(mSources.size());
+			for (final Map.Entry<String, Integer> source : mSources.entrySet()) {
+				header.writeInt(source.getValue());
+				header.writeInt(sourceNames[source.getValue()].length);
+				header.write(sourceNames[source.getValue()]);
+			}
+			header.writeInt(ranges.size());
+			for (final Range range : ranges) {
+				header.writeInt(range.mZoom);
+				header.writeInt(range.mXMin);
+				header.writeInt(range.mXMax);
+				header.writeInt(range.mYMin);
+				header.writeInt(range.mYMax);
+				header.writeInt(range.mSource);
+				header.writeLong(range.mOffset);
+			}
+			header.flush();
+			file.setLength(headerSize);
+			writeOffsetTable(file.getChannel(), tableOffset, headerSize, ranges);
+		} finally {
+			file.close();
+			mIndexFile.delete();
+		}
+	}
+
+	// ===========================================================
+	// Private Methods
+	// ===========================================================
+
+	/*
+	 * Fills the offset table from the tile records, through memory mappings of the table
+	 */
+	private void writeOffsetTable(final FileChannel pChannel, final long pTableOffset, final long pHeaderSize,
+								  final List<Range> pRanges) throws IOException {
+		final HashMap<Long, List<Range>> rangesByColumn = new HashMap<Long, List<Range>>();
+		for (final Range range : pRanges) {
+			for (int x = range.mXMin; x <= range.mXMax; x++) {
+				final long key = getColumnKey(range.mSource, range.mZoom, x);
+				List<Range> list = rangesByColumn.get(key);
+				if (list == null) {
+					list = new ArrayList<Range>(1);
+					rangesByColumn.put(key, list);
+				}
+				list.add(range);
+			}
+		}
+
+		final ByteBuffer[] table = new ByteBuffer[(int) ((pHeaderSize - pTableOffset + TABLE_CHUNK_SIZE - 1) / TABLE_CHUNK_SIZE)];
+		for (int i = 0; i < table.length; i++) {
+			final long position = pTableOffset + ((long) i) * TABLE_CHUNK_SIZE;
+			table[i] = pChannel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(TABLE_CHUNK_SIZE, pHeaderSize - position));
+		}
+
+		final DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile), BUFFER_SIZE));
+		try {
+			while (true) {
+				final int source;
+				try {
+					source = index.readInt();
+				} catch (final EOFException e) {
+					break;
+				}
+				final int zoom = index.readInt();
+				final int x = index.readInt();
+				final int y = index.readInt();
+				final long dataPosition = index.readLong();
+				final int length = index.readInt();
+				for (final Range range : rangesByColumn.get(getColumnKey(source, zoom, x))) {
+					if (y < range.mYMin || y > range.mYMax) {
+						continue;
+					}
+					final long entry = range.mOffset - pTableOffset
+							+ (((long) (x - range.mXMin)) * (range.mYMax + 1 - range.mYMin) + (y - range.mYMin)) * TABLE_ENTRY_SIZE;
+					final ByteBuffer chunk = table[(int) (entry / TABLE_CHUNK_SIZE)];
+					final int position = (int) (entry % TABLE_CHUNK_SIZE);
+					// the data files come right after the first file, which is the header
+					chunk.putLong(position, pHeaderSize + dataPosition);
+					chunk.putInt(position + U64_SIZE, length);
+					break;
+				}
+			}
+		} finally {
+			index.close();
+		}
+		for (final ByteBuffer chunk : table) {
+			((MappedByteBuffer) chunk).force();
+		}
+	}
+
+	/*
+	 * Merges the identical runs of Y of contiguous columns into rectangles
+	 */
+	private List<Range> computeRanges() {
+		final List<Long> keys = new ArrayList<Long>(mColumns.keySet());
+		Collections.sort(keys);
+		final List<Range> result = new ArrayList<Range>();
+		// ranges that may still be extended to the next column, by first Y
+		final HashMap<Integer, Range> open = new HashMap<Integer, Range>();
+		long previousGroup = -1;
+		int previousX = -1;
+		for (final long key : keys) {
+			final long group = key >>> 32; // source and zoom
+			final int x = (int) key;
+			if (group != previousGroup || x != previousX + 1) {
+				open.clear();
+			}
+			final Column column = mColumns.get(key);
+			final HashMap<Integer, Range> next = new HashMap<Integer, Range>();
+			for (int i = 0; i < column.mCount; i++) {
+				final int yMin = column.mRuns[2 * i];
+				final int yMax = column.mRuns[2 * i + 1];
+				Range range = open.get(yMin);
+				if (range != null && range.mYMax == yMax) {
+					range.mXMax = x;
+				} else {
+					range = new Range((int) (group >>> 8), (int) (group & 0xFF), x, yMin, yMax);
+					result.add(range);
+				}
+				next.put(yMin, range);
+			}
+			open.clear();
+			open.putAll(next);
+			previousGroup = group;
+			previousX = x;
+		}
+		Collections.sort(result, new Comparator<Range>() {
+			@Override
+			public int compare(final Range pRange1, final Range pRange2) {
+				if (pRange1.mSource != pRange2.mSource) {
+					return pRange1.mSource < pRange2.mSource ? -1 : 1;
+				}
+				if (pRange1.mZoom != pRange2.mZoom) {
+					return pRange1.mZoom < pRange2.mZoom ? -1 : 1;
+				}
+				if (pRange1.mXMin != pRange2.mXMin) {
+					return pRange1.mXMin < pRange2.mXMin ? -1 : 1;
+				}
+				return pRange1.mYMin < pRange2.mYMin ? -1 : pRange1.mYMin == pRange2.mYMin ? 0 : 1;
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * The reader opens all the consecutive <basename>-N files: the ones of a previous archive must go
+	 */
+	private void deleteStaleDataFiles() {
+		int i = mDataFileIndex;
+		for(;;) {
+			i = i + 1;
+			final File file = new File(mLocation + "-" + i);
+			if (!file.exists()) {
+				break;
+			}
+			file.delete();
+		}
+	}
+
+	private static long getColumnKey(final int pSource, final int pZoom, final int pX) {
+		return (((long) pSource) << 40) | (((long) pZoom) << 32) | (pX & 0xFFFFFFFFL);
+	}
+
+	private static File[] listFiles(final File pDirectory) {
+		final File[] result = pDirectory.listFiles();
+		return result == null ? new File[0] : result;
+	}
+
+	/*
+	 * @return the positive int, or -1 if it's not one
+	 */
+	private static int parseInt(final String pString) {
+		try {
+			final int result = Integer.parseInt(pString);
+			return result < 0 ? -1 : result;
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static byte[] readFile(final File pFile) throws IOException {
+		final RandomAccessFile file = new RandomAccessFile(pFile, "r");
+		try {
+			final byte[] result = new byte[(int) file.length()];
+			file.readFully(result);
+			return result;
+		} finally {
+			file.close();
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/*
+	 * The Y of the tiles of a column, as sorted runs [yMin, yMax]
+	 */
+	private static class Column {
+		private int[] mRuns = new int[2];
+		private int mCount;
+
+		private void add(final int pY) {
+			// first run ending at pY - 1 or after
+			int low = 0;
+			int high = mCount;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (mRuns[2 * middle + 1] < pY - 1) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			final int i = low;
+			if (i < mCount && mRuns[2 * i] <= pY + 1) {
+				if (pY >= mRuns[2 * i] && pY <= mRuns[2 * i + 1]) {
+					return; // already there
+				}
+				if (pY == mRuns[2 * i + 1] + 1) {
+					mRuns[2 * i + 1] = pY;
+					// joins the next run?
+					if (i + 1 < mCount && mRuns[2 * (i + 1)] == pY + 1) {
+						mRuns[2 * i + 1] = mRuns[2 * (i + 1) + 1];
+						System.arraycopy(mRuns, 2 * (i + 2), mRuns, 2 * (i + 1), 2 * (mCount - i - 2));
+						mCount--;
+					}
+				} else {
+					mRuns[2 * i] = pY; // pY == yMin - 1
+				}
+				return;
+			}
+			if (2 * (mCount + 1) > mRuns.length) {
+				final int[] runs = new int[mRuns.length * 2];
+				System.arraycopy(mRuns, 0, runs, 0, 2 * mCount);
+				mRuns = runs;
+			}
+			System.arraycopy(mRuns, 2 * i, mRuns, 2 * (i + 1), 2 * (mCount - i));
+			mRuns[2 * i] = pY;
+			mRuns[2 * i + 1] = pY;
+			mCount++;
+		}
+	}
+
+	private static class Range {
+		private final int mSource;
+		private final int mZoom;
+		private final int mXMin;
+		private int mXMax;
+		private final int mYMin;
+		private final int mYMax;
+		private long mOffset;
+
+		private Range(final int pSource, final int pZoom, final int pX, final int pYMin, final int pYMax) {
+			mSource = pSource;
+			mZoom = pZoom;
+			mXMin = pX;
+			mXMax = pX;
+			mYMin = pYMin;
+			mYMax = pYMax;
+		}
+
+		private int getTileCount() {
+			return (mXMax + 1 - mXMin) * (mYMax + 1 - mYMin);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package org.osmdroid.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map with primitive `long` keys, typically map tile indices.
+ * Unlike a {@link java.util.HashMap} keyed by {@link Long}, it doesn't box keys
+ * and doesn't allocate an entry per mapping: the only allocations happen when the table grows.
+ * `null` values are not allowed, as a `null` value marks an empty slot.
+ * This class is not thread-safe.
+ * @since 6.0.2
+ */
+
+public class LongHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+    private int mMask;
+    private int mThreshold;
+
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param pInitialCapacity number of mappings the map can hold without growing
+     */
+    public LongHashMap(final int pInitialCapacity) {
+        allocate(getTableSize(pInitialCapacity));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(final long pKey) {
+        final int slot = find(pKey);
+        return slot < 0 ? null : (V) mValues[slot];
+    }
+
+    public boolean containsKey(final long pKey) {
+        return find(pKey) >= 0;
+    }
+
+    /**
+     * @return the previous value for that key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long pKey, final V pValue) {
+        if (pValue == null) {
+            throw new IllegalArgumentException("LongHashMap: null values are not allowed");
+        }
+        int slot = hash(pKey) & mMask;
+        while (mValues[slot] != null) {
+            if (mKeys[slot] == pKey) {
+                final V previous = (V) mValues[slot];
+                mValues[slot] = pValue;
+                return previous;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = pKey;
+        mValues[slot] = pValue;
+        if (++ mSize > mThreshold) {
+            rehash(mKeys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long pKey) {
+        int slot = find(pKey);
+        if (slot < 0) {
+            return null;
+        }
+        final V removed = (V) mValues[slot];
+        // backward shift deletion: no tombstones, so that lookups never degrade
+        int next = (slot + 1) & mMask;
+        while (mValues[next] != null) {
+            final int ideal = hash(mKeys[next]) & mMask;
+            if (((next - ideal) & mMask) >= ((next - slot) & mMask)) {
+                mKeys[slot] = mKeys[next];
+                mValues[slot] = mValues[next];
+                slot = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mValues[slot] = null;
+        mSize --;
+        return removed;
+    }
+
+    public void clear() {
+        if (mSize == 0) {
+            return;
+        }
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /**
+     * Copies all the keys into a list, without any allocation if the list is big enough
+     */
+    public void getKeys(final MapTileList pList) {
+        pList.ensureCapacity(mSize);
+        pList.clear();
+        for (int i = 0 ; i < mValues.length ; i ++) {
+            if (mValues[i] != null) {
+                pList.put(mKeys[i]);
+            }
+        }
+    }
+
+    /**
+     * Slot-based iteration, for callers that need both keys and values without allocation:
+     * loop from 0 to {@link #getSlotCount()} - 1 and skip the slots where
+     * {@link #getValueAt(int)} is null
+     */
+    public int getSlotCount() {
+        return mValues.length;
+    }
+
+    public long getKeyAt(final int pSlot) {
+        return mKeys[pSlot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValueAt(final int pSlot) {
+        return (V) mValues[pSlot];
+    }
+
+    private int find(final long pKey) {
+        int slot = hash(pKey) & mMask;
+        while (mValues[slot] != null) {
+            if (mKeys[slot] == pKey) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private void rehash(final int pTableSize) {
+        final long[] keys = mKeys;
+        final Object[] values = mValues;
+        allocate(pTableSize);
+        for (int i = 0 ; i < values.length ; i ++) {
+            if (values[i] == null) {
+                continue;
+            }
+            int slot = hash(keys[i]) & mMask;
+            while (mValues[slot] != null) {
+                slot = (slot + 1) & mMask;
+            }
+            mKeys[slot] = keys[i];
+            mValues[slot] = values[i];
+        }
+    }
+
+    private void allocate(final int pTableSize) {
+        mKeys = new long[pTableSize];
+        mValues = new Object[pTableSize];
+        mMask = pTableSize - 1;
+        mThreshold = (pTableSize >> 1) + (pTableSize >> 2); // load factor 0.75
+    }
+
+    /**
+     * @return the smallest power of 2 that can hold that number of mappings
+     */
+    private static int getTableSize(final int pCapacity) {
+        int result = MIN_CAPACITY;
+        while ((result >> 1) + (result >> 2) < pCapacity) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Tile indices are very regular (consecutive X and Y): we mix the bits before masking
+     */
+    private static int hash(final long pKey) {
+        long h = pKey * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+}
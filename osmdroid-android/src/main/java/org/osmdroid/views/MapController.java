@@ -337,6 +337,7 @@ public class MapController implements IMapController, OnFirstLayoutListener {
         }
         mMapView.setMultiTouchScaleInitPoint(xPixel, yPixel);
         mMapView.startAnimation();
+        mMapView.prefetchZoom(zoomLevel, xPixel, yPixel);
 
         float end = (float) Math.pow(2.0, zoomLevel - currentZoomLevel);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -396,6 +397,7 @@ public class MapController implements IMapController, OnFirstLayoutListener {
     protected void onAnimationEnd() {
         mMapView.mIsAnimating.set(false);
         mMapView.resetMultiTouchScale();
+        mMapView.finishZoomPrefetch();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
             mCurrentAnimator = null;
         } else { // Fix for issue 477
@@ -27,6 +27,7 @@ import org.osmdroid.tileprovider.util.SimpleInvalidationHandler;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.util.GeometryMath;
+import org.osmdroid.util.RectL;
 import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.overlay.DefaultOverlayManager;
 import org.osmdroid.views.overlay.Overlay;
@@ -77,6 +78,15 @@ public class MapView extends ViewGroup implements IMapView,
 	/** Handles map scrolling */
 	private final Scroller mScroller;
 	protected boolean mIsFlinging;
+	/**
+	 * @since 6.0.2
+	 */
+	private boolean mFlingPrefetch;
+	/**
+	 * @since 6.0.2
+	 */
+	private boolean mZoomPrefetch;
+	private int mZoomPrefetchTileZoomLevel;
 	/**
 	 * Set to true when the `Projection` actually adjusted the scroll values
 	 * Consequence: on this side effect, we must stop the flinging
@@ -455,6 +465,7 @@ public class MapView extends ViewGroup implements IMapView,
 			if (mScroller!=null)	//fix for edit mode in the IDE
 				mScroller.forceFinished(true);
 			mIsFlinging = false;
+			cancelFlingPrefetch();
 		}
 
 		// Get our current center point
@@ -1104,6 +1115,7 @@ public class MapView extends ViewGroup implements IMapView,
 					// One last scrollTo to get to the final destination
 					scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
 					mIsFlinging = false;
+					finishFlingPrefetch();
 				} else {
 					scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
 				}
@@ -1218,13 +1230,16 @@ public class MapView extends ViewGroup implements IMapView,
 	@Override
 	public void selectObject(final Object obj, final PointInfo pt) {
 		resetMultiTouchScale();
+		finishZoomPrefetch();
 	}
 
 	@Override
 	public boolean setPositionAndScale(final Object obj, final PositionAndScale aNewObjPosAndScale,
 			final PointInfo aTouchPoint) {
+		final double previousZoomLevel = getZoomLevelDouble();
 		setMultiTouchScaleCurrentPoint(aNewObjPosAndScale.getXOff(), aNewObjPosAndScale.getYOff());
 		setMultiTouchScale(aNewObjPosAndScale.getScale());
+		prefetchPinch(previousZoomLevel);
 		invalidate();
 		return true;
 	}
@@ -1395,6 +1410,124 @@ public class MapView extends ViewGroup implements IMapView,
 	public boolean isFlingEnabled(){
 		return enableFling;
 	}
+
+	/**
+	 * Requests the tiles around the final position of the fling that just started,
+	 * cf. {@link org.osmdroid.config.IConfigurationProvider#getTileFlingPrefetchBorder()}
+	 * @since 6.0.2
+	 */
+	private void prefetchFling() {
+		final int border = Configuration.getInstance().getTileFlingPrefetchBorder();
+		if (border < 0) {
+			return;
+		}
+		// the mercator viewport moves along with the map scroll
+		final RectL viewPort = getProjection().getMercatorViewPort(null);
+		final long dx = mScroller.getFinalX() - mScroller.getCurrX();
+		final long dy = mScroller.getFinalY() - mScroller.getCurrY();
+		viewPort.set(viewPort.left + dx, viewPort.top + dy, viewPort.right + dx, viewPort.bottom + dy);
+		mMapOverlay.prefetchTiles(getZoomLevelDouble(), viewPort, border);
+		mFlingPrefetch = true;
+		mZoomPrefetch = false;
+	}
+
+	/**
+	 * The fling was interrupted: its final position won't be displayed
+	 * @since 6.0.2
+	 */
+	private void cancelFlingPrefetch() {
+		if (mFlingPrefetch) {
+			mFlingPrefetch = false;
+			mMapOverlay.cancelPrefetch();
+		}
+	}
+
+	/**
+	 * The fling is over: the prefetched tiles that are not displayed are cancelled with the next frame
+	 * @since 6.0.2
+	 */
+	private void finishFlingPrefetch() {
+		if (mFlingPrefetch) {
+			mFlingPrefetch = false;
+			mMapOverlay.finishPrefetch();
+		}
+	}
+
+	/**
+	 * Requests the tiles of the viewport at the end of a zoom, while the zoom is still animated.
+	 * They go through the normal request queue, after the displayed tiles.
+	 * @param pZoomLevel Target zoom level
+	 * @param pPivotX    Screen coordinates of the point that doesn't move during the zoom
+	 * @since 6.0.2
+	 */
+	void prefetchZoom(final double pZoomLevel, final float pPivotX, final float pPivotY) {
+		final Projection projection = getProjection();
+		final Point pivot = projection.unrotateAndScalePoint((int) pPivotX, (int) pPivotY, null);
+		final long pivotX = projection.getMercatorXFromPixel(pivot.x);
+		final long pivotY = projection.getMercatorYFromPixel(pivot.y);
+		// the pivot stays on the same screen pixel, and screen pixels are mercator pixels at any zoom level
+		final double scale = Math.pow(2, pZoomLevel - getZoomLevelDouble());
+		final long dx = Math.round(pivotX * scale) - pivotX;
+		final long dy = Math.round(pivotY * scale) - pivotY;
+		final RectL viewPort = projection.getMercatorViewPort(null);
+		viewPort.set(viewPort.left + dx, viewPort.top + dy, viewPort.right + dx, viewPort.bottom + dy);
+		mMapOverlay.prefetchTiles(pZoomLevel, viewPort, 0);
+		mZoomPrefetch = true;
+		mZoomPrefetchTileZoomLevel = TileSystem.getInputTileZoomLevel(pZoomLevel);
+		mFlingPrefetch = false;
+	}
+
+	/**
+	 * Requests the tiles of the next zoom level in the direction of the pinch.
+	 * When the pinch goes the other way, they are replaced by the tiles of the zoom level on that side.
+	 * @param pPreviousZoomLevel Zoom level before the last pinch move
+	 * @since 6.0.2
+	 */
+	private void prefetchPinch(final double pPreviousZoomLevel) {
+		final double zoomLevel = getZoomLevelDouble();
+		if (zoomLevel == pPreviousZoomLevel || mMultiTouchScaleCurrentPoint == null) {
+			return;
+		}
+		final int tileZoomLevel = TileSystem.getInputTileZoomLevel(zoomLevel);
+		final double targetZoomLevel;
+		if (zoomLevel > pPreviousZoomLevel) {
+			targetZoomLevel = tileZoomLevel + 1;
+		} else {
+			// just below the current tile zoom level, where the tiles of the level below are used
+			targetZoomLevel = Math.nextAfter((double) tileZoomLevel, Double.NEGATIVE_INFINITY);
+		}
+		if (targetZoomLevel > getMaxZoomLevel() || targetZoomLevel < getMinZoomLevel()) {
+			cancelZoomPrefetch();
+			return;
+		}
+		if (mZoomPrefetch && mZoomPrefetchTileZoomLevel == TileSystem.getInputTileZoomLevel(targetZoomLevel)) {
+			return;
+		}
+		prefetchZoom(targetZoomLevel, mMultiTouchScaleCurrentPoint.x, mMultiTouchScaleCurrentPoint.y);
+	}
+
+	/**
+	 * The pinch went beyond the zoom limits: no other zoom level will be displayed
+	 * @since 6.0.2
+	 */
+	private void cancelZoomPrefetch() {
+		if (mZoomPrefetch) {
+			mZoomPrefetch = false;
+			mMapOverlay.cancelPrefetch();
+		}
+	}
+
+	/**
+	 * The zoom animation or the pinch is over. The tiles of the new zoom level are not drawn yet:
+	 * the prefetched tiles that are not displayed are cancelled with the next frame
+	 * @since 6.0.2
+	 */
+	void finishZoomPrefetch() {
+		if (mZoomPrefetch) {
+			mZoomPrefetch = false;
+			mMapOverlay.finishPrefetch();
+		}
+	}
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
@@ -1409,6 +1542,7 @@ public class MapView extends ViewGroup implements IMapView,
 				if (mScroller!=null)	//fix for edit mode in the IDE
 					mScroller.abortAnimation();
 				mIsFlinging = false;
+				cancelFlingPrefetch();
 			}
 
 			if (MapView.this.getOverlayManager().onDown(e, MapView.this)) {
@@ -1442,6 +1576,7 @@ public class MapView extends ViewGroup implements IMapView,
 			if (mScroller!=null) {  //fix for edit mode in the IDE
 				mScroller.fling((int) getMapScrollX(), (int) getMapScrollY(), (int) -velocityX,
 						(int) -velocityY, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+				prefetchFling();
 			}
 			return true;
 		}
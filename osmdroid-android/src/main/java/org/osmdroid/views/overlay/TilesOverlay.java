@@ -12,6 +12,7 @@ import org.osmdroid.util.MapTileList;
 import org.osmdroid.util.RectL;
 import org.osmdroid.util.MapTileIndex;
 import org.osmdroid.util.TileLooper;
+import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.Projection;
 
@@ -194,6 +195,10 @@ public class TilesOverlay extends Overlay implements IOverlayMenuProvider {
 	 */
 	public void drawTiles(final Canvas c, final Projection projection, final double zoomLevel, final RectL viewPort) {
 		mProjection = projection;
+		final double tileSize = TileSystem.getTileSize(zoomLevel);
+		mTileProvider.setViewport(TileSystem.getInputTileZoomLevel(zoomLevel),
+				(viewPort.left + viewPort.right) / 2. / tileSize,
+				(viewPort.top + viewPort.bottom) / 2. / tileSize);
 		mTileLooper.loop(zoomLevel, viewPort, c);
 	}
 
@@ -295,6 +300,7 @@ public class TilesOverlay extends Overlay implements IOverlayMenuProvider {
 		@Override
 		public void finaliseLoop() {
 			getTileCache().garbageCollection();
+			mTileProvider.setWantedTiles(getTileCache().getMapTileList());
 		}
 
 		private MapTileCache getTileCache() {
@@ -302,7 +308,86 @@ public class TilesOverlay extends Overlay implements IOverlayMenuProvider {
 		}
 	}
 
+	/**
+	 * Collects the tiles to be prefetched
+	 * @since 6.0.2
+	 */
+	protected class PrefetchTileLooper extends TileLooper {
+
+		private final MapTileList mMapTileList = new MapTileList();
+
+		@Override
+		public void loop(final double pZoomLevel, final RectL pMercatorViewPort) {
+			super.loop(pZoomLevel, pMercatorViewPort);
+		}
+
+		@Override
+		public void initialiseLoop() {
+			mMapTileList.clear();
+		}
+
+		@Override
+		public void handleTile(final long pMapTileIndex, int pX, int pY) {
+			mMapTileList.put(pMapTileIndex);
+		}
+
+		@Override
+		public void finaliseLoop() {
+			mTileProvider.setPrefetchTiles(mMapTileList);
+		}
+
+		public void cancel() {
+			mMapTileList.clear();
+			mTileProvider.setPrefetchTiles(mMapTileList);
+		}
+
+		/**
+		 * @since 6.0.2
+		 */
+		public void finish() {
+			mMapTileList.clear();
+			mTileProvider.finishPrefetch();
+		}
+	}
+
+	/**
+	 * Requests in advance the tiles of a viewport that will probably be displayed soon,
+	 * e.g. at the end of a fling, after the displayed tiles
+	 * (cf. {@link MapTileProviderBase#setPrefetchTiles(MapTileList)}).
+	 * Replaces the previous prefetch.
+	 * @param pZoomLevel        Zoom level of the future viewport
+	 * @param pMercatorViewPort Future viewport, in mercator pixels at that zoom level
+	 * @param pBorder           Number of rows and columns of tiles to be added around the viewport
+	 * @since 6.0.2
+	 */
+	public void prefetchTiles(final double pZoomLevel, final RectL pMercatorViewPort, final int pBorder) {
+		final long border = Math.round(pBorder * TileSystem.getTileSize(pZoomLevel));
+		mPrefetchViewPort.set(pMercatorViewPort.left - border, pMercatorViewPort.top - border,
+				pMercatorViewPort.right + border, pMercatorViewPort.bottom + border);
+		mPrefetchTileLooper.loop(pZoomLevel, mPrefetchViewPort);
+	}
+
+	/**
+	 * Cancels the requests of the last {@link #prefetchTiles(double, RectL, int)}
+	 * for the tiles that are not displayed
+	 * @since 6.0.2
+	 */
+	public void cancelPrefetch() {
+		mPrefetchTileLooper.cancel();
+	}
+
+	/**
+	 * Ends the last {@link #prefetchTiles(double, RectL, int)} without cancelling its requests,
+	 * cf. {@link MapTileProviderBase#finishPrefetch()}
+	 * @since 6.0.2
+	 */
+	public void finishPrefetch() {
+		mPrefetchTileLooper.finish();
+	}
+
 	private final CacheTileLooper mCacheTileLooper = new CacheTileLooper();
+	private final PrefetchTileLooper mPrefetchTileLooper = new PrefetchTileLooper();
+	private final RectL mPrefetchViewPort = new RectL();
 	private final OverlayTileLooper mTileLooper = new OverlayTileLooper();
 	private final Rect mIntersectionRect = new Rect();
 
@@ -500,6 +585,7 @@ public class TilesOverlay extends Overlay implements IOverlayMenuProvider {
 		this.horizontalWrapEnabled = horizontalWrapEnabled;
 		this.mTileLooper.setHorizontalWrapEnabled(horizontalWrapEnabled);
 		this.mCacheTileLooper.setHorizontalWrapEnabled(horizontalWrapEnabled);
+		this.mPrefetchTileLooper.setHorizontalWrapEnabled(horizontalWrapEnabled);
 	}
 
 	public boolean isVerticalWrapEnabled() {
@@ -510,5 +596,6 @@ public class TilesOverlay extends Overlay implements IOverlayMenuProvider {
 		this.verticalWrapEnabled = verticalWrapEnabled;
 		this.mTileLooper.setVerticalWrapEnabled(verticalWrapEnabled);
 		this.mCacheTileLooper.setVerticalWrapEnabled(verticalWrapEnabled);
+		this.mPrefetchTileLooper.setVerticalWrapEnabled(verticalWrapEnabled);
 	}
 }
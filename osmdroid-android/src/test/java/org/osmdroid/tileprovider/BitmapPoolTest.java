@@ -0,0 +1,116 @@
+package org.osmdroid.tileprovider;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.drawable.Drawable;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Unit tests related to the recycle queue of {@link BitmapPool}
+ * @since 6.0.2
+ */
+
+public class BitmapPoolTest {
+
+    @Test
+    public void testAsyncRecycleQueues() {
+        final ManualExecutor executor = new ManualExecutor();
+        final RecordingPool pool = new RecordingPool(executor);
+        final Drawable drawable1 = getDrawable();
+        final Drawable drawable2 = getDrawable();
+        pool.asyncRecycle(drawable1);
+        pool.asyncRecycle(drawable2);
+        pool.asyncRecycle(null);
+        // queued, with a single drain task for all of them
+        Assert.assertTrue(pool.mRecycled.isEmpty());
+        Assert.assertEquals(1, executor.mTasks.size());
+
+        executor.runAll();
+        Assert.assertEquals(2, pool.mRecycled.size());
+        Assert.assertSame(drawable1, pool.mRecycled.get(0));
+        Assert.assertSame(drawable2, pool.mRecycled.get(1));
+
+        // a new task once the previous one is done
+        pool.asyncRecycle(drawable1);
+        Assert.assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+        Assert.assertEquals(3, pool.mRecycled.size());
+    }
+
+    @Test
+    public void testDrainRecycleQueue() {
+        final ManualExecutor executor = new ManualExecutor();
+        final RecordingPool pool = new RecordingPool(executor);
+        for (int i = 0 ; i < 10 ; i ++) {
+            pool.asyncRecycle(getDrawable());
+        }
+        Assert.assertTrue(pool.mRecycled.isEmpty());
+        pool.drainRecycleQueue();
+        Assert.assertEquals(10, pool.mRecycled.size());
+
+        // nothing left for the scheduled task
+        executor.runAll();
+        Assert.assertEquals(10, pool.mRecycled.size());
+    }
+
+    /**
+     * Runs the tasks only when asked to
+     */
+    private static class ManualExecutor implements Executor {
+
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(final Runnable pRunnable) {
+            mTasks.add(pRunnable);
+        }
+
+        private void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingPool extends BitmapPool {
+
+        private final List<Drawable> mRecycled = new ArrayList<>();
+
+        private RecordingPool(final Executor pExecutor) {
+            super(pExecutor);
+        }
+
+        @Override
+        public void syncRecycle(final Drawable pDrawable) {
+            mRecycled.add(pDrawable);
+        }
+    }
+
+    private Drawable getDrawable() {
+        return new Drawable() {
+            @Override
+            public void draw(Canvas canvas) {
+            }
+
+            @Override
+            public void setAlpha(int alpha) {
+            }
+
+            @Override
+            public void setColorFilter(ColorFilter colorFilter) {
+            }
+
+            @Override
+            public int getOpacity() {
+                return 0;
+            }
+        };
+    }
+}
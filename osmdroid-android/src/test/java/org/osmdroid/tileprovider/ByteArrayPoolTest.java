@@ -0,0 +1,115 @@
+package org.osmdroid.tileprovider;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Unit tests related to {@link ByteArrayPool}
+ * @since 6.0.2
+ */
+
+public class ByteArrayPoolTest {
+
+    @Test
+    public void testReuse() {
+        final ByteArrayPool pool = new ByteArrayPool();
+        final byte[] array = pool.obtain(5000);
+        Assert.assertEquals(8192, array.length);
+        Assert.assertEquals(0, pool.getHitCount());
+        pool.release(array);
+        Assert.assertEquals(8192, pool.getBytes());
+        Assert.assertSame(array, pool.obtain(6000));
+        Assert.assertEquals(1, pool.getHitCount());
+        Assert.assertEquals(0, pool.getBytes());
+        Assert.assertNotSame(array, pool.obtain(6000));
+    }
+
+    @Test
+    public void testForeignArraysIgnored() {
+        final ByteArrayPool pool = new ByteArrayPool();
+        pool.release(new byte[5000]);
+        pool.release(new byte[4 * 1024 * 1024]);
+        Assert.assertEquals(0, pool.getBytes());
+        Assert.assertEquals(3 * 1024 * 1024, pool.obtain(3 * 1024 * 1024).length);
+    }
+
+    @Test
+    public void testMaxBytes() {
+        final ByteArrayPool pool = new ByteArrayPool();
+        pool.setMaxBytes(10000);
+        final byte[] array1 = pool.obtain(4096);
+        final byte[] array2 = pool.obtain(4096);
+        final byte[] array3 = pool.obtain(4096);
+        pool.release(array1);
+        pool.release(array2);
+        pool.release(array3);
+        Assert.assertEquals(8192, pool.getBytes());
+        pool.setMaxBytes(4096);
+        Assert.assertEquals(4096, pool.getBytes());
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final ByteArrayPool pool = new ByteArrayPool();
+        for (final int size : new int[] {0, 1, 4095, 4096, 4097, 100000}) {
+            final byte[] data = new byte[size];
+            for (int i = 0 ; i < size ; i ++) {
+                data[i] = (byte) i;
+            }
+            for (final int expected : new int[] {-1, 0, size / 2, size}) {
+                final int[] length = new int[1];
+                final byte[] buffer = pool.read(new SlowInputStream(data), expected, length);
+                Assert.assertEquals(size, length[0]);
+                for (int i = 0 ; i < size ; i ++) {
+                    Assert.assertEquals(data[i], buffer[i]);
+                }
+                pool.release(buffer);
+            }
+        }
+    }
+
+    @Test
+    public void testReadWithContentLength() throws IOException {
+        final ByteArrayPool pool = new ByteArrayPool();
+        final int[] length = new int[1];
+        pool.release(pool.read(new ByteArrayInputStream(new byte[10000]), 10000, length));
+        final long misses = pool.getMissCount();
+        for (int i = 0 ; i < 100 ; i ++) {
+            pool.release(pool.read(new ByteArrayInputStream(new byte[10000]), 10000, length));
+        }
+        Assert.assertEquals(misses, pool.getMissCount());
+    }
+
+    /**
+     * Returns the data in small chunks, like a network stream
+     */
+    private static class SlowInputStream extends InputStream {
+        private final byte[] mData;
+        private int mPosition;
+
+        private SlowInputStream(final byte[] pData) {
+            mData = pData;
+        }
+
+        @Override
+        public int read() {
+            return mPosition < mData.length ? mData[mPosition ++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] pBuffer, final int pOffset, final int pLength) {
+            if (mPosition == mData.length) {
+                return -1;
+            }
+            final int length = Math.min(Math.min(pLength, 1000), mData.length - mPosition);
+            System.arraycopy(mData, mPosition, pBuffer, pOffset, length);
+            mPosition += length;
+            return length;
+        }
+    }
+}
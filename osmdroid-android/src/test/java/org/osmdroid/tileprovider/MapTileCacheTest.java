@@ -84,6 +84,137 @@ public class MapTileCacheTest {
         Assert.assertEquals(0, mapTileCache.getSize());
     }
 
+    /**
+     * @since 6.0.2
+     */
+    @Test
+    public void testMaximumBytes() {
+        final Drawable small = getNonNullDrawable();
+        final Drawable big = getNonNullDrawable();
+        final int smallBytes = 256 * 256 * 2;
+        final int bigBytes = 512 * 512 * 4;
+        final int count = 20;
+        final long maximumBytes = 10L * smallBytes + 2L * bigBytes;
+        final MapTileCache mapTileCache = new MapTileCache(1) {
+            @Override
+            protected int getByteCount(final Drawable pDrawable) {
+                return pDrawable == big ? bigBytes : smallBytes;
+            }
+        };
+        mapTileCache.setMaximumBytes(maximumBytes);
+        final MapTileList mapTileList = mapTileCache.getMapTileList();
+
+        for (int i = 0 ; i < count ; i ++) {
+            mapTileCache.putTile(getMapTileIndex(i), i < count / 2 ? small : big);
+        }
+        Assert.assertEquals(count, mapTileCache.getSize());
+        Assert.assertEquals(count / 2 * (smallBytes + bigBytes), mapTileCache.getBytes());
+
+        // replacing a tile: the byte count is updated
+        mapTileCache.putTile(getMapTileIndex(0), big);
+        Assert.assertEquals(count / 2 * (smallBytes + bigBytes) + bigBytes - smallBytes, mapTileCache.getBytes());
+        mapTileCache.putTile(getMapTileIndex(0), small);
+
+        // the tile count capacity is ignored: only the bytes matter; displayed tiles are kept
+        mapTileList.clear();
+        mapTileList.put(getMapTileIndex(count - 1));
+        mapTileCache.garbageCollection();
+        Assert.assertTrue(mapTileCache.getBytes() <= maximumBytes);
+        Assert.assertNotNull(mapTileCache.getMapTile(getMapTileIndex(count - 1)));
+        Assert.assertTrue(mapTileCache.getSize() > 1);
+
+        // all tiles displayed: nothing is removed, even above the budget
+        final int size = mapTileCache.getSize();
+        for (int i = 0 ; i < count ; i ++) {
+            mapTileCache.putTile(getMapTileIndex(i), big);
+            mapTileList.put(getMapTileIndex(i));
+        }
+        mapTileCache.garbageCollection();
+        Assert.assertEquals(count, mapTileCache.getSize());
+        Assert.assertEquals(count * bigBytes, mapTileCache.getBytes());
+        Assert.assertTrue(size < count);
+
+        mapTileCache.clear();
+        Assert.assertEquals(0, mapTileCache.getBytes());
+    }
+
+    /**
+     * Replays pan and zoom sessions and compares the hit rate of the scored eviction
+     * with the hit rate of an eviction in no specific order (the previous behavior)
+     * @since 6.0.2
+     */
+    @Test
+    public void testEvictionHitRate() {
+        final int viewportWidth = 5;
+        final int viewportHeight = 4;
+        final int capacity = 3 * viewportWidth * viewportHeight;
+
+        // session: pan east one tile at a time, then pan back west
+        final int zoom = 12;
+        final int startX = 1000;
+        final int startY = 1500;
+        final int panLength = 15;
+        final MapTileList frames = new MapTileList(); // the top-left tile of each frame
+        for (int i = 0 ; i <= panLength ; i ++) {
+            frames.put(MapTileIndex.getTileIndex(zoom, startX + i, startY));
+        }
+        for (int i = panLength ; i >= 0 ; i --) {
+            frames.put(MapTileIndex.getTileIndex(zoom, startX + i, startY));
+        }
+        // session: zoom in 3 levels on the same area, and zoom out back
+        for (int i = 1 ; i <= 3 ; i ++) {
+            frames.put(MapTileIndex.getTileIndex(zoom + i, startX << i, startY << i));
+        }
+        for (int i = 2 ; i >= 0 ; i --) {
+            frames.put(MapTileIndex.getTileIndex(zoom + i, startX << i, startY << i));
+        }
+
+        final MapTileCache scored = new MapTileCache(capacity);
+        final MapTileCache unordered = new MapTileCache(capacity) {
+            @Override
+            protected float getEvictionScore(final long pMapTileIndex, final int pAge) {
+                return 0;
+            }
+        };
+        final double scoredHitRate = replay(scored, frames, viewportWidth, viewportHeight);
+        final double unorderedHitRate = replay(unordered, frames, viewportWidth, viewportHeight);
+        Assert.assertTrue("Hit rate: " + scoredHitRate + " with scored eviction, "
+                + unorderedHitRate + " with unordered eviction", scoredHitRate > unorderedHitRate);
+    }
+
+    /**
+     * @return the hit rate of the cache for all the tiles displayed in the frames
+     */
+    private double replay(final MapTileCache pMapTileCache, final MapTileList pFrames,
+                          final int pWidth, final int pHeight) {
+        final Drawable drawable = getNonNullDrawable();
+        final MapTileList mapTileList = pMapTileCache.getMapTileList();
+        int hits = 0;
+        int lookups = 0;
+        for (int i = 0 ; i < pFrames.getSize() ; i ++) {
+            final long topLeft = pFrames.get(i);
+            final int zoom = MapTileIndex.getZoom(topLeft);
+            mapTileList.clear();
+            for (int x = 0 ; x < pWidth ; x ++) {
+                for (int y = 0 ; y < pHeight ; y ++) {
+                    mapTileList.put(MapTileIndex.getTileIndex(
+                            zoom, MapTileIndex.getX(topLeft) + x, MapTileIndex.getY(topLeft) + y));
+                }
+            }
+            for (int j = 0 ; j < mapTileList.getSize() ; j ++) {
+                final long index = mapTileList.get(j);
+                lookups ++;
+                if (pMapTileCache.getMapTile(index) != null) {
+                    hits ++;
+                } else {
+                    pMapTileCache.putTile(index, drawable);
+                }
+            }
+            pMapTileCache.garbageCollection();
+        }
+        return hits / (double) lookups;
+    }
+
     private long getMapTileIndex(final int pIndex) {
         final int zoom = 10;
         return MapTileIndex.getTileIndex(zoom, pIndex, pIndex);
@@ -0,0 +1,187 @@
+package org.osmdroid.tileprovider;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests related to the wanted and prefetched tiles of {@link MapTileProviderArray}
+ * @since 6.0.2
+ */
+
+public class MapTileProviderArrayTest {
+
+    private static final long DISPLAYED = MapTileIndex.getTileIndex(10, 100, 200);
+    private static final long PREFETCHED_1 = MapTileIndex.getTileIndex(11, 200, 400);
+    private static final long PREFETCHED_2 = MapTileIndex.getTileIndex(11, 201, 400);
+
+    /**
+     * A module provider that records the requests and the cancellations instead of loading tiles
+     */
+    private static class TestModuleProvider extends MapTileModuleProviderBase {
+
+        private final List<MapTileRequestState> mRequests = new ArrayList<>();
+        private final List<LongHashMap<?>> mCancellations = new ArrayList<>();
+
+        private TestModuleProvider() {
+            super(1, 40);
+        }
+
+        @Override
+        protected String getName() {
+            return "Test";
+        }
+
+        @Override
+        protected String getThreadGroupName() {
+            return "test";
+        }
+
+        @Override
+        public TileLoader getTileLoader() {
+            return null;
+        }
+
+        @Override
+        public boolean getUsesDataConnection() {
+            return false;
+        }
+
+        @Override
+        public int getMinimumZoomLevel() {
+            return 0;
+        }
+
+        @Override
+        public int getMaximumZoomLevel() {
+            return 20;
+        }
+
+        @Override
+        public void setTileSource(ITileSource tileSource) {}
+
+        @Override
+        public void loadMapTileAsync(final MapTileRequestState pState) {
+            mRequests.add(pState);
+        }
+
+        @Override
+        public void cancelUnwantedTiles(final LongHashMap<?> pWantedTiles) {
+            final LongHashMap<Boolean> wanted = new LongHashMap<>();
+            for (int i = 0 ; i < pWantedTiles.getSlotCount() ; i ++) {
+                if (pWantedTiles.getValueAt(i) != null) {
+                    wanted.put(pWantedTiles.getKeyAt(i), Boolean.TRUE);
+                }
+            }
+            mCancellations.add(wanted);
+        }
+    }
+
+    /**
+     * When a zoom ends, the tiles of the new zoom level are not displayed yet:
+     * their requests must survive until the next frame tells which tiles are wanted
+     */
+    @Test
+    public void testFinishPrefetch() {
+        final TestModuleProvider module = new TestModuleProvider();
+        final MapTileProviderArray provider = new MapTileProviderArray(null, null, new MapTileModuleProviderBase[]{module});
+        try {
+            provider.setWantedTiles(getList(DISPLAYED));
+            Assert.assertEquals(1, module.mCancellations.size());
+
+            provider.setPrefetchTiles(getList(PREFETCHED_1, PREFETCHED_2));
+            Assert.assertEquals(2, module.mRequests.size());
+            Assert.assertTrue(module.mRequests.get(0).isPrefetch());
+            Assert.assertEquals(2, module.mCancellations.size());
+
+            provider.finishPrefetch();
+            Assert.assertEquals(2, module.mCancellations.size());
+
+            // first frame at the new zoom level: only the prefetched tiles that are not displayed are cancelled
+            provider.setWantedTiles(getList(PREFETCHED_1));
+            Assert.assertEquals(3, module.mCancellations.size());
+            final LongHashMap<?> wanted = module.mCancellations.get(2);
+            Assert.assertEquals(1, wanted.size());
+            Assert.assertTrue(wanted.containsKey(PREFETCHED_1));
+        } finally {
+            provider.detach();
+        }
+    }
+
+    /**
+     * When a fling is interrupted, the prefetched tiles that are not displayed are cancelled at once
+     */
+    @Test
+    public void testCancelPrefetch() {
+        final TestModuleProvider module = new TestModuleProvider();
+        final MapTileProviderArray provider = new MapTileProviderArray(null, null, new MapTileModuleProviderBase[]{module});
+        try {
+            provider.setWantedTiles(getList(DISPLAYED));
+            provider.setPrefetchTiles(getList(PREFETCHED_1, PREFETCHED_2));
+            Assert.assertEquals(2, module.mCancellations.size());
+
+            provider.setPrefetchTiles(new MapTileList());
+            Assert.assertEquals(3, module.mCancellations.size());
+            final LongHashMap<?> wanted = module.mCancellations.get(2);
+            Assert.assertEquals(1, wanted.size());
+            Assert.assertTrue(wanted.containsKey(DISPLAYED));
+        } finally {
+            provider.detach();
+        }
+    }
+
+    /**
+     * A tile displayed again while its cancelled request is still in progress
+     * is requested again when the cancelled request ends
+     */
+    @Test
+    public void testRequestAgainAfterCancel() {
+        final TestModuleProvider module = new TestModuleProvider();
+        final MapTileProviderArray provider = new MapTileProviderArray(null, null, new MapTileModuleProviderBase[]{module});
+        try {
+            provider.setWantedTiles(getList(DISPLAYED));
+            Assert.assertNull(provider.getMapTile(DISPLAYED));
+            Assert.assertEquals(1, module.mRequests.size());
+            final MapTileRequestState cancelled = module.mRequests.get(0);
+
+            // the tile is scrolled away while being loaded, then displayed again
+            provider.setWantedTiles(getList(PREFETCHED_1));
+            cancelled.cancel();
+            provider.setWantedTiles(getList(DISPLAYED));
+            Assert.assertNull(provider.getMapTile(DISPLAYED));
+            Assert.assertEquals(1, module.mRequests.size());
+
+            // the loading of the cancelled request ends
+            provider.mapTileRequestFailed(cancelled);
+            Assert.assertEquals(2, module.mRequests.size());
+            final MapTileRequestState state = module.mRequests.get(1);
+            Assert.assertEquals(DISPLAYED, state.getMapTile());
+            Assert.assertFalse(state.isCancelled());
+            Assert.assertFalse(state.isPrefetch());
+
+            // a tile not wanted any more is not requested again
+            provider.setWantedTiles(getList(PREFETCHED_1));
+            state.cancel();
+            provider.mapTileRequestFailed(state);
+            Assert.assertEquals(2, module.mRequests.size());
+        } finally {
+            provider.detach();
+        }
+    }
+
+    private MapTileList getList(final long... pMapTileIndices) {
+        final MapTileList result = new MapTileList(pMapTileIndices.length);
+        for (final long mapTileIndex : pMapTileIndices) {
+            result.put(mapTileIndex);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package org.osmdroid.tileprovider;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests related to {@link SizeBucketedPool}, the bookkeeping of {@link BitmapPool}
+ * @since 6.0.2
+ */
+
+public class SizeBucketedPoolTest {
+
+    private static final long SMALL = 1;
+    private static final long LARGE = 2;
+
+    @Test
+    public void testObtainReturn() {
+        final Pool pool = new Pool(1000);
+        final Item small1 = new Item();
+        final Item small2 = new Item();
+        final Item large = new Item();
+        pool.put(small1, SMALL, 10);
+        pool.put(large, LARGE, 100);
+        pool.put(small2, SMALL, 10);
+        Assert.assertEquals(3, pool.getSize());
+        Assert.assertEquals(120, pool.getBytes());
+
+        // newest first within a bucket
+        Assert.assertSame(small2, pool.obtain(SMALL));
+        Assert.assertSame(small1, pool.obtain(SMALL));
+        Assert.assertNull(pool.obtain(SMALL));
+        Assert.assertNull(pool.obtain(3));
+        Assert.assertSame(large, pool.obtain(LARGE));
+        Assert.assertEquals(0, pool.getSize());
+        Assert.assertEquals(0, pool.getBytes());
+
+        // whatever the bucket
+        pool.put(small1, SMALL, 10);
+        pool.put(large, LARGE, 100);
+        Assert.assertSame(large, pool.obtainNewest());
+        Assert.assertSame(small1, pool.obtainNewest());
+        Assert.assertNull(pool.obtainNewest());
+        Assert.assertTrue(pool.mRecycled.isEmpty());
+    }
+
+    @Test
+    public void testRecycledItemsAreSkipped() {
+        final Pool pool = new Pool(1000);
+        final Item item1 = new Item();
+        final Item item2 = new Item();
+        pool.put(item1, SMALL, 10);
+        pool.put(item2, SMALL, 10);
+        item2.mRecycled = true;
+        Assert.assertSame(item1, pool.obtain(SMALL));
+        Assert.assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void testEviction() {
+        final Pool pool = new Pool(100);
+        final List<Item> items = new ArrayList<>();
+        for (int i = 0 ; i < 5 ; i ++) {
+            final Item item = new Item();
+            items.add(item);
+            pool.put(item, i % 2 == 0 ? SMALL : LARGE, 30);
+        }
+        // the two oldest items, whatever their bucket
+        Assert.assertEquals(3, pool.getSize());
+        Assert.assertEquals(90, pool.getBytes());
+        Assert.assertEquals(2, pool.mRecycled.size());
+        Assert.assertSame(items.get(0), pool.mRecycled.get(0));
+        Assert.assertSame(items.get(1), pool.mRecycled.get(1));
+        Assert.assertSame(items.get(4), pool.obtain(SMALL));
+        Assert.assertSame(items.get(2), pool.obtain(SMALL));
+        Assert.assertSame(items.get(3), pool.obtain(LARGE));
+
+        // larger than the pool
+        final Item huge = new Item();
+        pool.put(huge, LARGE, 101);
+        Assert.assertEquals(0, pool.getSize());
+        Assert.assertSame(huge, pool.mRecycled.get(2));
+
+        // lower cap
+        for (int i = 0 ; i < 3 ; i ++) {
+            pool.put(new Item(), SMALL, 30);
+        }
+        pool.setMaxBytes(30);
+        Assert.assertEquals(1, pool.getSize());
+        Assert.assertEquals(30, pool.getBytes());
+        Assert.assertEquals(5, pool.mRecycled.size());
+
+        pool.clear();
+        Assert.assertEquals(0, pool.getSize());
+        Assert.assertEquals(6, pool.mRecycled.size());
+    }
+
+    @Test
+    public void testCounters() {
+        final Pool pool = new Pool(1000);
+        pool.put(new Item(), SMALL, 10);
+        pool.put(new Item(), LARGE, 10);
+        Assert.assertNotNull(pool.obtain(SMALL));
+        Assert.assertNull(pool.obtain(SMALL));
+        Assert.assertNotNull(pool.obtainNewest());
+        Assert.assertNull(pool.obtainNewest());
+        Assert.assertEquals(2, pool.getHitCount());
+        Assert.assertEquals(2, pool.getMissCount());
+        pool.resetCounters();
+        Assert.assertEquals(0, pool.getHitCount());
+        Assert.assertEquals(0, pool.getMissCount());
+    }
+
+    private static class Item {
+        private boolean mRecycled;
+    }
+
+    private static class Pool extends SizeBucketedPool<Item> {
+
+        private final List<Item> mRecycled = new ArrayList<>();
+
+        private Pool(final long pMaxBytes) {
+            super(pMaxBytes);
+        }
+
+        @Override
+        protected boolean isRecycled(final Item pItem) {
+            return pItem.mRecycled;
+        }
+
+        @Override
+        protected void recycle(final Item pItem) {
+            pItem.mRecycled = true;
+            mRecycled.add(pItem);
+        }
+    }
+}
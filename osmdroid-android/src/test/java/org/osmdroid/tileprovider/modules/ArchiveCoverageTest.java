@@ -0,0 +1,45 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.osmdroid.util.MapTileIndex;
+
+/**
+ * Unit tests related to {@link ArchiveCoverage}
+ * @since 6.0.2
+ */
+
+public class ArchiveCoverageTest {
+
+    @Test
+    public void testContains() {
+        final ArchiveCoverage coverage = new ArchiveCoverage();
+        coverage.add(10, 100, 110, 200, 220);
+        coverage.add(10, 300, 300, 0, 1023);
+        coverage.add(2);
+        Assert.assertTrue(coverage.hasZoom(2));
+        Assert.assertTrue(coverage.hasZoom(10));
+        Assert.assertFalse(coverage.hasZoom(11));
+        Assert.assertFalse(coverage.hasZoom(-1));
+        Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(10, 100, 200)));
+        Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(10, 110, 220)));
+        Assert.assertFalse(coverage.contains(MapTileIndex.getTileIndex(10, 111, 220)));
+        Assert.assertFalse(coverage.contains(MapTileIndex.getTileIndex(10, 100, 199)));
+        Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(10, 300, 1000)));
+        Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(2, 3, 3)));
+        Assert.assertFalse(coverage.contains(MapTileIndex.getTileIndex(11, 100, 200)));
+    }
+
+    @Test
+    public void testGrowth() {
+        final ArchiveCoverage coverage = new ArchiveCoverage();
+        for (int x = 0 ; x < 100 ; x += 2) {
+            coverage.add(8, x, x, x, x);
+        }
+        for (int x = 0 ; x < 100 ; x ++) {
+            Assert.assertEquals(x % 2 == 0, coverage.contains(MapTileIndex.getTileIndex(8, x, x)));
+            Assert.assertFalse(coverage.contains(MapTileIndex.getTileIndex(8, x, x + 1)));
+        }
+    }
+}
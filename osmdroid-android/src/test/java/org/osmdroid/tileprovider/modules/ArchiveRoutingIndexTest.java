@@ -0,0 +1,230 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.MapTileList;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit tests related to {@link ArchiveRoutingIndex}
+ * @since 6.0.2
+ */
+
+public class ArchiveRoutingIndexTest {
+
+    private static final long TILE_1 = MapTileIndex.getTileIndex(10, 100, 200);
+    private static final long TILE_2 = MapTileIndex.getTileIndex(10, 101, 200);
+    private static final long TILE_3 = MapTileIndex.getTileIndex(12, 400, 800);
+
+    /**
+     * An archive that can only read the tiles one by one
+     */
+    private static class TestArchiveFile implements IRoutableArchiveFile {
+
+        final LongHashMap<byte[]> mTiles = new LongHashMap<>();
+        private final ArchiveCoverage mCoverage;
+        int mInputStreamCount;
+        int mCoverageCount;
+
+        private TestArchiveFile(final ArchiveCoverage pCoverage) {
+            mCoverage = pCoverage;
+        }
+
+        @Override
+        public void init(File pFile) {}
+
+        @Override
+        public InputStream getInputStream(final ITileSource tileSource, final long pMapTileIndex) {
+            mInputStreamCount ++;
+            final byte[] data = mTiles.get(pMapTileIndex);
+            return data == null ? null : new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public ArchiveCoverage getCoverage(final ITileSource pTileSource) {
+            mCoverageCount ++;
+            return mCoverage;
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public Set<String> getTileSources() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void setIgnoreTileSource(boolean pIgnoreTileSource) {}
+    }
+
+    /**
+     * An archive that reads the tiles with a single query
+     */
+    private static class TestBatchArchiveFile extends TestArchiveFile implements IBatchArchiveFile {
+
+        final List<MapTileList> mBatches = new ArrayList<>();
+
+        private TestBatchArchiveFile(final ArchiveCoverage pCoverage) {
+            super(pCoverage);
+        }
+
+        @Override
+        public LongHashMap<byte[]> getImages(final ITileSource tileSource, final MapTileList pMapTileList) {
+            final MapTileList batch = new MapTileList(pMapTileList.getSize());
+            final LongHashMap<byte[]> result = new LongHashMap<>();
+            for (int i = 0 ; i < pMapTileList.getSize() ; i ++) {
+                final long mapTileIndex = pMapTileList.get(i);
+                batch.put(mapTileIndex);
+                final byte[] data = mTiles.get(mapTileIndex);
+                if (data != null) {
+                    result.put(mapTileIndex, data);
+                }
+            }
+            mBatches.add(batch);
+            return result;
+        }
+    }
+
+    @Test
+    public void testBatchRead() {
+        final TestBatchArchiveFile archive = new TestBatchArchiveFile(null);
+        archive.mTiles.put(TILE_1, new byte[]{1});
+        archive.mTiles.put(TILE_3, new byte[]{3});
+        final ArchiveRoutingIndex index = new ArchiveRoutingIndex(Collections.<IArchiveFile>singletonList(archive));
+
+        final LongHashMap<byte[]> images = index.getImages(getList(TILE_1, TILE_2, TILE_3), null);
+        Assert.assertEquals(2, images.size());
+        Assert.assertEquals(1, images.get(TILE_1)[0]);
+        Assert.assertEquals(3, images.get(TILE_3)[0]);
+        Assert.assertNull(images.get(TILE_2));
+        Assert.assertEquals(1, archive.mBatches.size());
+        Assert.assertEquals(3, archive.mBatches.get(0).getSize());
+        Assert.assertEquals(0, archive.mInputStreamCount);
+    }
+
+    @Test
+    public void testFallbackOneByOne() {
+        final TestArchiveFile archive = new TestArchiveFile(null);
+        archive.mTiles.put(TILE_2, new byte[]{2});
+        final ArchiveRoutingIndex index = new ArchiveRoutingIndex(Collections.<IArchiveFile>singletonList(archive));
+
+        final LongHashMap<byte[]> images = index.getImages(getList(TILE_1, TILE_2, TILE_3), null);
+        Assert.assertEquals(1, images.size());
+        Assert.assertEquals(2, images.get(TILE_2)[0]);
+        Assert.assertEquals(3, archive.mInputStreamCount);
+    }
+
+    /**
+     * Archives that don't tell their coverage are queried for every tile
+     */
+    @Test
+    public void testPlainArchive() {
+        final LongHashMap<byte[]> tiles = new LongHashMap<>();
+        tiles.put(TILE_3, new byte[]{3});
+        final int[] count = new int[1];
+        final IArchiveFile archive = new IArchiveFile() {
+            @Override
+            public void init(File pFile) {}
+
+            @Override
+            public InputStream getInputStream(final ITileSource tileSource, final long pMapTileIndex) {
+                count[0] ++;
+                final byte[] data = tiles.get(pMapTileIndex);
+                return data == null ? null : new ByteArrayInputStream(data);
+            }
+
+            @Override
+            public void close() {}
+
+            @Override
+            public Set<String> getTileSources() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public void setIgnoreTileSource(boolean pIgnoreTileSource) {}
+        };
+        final ArchiveRoutingIndex index = new ArchiveRoutingIndex(Collections.singletonList(archive));
+
+        final LongHashMap<byte[]> images = index.getImages(getList(TILE_1, TILE_2, TILE_3), null);
+        Assert.assertEquals(1, images.size());
+        Assert.assertEquals(3, images.get(TILE_3)[0]);
+        Assert.assertEquals(3, count[0]);
+        Assert.assertNull(index.getInputStream(TILE_1, null));
+        Assert.assertEquals(4, count[0]);
+    }
+
+    /**
+     * Archives are queried in turn, each one only for the tiles still missing and that it may contain
+     */
+    @Test
+    public void testLookupOrderAndCoverage() {
+        final ArchiveCoverage coverage = new ArchiveCoverage();
+        coverage.add(10);
+        final TestBatchArchiveFile first = new TestBatchArchiveFile(coverage);
+        first.mTiles.put(TILE_1, new byte[]{1});
+        final TestArchiveFile second = new TestArchiveFile(null);
+        second.mTiles.put(TILE_1, new byte[]{-1});
+        second.mTiles.put(TILE_3, new byte[]{3});
+        final List<IArchiveFile> archives = new ArrayList<>();
+        archives.add(first);
+        archives.add(second);
+        final ArchiveRoutingIndex index = new ArchiveRoutingIndex(archives);
+
+        final LongHashMap<byte[]> images = index.getImages(getList(TILE_1, TILE_2, TILE_3), null);
+        Assert.assertEquals(2, images.size());
+        Assert.assertEquals(1, images.get(TILE_1)[0]);
+        Assert.assertEquals(3, images.get(TILE_3)[0]);
+        Assert.assertEquals(1, first.mBatches.size());
+        Assert.assertEquals(2, first.mBatches.get(0).getSize()); // TILE_3 is not covered
+        Assert.assertEquals(2, second.mInputStreamCount); // TILE_2 and TILE_3
+
+        Assert.assertNotNull(index.getInputStream(TILE_3, null));
+        Assert.assertEquals(1, first.mBatches.size());
+        Assert.assertEquals(0, first.mInputStreamCount); // zoom 12 is not covered
+    }
+
+    /**
+     * The coverage is not computed when the index is built, but once on the first lookup
+     */
+    @Test
+    public void testLazyCoverage() {
+        final ArchiveCoverage coverage = new ArchiveCoverage();
+        coverage.add(10);
+        final TestArchiveFile archive = new TestArchiveFile(coverage);
+        archive.mTiles.put(TILE_1, new byte[]{1});
+        final ArchiveRoutingIndex index = new ArchiveRoutingIndex(Collections.<IArchiveFile>singletonList(archive));
+        Assert.assertEquals(0, archive.mCoverageCount);
+
+        Assert.assertNotNull(index.getInputStream(TILE_1, null));
+        Assert.assertNull(index.getInputStream(TILE_3, null));
+        index.getImages(getList(TILE_1, TILE_2, TILE_3), null);
+        Assert.assertEquals(1, archive.mCoverageCount);
+        Assert.assertEquals(3, archive.mInputStreamCount); // TILE_3 is not covered
+    }
+
+    private MapTileList getList(final long... pMapTileIndices) {
+        final MapTileList result = new MapTileList(pMapTileIndices.length);
+        for (final long mapTileIndex : pMapTileIndices) {
+            result.put(mapTileIndex);
+        }
+        return result;
+    }
+}
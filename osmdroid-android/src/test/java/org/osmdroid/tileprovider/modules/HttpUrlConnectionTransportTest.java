@@ -0,0 +1,227 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests related to {@link HttpUrlConnectionTransport}, against an in-process stub tile server
+ * @since 6.0.2
+ */
+
+public class HttpUrlConnectionTransportTest {
+
+    private static final byte[] TILE = new byte[4096];
+
+    private StubTileServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubTileServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        final HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(2);
+        for (int i = 0 ; i < 50 ; i ++) {
+            Assert.assertEquals(TILE.length, download(transport, mServer.getUrl(i)));
+        }
+        Assert.assertEquals(50, mServer.getRequestCount());
+        Assert.assertEquals(1, mServer.getSocketCount());
+    }
+
+    @Test
+    public void testNotFoundKeepsConnection() throws IOException {
+        final HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(2);
+        for (int i = 0 ; i < 10 ; i ++) {
+            final IHttpTransport.Connection connection = transport.open(mServer.getUrl(-1));
+            try {
+                Assert.assertEquals(404, connection.getResponseCode());
+            } finally {
+                connection.close();
+            }
+        }
+        Assert.assertEquals(1, mServer.getSocketCount());
+    }
+
+    @Test
+    public void testMaxConnectionsPerHost() throws Exception {
+        final int threads = 8;
+        final int tilesPerThread = 100;
+        final int maxConnectionsPerHost = 2;
+        final HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(maxConnectionsPerHost);
+        final AtomicInteger errors = new AtomicInteger();
+        final List<Thread> list = new ArrayList<>();
+        for (int i = 0 ; i < threads ; i ++) {
+            final int thread = i;
+            list.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0 ; j < tilesPerThread ; j ++) {
+                        try {
+                            if (download(transport, mServer.getUrl(thread * tilesPerThread + j)) != TILE.length) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (final Thread thread : list) {
+            thread.start();
+        }
+        for (final Thread thread : list) {
+            thread.join();
+        }
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(threads * tilesPerThread, mServer.getRequestCount());
+        Assert.assertTrue(mServer.getMaxConcurrentRequests() <= maxConnectionsPerHost);
+        Assert.assertTrue(mServer.getSocketCount() <= maxConnectionsPerHost);
+        Assert.assertEquals(0, transport.getConnectionCount(mServer.getHost()));
+    }
+
+    private static int download(final IHttpTransport pTransport, final String pUrl) throws IOException {
+        final IHttpTransport.Connection connection = pTransport.open(pUrl);
+        try {
+            if (connection.getResponseCode() != 200) {
+                return -1;
+            }
+            final InputStream in = connection.getInputStream();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.size();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * A minimal HTTP/1.1 server with keep-alive: serves the same tile for any path,
+     * except paths with a negative number that get a 404
+     */
+    private static class StubTileServer {
+
+        private final ServerSocket mServerSocket;
+        private final AtomicInteger mSocketCount = new AtomicInteger();
+        private final AtomicInteger mRequestCount = new AtomicInteger();
+        private final AtomicInteger mConcurrentRequests = new AtomicInteger();
+        private final AtomicInteger mMaxConcurrentRequests = new AtomicInteger();
+
+        private StubTileServer() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            final Thread acceptor = new Thread() {
+                @Override
+                public void run() {
+                    while (!mServerSocket.isClosed()) {
+                        try {
+                            final Socket socket = mServerSocket.accept();
+                            socket.setTcpNoDelay(true);
+                            mSocketCount.incrementAndGet();
+                            final Thread server = new Thread() {
+                                @Override
+                                public void run() {
+                                    serve(socket);
+                                }
+                            };
+                            server.setDaemon(true);
+                            server.start();
+                        } catch (IOException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private String getHost() {
+            return "127.0.0.1:" + mServerSocket.getLocalPort();
+        }
+
+        private String getUrl(final int pTile) {
+            return "http://" + getHost() + "/tiles/" + pTile + ".png";
+        }
+
+        private int getSocketCount() {
+            return mSocketCount.get();
+        }
+
+        private int getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        private int getMaxConcurrentRequests() {
+            return mMaxConcurrentRequests.get();
+        }
+
+        private void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void serve(final Socket pSocket) {
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(pSocket.getInputStream(), "US-ASCII"));
+                final OutputStream out = new BufferedOutputStream(pSocket.getOutputStream(), 2 * TILE.length);
+                String requestLine;
+                while ((requestLine = reader.readLine()) != null) {
+                    String header;
+                    while ((header = reader.readLine()) != null && header.length() > 0) {
+                        // skip
+                    }
+                    final int concurrent = mConcurrentRequests.incrementAndGet();
+                    int max;
+                    while (concurrent > (max = mMaxConcurrentRequests.get())) {
+                        mMaxConcurrentRequests.compareAndSet(max, concurrent);
+                    }
+                    mRequestCount.incrementAndGet();
+                    if (requestLine.contains("/-")) {
+                        final byte[] body = "not found".getBytes("US-ASCII");
+                        out.write(("HTTP/1.1 404 Not Found\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("US-ASCII"));
+                        out.write(body);
+                    } else {
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Type: image/png\r\nContent-Length: " + TILE.length + "\r\n\r\n").getBytes("US-ASCII"));
+                        out.write(TILE);
+                    }
+                    out.flush();
+                    mConcurrentRequests.decrementAndGet();
+                }
+            } catch (IOException e) {
+                // connection closed by the client
+            } finally {
+                try {
+                    pSocket.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+    }
+}
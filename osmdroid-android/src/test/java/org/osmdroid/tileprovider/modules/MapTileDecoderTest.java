@@ -0,0 +1,59 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests related to {@link MapTileDecoder}
+ * @since 6.0.2
+ */
+
+public class MapTileDecoderTest {
+
+    /**
+     * The producer is blocked as long as the hand-off queue is full, and no task is lost
+     */
+    @Test
+    public void testBoundedHandOff() throws InterruptedException {
+        final int threads = 2;
+        final int queueSize = 3;
+        final int tasks = 40;
+        final MapTileDecoder decoder = new MapTileDecoder(threads, queueSize);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final AtomicInteger submitted = new AtomicInteger();
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0 ; i < tasks ; i ++) {
+                    decoder.decode(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                //
+                            }
+                            done.countDown();
+                        }
+                    });
+                    submitted.incrementAndGet();
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(200);
+        // the decode threads are busy and the queue is full: the producer waits
+        Assert.assertEquals(threads + queueSize, submitted.get());
+        Assert.assertEquals(queueSize, decoder.getQueuedCount());
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        producer.join();
+        Assert.assertEquals(tasks, submitted.get());
+    }
+}
@@ -0,0 +1,238 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.graphics.drawable.Drawable;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests related to the revalidation of expired tiles by {@link MapTileDownloader},
+ * with a fake {@link IHttpTransport} and a fake {@link IRevalidatingFilesystemCache}
+ * @since 6.0.2
+ */
+
+public class MapTileDownloaderTest {
+
+    private static final long TILE = MapTileIndex.getTileIndex(10, 100, 200);
+    private static final String ETAG = "\"1234\"";
+    private static final String LAST_MODIFIED = "Mon, 01 Oct 2018 10:00:00 GMT";
+    private static final byte[] DATA = new byte[1024];
+
+    private final ITileSource mTileSource = new XYTileSource("Test", 0, 18, 256, ".png",
+            new String[]{"http://tiles.test/"});
+
+    /**
+     * With stored validators, a conditional request is sent,
+     * and a 304 only refreshes the expiration of the cached tile
+     */
+    @Test
+    public void testNotModified() throws Exception {
+        final TestCache cache = new TestCache();
+        cache.mValidators = new MapTileValidators(ETAG, LAST_MODIFIED);
+        final TestTransport transport = new TestTransport(HttpURLConnection.HTTP_NOT_MODIFIED);
+
+        final MapTileBytes bytes = load(cache, transport);
+        Assert.assertNotNull(bytes);
+        Assert.assertTrue(bytes.isNotModified());
+
+        Assert.assertEquals(1, transport.mRequests.size());
+        final Map<String, String> headers = transport.mRequests.get(0);
+        Assert.assertEquals(ETAG, headers.get(MapTileValidators.HTTP_IF_NONE_MATCH_HEADER));
+        Assert.assertEquals(LAST_MODIFIED, headers.get(MapTileValidators.HTTP_IF_MODIFIED_SINCE_HEADER));
+
+        Assert.assertEquals(1, cache.mRefreshed);
+        Assert.assertNotNull(cache.mExpirationTime);
+        Assert.assertEquals(0, cache.mSaved);
+    }
+
+    /**
+     * With stored validators, a 200 means the tile changed: its data and new validators are saved
+     */
+    @Test
+    public void testModified() throws Exception {
+        final TestCache cache = new TestCache();
+        cache.mValidators = new MapTileValidators(ETAG, LAST_MODIFIED);
+        final TestTransport transport = new TestTransport(HttpURLConnection.HTTP_OK);
+        transport.mResponseHeaders.put(MapTileValidators.HTTP_ETAG_HEADER, "\"5678\"");
+
+        final MapTileBytes bytes = load(cache, transport);
+        Assert.assertNotNull(bytes);
+        Assert.assertFalse(bytes.isNotModified());
+        Assert.assertEquals(DATA.length, bytes.getLength());
+
+        final Map<String, String> headers = transport.mRequests.get(0);
+        Assert.assertEquals(ETAG, headers.get(MapTileValidators.HTTP_IF_NONE_MATCH_HEADER));
+
+        Assert.assertEquals(0, cache.mRefreshed);
+        Assert.assertEquals(1, cache.mSaved);
+        Assert.assertEquals(DATA.length, cache.mSavedLength);
+        Assert.assertEquals("\"5678\"", cache.mValidators.getETag());
+        Assert.assertNull(cache.mValidators.getLastModified());
+    }
+
+    /**
+     * Without stored validators, the request is not conditional
+     */
+    @Test
+    public void testNoValidators() throws Exception {
+        final TestCache cache = new TestCache();
+        final TestTransport transport = new TestTransport(HttpURLConnection.HTTP_OK);
+
+        final MapTileBytes bytes = load(cache, transport);
+        Assert.assertNotNull(bytes);
+        Assert.assertEquals(DATA.length, bytes.getLength());
+
+        final Map<String, String> headers = transport.mRequests.get(0);
+        Assert.assertFalse(headers.containsKey(MapTileValidators.HTTP_IF_NONE_MATCH_HEADER));
+        Assert.assertFalse(headers.containsKey(MapTileValidators.HTTP_IF_MODIFIED_SINCE_HEADER));
+        Assert.assertEquals(1, cache.mSaved);
+    }
+
+    private MapTileBytes load(final TestCache pCache, final TestTransport pTransport) throws Exception {
+        final MapTileDownloader downloader = new MapTileDownloader(mTileSource, pCache, null, 1, 10);
+        try {
+            downloader.setHttpTransport(pTransport);
+            final MapTileModuleProviderBase.TileLoader loader = downloader.getTileLoader();
+            return loader.loadTileBytes(TILE);
+        } finally {
+            downloader.detach();
+        }
+    }
+
+    /**
+     * Answers every request with the same response code, and records the request headers
+     */
+    private static class TestTransport implements IHttpTransport {
+
+        private final int mResponseCode;
+        private final Map<String, String> mResponseHeaders = new HashMap<>();
+        private final List<Map<String, String>> mRequests = new ArrayList<>();
+
+        private TestTransport(final int pResponseCode) {
+            mResponseCode = pResponseCode;
+        }
+
+        @Override
+        public Connection open(final String pUrl) {
+            final Map<String, String> headers = new HashMap<>();
+            mRequests.add(headers);
+            return new Connection() {
+                @Override
+                public void setRequestProperty(final String pName, final String pValue) {
+                    headers.put(pName, pValue);
+                }
+
+                @Override
+                public int getResponseCode() {
+                    return mResponseCode;
+                }
+
+                @Override
+                public String getResponseMessage() {
+                    return String.valueOf(mResponseCode);
+                }
+
+                @Override
+                public String getHeaderField(final String pName) {
+                    return mResponseHeaders.get(pName);
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    if (mResponseCode != HttpURLConnection.HTTP_OK) {
+                        throw new IOException("no body");
+                    }
+                    return new ByteArrayInputStream(DATA);
+                }
+
+                @Override
+                public void close() {}
+
+                @Override
+                public void disconnect() {}
+            };
+        }
+    }
+
+    /**
+     * Keeps the validators of a single tile, and counts the writes and the refreshes
+     */
+    private static class TestCache implements IRevalidatingFilesystemCache {
+
+        private MapTileValidators mValidators;
+        private int mSaved;
+        private int mSavedLength;
+        private int mRefreshed;
+        private Long mExpirationTime;
+
+        @Override
+        public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex,
+                                final InputStream pStream, final Long pExpirationTime, final MapTileValidators pValidators) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex,
+                                final byte[] pBytes, final int pLength, final Long pExpirationTime, final MapTileValidators pValidators) {
+            mSaved ++;
+            mSavedLength = pLength;
+            mValidators = pValidators;
+            mExpirationTime = pExpirationTime;
+            return true;
+        }
+
+        @Override
+        public MapTileValidators getValidators(final ITileSource pTileSource, final long pMapTileIndex) {
+            return mValidators;
+        }
+
+        @Override
+        public boolean refreshExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex, final Long pExpirationTime) {
+            mRefreshed ++;
+            mExpirationTime = pExpirationTime;
+            return true;
+        }
+
+        @Override
+        public boolean saveFile(final ITileSource pTileSourceInfo, final long pMapTileIndex,
+                                final InputStream pStream, final Long pExpirationTime) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean exists(final ITileSource pTileSourceInfo, final long pMapTileIndex) {
+            return mSaved > 0;
+        }
+
+        @Override
+        public void onDetach() {}
+
+        @Override
+        public boolean remove(final ITileSource tileSource, final long pMapTileIndex) {
+            return false;
+        }
+
+        @Override
+        public Long getExpirationTimestamp(final ITileSource pTileSource, final long pMapTileIndex) {
+            return mExpirationTime;
+        }
+
+        @Override
+        public Drawable loadTile(final ITileSource pTileSource, final long pMapTileIndex) {
+            return null;
+        }
+    }
+}
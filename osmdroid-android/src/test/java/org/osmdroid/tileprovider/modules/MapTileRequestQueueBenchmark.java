@@ -0,0 +1,166 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.util.MapTileIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Contention benchmark of {@link MapTileRequestQueue}: N worker threads share a queue under a lock,
+ * as the tile loaders do, and the throughput is compared with the previous implementation
+ * (an access-ordered LinkedHashMap fully iterated to find the next tile).
+ * Not a unit test, as timings depend on the machine: run its main method by hand.
+ * @since 6.0.2
+ */
+
+public class MapTileRequestQueueBenchmark {
+
+    private final List<MapTileModuleProviderBase> mProviders = new ArrayList<>();
+
+    public static void main(final String[] pArgs) throws InterruptedException {
+        new MapTileRequestQueueBenchmark().benchmarkContention();
+    }
+
+    private void benchmarkContention() throws InterruptedException {
+        final int queueSize = 40;
+        final int iterations = 20000;
+        for (final int threads : new int[] {1, 2, 4, 8}) {
+            final long previous = run(new LinkedHashMapQueue(), threads, queueSize, iterations);
+            final long current = run(new RequestQueue(), threads, queueSize, iterations);
+            System.out.println(threads + " threads, queue size " + queueSize + ": "
+                    + previous / (threads * iterations) + "ns per tile with LinkedHashMap, "
+                    + current / (threads * iterations) + "ns per tile with MapTileRequestQueue");
+        }
+    }
+
+    /**
+     * @return the duration in nanoseconds
+     */
+    private long run(final Queue pQueue, final int pThreads, final int pQueueSize, final int pIterations)
+            throws InterruptedException {
+        for (int i = 0 ; i < pQueueSize ; i ++) {
+            pQueue.put(getMapTileIndex(i));
+        }
+        final Thread[] threads = new Thread[pThreads];
+        for (int i = 0 ; i < pThreads ; i ++) {
+            final int seed = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Random random = new Random(seed);
+                    for (int j = 0 ; j < pIterations ; j ++) {
+                        final MapTileRequestState state;
+                        synchronized (pQueue) {
+                            // a new request, and a worker takes the next one
+                            pQueue.put(getMapTileIndex(pQueueSize + random.nextInt(1 << 16)));
+                            state = pQueue.next();
+                        }
+                        if (state != null) {
+                            synchronized (pQueue) {
+                                pQueue.remove(state.getMapTile());
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        final long start = System.nanoTime();
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private interface Queue {
+        void put(long pMapTileIndex);
+        MapTileRequestState next();
+        void remove(long pMapTileIndex);
+    }
+
+    private class RequestQueue implements Queue {
+
+        private final MapTileRequestQueue mQueue = new MapTileRequestQueue(64);
+
+        @Override
+        public void put(final long pMapTileIndex) {
+            mQueue.put(pMapTileIndex, getState(pMapTileIndex));
+            if (mQueue.size() > 40) {
+                mQueue.removeOldestWaiting();
+            }
+        }
+
+        @Override
+        public MapTileRequestState next() {
+            return mQueue.startNext();
+        }
+
+        @Override
+        public void remove(final long pMapTileIndex) {
+            mQueue.remove(pMapTileIndex);
+        }
+    }
+
+    /**
+     * What {@link MapTileModuleProviderBase} did before {@link MapTileRequestQueue}
+     */
+    private class LinkedHashMapQueue implements Queue {
+
+        private final HashMap<Long, MapTileRequestState> mWorking = new HashMap<>();
+        private final LinkedHashMap<Long, MapTileRequestState> mPending =
+                new LinkedHashMap<>(64, 0.1f, true);
+
+        @Override
+        public void put(final long pMapTileIndex) {
+            mPending.put(pMapTileIndex, getState(pMapTileIndex));
+            if (mPending.size() > 40) {
+                final Iterator<Long> iterator = mPending.keySet().iterator();
+                while (iterator.hasNext()) {
+                    final Long index = iterator.next();
+                    if (!mWorking.containsKey(index)) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public MapTileRequestState next() {
+            Long result = null;
+            for (final Long index : mPending.keySet()) {
+                if (!mWorking.containsKey(index)) {
+                    result = index;
+                }
+            }
+            if (result == null) {
+                return null;
+            }
+            final MapTileRequestState state = mPending.get(result);
+            mWorking.put(result, state);
+            return state;
+        }
+
+        @Override
+        public void remove(final long pMapTileIndex) {
+            mPending.remove(pMapTileIndex);
+            mWorking.remove(pMapTileIndex);
+        }
+    }
+
+    private MapTileRequestState getState(final long pMapTileIndex) {
+        return new MapTileRequestState(pMapTileIndex, mProviders, null);
+    }
+
+    private long getMapTileIndex(final int pIndex) {
+        final int zoom = 16;
+        return MapTileIndex.getTileIndex(zoom, pIndex & 0xFF, pIndex >> 8);
+    }
+}
@@ -0,0 +1,244 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MapTileIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests related to {@link MapTileRequestQueue}
+ * @since 6.0.2
+ */
+
+public class MapTileRequestQueueTest {
+
+    private final List<MapTileModuleProviderBase> mProviders = new ArrayList<>();
+
+    @Test
+    public void testOrder() {
+        final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+        final long tile1 = getMapTileIndex(1);
+        final long tile2 = getMapTileIndex(2);
+        final long tile3 = getMapTileIndex(3);
+        queue.put(tile1, getState(tile1));
+        queue.put(tile2, getState(tile2));
+        queue.put(tile3, getState(tile3));
+        queue.put(tile2, getState(tile2)); // moved to front
+        queue.put(tile2, getState(tile2));
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(3, queue.getWaitingSize());
+
+        Assert.assertEquals(tile2, queue.startNext().getMapTile());
+        Assert.assertTrue(queue.isWorking(tile2));
+        queue.put(tile2, getState(tile2)); // already worked on: stays out of the waiting list
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(2, queue.getWaitingSize());
+
+        Assert.assertEquals(tile1, queue.removeOldestWaiting().getMapTile());
+        Assert.assertFalse(queue.containsKey(tile1));
+        Assert.assertEquals(tile3, queue.startNext().getMapTile());
+        Assert.assertNull(queue.startNext());
+        Assert.assertNull(queue.removeOldestWaiting());
+        Assert.assertEquals(2, queue.size());
+
+        Assert.assertNotNull(queue.remove(tile2));
+        Assert.assertNotNull(queue.remove(tile3));
+        Assert.assertNull(queue.remove(tile3));
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testRemoveWaiting() {
+        final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+        for (int i = 0 ; i < 5 ; i ++) {
+            queue.put(getMapTileIndex(i), getState(getMapTileIndex(i)));
+        }
+        queue.remove(getMapTileIndex(4)); // newest
+        queue.remove(getMapTileIndex(2)); // middle
+        queue.remove(getMapTileIndex(0)); // oldest
+        Assert.assertEquals(2, queue.getWaitingSize());
+        Assert.assertEquals(getMapTileIndex(3), queue.startNext().getMapTile());
+        Assert.assertEquals(getMapTileIndex(1), queue.startNext().getMapTile());
+        Assert.assertNull(queue.startNext());
+        queue.clear();
+        Assert.assertEquals(0, queue.size());
+        Assert.assertEquals(0, queue.getWaitingSize());
+    }
+
+    @Test
+    public void testRemoveUnwanted() {
+        final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+        for (int i = 0 ; i < 6 ; i ++) {
+            queue.put(getMapTileIndex(i), getState(getMapTileIndex(i)));
+        }
+        Assert.assertEquals(getMapTileIndex(5), queue.startNext().getMapTile());
+        final LongHashMap<Boolean> wanted = new LongHashMap<>();
+        wanted.put(getMapTileIndex(1), Boolean.TRUE);
+        wanted.put(getMapTileIndex(3), Boolean.TRUE);
+        final List<MapTileRequestState> removed = new ArrayList<>();
+        queue.removeUnwanted(wanted, removed);
+        Assert.assertEquals(3, removed.size()); // the tile being worked on is not removed
+        Assert.assertEquals(3, queue.size());
+        Assert.assertTrue(queue.isWorking(getMapTileIndex(5)));
+        Assert.assertEquals(getMapTileIndex(3), queue.startNext().getMapTile());
+        Assert.assertEquals(getMapTileIndex(1), queue.startNext().getMapTile());
+        Assert.assertNull(queue.startNext());
+    }
+
+    @Test
+    public void testViewportPriority() {
+        final MapTileRequestPriority priority = new MapTileRequestPriority();
+        final MapTileRequestQueue queue = new MapTileRequestQueue(10, priority);
+        final long corner = MapTileIndex.getTileIndex(10, 0, 0);
+        final long center = MapTileIndex.getTileIndex(10, 5, 5);
+        final long near = MapTileIndex.getTileIndex(10, 6, 5);
+        final long otherZoom = MapTileIndex.getTileIndex(11, 11, 11);
+        final long wrapped = MapTileIndex.getTileIndex(10, 1023, 5);
+        for (final long index : new long[] {center, near, otherZoom, wrapped, corner}) {
+            queue.put(index, getState(index));
+        }
+
+        // no viewport yet: most recent first
+        Assert.assertEquals(corner, queue.startNext().getMapTile());
+
+        // viewport centered on tile 5,5 of zoom 10
+        Assert.assertTrue(priority.set(10, 5.5, 5.5));
+        Assert.assertFalse(priority.set(10, 5.5, 5.5));
+        Assert.assertEquals(center, queue.startNext().getMapTile());
+        Assert.assertEquals(near, queue.startNext().getMapTile());
+
+        // viewport moved across the antimeridian
+        priority.set(10, -.5, 5.5);
+        Assert.assertEquals(wrapped, queue.startNext().getMapTile());
+        Assert.assertEquals(otherZoom, queue.startNext().getMapTile());
+        Assert.assertNull(queue.startNext());
+    }
+
+    /**
+     * Prefetch requests are dropped first when the queue is full, and are worked on after the displayed tiles
+     * until they get displayed themselves
+     */
+    @Test
+    public void testPrefetch() {
+        final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+        final long displayed1 = getMapTileIndex(1);
+        final long displayed2 = getMapTileIndex(2);
+        final long prefetched3 = getMapTileIndex(3);
+        final long prefetched4 = getMapTileIndex(4);
+        queue.put(prefetched3, getPrefetchState(prefetched3));
+        queue.put(displayed1, getState(displayed1));
+        queue.put(displayed2, getState(displayed2));
+        final MapTileRequestState state4 = getPrefetchState(prefetched4);
+        queue.put(prefetched4, state4);
+
+        // the prefetch requests are the first to go when the queue is full, even if recent
+        Assert.assertEquals(prefetched3, queue.removeOldestWaiting().getMapTile());
+
+        // a prefetched tile that gets displayed is moved among the displayed tiles
+        state4.setPrefetch(false);
+        queue.put(prefetched4, state4);
+        Assert.assertEquals(prefetched4, queue.startNext().getMapTile());
+        Assert.assertEquals(displayed2, queue.startNext().getMapTile());
+        Assert.assertEquals(displayed1, queue.startNext().getMapTile());
+        Assert.assertNull(queue.startNext());
+
+        // without prefetch requests, the oldest request goes
+        queue.clear();
+        queue.put(displayed1, getState(displayed1));
+        queue.put(displayed2, getState(displayed2));
+        Assert.assertEquals(displayed1, queue.removeOldestWaiting().getMapTile());
+    }
+
+    @Test
+    public void testPrefetchAfterDisplayed() {
+        final MapTileRequestPriority priority = new MapTileRequestPriority();
+        final MapTileRequestQueue queue = new MapTileRequestQueue(10, priority);
+        priority.set(16, 0.5, 0.5);
+        final long center = getMapTileIndex(0);
+        final long far = getMapTileIndex(200);
+        queue.put(center, getPrefetchState(center));
+        queue.put(far, getState(far));
+        Assert.assertEquals(far, queue.startNext().getMapTile());
+        Assert.assertEquals(center, queue.startNext().getMapTile());
+    }
+
+    /**
+     * Workers adding new requests and taking the next one under the same lock,
+     * as {@link MapTileModuleProviderBase} does: each request is started once, and the queue stays capped
+     */
+    @Test
+    public void testConcurrentWorkers() throws InterruptedException {
+        final int queueSize = 40;
+        final int iterations = 20000;
+        final int threadCount = 4;
+        final MapTileRequestQueue queue = new MapTileRequestQueue(64);
+        for (int i = 0 ; i < queueSize ; i ++) {
+            queue.put(getMapTileIndex(i), getState(getMapTileIndex(i)));
+        }
+        final Set<Long> started = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[threadCount];
+        for (int i = 0 ; i < threadCount ; i ++) {
+            final int first = queueSize + i * iterations;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0 ; j < iterations ; j ++) {
+                        final long mapTileIndex = getMapTileIndex(first + j);
+                        final MapTileRequestState state;
+                        synchronized (queue) {
+                            queue.put(mapTileIndex, getState(mapTileIndex));
+                            if (queue.size() > queueSize) {
+                                queue.removeOldestWaiting();
+                            }
+                            state = queue.startNext();
+                        }
+                        if (state == null) {
+                            continue;
+                        }
+                        if (!started.add(state.getMapTile())) {
+                            errors.incrementAndGet();
+                        }
+                        synchronized (queue) {
+                            queue.remove(state.getMapTile());
+                        }
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, errors.get());
+        Assert.assertTrue(started.size() > 0);
+        Assert.assertTrue(queue.size() <= queueSize);
+        Assert.assertEquals(queue.size(), queue.getWaitingSize());
+    }
+
+    private MapTileRequestState getState(final long pMapTileIndex) {
+        return new MapTileRequestState(pMapTileIndex, mProviders, null);
+    }
+
+    private MapTileRequestState getPrefetchState(final long pMapTileIndex) {
+        final MapTileRequestState result = getState(pMapTileIndex);
+        result.setPrefetch(true);
+        return result;
+    }
+
+    private long getMapTileIndex(final int pIndex) {
+        final int zoom = 16;
+        return MapTileIndex.getTileIndex(zoom, pIndex & 0xFF, pIndex >> 8);
+    }
+}
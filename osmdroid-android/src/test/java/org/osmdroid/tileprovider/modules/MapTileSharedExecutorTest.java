@@ -0,0 +1,139 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests related to {@link MapTileSharedExecutor}
+ * @since 6.0.2
+ */
+
+public class MapTileSharedExecutorTest {
+
+    @Test
+    public void testStageConcurrency() throws InterruptedException {
+        final int threads = 6;
+        final int[] limits = new int[] {1, 2, 8};
+        final int tasks = 50;
+        final MapTileSharedExecutor executor = new MapTileSharedExecutor(threads);
+        final MapTileSharedExecutor.Stage[] stages = new MapTileSharedExecutor.Stage[limits.length];
+        final AtomicInteger[] running = new AtomicInteger[limits.length];
+        final AtomicInteger[] maxRunning = new AtomicInteger[limits.length];
+        final AtomicInteger totalRunning = new AtomicInteger();
+        final AtomicInteger maxTotalRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(limits.length * tasks);
+        for (int i = 0 ; i < limits.length ; i ++) {
+            stages[i] = executor.newStage("stage" + i, limits[i]);
+            running[i] = new AtomicInteger();
+            maxRunning[i] = new AtomicInteger();
+        }
+        for (int j = 0 ; j < tasks ; j ++) {
+            for (int i = 0 ; i < limits.length ; i ++) {
+                final int stage = i;
+                stages[i].execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateMax(maxRunning[stage], running[stage].incrementAndGet());
+                        updateMax(maxTotalRunning, totalRunning.incrementAndGet());
+                        try {
+                            Thread.sleep(2);
+                        } catch (InterruptedException e) {
+                            //
+                        }
+                        stages[stage].countTile();
+                        running[stage].decrementAndGet();
+                        totalRunning.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0 ; i < limits.length ; i ++) {
+            Assert.assertTrue(maxRunning[i].get() <= limits[i]);
+            Assert.assertEquals(tasks, stages[i].getTileCount());
+            stages[i].shutdown();
+            Assert.assertTrue(stages[i].awaitTermination(1, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(maxTotalRunning.get() <= threads);
+        Assert.assertEquals(threads, executor.getThreadCount());
+        Assert.assertEquals(limits.length * tasks, executor.getTileCount());
+        Assert.assertTrue(executor.getThroughput() > 0);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException {
+        final MapTileSharedExecutor executor = new MapTileSharedExecutor(1);
+        final MapTileSharedExecutor.Stage stage = executor.newStage("test", 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        stage.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    //
+                }
+            }
+        });
+        stage.execute(new Runnable() {
+            @Override
+            public void run() {}
+        });
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, stage.shutdownNow().size());
+        Assert.assertTrue(stage.isShutdown());
+        Assert.assertFalse(stage.isTerminated());
+        try {
+            stage.execute(new Runnable() {
+                @Override
+                public void run() {}
+            });
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        release.countDown();
+        Assert.assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExecutorShutdown() throws InterruptedException {
+        final MapTileSharedExecutor executor = new MapTileSharedExecutor(2);
+        final MapTileSharedExecutor.Stage stage = executor.newStage("test", 2);
+        final CountDownLatch done = new CountDownLatch(1);
+        stage.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.isShutdown());
+        Assert.assertTrue(stage.isShutdown());
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executor.getThreadCount());
+    }
+
+    private void updateMax(final AtomicInteger pMax, final int pValue) {
+        int max;
+        while (pValue > (max = pMax.get())) {
+            if (pMax.compareAndSet(max, pValue)) {
+                return;
+            }
+        }
+    }
+}
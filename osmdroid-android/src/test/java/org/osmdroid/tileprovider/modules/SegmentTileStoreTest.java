@@ -0,0 +1,230 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Unit tests related to {@link SegmentTileStore}
+ * @since 6.0.2
+ */
+
+public class SegmentTileStoreTest {
+
+    private static final String SOURCE = "source";
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("segments", "");
+        mDirectory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testPutRead() throws IOException {
+        final SegmentTileStore store = open(1024 * 1024);
+        store.put(SOURCE, 1, tile(1, 100), 100, 1000, new MapTileValidators("etag", null));
+        store.put(SOURCE, 2, tile(2, 5000), 4000, 2000, null);
+        checkTile(store, 1, 100, 1000);
+        checkTile(store, 2, 4000, 2000);
+        Assert.assertNull(store.read(SOURCE, 3, new long[1]));
+        Assert.assertNull(store.read("other", 1, new long[1]));
+        Assert.assertEquals("etag", store.getValidators(SOURCE, 1).getETag());
+        Assert.assertNull(store.getValidators(SOURCE, 1).getLastModified());
+        Assert.assertNull(store.getValidators(SOURCE, 2));
+
+        store.put(SOURCE, 1, tile(1, 200), 200, 3000, null);
+        Assert.assertTrue(store.setExpires(SOURCE, 2, 4000));
+        checkTile(store, 1, 200, 3000);
+        Assert.assertEquals(4000, (long) store.getExpires(SOURCE, 2));
+        Assert.assertTrue(store.remove(SOURCE, 2));
+        Assert.assertFalse(store.remove(SOURCE, 2));
+        Assert.assertFalse(store.contains(SOURCE, 2));
+        Assert.assertEquals(1, store.getTileCount());
+        store.close();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        SegmentTileStore store = open(10000);
+        for (int i = 0 ; i < 10 ; i ++) {
+            store.put(SOURCE, i, tile(i, 3000), 3000, i, null);
+        }
+        store.checkpoint();
+        // after the checkpoint: replayed at the next opening
+        store.remove(SOURCE, 0);
+        store.setExpires(SOURCE, 1, 100);
+        store.put(SOURCE, 10, tile(10, 3000), 3000, 10, null);
+        final int segments = store.getSegmentCount();
+        // no close, as in a crash
+        store = open(10000);
+        Assert.assertEquals(segments, store.getSegmentCount());
+        Assert.assertEquals(10, store.getTileCount());
+        Assert.assertFalse(store.contains(SOURCE, 0));
+        checkTile(store, 1, 3000, 100);
+        for (int i = 2 ; i <= 10 ; i ++) {
+            checkTile(store, i, 3000, i);
+        }
+        store.close();
+
+        store = open(10000);
+        Assert.assertEquals(0, store.getChangesSinceCheckpoint());
+        Assert.assertEquals(10, store.getTileCount());
+        store.close();
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+        SegmentTileStore store = open(1024 * 1024);
+        store.put(SOURCE, 1, tile(1, 1000), 1000, 1, null);
+        store.put(SOURCE, 2, tile(2, 1000), 1000, 2, null);
+        final long size = store.getSize();
+        final File segment = new File(mDirectory, "00000000" + SegmentTileStore.SEGMENT_EXTENSION);
+        final RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(size - 10);
+        file.close();
+        store = open(1024 * 1024);
+        checkTile(store, 1, 1000, 1);
+        Assert.assertFalse(store.contains(SOURCE, 2));
+        Assert.assertEquals(segment.length(), store.getSize());
+        store.put(SOURCE, 3, tile(3, 1000), 1000, 3, null);
+        checkTile(store, 3, 1000, 3);
+        store.close();
+    }
+
+    @Test
+    public void testTrim() throws IOException {
+        final SegmentTileStore store = open(10000);
+        for (int i = 0 ; i < 10 ; i ++) {
+            store.put(SOURCE, i, tile(i, 3000), 3000, i, null);
+        }
+        Assert.assertTrue(store.getSegmentCount() > 3);
+        final long before = store.getSize();
+        Assert.assertTrue(store.trim(before / 2) > 0);
+        Assert.assertTrue(store.getSize() <= before / 2);
+        Assert.assertFalse(store.contains(SOURCE, 0));
+        checkTile(store, 9, 3000, 9);
+        store.close();
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        SegmentTileStore store = open(10000);
+        for (int i = 0 ; i < 9 ; i ++) {
+            store.put(SOURCE, i, tile(i, 3000), 3000, i, null);
+        }
+        for (int i = 0 ; i < 9 ; i += 3) {
+            store.remove(SOURCE, i);
+            store.remove(SOURCE, i + 1);
+        }
+        final int segments = store.getSegmentCount();
+        Assert.assertEquals(3, store.compact(0.5));
+        Assert.assertEquals(segments - 3, store.getSegmentCount() - 1);
+        for (int i = 2 ; i < 9 ; i += 3) {
+            checkTile(store, i, 3000, i);
+        }
+        store.close();
+        store = open(10000);
+        Assert.assertEquals(3, store.getTileCount());
+        for (int i = 2 ; i < 9 ; i += 3) {
+            checkTile(store, i, 3000, i);
+        }
+        store.close();
+    }
+
+    /**
+     * The tiles written while a segment is compacted are not overwritten by their older copy
+     */
+    @Test
+    public void testCompactWhileWriting() throws Exception {
+        final SegmentTileStore store = open(100000);
+        for (int i = 0 ; i < 100 ; i ++) {
+            store.put(SOURCE, i, tile(i, 3000), 3000, 0, null);
+        }
+        for (int i = 0 ; i < 100 ; i += 2) {
+            store.remove(SOURCE, i);
+        }
+        final Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 1 ; i < 100 ; i += 2) {
+                        store.put(SOURCE, i, tile(i, 2000), 2000, 1, null);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+        store.compact(0.6);
+        writer.join();
+        Assert.assertEquals(50, store.getTileCount());
+        for (int i = 1 ; i < 100 ; i += 2) {
+            checkTile(store, i, 2000, 1);
+        }
+        store.close();
+    }
+
+    /**
+     * An interrupted reader gets its tile, and stays interrupted
+     */
+    @Test
+    public void testInterruptedRead() throws IOException {
+        final SegmentTileStore store = open(100000);
+        store.put(SOURCE, 1, tile(1, 3000), 3000, 1, null);
+        Thread.currentThread().interrupt();
+        try {
+            checkTile(store, 1, 3000, 1);
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        checkTile(store, 1, 3000, 1);
+        store.close();
+    }
+
+    private SegmentTileStore open(final long pSegmentMaxBytes) throws IOException {
+        final SegmentTileStore result = new SegmentTileStore(mDirectory, pSegmentMaxBytes);
+        result.open();
+        return result;
+    }
+
+    private static byte[] tile(final int pSeed, final int pLength) {
+        final byte[] result = new byte[pLength];
+        for (int i = 0 ; i < pLength ; i ++) {
+            result[i] = (byte) (pSeed + i);
+        }
+        return result;
+    }
+
+    private static void checkTile(final SegmentTileStore pStore, final long pIndex, final int pLength, final long pExpires) {
+        final long[] expires = new long[1];
+        final byte[] bytes = pStore.read(SOURCE, pIndex, expires);
+        Assert.assertNotNull(bytes);
+        Assert.assertEquals(pLength, bytes.length);
+        Assert.assertEquals(pExpires, expires[0]);
+        final byte[] expected = tile((int) pIndex, pLength);
+        for (int i = 0 ; i < pLength ; i ++) {
+            Assert.assertEquals(expected[i], bytes[i]);
+        }
+    }
+}
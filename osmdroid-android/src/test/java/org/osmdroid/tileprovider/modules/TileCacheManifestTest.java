@@ -0,0 +1,146 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Unit tests related to {@link TileCacheManifest}
+ * @since 6.0.2
+ */
+
+public class TileCacheManifestTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("manifest", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void testReconcile() throws IOException {
+        write("Mapnik/3/1/2.png.tile", 100);
+        write("Mapnik/3/1/2.png.tile.validators", 10);
+        write("Mapnik/03/1/2.png.tile", 20);
+        write("other/file.bin", 1000);
+        final TileCacheManifest manifest = new TileCacheManifest(mDirectory);
+        Assert.assertFalse(manifest.load());
+        manifest.reconcile();
+        Assert.assertEquals(4, manifest.getCount());
+        Assert.assertEquals(1130, manifest.getSize());
+        manifest.close();
+
+        // the manifest's own files are not counted
+        final TileCacheManifest reloaded = new TileCacheManifest(mDirectory);
+        Assert.assertTrue(reloaded.load());
+        Assert.assertEquals(4, reloaded.getCount());
+        Assert.assertEquals(1130, reloaded.getSize());
+        reloaded.reconcile();
+        Assert.assertEquals(4, reloaded.getCount());
+        reloaded.close();
+    }
+
+    @Test
+    public void testJournal() throws IOException {
+        final TileCacheManifest manifest = new TileCacheManifest(mDirectory);
+        Assert.assertFalse(manifest.load());
+        manifest.reconcile();
+        manifest.onWrite(write("Mapnik/3/1/2.png.tile", 100), 100);
+        manifest.onWrite(write("Mapnik/3/1/3.png.tile", 200), 200);
+        manifest.onWrite(write("Mapnik/3/1/3.png.tile", 300), 300);
+        manifest.onWrite(write("a/b", 50), 50);
+        manifest.onDelete(new File(mDirectory, "Mapnik/3/1/2.png.tile"));
+        Assert.assertEquals(2, manifest.getCount());
+        Assert.assertEquals(350, manifest.getSize());
+
+        // no close, as in a crash: the journal is replayed
+        final TileCacheManifest reloaded = new TileCacheManifest(mDirectory);
+        // changes made before the loading are kept
+        reloaded.onWrite(write("Mapnik/4/1/2.png.tile", 1000), 1000);
+        Assert.assertTrue(reloaded.load());
+        Assert.assertEquals(3, reloaded.getCount());
+        Assert.assertEquals(1350, reloaded.getSize());
+        reloaded.close();
+    }
+
+    @Test
+    public void testTrim() throws IOException, InterruptedException {
+        final TileCacheManifest manifest = new TileCacheManifest(mDirectory);
+        manifest.load();
+        manifest.reconcile();
+        for (int i = 0 ; i < 10 ; i ++) {
+            manifest.onWrite(write("Mapnik/5/" + i + "/0.png.tile", 100), 100);
+            Thread.sleep(2);
+        }
+        Assert.assertEquals(1000, manifest.getSize());
+        Assert.assertEquals(6, manifest.trim(400));
+        Assert.assertEquals(400, manifest.getSize());
+        for (int i = 0 ; i < 10 ; i ++) {
+            Assert.assertEquals(i >= 6, new File(mDirectory, "Mapnik/5/" + i + "/0.png.tile").exists());
+        }
+        Assert.assertEquals(0, manifest.trim(400));
+        manifest.close();
+    }
+
+    /**
+     * The validators of a tile are deleted with it, and only with it, whatever their own last access
+     */
+    @Test
+    public void testTrimValidators() throws IOException, InterruptedException {
+        final TileCacheManifest manifest = new TileCacheManifest(mDirectory);
+        manifest.load();
+        manifest.reconcile();
+        for (int i = 0 ; i < 4 ; i ++) {
+            manifest.onWrite(write("Mapnik/5/" + i + "/0.png.tile.validators", 10), 10);
+        }
+        manifest.onWrite(write("Mapnik/orphan.png.tile.validators", 10), 10);
+        Thread.sleep(2);
+        for (int i = 0 ; i < 4 ; i ++) {
+            manifest.onWrite(write("Mapnik/5/" + i + "/0.png.tile", 100), 100);
+            Thread.sleep(2);
+        }
+        Assert.assertEquals(450, manifest.getSize());
+        // the orphan validators, then the 2 oldest tiles with their validators
+        Assert.assertEquals(5, manifest.trim(230));
+        Assert.assertEquals(220, manifest.getSize());
+        Assert.assertFalse(new File(mDirectory, "Mapnik/orphan.png.tile.validators").exists());
+        for (int i = 0 ; i < 4 ; i ++) {
+            Assert.assertEquals(i >= 2, new File(mDirectory, "Mapnik/5/" + i + "/0.png.tile").exists());
+            Assert.assertEquals(i >= 2, new File(mDirectory, "Mapnik/5/" + i + "/0.png.tile.validators").exists());
+        }
+        manifest.close();
+    }
+
+    private File write(final String pPath, final int pLength) throws IOException {
+        final File file = new File(mDirectory, pPath);
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[pLength]);
+        out.close();
+        return file;
+    }
+
+    private static void delete(final File pFile) {
+        final File[] files = pFile.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                delete(file);
+            }
+        }
+        pFile.delete();
+    }
+}
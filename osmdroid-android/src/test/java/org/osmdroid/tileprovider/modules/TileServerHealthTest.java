@@ -0,0 +1,116 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit tests related to {@link TileServerHealth}
+ * @since 6.0.2
+ */
+
+public class TileServerHealthTest {
+
+    private static final String HOST = "tile.example.org";
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        final TestHealth health = new TestHealth();
+        for (int i = 1 ; i < TileServerHealth.FAILURE_THRESHOLD ; i ++) {
+            Assert.assertTrue(health.isAvailable(HOST));
+            health.onFailure(HOST, 0);
+            Assert.assertEquals(TileServerHealth.State.CLOSED, health.getState(HOST));
+        }
+        Assert.assertTrue(health.isAvailable(HOST));
+        health.onFailure(HOST, 0);
+        Assert.assertEquals(TileServerHealth.State.OPEN, health.getState(HOST));
+        Assert.assertFalse(health.isAvailable(HOST));
+        Assert.assertTrue(health.isAvailable("other.example.org"));
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        final TestHealth health = new TestHealth();
+        for (int i = 0 ; i < 10 ; i ++) {
+            health.onFailure(HOST, 0);
+            health.onSuccess(HOST);
+        }
+        Assert.assertEquals(TileServerHealth.State.CLOSED, health.getState(HOST));
+    }
+
+    @Test
+    public void testHalfOpenSingleProbe() {
+        final TestHealth health = new TestHealth();
+        open(health);
+        health.mNow += TileServerHealth.MIN_BACKOFF;
+        Assert.assertTrue(health.isAvailable(HOST));
+        Assert.assertEquals(TileServerHealth.State.HALF_OPEN, health.getState(HOST));
+        Assert.assertFalse(health.isAvailable(HOST));
+        health.onSuccess(HOST);
+        Assert.assertEquals(TileServerHealth.State.CLOSED, health.getState(HOST));
+        Assert.assertTrue(health.isAvailable(HOST));
+        Assert.assertTrue(health.isAvailable(HOST));
+    }
+
+    @Test
+    public void testExponentialBackoff() {
+        final TestHealth health = new TestHealth();
+        open(health);
+        long backoff = TileServerHealth.MIN_BACKOFF;
+        for (int i = 0 ; i < 20 ; i ++) {
+            Assert.assertEquals(health.mNow + backoff, health.getRetryTime(HOST));
+            health.mNow += backoff - 1;
+            Assert.assertFalse(health.isAvailable(HOST));
+            health.mNow ++;
+            Assert.assertTrue(health.isAvailable(HOST));
+            health.onFailure(HOST, 0);
+            Assert.assertEquals(TileServerHealth.State.OPEN, health.getState(HOST));
+            backoff = Math.min(TileServerHealth.MAX_BACKOFF, backoff * 2);
+        }
+        Assert.assertEquals(TileServerHealth.MAX_BACKOFF, backoff);
+    }
+
+    @Test
+    public void testCancelledProbe() {
+        final TestHealth health = new TestHealth();
+        open(health);
+        health.mNow += TileServerHealth.MIN_BACKOFF;
+        Assert.assertTrue(health.isAvailable(HOST));
+        health.onCancelled(HOST);
+        Assert.assertTrue(health.isAvailable(HOST));
+        Assert.assertFalse(health.isAvailable(HOST));
+    }
+
+    @Test
+    public void testRetryAfter() {
+        final TestHealth health = new TestHealth();
+        Assert.assertEquals(120000, health.parseRetryAfter("120"));
+        Assert.assertEquals(0, health.parseRetryAfter(null));
+        Assert.assertEquals(0, health.parseRetryAfter("soon"));
+        health.onFailure(HOST, health.parseRetryAfter("120"));
+        Assert.assertEquals(TileServerHealth.State.OPEN, health.getState(HOST));
+        Assert.assertEquals(health.mNow + 120000, health.getRetryTime(HOST));
+        health.mNow += 119999;
+        Assert.assertFalse(health.isAvailable(HOST));
+        health.mNow ++;
+        Assert.assertTrue(health.isAvailable(HOST));
+        health.onFailure(HOST, 10 * TileServerHealth.MAX_RETRY_AFTER);
+        Assert.assertEquals(health.mNow + TileServerHealth.MAX_RETRY_AFTER, health.getRetryTime(HOST));
+    }
+
+    private static void open(final TileServerHealth pHealth) {
+        for (int i = 0 ; i < TileServerHealth.FAILURE_THRESHOLD ; i ++) {
+            pHealth.onFailure(HOST, 0);
+        }
+        Assert.assertEquals(TileServerHealth.State.OPEN, pHealth.getState(HOST));
+    }
+
+    private static class TestHealth extends TileServerHealth {
+        private long mNow = 1000000;
+
+        @Override
+        protected long now() {
+            return mNow;
+        }
+    }
+}
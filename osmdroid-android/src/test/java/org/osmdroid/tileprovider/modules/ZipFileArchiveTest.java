@@ -0,0 +1,130 @@
+package org.osmdroid.tileprovider.modules;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.TMSOnlineTileSourceBase;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Unit tests related to the coverage of a {@link ZipFileArchive}
+ * @since 6.0.2
+ */
+
+public class ZipFileArchiveTest {
+
+    private final ITileSource mTileSource = new XYTileSource("Test", 0, 18, 256, ".png",
+            new String[]{"http://tiles.test/"});
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("archive", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void testCoverage() throws Exception {
+        final ZipFileArchive archive = open("Test/", "Test/10/100/200.png", "Test/10/110/220.png", "Test/2/1/3.png");
+        try {
+            final ArchiveCoverage coverage = archive.getCoverage(mTileSource);
+            Assert.assertNotNull(coverage);
+            Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(10, 105, 210)));
+            Assert.assertFalse(coverage.contains(MapTileIndex.getTileIndex(10, 105, 221)));
+            Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(2, 1, 3)));
+            Assert.assertFalse(coverage.hasZoom(3));
+        } finally {
+            archive.close();
+        }
+    }
+
+    /**
+     * The names of a TMS tile source don't map to the parsed tiles: the coverage is unknown
+     */
+    @Test
+    public void testTmsLayout() throws Exception {
+        final ITileSource tileSource = new TMSOnlineTileSourceBase("Test", 0, 18, 256, ".png",
+                new String[]{"http://tiles.test/"}) {
+            @Override
+            public String getTileURLString(final long pMapTileIndex) {
+                return null;
+            }
+        };
+        final ZipFileArchive archive = open("Test/10/100/200.png");
+        try {
+            Assert.assertNull(archive.getCoverage(tileSource));
+            Assert.assertNotNull(archive.getCoverage(mTileSource));
+        } finally {
+            archive.close();
+        }
+    }
+
+    /**
+     * Entries in any other layout make the coverage unknown
+     */
+    @Test
+    public void testOtherLayout() throws Exception {
+        final String[][] layouts = {
+                {"Test/10/100/200.jpg"},
+                {"10/100/200.png"},
+                {"Test/extra/10/100/200.png"},
+                {"Test/10/100/200.png", "Test/readme.txt"},
+        };
+        for (final String[] layout : layouts) {
+            final ZipFileArchive archive = open(layout);
+            try {
+                Assert.assertNull(layout[0], archive.getCoverage(mTileSource));
+            } finally {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * When the tile source is ignored, the names are the ones the archive looks for itself
+     */
+    @Test
+    public void testIgnoreTileSource() throws Exception {
+        final ZipFileArchive archive = open("Other/10/100/200.png");
+        try {
+            Assert.assertNull(archive.getCoverage(mTileSource));
+            archive.setIgnoreTileSource(true);
+            final ArchiveCoverage coverage = archive.getCoverage(mTileSource);
+            Assert.assertNotNull(coverage);
+            Assert.assertTrue(coverage.contains(MapTileIndex.getTileIndex(10, 100, 200)));
+        } finally {
+            archive.close();
+        }
+    }
+
+    private ZipFileArchive open(final String... pNames) throws Exception {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mFile));
+        try {
+            for (final String name : pNames) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    out.write(new byte[]{1});
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return ZipFileArchive.getZipFileArchive(mFile);
+    }
+}
@@ -0,0 +1,228 @@
+package org.osmdroid.util;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests related to {@link GEMFFile}
+ * @since 6.0.2
+ */
+
+public class GEMFFileTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("gemf", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final GEMFFile file = create();
+        Assert.assertEquals(2, file.getSources().size());
+        Assert.assertEquals(3, file.getZoomLevels().size());
+        for (int zoom = 0 ; zoom <= 2 ; zoom ++) {
+            for (int x = 0 ; x < 1 << zoom ; x ++) {
+                for (int y = 0 ; y < 1 << zoom ; y ++) {
+                    final InputStream in = file.getInputStream(x, y, zoom);
+                    Assert.assertNotNull(in);
+                    checkTile(read(in), zoom, x, y);
+                }
+            }
+        }
+        Assert.assertNull(file.getInputStream(0, 0, 3));
+        file.close();
+    }
+
+    @Test
+    public void testSelectSource() throws IOException {
+        final GEMFFile file = create();
+        file.selectSource(1);
+        Assert.assertNull(file.getInputStream(0, 0, 0));
+        Assert.assertNotNull(file.getInputStream(0, 0, 1));
+        file.acceptAnySource();
+        Assert.assertNotNull(file.getInputStream(0, 0, 0));
+        file.close();
+    }
+
+    @Test
+    public void testConcurrentReads() throws IOException, InterruptedException {
+        final GEMFFile file = create();
+        final AtomicInteger errors = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0 ; i < 8 ; i ++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0 ; j < 2000 ; j ++) {
+                        final int x = j % 4;
+                        final int y = (j / 4) % 4;
+                        final ByteBuffer buffer = file.getByteBuffer(x, y, 2);
+                        final byte[] data = new byte[buffer.remaining()];
+                        buffer.get(data);
+                        try {
+                            checkTile(data, 2, x, y);
+                        } catch (Throwable e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, errors.get());
+        file.close();
+    }
+
+    @Test
+    public void testSparse() throws IOException {
+        final String location = new File(mDirectory, "sparse.gemf").getAbsolutePath();
+        final GEMFWriter writer = new GEMFWriter(location);
+        // a diagonal at zoom 3, a hole at zoom 2, given in no particular order
+        for (int i = 7 ; i >= 0 ; i --) {
+            writer.addTile("a", 3, i, i, tile(3, i, i));
+        }
+        for (int x = 0 ; x < 4 ; x ++) {
+            for (int y = 0 ; y < 4 ; y ++) {
+                if (x != 1 || y != 2) {
+                    writer.addTile("a", 2, x, y, tile(2, x, y));
+                }
+            }
+        }
+        writer.close();
+        Assert.assertEquals(23, writer.getTileCount());
+
+        final GEMFFile file = new GEMFFile(location);
+        for (int x = 0 ; x < 8 ; x ++) {
+            for (int y = 0 ; y < 8 ; y ++) {
+                final InputStream in = file.getInputStream(x, y, 3);
+                Assert.assertEquals(x == y, in != null);
+                if (in != null) {
+                    checkTile(read(in), 3, x, y);
+                }
+            }
+        }
+        for (int x = 0 ; x < 4 ; x ++) {
+            for (int y = 0 ; y < 4 ; y ++) {
+                final InputStream in = file.getInputStream(x, y, 2);
+                Assert.assertEquals(x != 1 || y != 2, in != null);
+                if (in != null) {
+                    checkTile(read(in), 2, x, y);
+                }
+            }
+        }
+        file.close();
+    }
+
+    @Test
+    public void testReplace() throws IOException {
+        final String location = new File(mDirectory, "replace.gemf").getAbsolutePath();
+        // an archive with more data files than the next one
+        write(new File(location + "-1"), new byte[10]);
+        write(new File(location + "-2"), new byte[10]);
+        final GEMFWriter writer = new GEMFWriter(location);
+        writer.addTile("a", 1, 0, 0, tile(0, 0, 0));
+        writer.addTile("a", 1, 0, 0, tile(1, 0, 0));
+        writer.close();
+        Assert.assertFalse(new File(location + "-2").exists());
+
+        final GEMFFile file = new GEMFFile(location);
+        checkTile(read(file.getInputStream(0, 0, 1)), 1, 0, 0);
+        Assert.assertNull(file.getInputStream(1, 0, 1));
+        file.close();
+    }
+
+    /**
+     * Source "a" has all the tiles of zooms 0 to 2; source "b" has the tiles of zoom 1
+     */
+    private GEMFFile create() throws IOException {
+        final File a = new File(mDirectory, "a");
+        final File b = new File(mDirectory, "b");
+        for (int zoom = 0 ; zoom <= 2 ; zoom ++) {
+            for (int x = 0 ; x < 1 << zoom ; x ++) {
+                for (int y = 0 ; y < 1 << zoom ; y ++) {
+                    write(new File(a, zoom + "/" + x + "/" + y + ".png"), tile(zoom, x, y));
+                    if (zoom == 1) {
+                        write(new File(b, zoom + "/" + x + "/" + y + ".png"), tile(zoom, x, y));
+                    }
+                }
+            }
+        }
+        final String location = new File(mDirectory, "test.gemf").getAbsolutePath();
+        final List<File> sources = new ArrayList<>();
+        Collections.addAll(sources, a, b);
+        new GEMFFile(location, sources).close();
+        return new GEMFFile(location);
+    }
+
+    private static byte[] tile(final int pZoom, final int pX, final int pY) {
+        final byte[] result = new byte[100 + pZoom * 100 + pX * 10 + pY];
+        for (int i = 0 ; i < result.length ; i ++) {
+            result[i] = (byte) (pZoom + pX + pY + i);
+        }
+        return result;
+    }
+
+    private static void checkTile(final byte[] pData, final int pZoom, final int pX, final int pY) {
+        final byte[] expected = tile(pZoom, pX, pY);
+        Assert.assertEquals(expected.length, pData.length);
+        for (int i = 0 ; i < expected.length ; i ++) {
+            Assert.assertEquals(expected[i], pData[i]);
+        }
+    }
+
+    private static byte[] read(final InputStream pInputStream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[64];
+        int read;
+        while ((read = pInputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        pInputStream.close();
+        return out.toByteArray();
+    }
+
+    private static void write(final File pFile, final byte[] pData) throws IOException {
+        pFile.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(pFile);
+        out.write(pData);
+        out.close();
+    }
+
+    private static void delete(final File pFile) {
+        final File[] files = pFile.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                delete(file);
+            }
+        }
+        pFile.delete();
+    }
+}
@@ -0,0 +1,144 @@
+package org.osmdroid.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests related to {@link LongHashMap}
+ * @since 6.0.2
+ */
+
+public class LongHashMapTest {
+
+    private static final Random random = new Random();
+
+    @Test
+    public void testPutGetRemove() {
+        final int iterations = 20000;
+        final int keyRange = 500;
+        final LongHashMap<Long> map = new LongHashMap<>();
+        final HashMap<Long, Long> reference = new HashMap<>();
+        for (int i = 0 ; i < iterations ; i ++) {
+            final long key = getMapTileIndex(random.nextInt(keyRange));
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assert.assertEquals(reference.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                case 1:
+                    Assert.assertEquals(reference.remove(key), map.remove(key));
+                    break;
+                default:
+                    Assert.assertEquals(reference.containsKey(key), map.containsKey(key));
+                    Assert.assertEquals(reference.get(key), map.get(key));
+            }
+            Assert.assertEquals(reference.size(), map.size());
+        }
+        for (final Long key : reference.keySet()) {
+            Assert.assertEquals(reference.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void testGetKeys() {
+        final LongHashMap<String> map = new LongHashMap<>(1);
+        final MapTileList list = new MapTileList();
+        map.getKeys(list);
+        Assert.assertEquals(0, list.getSize());
+        final int size = 100;
+        for (int i = 0 ; i < size ; i ++) {
+            map.put(getMapTileIndex(i), "" + i);
+        }
+        map.getKeys(list);
+        Assert.assertEquals(size, list.getSize());
+        for (int i = 0 ; i < size ; i ++) {
+            Assert.assertTrue(list.contains(getMapTileIndex(i)));
+        }
+        int count = 0;
+        for (int i = 0 ; i < map.getSlotCount() ; i ++) {
+            final String value = map.getValueAt(i);
+            if (value != null) {
+                Assert.assertEquals(value, map.get(map.getKeyAt(i)));
+                count ++;
+            }
+        }
+        Assert.assertEquals(size, count);
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(getMapTileIndex(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() {
+        new LongHashMap<String>().put(0, null);
+    }
+
+    /**
+     * What a {@link org.osmdroid.tileprovider.MapTileCache} goes through at each frame,
+     * i.e. a lookup for each displayed tile, must not allocate anything (no boxing of the keys).
+     * Checked only where the JVM gives the allocated bytes per thread.
+     */
+    @Test
+    public void testFrameLookupsDoNotAllocate() {
+        final int cacheSize = 600;
+        final int tilesPerFrame = 400;
+        final int frames = 2000;
+        final Object drawable = new Object();
+        final long[] frame = new long[tilesPerFrame];
+        for (int i = 0 ; i < tilesPerFrame ; i ++) {
+            frame[i] = getMapTileIndex(i);
+        }
+
+        final LongHashMap<Object> primitive = new LongHashMap<>();
+        for (int i = 0 ; i < cacheSize ; i ++) {
+            primitive.put(getMapTileIndex(i), drawable);
+        }
+
+        // warm-up
+        int found = 0;
+        for (int k = 0 ; k < frames ; k ++) {
+            found += lookupPrimitive(primitive, frame);
+        }
+        Assert.assertEquals(frames * tilesPerFrame, found);
+
+        final long allocated = getAllocatedBytes();
+        for (int k = 0 ; k < frames ; k ++) {
+            lookupPrimitive(primitive, frame);
+        }
+        final long primitiveBytes = getAllocatedBytes() - allocated;
+        // less than one boxed Long per frame, whatever the measurement itself allocates
+        Assert.assertTrue(primitiveBytes + " bytes", primitiveBytes < frames * 16);
+    }
+
+    private int lookupPrimitive(final LongHashMap<Object> pMap, final long[] pFrame) {
+        int result = 0;
+        for (final long index : pFrame) {
+            if (pMap.get(index) != null) {
+                result ++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or 0 if not supported
+     */
+    private long getAllocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private long getMapTileIndex(final int pIndex) {
+        final int zoom = 10 + pIndex / (1 << 10);
+        return MapTileIndex.getTileIndex(zoom, pIndex % (1 << 10), (pIndex * 7) % (1 << 10));
+    }
+}